@@ -40,6 +40,28 @@ public class ConnectionConfigFactory {
 
     private int maxThreads = 0;
 
+    private int maxDownloadRate = 0;
+
+    private int maxUploadRate = 0;
+
+    private int maxUserDownloadRate = 0;
+
+    private int maxUserUploadRate = 0;
+
+    private int transferBurstSize = 0;
+
+    private int listingCacheSize = 0;
+
+    private int listingCacheMaxAge = 30;
+
+    private int authenticationThreads = 0;
+
+    private int maxLoginFailureDelay = 0;
+
+    private int loginBanThreshold = 0;
+
+    private int loginBanTime = 600;
+
     /**
      * Create a connection configuration instances based on the configuration on this factory
      * @return The {@link ConnectionConfig} instance
@@ -47,7 +69,10 @@ public class ConnectionConfigFactory {
     public ConnectionConfig createConnectionConfig() {
         return new DefaultConnectionConfig(anonymousLoginEnabled,
                 loginFailureDelay, maxLogins, maxAnonymousLogins,
-                maxLoginFailures, maxThreads);
+                maxLoginFailures, maxThreads, maxDownloadRate, maxUploadRate,
+                maxUserDownloadRate, maxUserUploadRate, transferBurstSize,
+                listingCacheSize, listingCacheMaxAge, authenticationThreads,
+                maxLoginFailureDelay, loginBanThreshold, loginBanTime);
     }
 
     /**
@@ -124,6 +149,250 @@ public class ConnectionConfigFactory {
         this.maxThreads = maxThreads;
     }
 
+    /**
+     * The maximum rate, in bytes per second, at which all users together can
+     * download from the server.
+     * 
+     * @return The maximum download rate, or 0 if unlimited
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * Set the maximum rate, in bytes per second, at which all users together
+     * can download from the server.
+     * 
+     * @param maxDownloadRate
+     *            The maximum download rate, or 0 for unlimited
+     */
+    public void setMaxDownloadRate(int maxDownloadRate) {
+        this.maxDownloadRate = maxDownloadRate;
+    }
+
+    /**
+     * The maximum rate, in bytes per second, at which all users together can
+     * upload to the server.
+     * 
+     * @return The maximum upload rate, or 0 if unlimited
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * Set the maximum rate, in bytes per second, at which all users together
+     * can upload to the server.
+     * 
+     * @param maxUploadRate
+     *            The maximum upload rate, or 0 for unlimited
+     */
+    public void setMaxUploadRate(int maxUploadRate) {
+        this.maxUploadRate = maxUploadRate;
+    }
+
+    /**
+     * The maximum rate, in bytes per second, at which a single user can
+     * download, shared by all sessions of that user.
+     * 
+     * @return The maximum download rate per user, or 0 if unlimited
+     */
+    public int getMaxUserDownloadRate() {
+        return maxUserDownloadRate;
+    }
+
+    /**
+     * Set the maximum rate, in bytes per second, at which a single user can
+     * download, shared by all sessions of that user. Limits for a single
+     * session are set using the user's
+     * {@link org.apache.ftpserver.usermanager.impl.TransferRatePermission}.
+     * 
+     * @param maxUserDownloadRate
+     *            The maximum download rate per user, or 0 for unlimited
+     */
+    public void setMaxUserDownloadRate(int maxUserDownloadRate) {
+        this.maxUserDownloadRate = maxUserDownloadRate;
+    }
+
+    /**
+     * The maximum rate, in bytes per second, at which a single user can
+     * upload, shared by all sessions of that user.
+     * 
+     * @return The maximum upload rate per user, or 0 if unlimited
+     */
+    public int getMaxUserUploadRate() {
+        return maxUserUploadRate;
+    }
+
+    /**
+     * Set the maximum rate, in bytes per second, at which a single user can
+     * upload, shared by all sessions of that user.
+     * 
+     * @param maxUserUploadRate
+     *            The maximum upload rate per user, or 0 for unlimited
+     */
+    public void setMaxUserUploadRate(int maxUserUploadRate) {
+        this.maxUserUploadRate = maxUserUploadRate;
+    }
+
+    /**
+     * The number of bytes which can be transferred at full speed after a
+     * rate limited transfer has been idle.
+     * 
+     * @return The burst size in bytes, or 0 for the default
+     */
+    public int getTransferBurstSize() {
+        return transferBurstSize;
+    }
+
+    /**
+     * Set the number of bytes which can be transferred at full speed after a
+     * rate limited transfer has been idle. Defaults to a tenth of a second
+     * worth of data at the limiting rate.
+     * 
+     * @param transferBurstSize
+     *            The burst size in bytes, or 0 for the default
+     */
+    public void setTransferBurstSize(int transferBurstSize) {
+        this.transferBurstSize = transferBurstSize;
+    }
+
+    /**
+     * The maximum number of bytes of directory listings cached by the server.
+     * 
+     * @return The size of the listing cache in bytes, or 0 if listings are
+     *         not cached
+     */
+    public int getListingCacheSize() {
+        return listingCacheSize;
+    }
+
+    /**
+     * Set the maximum number of bytes of directory listings cached by the
+     * server, shared by all sessions. Caching helps when many clients poll
+     * the same directories. Disabled by default.
+     * 
+     * @param listingCacheSize
+     *            The size of the listing cache in bytes, or 0 to not cache
+     *            listings
+     */
+    public void setListingCacheSize(int listingCacheSize) {
+        this.listingCacheSize = listingCacheSize;
+    }
+
+    /**
+     * The maximum number of seconds a cached directory listing is used.
+     * 
+     * @return The maximum age of cached listings in seconds
+     */
+    public int getListingCacheMaxAge() {
+        return listingCacheMaxAge;
+    }
+
+    /**
+     * Set the maximum number of seconds a cached directory listing is used.
+     * Listings are refreshed as soon as the listed directory is modified,
+     * this limits how long changes made to the listed files by other
+     * processes can go unnoticed. Defaults to 30 seconds.
+     * 
+     * @param listingCacheMaxAge
+     *            The maximum age of cached listings in seconds
+     */
+    public void setListingCacheMaxAge(int listingCacheMaxAge) {
+        this.listingCacheMaxAge = listingCacheMaxAge;
+    }
+
+    /**
+     * The number of threads calling the user manager to authenticate logins.
+     * 
+     * @return The number of authentication threads, or 0 if logins are
+     *         authenticated by the thread handling the PASS command
+     */
+    public int getAuthenticationThreads() {
+        return authenticationThreads;
+    }
+
+    /**
+     * Set the number of threads calling the user manager to authenticate
+     * logins. A slow user manager then does not hold the threads of the
+     * server, the session waits for its login without a thread. Disabled by
+     * default.
+     * 
+     * @param authenticationThreads
+     *            The number of authentication threads, or 0 to authenticate
+     *            logins in the thread handling the PASS command
+     */
+    public void setAuthenticationThreads(int authenticationThreads) {
+        this.authenticationThreads = authenticationThreads;
+    }
+
+    /**
+     * The longest delay in milliseconds before replying to a failed login.
+     * 
+     * @return The maximum delay in milliseconds, or 0 if the login failure
+     *         delay does not increase
+     */
+    public int getMaxLoginFailureDelay() {
+        return maxLoginFailureDelay;
+    }
+
+    /**
+     * Set the longest delay in milliseconds before replying to a failed
+     * login. The login failure delay doubles with each recent failure from
+     * the same address or for the same user, up to this delay. Disabled by
+     * default.
+     * 
+     * @param maxLoginFailureDelay
+     *            The maximum delay in milliseconds, or 0 to always wait for
+     *            the login failure delay
+     */
+    public void setMaxLoginFailureDelay(int maxLoginFailureDelay) {
+        this.maxLoginFailureDelay = maxLoginFailureDelay;
+    }
+
+    /**
+     * The number of recent failed logins from an address after which the
+     * address is banned.
+     * 
+     * @return The number of failed logins, or 0 if addresses are never
+     *         banned
+     */
+    public int getLoginBanThreshold() {
+        return loginBanThreshold;
+    }
+
+    /**
+     * Set the number of recent failed logins from an address after which the
+     * address is banned. Connections from a banned address are closed as
+     * soon as they are accepted. Disabled by default.
+     * 
+     * @param loginBanThreshold
+     *            The number of failed logins, or 0 to never ban addresses
+     */
+    public void setLoginBanThreshold(int loginBanThreshold) {
+        this.loginBanThreshold = loginBanThreshold;
+    }
+
+    /**
+     * The time an address is banned for.
+     * 
+     * @return The ban time in seconds
+     */
+    public int getLoginBanTime() {
+        return loginBanTime;
+    }
+
+    /**
+     * Set the time an address is banned for, doubling each time the address
+     * is banned again. Defaults to 600 seconds.
+     * 
+     * @param loginBanTime
+     *            The ban time in seconds
+     */
+    public void setLoginBanTime(int loginBanTime) {
+        this.loginBanTime = loginBanTime;
+    }
+
     /**
      * Set if anonymous logins are allowed at the server
      * @param anonymousLoginEnabled true if anonymous logins should be enabled
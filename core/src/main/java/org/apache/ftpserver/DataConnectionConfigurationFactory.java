@@ -22,6 +22,7 @@ package org.apache.ftpserver;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Collections;
+import java.util.zip.Deflater;
 
 import org.apache.ftpserver.impl.DefaultDataConnectionConfiguration;
 import org.apache.ftpserver.impl.PassivePortResolver;
@@ -52,6 +53,17 @@ public class DataConnectionConfigurationFactory {
     private String passiveExternalAddress;
     private PassivePortResolver passivePortResolver;
     private boolean implicitSsl;
+    private boolean zeroCopyEnabled = false;
+    private boolean nonBlocking = false;
+    private int maxDownloadRate = 0;
+    private int maxUploadRate = 0;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int compressionStrategy = Deflater.DEFAULT_STRATEGY;
+    private boolean skipCompressedData = true;
+    private boolean passiveSocketPoolingEnabled = false;
+    private int listingThreads = 0;
+    private int parallelListingThreshold = 500;
+    private boolean listingSorted = true;
 
     /**
      * Create a {@link DataConnectionConfiguration} instance based on the 
@@ -64,7 +76,11 @@ public class DataConnectionConfigurationFactory {
                 ssl, activeEnabled, activeIpCheck,
                 activeLocalAddress, activeLocalPort,
                 passiveAddress, passivePortResolver,
-                passiveExternalAddress, implicitSsl);
+                passiveExternalAddress, implicitSsl, zeroCopyEnabled,
+                nonBlocking, maxDownloadRate, maxUploadRate,
+                compressionLevel, compressionStrategy, skipCompressedData,
+                passiveSocketPoolingEnabled, listingThreads,
+                parallelListingThreshold, listingSorted);
     }
     /*
      * (Non-Javadoc)
@@ -236,4 +252,204 @@ public class DataConnectionConfigurationFactory {
     public void setImplicitSsl(boolean implicitSsl) {
         this.implicitSsl = implicitSsl;
     }
+
+    /**
+     * @return True if zero-copy transfers are enabled
+     */
+    public boolean isZeroCopyEnabled() {
+        return zeroCopyEnabled;
+    }
+
+    /**
+     * Set whether binary transfers of native files may move data directly
+     * between the file and the data socket, without copying it through the
+     * JVM.
+     * Zero-copy is only used for plain (non SSL/TLS) data connections when
+     * MODE Z is not in use. Defaults to false.
+     * @param zeroCopyEnabled True if zero-copy transfers are enabled
+     */
+    public void setZeroCopyEnabled(boolean zeroCopyEnabled) {
+        this.zeroCopyEnabled = zeroCopyEnabled;
+    }
+
+    /**
+     * @return True if data transfers are non-blocking
+     */
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    /**
+     * Set whether data transfers are non-blocking. Non-blocking binary file
+     * transfers (RETR and STOR) over plain data connections are driven by a
+     * small number of shared selector threads, and do not hold on to a
+     * server thread for the duration of the transfer. SSL/TLS, ASCII and
+     * MODE Z transfers are still blocking. Defaults to false.
+     * @param nonBlocking True if data transfers should be non-blocking
+     */
+    public void setNonBlocking(boolean nonBlocking) {
+        this.nonBlocking = nonBlocking;
+    }
+
+    /**
+     * @return The maximum download rate for the listener, or 0 if unlimited
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * Set the maximum rate, in bytes per second, at which all users of the
+     * listener together can download. The bandwidth is shared among the
+     * transfers according to the weights of their users.
+     * @param maxDownloadRate The maximum download rate, or 0 for unlimited
+     */
+    public void setMaxDownloadRate(int maxDownloadRate) {
+        this.maxDownloadRate = maxDownloadRate;
+    }
+
+    /**
+     * @return The maximum upload rate for the listener, or 0 if unlimited
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * Set the maximum rate, in bytes per second, at which all users of the
+     * listener together can upload.
+     * @param maxUploadRate The maximum upload rate, or 0 for unlimited
+     */
+    public void setMaxUploadRate(int maxUploadRate) {
+        this.maxUploadRate = maxUploadRate;
+    }
+
+    /**
+     * @return The default compression level for MODE Z transfers
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Set the default compression level for MODE Z transfers.
+     * @param compressionLevel The level, from 0 (no compression) to 9, or
+     *            -1 for the zlib default
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION
+                || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: "
+                    + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * @return The default compression strategy for MODE Z transfers
+     */
+    public int getCompressionStrategy() {
+        return compressionStrategy;
+    }
+
+    /**
+     * Set the default compression strategy for MODE Z transfers.
+     * @param compressionStrategy {@link Deflater#DEFAULT_STRATEGY},
+     *            {@link Deflater#FILTERED} or {@link Deflater#HUFFMAN_ONLY}
+     */
+    public void setCompressionStrategy(int compressionStrategy) {
+        this.compressionStrategy = compressionStrategy;
+    }
+
+    /**
+     * @return True if already compressed data is sent without compressing
+     *         it again in MODE Z
+     */
+    public boolean isSkipCompressedData() {
+        return skipCompressedData;
+    }
+
+    /**
+     * Set whether already compressed data, detected by file extension or from
+     * the first block of the file, is sent without compressing it again in
+     * MODE Z. The data is still framed as a zlib stream.
+     * @param skipCompressedData True to skip compressing compressed data
+     */
+    public void setSkipCompressedData(boolean skipCompressedData) {
+        this.skipCompressedData = skipCompressedData;
+    }
+
+    /**
+     * @return True if passive server sockets are kept bound between data
+     *         connections
+     */
+    public boolean isPassiveSocketPoolingEnabled() {
+        return passiveSocketPoolingEnabled;
+    }
+
+    /**
+     * Set whether passive server sockets are kept bound and listening between
+     * data connections, instead of being bound for every PASV and closed
+     * after the transfer. Only used for plain data connections backed by
+     * socket channels. Connections to a pooled socket from another address
+     * than the client's are refused.
+     * @param passiveSocketPoolingEnabled True to pool passive sockets
+     */
+    public void setPassiveSocketPoolingEnabled(
+            boolean passiveSocketPoolingEnabled) {
+        this.passiveSocketPoolingEnabled = passiveSocketPoolingEnabled;
+    }
+
+    /**
+     * @return The number of threads reading the attributes of listed files
+     */
+    public int getListingThreads() {
+        return listingThreads;
+    }
+
+    /**
+     * Set the maximum number of threads reading the attributes of listed
+     * files concurrently, shared by all sessions of the listener. The
+     * listing is still written in order. Disabled by default.
+     * @param listingThreads The number of listing threads, or 0 to list files
+     *            in the session thread
+     */
+    public void setListingThreads(int listingThreads) {
+        this.listingThreads = listingThreads;
+    }
+
+    /**
+     * @return The minimum number of entries of a directory listed in parallel
+     */
+    public int getParallelListingThreshold() {
+        return parallelListingThreshold;
+    }
+
+    /**
+     * Set the number of entries from which the attributes of a listed
+     * directory are read concurrently. Smaller directories are listed by the
+     * session thread. Defaults to 500.
+     * @param parallelListingThreshold The minimum number of entries of a
+     *            directory listed in parallel
+     */
+    public void setParallelListingThreshold(int parallelListingThreshold) {
+        this.parallelListingThreshold = parallelListingThreshold;
+    }
+
+    /**
+     * @return True if directory listings are sorted by name
+     */
+    public boolean isListingSorted() {
+        return listingSorted;
+    }
+
+    /**
+     * Set whether directory listings are sorted by name. Unsorted listings
+     * list the files of native directories in the order they are read from
+     * the directory, which saves sorting large directories. Defaults to true.
+     * @param listingSorted True to sort listings
+     */
+    public void setListingSorted(boolean listingSorted) {
+        this.listingSorted = listingSorted;
+    }
 }
@@ -27,6 +27,7 @@ import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.NioDataConnection;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -37,8 +38,8 @@ import org.apache.ftpserver.impl.LocalizedFtpReply;
  * any associated transfer of data. No action is to be taken if the previous
  * command has been completed (including data transfer). The control connection
  * is not to be closed by the server, but the data connection must be closed.
- * Current implementation does not do anything. As here data transfers are not
- * multi-threaded.
+ * A transfer running in the background is failed first, so that its command
+ * replies with 426 before the 226 reply to ABOR.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a> 
  */
@@ -54,6 +55,13 @@ public class ABOR extends AbstractCommand {
         // reset state variables
         session.resetState();
 
+        // fail a transfer running in the background, its command replies
+        // before the ABOR reply
+        NioDataConnection transfer = session.getPendingDataTransfer();
+        if (transfer != null) {
+            transfer.abortTransfer();
+        }
+
         // and abort any data connection
         session.getDataConnection().closeDataConnection();
         session.write(LocalizedFtpReply.translate(session, request, context,
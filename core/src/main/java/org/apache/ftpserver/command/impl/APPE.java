@@ -25,6 +25,7 @@ import java.net.InetAddress;
 import java.net.SocketException;
 
 import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataConnectionFactory;
 import org.apache.ftpserver.ftplet.DefaultFtpReply;
@@ -196,6 +197,12 @@ public class APPE extends AbstractCommand {
                 IoUtils.close(os);
             }
 
+            // the cached listings showing the file are out of date
+            ListingCache listingCache = context.getListingCache();
+            if (listingCache != null) {
+                listingCache.invalidate(file, session.getUser().getName());
+            }
+
             // if data transfer ok - send transfer complete message
             if (!failure) {
                 session.write(LocalizedFtpReply.translate(session, request, context,
@@ -22,6 +22,7 @@ package org.apache.ftpserver.command.impl;
 import java.io.IOException;
 
 import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
@@ -100,6 +101,11 @@ public class DELE extends AbstractCommand {
 
         // now delete
         if (file.delete()) {
+            // the cached listings showing the file are out of date
+            ListingCache listingCache = context.getListingCache();
+            if (listingCache != null) {
+                listingCache.invalidate(file, session.getUser().getName());
+            }
             session.write(LocalizedFtpReply.translate(session, request, context,
                     FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, "DELE",
                     fileName));
@@ -39,6 +39,7 @@ import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.ServerDataConnectionConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -124,9 +125,13 @@ public class LIST extends AbstractCommand {
             boolean failure = false;
 
             try {
-                dataConnection.transferToClient(session.getFtpletSession(), directoryLister.listFiles(
-                        parsedArg, session.getFileSystemView(),
-                        LIST_FILE_FORMATER));
+                ServerDataConnectionConfiguration dataConfig = session
+                .getDataConnectionConfiguration();
+                directoryLister.transferFiles(parsedArg, session
+                        .getFileSystemView(), LIST_FILE_FORMATER, "LIST",
+                        dataConfig.isListingSorted(), context.getListingCache(),
+                        context.getListingExecutor(dataConfig), dataConnection,
+                        session.getFtpletSession());
             } catch (SocketException ex) {
                 LOG.debug("Socket exception during list transfer", ex);
                 failure = true;
@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.IOException;
 
 import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
@@ -101,6 +102,11 @@ public class MKD extends AbstractCommand {
 
         // now create directory
         if (file.mkdir()) {
+            // the cached listings showing the file are out of date
+            ListingCache listingCache = context.getListingCache();
+            if (listingCache != null) {
+                listingCache.invalidate(file, session.getUser().getName());
+            }
             session.write(LocalizedFtpReply.translate(session, request, context,
                     FtpReply.REPLY_257_PATHNAME_CREATED, "MKD", fileName));
 
@@ -39,6 +39,7 @@ import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.ServerDataConnectionConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -108,11 +109,24 @@ public class MLSD extends AbstractCommand {
                 ListArgument parsedArg = ListArgumentParser.parse(request
                         .getArgument());
 
-                FileFormater formater = new MLSTFileFormater((String[]) session
-                        .getAttribute("MLST.types"));
+                String[] types = (String[]) session.getAttribute("MLST.types");
+                FileFormater formater = new MLSTFileFormater(types);
 
-                dataConnection.transferToClient(session.getFtpletSession(), directoryLister.listFiles(
-                        parsedArg, session.getFileSystemView(), formater));
+                // listings are only cached for the same selected facts
+                StringBuilder format = new StringBuilder("MLSD");
+                if (types != null) {
+                    for (String type : types) {
+                        format.append(';').append(type.toLowerCase());
+                    }
+                }
+
+                ServerDataConnectionConfiguration dataConfig = session
+                .getDataConnectionConfiguration();
+                directoryLister.transferFiles(parsedArg, session
+                        .getFileSystemView(), formater, format.toString(),
+                        dataConfig.isListingSorted(), context.getListingCache(),
+                        context.getListingExecutor(dataConfig), dataConnection,
+                        session.getFtpletSession());
             } catch (SocketException ex) {
                 LOG.debug("Socket exception during data transfer", ex);
                 failure = true;
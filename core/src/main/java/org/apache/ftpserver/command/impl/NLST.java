@@ -40,6 +40,7 @@ import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.ServerDataConnectionConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -120,8 +121,15 @@ public class NLST extends AbstractCommand {
                     formater = NLST_FILE_FORMATER;
                 }
 
-                dataConnection.transferToClient(session.getFtpletSession(), directoryLister.listFiles(
-                        parsedArg, session.getFileSystemView(), formater));
+                ServerDataConnectionConfiguration dataConfig = session
+                .getDataConnectionConfiguration();
+
+                // the -l option is part of the listing key of the cache
+                directoryLister.transferFiles(parsedArg, session
+                        .getFileSystemView(), formater, "NLST",
+                        dataConfig.isListingSorted(), context.getListingCache(),
+                        context.getListingExecutor(dataConfig), dataConnection,
+                        session.getFtpletSession());
             } catch (SocketException ex) {
                 LOG.debug("Socket exception during data transfer", ex);
                 failure = true;
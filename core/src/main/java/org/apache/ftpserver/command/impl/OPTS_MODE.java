@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.command.impl;
+
+import java.io.IOException;
+import java.util.StringTokenizer;
+import java.util.zip.Deflater;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.CompressionEngine;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.ServerDataConnectionConfiguration;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * <code>OPTS MODE Z [LEVEL &lt;level&gt;] [STRATEGY &lt;strategy&gt;]</code><br>
+ * 
+ * Set the compression level, 0 to 9, and strategy, DEFAULT, FILTERED or
+ * HUFFMAN_ONLY, used for MODE Z transfers. Without options, the defaults of
+ * the listener are restored.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a> 
+ */
+public class OPTS_MODE extends AbstractCommand {
+
+    /**
+     * Execute command.
+     */
+    public void execute(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request)
+            throws IOException, FtpException {
+
+        // reset state
+        session.resetState();
+
+        ServerDataConnectionConfiguration dataCfg = session
+                .getDataConnectionConfiguration();
+        int level = dataCfg.getCompressionLevel();
+        int strategy = dataCfg.getCompressionStrategy();
+
+        // skip the MODE token
+        StringTokenizer st = new StringTokenizer(request.getArgument());
+        st.nextToken();
+
+        boolean valid = st.hasMoreTokens()
+                && "Z".equalsIgnoreCase(st.nextToken());
+        try {
+            while (valid && st.hasMoreTokens()) {
+                String option = st.nextToken();
+                if (!st.hasMoreTokens()) {
+                    valid = false;
+                } else if ("LEVEL".equalsIgnoreCase(option)) {
+                    level = Integer.parseInt(st.nextToken());
+                    valid = level >= Deflater.NO_COMPRESSION
+                            && level <= Deflater.BEST_COMPRESSION;
+                } else if ("STRATEGY".equalsIgnoreCase(option)) {
+                    strategy = CompressionEngine.parseStrategy(st.nextToken());
+                } else {
+                    valid = false;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // not a number or unknown strategy
+            valid = false;
+        }
+
+        if (!valid) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "OPTS.MODE", null));
+            return;
+        }
+
+        ServerDataConnectionFactory dataConnection = session
+                .getDataConnection();
+        dataConnection.setZipLevel(level);
+        dataConnection.setZipStrategy(strategy);
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_200_COMMAND_OKAY, "OPTS.MODE", null));
+    }
+}
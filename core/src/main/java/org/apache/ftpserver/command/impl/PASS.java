@@ -20,6 +20,7 @@
 package org.apache.ftpserver.command.impl;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 
 import org.apache.ftpserver.command.AbstractCommand;
@@ -30,8 +31,10 @@ import org.apache.ftpserver.ftplet.FileSystemView;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpletResult;
 import org.apache.ftpserver.ftplet.User;
-import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.impl.AuthenticationExecutor;
+import org.apache.ftpserver.impl.DefaultFtpHandler;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
@@ -63,7 +66,7 @@ public class PASS extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
-        boolean success = false;
+        boolean started = false;
 
         ServerFtpStatistics stat = (ServerFtpStatistics) context
                 .getFtpStatistics();
@@ -144,27 +147,120 @@ public class PASS extends AbstractCommand {
             }
 
             // authenticate user
-            UserManager userManager = context.getUserManager();
-            User authenticatedUser = null;
-            try {
-                UserMetadata userMetadata = new UserMetadata();
+            UserMetadata userMetadata = new UserMetadata();
 
-                if (session.getRemoteAddress() instanceof InetSocketAddress) {
-                    userMetadata.setInetAddress(((InetSocketAddress) session
-                            .getRemoteAddress()).getAddress());
-                }
-                userMetadata.setCertificateChain(session
-                        .getClientCertificates());
+            if (session.getRemoteAddress() instanceof InetSocketAddress) {
+                userMetadata.setInetAddress(((InetSocketAddress) session
+                        .getRemoteAddress()).getAddress());
+            }
+            userMetadata.setCertificateChain(session.getClientCertificates());
 
-                Authentication auth;
-                if (anonymous) {
-                    auth = new AnonymousAuthentication(userMetadata);
-                } else {
-                    auth = new UsernamePasswordAuthentication(userName,
-                            password, userMetadata);
+            Authentication auth;
+            if (anonymous) {
+                auth = new AnonymousAuthentication(userMetadata);
+            } else {
+                auth = new UsernamePasswordAuthentication(userName, password,
+                        userMetadata);
+            }
+
+            Login login = new Login(session, context, request, auth,
+                    userMetadata.getInetAddress(), userName, password,
+                    anonymous);
+            AuthenticationExecutor executor = context
+                    .getAuthenticationExecutor();
+
+            if (executor.isAsynchronous()) {
+                login.park();
+                if (!executor.execute(login)) {
+                    login.unpark();
+                    LOG.warn("Too many logins in progress, user will be disconnected");
+                    session
+                            .write(LocalizedFtpReply
+                                    .translate(
+                                            session,
+                                            request,
+                                            context,
+                                            FtpReply.REPLY_421_SERVICE_NOT_AVAILABLE_CLOSING_CONTROL_CONNECTION,
+                                            "PASS.busy", null));
+                    return;
                 }
+            } else {
+                login.authenticate();
+            }
+            started = true;
+        } finally {
+
+            // if login failed - reset user
+            if (!started) {
+                session.reinitialize();
+            }
+        }
+    }
+
+    /**
+     * A login, authenticated either in the session thread or in an
+     * authentication thread. While the session is parked no more requests
+     * are read, requests already received are deferred and handed back to
+     * the session once the login has completed.
+     */
+    private class Login implements Runnable {
+
+        private final FtpIoSession session;
+
+        private final FtpServerContext context;
+
+        private final FtpRequest request;
+
+        private final Authentication auth;
+
+        private final InetAddress address;
+
+        private final String userName;
+
+        private final String password;
+
+        private final boolean anonymous;
+
+        private boolean parked = false;
 
-                authenticatedUser = userManager.authenticate(auth);
+        public Login(FtpIoSession session, FtpServerContext context,
+                FtpRequest request, Authentication auth, InetAddress address,
+                String userName, String password, boolean anonymous) {
+            this.session = session;
+            this.context = context;
+            this.request = request;
+            this.auth = auth;
+            this.address = address;
+            this.userName = userName;
+            this.password = password;
+            this.anonymous = anonymous;
+        }
+
+        public void park() {
+            parked = true;
+            session.setAuthenticationPending(true);
+            session.suspendRead();
+        }
+
+        public void unpark() {
+            parked = false;
+            session.setAuthenticationPending(false);
+            session.replayDeferredRequest();
+        }
+
+        public void run() {
+            try {
+                authenticate();
+            } catch (Exception e) {
+                LOG.warn("PASS.execute()", e);
+                completeInSession(null);
+            }
+        }
+
+        public void authenticate() throws IOException, FtpException {
+            User authenticatedUser = null;
+            try {
+                authenticatedUser = context.getUserManager().authenticate(auth);
             } catch (AuthenticationFailedException e) {
                 authenticatedUser = null;
                 LOG.warn("User failed to log in");
@@ -173,98 +269,177 @@ public class PASS extends AbstractCommand {
                 LOG.warn("PASS.execute()", e);
             }
 
-            // first save old values so that we can reset them if Ftplets
-            // tell us to fail
-            User oldUser = session.getUser();
-            String oldUserArgument = session.getUserArgument();
-            int oldMaxIdleTime = session.getMaxIdleTime();
-
-            if (authenticatedUser != null) {
-                if(!authenticatedUser.getEnabled()) {
-                    session
-                    .write(LocalizedFtpReply
-                            .translate(
-                                    session,
-                                    request,
-                                    context,
-                                    FtpReply.REPLY_530_NOT_LOGGED_IN,
-                                    "PASS", null));
-                    return;
+            int loginFailureDelay = 0;
+            if (authenticatedUser == null) {
+                loginFailureDelay = context.getLoginThrottle().loginFailed(
+                        address, userName);
+            }
+            if (loginFailureDelay > 0) {
+                LOG.debug("Replying in " + loginFailureDelay
+                        + " milliseconds due to login failure");
+                if (!parked) {
+                    park();
                 }
+                context.getAuthenticationExecutor().schedule(new Runnable() {
+                    public void run() {
+                        completeInSession(null);
+                    }
+                }, loginFailureDelay);
+                return;
+            }
 
-                
-                session.setUser(authenticatedUser);
-                session.setUserArgument(null);
-                session.setMaxIdleTime(authenticatedUser.getMaxIdleTime());
-                success = true;
+            if (parked) {
+                completeInSession(authenticatedUser);
             } else {
-                session.setUser(null);
+                login(authenticatedUser);
             }
+        }
 
-            if (!success) {
-                // reset due to failure
-                session.setUser(oldUser);
-                session.setUserArgument(oldUserArgument);
-                session.setMaxIdleTime(oldMaxIdleTime);
+        /**
+         * Hand the completion of the login of a parked session back to the
+         * threads of the session. The calling thread may be shared by all
+         * sessions.
+         */
+        private void completeInSession(final User authenticatedUser) {
+            session.runInSession(new Runnable() {
+                public void run() {
+                    complete(authenticatedUser);
+                }
+            });
+        }
 
-                delayAfterLoginFailure(context.getConnectionConfig()
-                        .getLoginFailureDelay());
+        /**
+         * Complete the login of a parked session in the threads of the
+         * session, then continue with the requests deferred meanwhile.
+         */
+        private void complete(final User authenticatedUser) {
+            try {
+                if (session.isConnected()) {
+                    login(authenticatedUser);
+                }
+                afterCommand();
+            } catch (Exception e) {
+                LOG.warn("PASS.execute()", e);
+                try {
+                    session.write(LocalizedFtpReply.translate(session,
+                            request, context,
+                            FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                            null, null));
+                } catch (Exception e1) {
+                }
+            }
 
-                LOG.warn("Login failure - " + userName);
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_530_NOT_LOGGED_IN, "PASS", userName));
-                stat.setLoginFail(session);
+            unpark();
+        }
 
-                session.increaseFailedLogins();
+        /**
+         * The command has now completed, notify the Ftplets as
+         * {@link DefaultFtpHandler} would have done for a synchronous login
+         */
+        private void afterCommand() {
+            FtpletResult ftpletRet;
+            try {
+                ftpletRet = context.getFtpletContainer().afterCommand(
+                        session.getFtpletSession(), request,
+                        session.getLastReply());
+            } catch (Exception e) {
+                LOG.debug("Ftplet container threw exception", e);
+                ftpletRet = FtpletResult.DISCONNECT;
+            }
+            if (ftpletRet == FtpletResult.DISCONNECT) {
+                LOG.debug("Ftplet returned DISCONNECT, session will be closed");
+                session.close(false).awaitUninterruptibly(10000);
+            }
+        }
 
-                // kick the user if the max number of failed logins is reached
-                int maxAllowedLoginFailues = context.getConnectionConfig()
-                        .getMaxLoginFailures();
-                if (maxAllowedLoginFailues != 0
-                        && session.getFailedLogins() >= maxAllowedLoginFailues) {
-                    LOG.warn("User exceeded the number of allowed failed logins, session will be closed");
+        private void login(final User authenticatedUser) throws IOException,
+                FtpException {
+            boolean success = false;
 
-                    session.close(false).awaitUninterruptibly(10000);
+            ServerFtpStatistics stat = (ServerFtpStatistics) context
+                    .getFtpStatistics();
+            try {
+                // first save old values so that we can reset them if Ftplets
+                // tell us to fail
+                User oldUser = session.getUser();
+                String oldUserArgument = session.getUserArgument();
+                int oldMaxIdleTime = session.getMaxIdleTime();
+
+                if (authenticatedUser != null) {
+                    if(!authenticatedUser.getEnabled()) {
+                        session
+                        .write(LocalizedFtpReply
+                                .translate(
+                                        session,
+                                        request,
+                                        context,
+                                        FtpReply.REPLY_530_NOT_LOGGED_IN,
+                                        "PASS", null));
+                        return;
+                    }
+
+                    
+                    session.setUser(authenticatedUser);
+                    session.setUserArgument(null);
+                    session.setMaxIdleTime(authenticatedUser.getMaxIdleTime());
+                    success = true;
+                } else {
+                    session.setUser(null);
                 }
 
-                return;
-            }
+                if (!success) {
+                    // reset due to failure
+                    session.setUser(oldUser);
+                    session.setUserArgument(oldUserArgument);
+                    session.setMaxIdleTime(oldMaxIdleTime);
 
-            // update different objects
-            FileSystemFactory fmanager = context.getFileSystemManager();
-            FileSystemView fsview = fmanager
-                    .createFileSystemView(authenticatedUser);
-            session.setLogin(fsview);
-            stat.setLogin(session);
+                    LOG.warn("Login failure - " + userName);
+                    session.write(LocalizedFtpReply.translate(session, request, context,
+                            FtpReply.REPLY_530_NOT_LOGGED_IN, "PASS", userName));
+                    stat.setLoginFail(session);
 
-            // everything is fine - send login ok message
-            session.write(LocalizedFtpReply.translate(session, request, context,
-                    FtpReply.REPLY_230_USER_LOGGED_IN, "PASS", userName));
-            if (anonymous) {
-                LOG.info("Anonymous login success - " + password);
-            } else {
-                LOG.info("Login success - " + userName);
-            }
+                    session.increaseFailedLogins();
 
-        } finally {
+                    // kick the user if the max number of failed logins is reached
+                    int maxAllowedLoginFailues = context.getConnectionConfig()
+                            .getMaxLoginFailures();
+                    if (maxAllowedLoginFailues != 0
+                            && session.getFailedLogins() >= maxAllowedLoginFailues) {
+                        LOG.warn("User exceeded the number of allowed failed logins, session will be closed");
 
-            // if login failed - reset user
-            if (!success) {
-                session.reinitialize();
-            }
-        }
-    }
+                        session.close(false).awaitUninterruptibly(10000);
+                    } else if (!context.getLoginThrottle().accept(address)) {
+                        LOG.warn("Address banned after repeated login failures, session will be closed");
 
-    private void delayAfterLoginFailure(final int loginFailureDelay) {
+                        session.close(false).awaitUninterruptibly(10000);
+                    }
 
-        if (loginFailureDelay > 0) {
-            LOG.debug("Waiting for " + loginFailureDelay
-                    + " milliseconds due to login failure");
+                    return;
+                }
 
-            try {
-                Thread.sleep(loginFailureDelay);
-            } catch (InterruptedException e) {
-                // ignore and go on
+                // update different objects
+                FileSystemFactory fmanager = context.getFileSystemManager();
+                FileSystemView fsview = fmanager
+                        .createFileSystemView(authenticatedUser);
+                session.setLogin(fsview);
+                stat.setLogin(session);
+                context.getLoginThrottle().loginSucceeded(address, userName);
+
+                // everything is fine - send login ok message
+                session.write(LocalizedFtpReply.translate(session, request, context,
+                        FtpReply.REPLY_230_USER_LOGGED_IN, "PASS", userName));
+                if (anonymous) {
+                    LOG.info("Anonymous login success - " + password);
+                } else {
+                    LOG.info("Login success - " + userName);
+                }
+
+            } finally {
+
+                // if login failed - reset user
+                if (!success) {
+                    session.reinitialize();
+                }
             }
         }
     }
@@ -34,10 +34,13 @@ import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.DataTransferCallback;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.IODataConnection;
 import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.NioDataConnection;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
@@ -143,8 +146,8 @@ public class RETR extends AbstractCommand {
                     FtpReply.REPLY_150_FILE_STATUS_OKAY, "RETR", null));
 
             // send file data to client
-            boolean failure = false;
             InputStream is = null;
+            boolean pending = false;
 
             DataConnection dataConnection;
             try {
@@ -157,60 +160,139 @@ public class RETR extends AbstractCommand {
                 return;
             }
 
+            // lets MODE Z skip compressing archives and the like
+            if (dataConnection instanceof IODataConnection) {
+                ((IODataConnection) dataConnection).setFileName(file.getName());
+            }
+
             try {
 
                 // open streams
                 is = openInputStream(session, file, skipLen);
 
-                // transfer data
-                long transSz = dataConnection.transferToClient(session.getFtpletSession(), is);
-                // attempt to close the input stream so that errors in 
-                // closing it will return an error to the client (FTPSERVER-119) 
-                if(is != null) {
-                    is.close();
+                // non-blocking data connections send the file in the
+                // background, the reply is written once the transfer completes
+                if (dataConnection instanceof NioDataConnection) {
+                    pending = ((NioDataConnection) dataConnection)
+                            .transferToClient(request, is, new RetrieveCallback(
+                                    session, context, request, file, is));
                 }
 
-                LOG.info("File downloaded {}", fileName);
-
-                // notify the statistics component
-                ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
-                        .getFtpStatistics();
-                if (ftpStat != null) {
-                    ftpStat.setDownload(session, file, transSz);
+                if (!pending) {
+                    // transfer data
+                    long transSz = dataConnection.transferToClient(session.getFtpletSession(), is);
+                    transferCompleted(session, context, request, file, is, transSz);
                 }
-                
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "RETR", fileName));
             } catch (IOException ex) {
-                LOG.debug("IOException during data transfer", ex);
-                failure = true;
-                session
-                        .write(LocalizedFtpReply
-                                .translate(
-                                        session,
-                                        request,
-                                        context,
-                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                                        "RETR", fileName));
+                transferFailed(session, context, request, file, ex);
             } finally {
                 // make sure we really close the input stream
-                IoUtils.close(is);
+                if (!pending) {
+                    IoUtils.close(is);
+                }
+            }
+        } finally {
+            session.resetState();
+            if (!session.isDataTransferPending()) {
+                session.getDataConnection().closeDataConnection();
             }
+        }
+    }
 
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "RETR",
-                        fileName));
+    /**
+     * Close the file, update the statistics and tell the client that the
+     * transfer is complete.
+     */
+    private void transferCompleted(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final InputStream is, final long transSz)
+            throws IOException {
+        // attempt to close the input stream so that errors in 
+        // closing it will return an error to the client (FTPSERVER-119) 
+        if(is != null) {
+            is.close();
+        }
+
+        String fileName = file.getAbsolutePath();
+        LOG.info("File downloaded {}", fileName);
+
+        // notify the statistics component
+        ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
+                .getFtpStatistics();
+        if (ftpStat != null) {
+            ftpStat.setDownload(session, file, transSz);
+        }
+
+        // data transfer ok - send transfer complete message
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "RETR",
+                fileName));
+    }
 
+    /**
+     * Tell the client that the transfer failed.
+     */
+    private void transferFailed(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final IOException ex) {
+        String fileName = file.getAbsolutePath();
+        if (ex instanceof SocketException) {
+            LOG.debug("Socket exception during data transfer", ex);
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                    "RETR", fileName));
+        } else {
+            LOG.debug("IOException during data transfer", ex);
+            session
+                    .write(LocalizedFtpReply
+                            .translate(
+                                    session,
+                                    request,
+                                    context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "RETR", fileName));
+        }
+    }
+
+    /**
+     * Completes a download sent in the background
+     */
+    private class RetrieveCallback implements DataTransferCallback {
+
+        private final FtpIoSession session;
+
+        private final FtpServerContext context;
+
+        private final FtpRequest request;
+
+        private final FtpFile file;
+
+        private final InputStream is;
+
+        public RetrieveCallback(final FtpIoSession session,
+                final FtpServerContext context, final FtpRequest request,
+                final FtpFile file, final InputStream is) {
+            this.session = session;
+            this.context = context;
+            this.request = request;
+            this.file = file;
+            this.is = is;
+        }
+
+        public void transferCompleted(long transferredSize) {
+            try {
+                RETR.this.transferCompleted(session, context, request, file,
+                        is, transferredSize);
+            } catch (IOException ex) {
+                RETR.this.transferFailed(session, context, request, file, ex);
+            } finally {
+                IoUtils.close(is);
             }
-        } finally {
-            session.resetState();
-            session.getDataConnection().closeDataConnection();
+        }
+
+        public void transferFailed(long transferredSize, IOException ex) {
+            IoUtils.close(is);
+            RETR.this.transferFailed(session, context, request, file, ex);
         }
     }
 
@@ -22,6 +22,7 @@ package org.apache.ftpserver.command.impl;
 import java.io.IOException;
 
 import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
@@ -129,6 +130,13 @@ public class RNTO extends AbstractCommand {
             
             // now rename
             if (frFile.move(toFile)) {
+                // the cached listings showing the files are out of date
+                ListingCache listingCache = context.getListingCache();
+                if (listingCache != null) {
+                    String userName = session.getUser().getName();
+                    listingCache.invalidate(frFile, userName);
+                    listingCache.invalidate(toFile, userName);
+                }
                 session.write(LocalizedFtpReply.translate(session, request, context,
                         FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, "RNTO",
                         toFileStr));
@@ -100,6 +100,8 @@ public class SITE extends AbstractCommand {
                 new org.apache.ftpserver.command.impl.SITE_DESCUSER());
         COMMAND_MAP.put("SITE_HELP",
                 new org.apache.ftpserver.command.impl.SITE_HELP());
+        COMMAND_MAP.put("SITE_LISTPAGE",
+                new org.apache.ftpserver.command.impl.SITE_LISTPAGE());
         COMMAND_MAP.put("SITE_STAT",
                 new org.apache.ftpserver.command.impl.SITE_STAT());
         COMMAND_MAP
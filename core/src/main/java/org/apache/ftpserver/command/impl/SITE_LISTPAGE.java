@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.command.impl;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.listing.DirectoryLister;
+import org.apache.ftpserver.command.impl.listing.FileFormater;
+import org.apache.ftpserver.command.impl.listing.MLSTFileFormater;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * <code>SITE LISTPAGE &lt;directory&gt; &lt;cursor&gt; &lt;count&gt;</code><br>
+ * 
+ * Lists a page of the files of a directory over the control connection, in
+ * name order and formated as MLST lines. Use "-" as the cursor of the first
+ * page, the last line of the reply holds the cursor of the next page, or
+ * "END" if the directory has been fully listed. Lets clients walk large
+ * directories in steps of bounded size.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SITE_LISTPAGE extends AbstractCommand {
+
+    /**
+     * The maximum number of files in a page
+     */
+    public static final int MAX_COUNT = 1000;
+
+    private static final String FIRST_PAGE = "-";
+
+    private static final String LAST_PAGE = "END";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final DirectoryLister directoryLister = new DirectoryLister();
+
+    /**
+     * Execute command.
+     */
+    public void execute(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request)
+            throws IOException, FtpException {
+
+        // reset state variables
+        session.resetState();
+
+        // parse the arguments, the directory name can contain spaces
+        String argument = request.getArgument();
+        String[] args = null;
+        int countIndex = argument.lastIndexOf(' ');
+        int cursorIndex = countIndex == -1 ? -1 : argument.lastIndexOf(' ',
+                countIndex - 1);
+        int dirIndex = argument.indexOf(' ');
+        if (dirIndex != -1 && dirIndex < cursorIndex) {
+            args = new String[] {
+                    argument.substring(dirIndex + 1, cursorIndex).trim(),
+                    argument.substring(cursorIndex + 1, countIndex),
+                    argument.substring(countIndex + 1) };
+        }
+
+        String after = null;
+        int count = 0;
+        if (args != null && args[0].length() > 0) {
+            try {
+                count = Integer.parseInt(args[2]);
+                if (!FIRST_PAGE.equals(args[1])) {
+                    after = decodeCursor(args[1]);
+                }
+            } catch (IllegalArgumentException e) {
+                count = 0;
+            }
+        }
+        if (count <= 0 || count > MAX_COUNT) {
+            session.write(LocalizedFtpReply.translate(session, request,
+                    context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "SITE.LISTPAGE", null));
+            return;
+        }
+
+        FtpFile dir = session.getFileSystemView().getFile(args[0]);
+        List<FtpFile> page = null;
+        if (dir != null && dir.isDirectory()) {
+            page = directoryLister.listPage(dir, after, count, false);
+        }
+        if (page == null) {
+            session.write(LocalizedFtpReply.translate(session, request,
+                    context, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "SITE.LISTPAGE", args[0]));
+            return;
+        }
+
+        FileFormater formater = new MLSTFileFormater((String[]) session
+                .getAttribute("MLST.types"));
+        StringBuilder sb = new StringBuilder();
+        sb.append("Listing ").append(dir.getAbsolutePath()).append('\n');
+        for (FtpFile file : page) {
+            sb.append(' ');
+            formater.format(file, sb);
+        }
+        if (page.size() < count) {
+            sb.append(LAST_PAGE);
+        } else {
+            sb.append(encodeCursor(page.get(page.size() - 1).getName()));
+        }
+
+        session.write(new DefaultFtpReply(FtpReply.REPLY_200_COMMAND_OKAY, sb
+                .toString()));
+    }
+
+    /**
+     * The cursor is the name of the last listed file, in hexadecimal UTF-8
+     * so that it does not contain spaces
+     */
+    private static String encodeCursor(final String name)
+            throws UnsupportedEncodingException {
+        byte[] bytes = name.getBytes("UTF-8");
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static String decodeCursor(final String cursor)
+            throws UnsupportedEncodingException {
+        if (cursor.length() == 0 || cursor.length() % 2 != 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        byte[] bytes = new byte[cursor.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(cursor.substring(2 * i,
+                    2 * i + 2), 16);
+        }
+        return new String(bytes, "UTF-8");
+    }
+}
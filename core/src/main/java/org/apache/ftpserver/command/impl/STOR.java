@@ -25,6 +25,7 @@ import java.net.InetAddress;
 import java.net.SocketException;
 
 import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
 import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataConnectionFactory;
 import org.apache.ftpserver.ftplet.DefaultFtpReply;
@@ -32,10 +33,12 @@ import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.DataTransferCallback;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.NioDataConnection;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
@@ -139,57 +142,148 @@ public class STOR extends AbstractCommand {
             }
 
             // transfer data
-            boolean failure = false;
             OutputStream outStream = null;
+            boolean pending = false;
             try {
                 outStream = file.createOutputStream(skipLen);
-                long transSz = dataConnection.transferFromClient(session.getFtpletSession(), outStream);
 
-                // attempt to close the output stream so that errors in 
-                // closing it will return an error to the client (FTPSERVER-119) 
-                if(outStream != null) {
-                    outStream.close();
+                // non-blocking data connections receive the file in the
+                // background, the reply is written once the transfer completes
+                if (dataConnection instanceof NioDataConnection) {
+                    pending = ((NioDataConnection) dataConnection)
+                            .transferFromClient(request, outStream,
+                                    new StoreCallback(session, context,
+                                            request, file, outStream));
                 }
 
-                LOG.info("File uploaded {}", fileName);
-
-                // notify the statistics component
-                ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
-                        .getFtpStatistics();
-                ftpStat.setUpload(session, file, transSz);
-                
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "STOR", fileName));
+                if (!pending) {
+                    long transSz = dataConnection.transferFromClient(session.getFtpletSession(), outStream);
+                    transferCompleted(session, context, request, file,
+                            outStream, transSz);
+                }
             } catch (IOException ex) {
-                LOG.debug("IOException during data transfer", ex);
-                failure = true;
-                session
-                        .write(LocalizedFtpReply
-                                .translate(
-                                        session,
-                                        request,
-                                        context,
-                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                                        "STOR", fileName));
+                transferFailed(session, context, request, file, ex);
             } finally {
                 // make sure we really close the output stream
-                IoUtils.close(outStream);
+                if (!pending) {
+                    IoUtils.close(outStream);
+                }
+            }
+        } finally {
+            session.resetState();
+            if (!session.isDataTransferPending()) {
+                session.getDataConnection().closeDataConnection();
             }
+        }
+    }
 
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOR",
-                        fileName));
+    /**
+     * Close the file, update the statistics and tell the client that the
+     * transfer is complete.
+     */
+    private void transferCompleted(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final OutputStream outStream,
+            final long transSz) throws IOException {
+        // attempt to close the output stream so that errors in 
+        // closing it will return an error to the client (FTPSERVER-119) 
+        if(outStream != null) {
+            outStream.close();
+        }
+        invalidateListings(session, context, file);
+
+        String fileName = file.getAbsolutePath();
+        LOG.info("File uploaded {}", fileName);
+
+        // notify the statistics component
+        ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
+                .getFtpStatistics();
+        ftpStat.setUpload(session, file, transSz);
+
+        // data transfer ok - send transfer complete message
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOR",
+                fileName));
+    }
+
+    /**
+     * Tell the client that the transfer failed.
+     */
+    private void transferFailed(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final IOException ex) {
+        // the partially uploaded file might be shown
+        invalidateListings(session, context, file);
+
+        String fileName = file.getAbsolutePath();
+        if (ex instanceof SocketException) {
+            LOG.debug("Socket exception during data transfer", ex);
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                    "STOR", fileName));
+        } else {
+            LOG.debug("IOException during data transfer", ex);
+            session
+                    .write(LocalizedFtpReply
+                            .translate(
+                                    session,
+                                    request,
+                                    context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "STOR", fileName));
+        }
+    }
+
+    /**
+     * Remove the cached listings showing the uploaded file
+     */
+    private void invalidateListings(final FtpIoSession session,
+            final FtpServerContext context, final FtpFile file) {
+        ListingCache listingCache = context.getListingCache();
+        if (listingCache != null) {
+            listingCache.invalidate(file, session.getUser().getName());
+        }
+    }
+
+    /**
+     * Completes an upload received in the background
+     */
+    private class StoreCallback implements DataTransferCallback {
+
+        private final FtpIoSession session;
+
+        private final FtpServerContext context;
 
+        private final FtpRequest request;
+
+        private final FtpFile file;
+
+        private final OutputStream outStream;
+
+        public StoreCallback(final FtpIoSession session,
+                final FtpServerContext context, final FtpRequest request,
+                final FtpFile file, final OutputStream outStream) {
+            this.session = session;
+            this.context = context;
+            this.request = request;
+            this.file = file;
+            this.outStream = outStream;
+        }
+
+        public void transferCompleted(long transferredSize) {
+            try {
+                STOR.this.transferCompleted(session, context, request, file,
+                        outStream, transferredSize);
+            } catch (IOException ex) {
+                STOR.this.transferFailed(session, context, request, file, ex);
+            } finally {
+                IoUtils.close(outStream);
             }
-        } finally {
-            session.resetState();
-            session.getDataConnection().closeDataConnection();
+        }
+
+        public void transferFailed(long transferredSize, IOException ex) {
+            IoUtils.close(outStream);
+            STOR.this.transferFailed(session, context, request, file, ex);
         }
     }
 }
@@ -19,90 +19,663 @@
 
 package org.apache.ftpserver.command.impl.listing;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import org.apache.ftpserver.filesystem.nativefs.impl.NativeFtpFile;
+import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.FileSystemView;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.impl.DataWriter;
+import org.apache.ftpserver.impl.IODataConnection;
+import org.apache.ftpserver.util.RegularExpr;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
  * 
  * This class prints file listing.
+ * 
+ * Listings sent over a data connection are streamed: each file is formated
+ * into a reused buffer and written as UTF-8 straight to the connection, so
+ * that the memory used does not depend on the size of the directory.
+ * 
+ * Large directories can be formated by a {@link ListingExecutor}, which
+ * reads the attributes of a window of files concurrently while the lines are
+ * written in order.
+ * 
+ * Only the attributes needed by the formater are read, directories are
+ * listed first only if the formater needs the file type.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public class DirectoryLister {
 
-    private String traverseFiles(final List<FtpFile> files,
-            final FileFilter filter, final FileFormater formater) {
-        StringBuilder sb = new StringBuilder();
+    private static final Charset CHARSET = Charset.forName("UTF-8");
 
-        sb.append(traverseFiles(files, filter, formater, true));
-        sb.append(traverseFiles(files, filter, formater, false));
+    /**
+     * The size of the buffer the listing is encoded into before being written
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
 
-        return sb.toString();
+    /**
+     * The number of lines formated ahead of the line being written, per
+     * listing thread
+     */
+    private static final int WINDOW_PER_THREAD = 16;
+
+    private static final Comparator<FtpFile> NAME_ORDER = new Comparator<FtpFile>() {
+        public int compare(FtpFile f1, FtpFile f2) {
+            return f1.getName().compareTo(f2.getName());
+        }
+    };
+
+    /**
+     * Receives the formated lines of a listing
+     */
+    private interface LineWriter {
+        void write(CharSequence line) throws IOException;
     }
 
-    private String traverseFiles(final List<FtpFile> files,
+    private void traverseFiles(final List<FtpFile> files,
             final FileFilter filter, final FileFormater formater,
-            boolean matchDirs) {
-        StringBuilder sb = new StringBuilder();
+            final ListingExecutor executor, final LineWriter out)
+            throws IOException {
+        Set<FileAttribute> attributes = formater.getRequiredAttributes();
+        boolean dirsFirst = attributes.contains(FileAttribute.TYPE);
+
+        // names only listings have nothing to read in parallel
+        if (executor != null && !attributes.isEmpty()
+                && files.size() >= executor.getThreshold()) {
+            if (dirsFirst) {
+                traverseFiles(files, filter, formater, Boolean.TRUE, executor,
+                        out);
+                traverseFiles(files, filter, formater, Boolean.FALSE,
+                        executor, out);
+            } else {
+                traverseFiles(files, filter, formater, null, executor, out);
+            }
+            return;
+        }
+
+        StringBuilder line = new StringBuilder(128);
+
+        if (dirsFirst) {
+            traverseFiles(files, filter, formater, Boolean.TRUE, line, out);
+            traverseFiles(files, filter, formater, Boolean.FALSE, line, out);
+        } else {
+            traverseFiles(files, filter, formater, null, line, out);
+        }
+    }
+
+    /**
+     * Is the file listed in this pass?
+     * 
+     * @param matchDirs
+     *            True to list directories, false to list other files, null to
+     *            list all files
+     */
+    private static boolean matches(final FtpFile file,
+            final FileFilter filter, final Boolean matchDirs) {
+        if (filter != null && !filter.accept(file)) {
+            return false;
+        }
+        return matchDirs == null
+                || file.isDirectory() == matchDirs.booleanValue();
+    }
+
+    /**
+     * Format the files concurrently, keeping a bounded window of lines
+     * formated ahead of the one being written
+     */
+    private void traverseFiles(final List<FtpFile> files,
+            final FileFilter filter, final FileFormater formater,
+            final Boolean matchDirs, final ListingExecutor executor,
+            final LineWriter out) throws IOException {
+        int windowSize = executor.getThreads() * WINDOW_PER_THREAD;
+        LinkedList<FormatTask> window = new LinkedList<FormatTask>();
+        Iterator<FtpFile> iter = files.iterator();
+
+        try {
+            while (iter.hasNext() || !window.isEmpty()) {
+                while (iter.hasNext() && window.size() < windowSize) {
+                    FtpFile file = iter.next();
+                    if (file != null) {
+                        FormatTask task = new FormatTask(file, filter,
+                                formater, matchDirs);
+                        task.future = executor.submit(task);
+                        window.add(task);
+                    }
+                }
+
+                if (!window.isEmpty()) {
+                    String line = window.removeFirst().getLine();
+                    if (line != null) {
+                        out.write(line);
+                    }
+                }
+            }
+        } finally {
+            // the listing failed, do not format the remaining files
+            for (FormatTask task : window) {
+                if (task.future != null) {
+                    task.future.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Formats a file, if accepted, in a listing thread
+     */
+    private static class FormatTask implements Callable<String> {
+
+        private final FtpFile file;
+
+        private final FileFilter filter;
+
+        private final FileFormater formater;
+
+        private final Boolean matchDirs;
+
+        private Future<String> future;
+
+        public FormatTask(final FtpFile file, final FileFilter filter,
+                final FileFormater formater, final Boolean matchDirs) {
+            this.file = file;
+            this.filter = filter;
+            this.formater = formater;
+            this.matchDirs = matchDirs;
+        }
+
+        public String call() {
+            if (matches(file, filter, matchDirs)) {
+                return formater.format(file);
+            }
+            return null;
+        }
+
+        /**
+         * Wait for the formated line, formating it in the calling thread if
+         * the executor did not run the task
+         * 
+         * @return The line, or null if the file is not listed
+         */
+        public String getLine() throws IOException {
+            if (future == null) {
+                return call();
+            }
+            try {
+                return future.get();
+            } catch (CancellationException e) {
+                return call();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while listing "
+                        + file.getAbsolutePath());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                IOException ioe = new IOException("Failed to list "
+                        + file.getAbsolutePath());
+                ioe.initCause(cause);
+                throw ioe;
+            }
+        }
+    }
+
+    private void traverseFiles(final List<FtpFile> files,
+            final FileFilter filter, final FileFormater formater,
+            final Boolean matchDirs, final StringBuilder line,
+            final LineWriter out) throws IOException {
         for (FtpFile file : files) {
             if (file == null) {
                 continue;
             }
 
-            if (filter == null || filter.accept(file)) {
-                if (file.isDirectory() == matchDirs) {
-                    sb.append(formater.format(file));
+            if (matches(file, filter, matchDirs)) {
+                line.setLength(0);
+                formater.format(file, line);
+                out.write(line);
+            }
+        }
+    }
+
+    private void listFiles(final ListArgument argument,
+            final FileSystemView fileSystemView, final FileFormater formater,
+            final boolean sorted, final ListingExecutor executor,
+            final LineWriter out) throws IOException {
+        FtpFile virtualFile = getFile(fileSystemView, argument.getFile());
+        if (virtualFile == null) {
+            return;
+        }
+
+        FileFilter filter = null;
+        if (!argument.hasOption('a')) {
+            filter = new VisibleFileFilter();
+        }
+
+        // get all the file objects
+        List<FtpFile> files;
+        if (virtualFile instanceof NativeFtpFile && !virtualFile.isFile()) {
+            // the pattern is matched while reading the directory
+            files = ((NativeFtpFile) virtualFile).listFiles(
+                    createFilenameFilter(argument.getPattern(), null), sorted);
+        } else {
+            if (virtualFile.isFile()) {
+                files = new ArrayList<FtpFile>();
+                files.add(virtualFile);
+            } else {
+                files = virtualFile.listFiles();
+            }
+            if (argument.getPattern() != null) {
+                filter = new RegexFileFilter(argument.getPattern(), filter);
+            }
+        }
+
+        if (files != null) {
+            traverseFiles(files, filter, formater, executor, out);
+        }
+    }
+
+    /**
+     * Create a filter selecting files by name
+     * 
+     * @param pattern
+     *            The pattern the names must match, or null
+     * @param after
+     *            The name all selected names are greater than, or null
+     * @return The filter, or null if all names are selected
+     */
+    private FilenameFilter createFilenameFilter(final String pattern,
+            final String after) {
+        if (pattern == null && after == null) {
+            return null;
+        }
+        final RegularExpr regex = pattern == null ? null : new RegularExpr(
+                pattern);
+        return new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                if (after != null && name.compareTo(after) <= 0) {
+                    return false;
                 }
+                return regex == null || regex.isMatch(name);
             }
+        };
+    }
+
+    /**
+     * Get a page of the files of a directory, in name order. Only the files
+     * of the page are kept in memory, the directory is not sorted.
+     * 
+     * @param dir
+     *            The directory
+     * @param after
+     *            The name of the last file of the previous page, or null for
+     *            the first page
+     * @param count
+     *            The maximum number of files
+     * @param all
+     *            True to list hidden files
+     * @return The files of the page, or null if the directory can not be
+     *         listed
+     */
+    public List<FtpFile> listPage(final FtpFile dir, final String after,
+            final int count, final boolean all) {
+        List<FtpFile> files;
+        if (dir instanceof NativeFtpFile) {
+            files = ((NativeFtpFile) dir).listFiles(createFilenameFilter(null,
+                    after), false);
+        } else {
+            files = dir.listFiles();
+        }
+        if (files == null) {
+            return null;
         }
 
-        return sb.toString();
+        FileFilter filter = all ? null : new VisibleFileFilter();
+
+        // keep the first files by name, the greatest at the head
+        PriorityQueue<FtpFile> page = new PriorityQueue<FtpFile>(count + 1,
+                Collections.reverseOrder(NAME_ORDER));
+        for (FtpFile file : files) {
+            if (file == null
+                    || (after != null && file.getName().compareTo(after) <= 0)
+                    || (filter != null && !filter.accept(file))) {
+                continue;
+            }
+            if (page.size() < count) {
+                page.add(file);
+            } else if (NAME_ORDER.compare(file, page.peek()) < 0) {
+                page.poll();
+                page.add(file);
+            }
+        }
+
+        List<FtpFile> sortedPage = new ArrayList<FtpFile>(page);
+        Collections.sort(sortedPage, NAME_ORDER);
+        return sortedPage;
     }
 
     public String listFiles(final ListArgument argument,
             final FileSystemView fileSystemView, final FileFormater formater)
             throws IOException {
 
-        StringBuilder sb = new StringBuilder();
+        final StringBuilder sb = new StringBuilder();
 
-        // get all the file objects
-        List<FtpFile> files = listFiles(fileSystemView, argument.getFile());
-        if (files != null) {
-            FileFilter filter = null;
-            if (!argument.hasOption('a')) {
-                filter = new VisibleFileFilter();
+        listFiles(argument, fileSystemView, formater, true, null,
+                new LineWriter() {
+                    public void write(CharSequence line) {
+                        sb.append(line);
+                    }
+                });
+
+        return sb.toString();
+    }
+
+    /**
+     * Create a listing which is formated while it is written.
+     * 
+     * @return The listing, the files are listed when it is written
+     */
+    public DataWriter createListing(final ListArgument argument,
+            final FileSystemView fileSystemView, final FileFormater formater) {
+        return createListing(argument, fileSystemView, formater, true, null);
+    }
+
+    /**
+     * Create a listing which is formated while it is written.
+     * 
+     * @param sorted
+     *            False to list the files in the order of the directory
+     * @param executor
+     *            The executor formating large listings in parallel, or null
+     *            to format the listing in the calling thread
+     * @return The listing, the files are listed when it is written
+     */
+    public DataWriter createListing(final ListArgument argument,
+            final FileSystemView fileSystemView, final FileFormater formater,
+            final boolean sorted, final ListingExecutor executor) {
+        return new DataWriter() {
+            public long writeTo(OutputStream out) throws IOException {
+                EncodingLineWriter writer = new EncodingLineWriter(out);
+                listFiles(argument, fileSystemView, formater, sorted,
+                        executor, writer);
+                writer.finish();
+                return writer.getWrittenBytes();
             }
-            if (argument.getPattern() != null) {
-                filter = new RegexFileFilter(argument.getPattern(), filter);
+        };
+    }
+
+    /**
+     * Send a listing over a data connection, streaming it if the connection
+     * supports it.
+     */
+    public void transferFiles(final ListArgument argument,
+            final FileSystemView fileSystemView, final FileFormater formater,
+            final DataConnection dataConnection, final FtpSession session)
+            throws IOException {
+        transferFiles(argument, fileSystemView, formater, true, null,
+                dataConnection, session);
+    }
+
+    private void transferFiles(final ListArgument argument,
+            final FileSystemView fileSystemView, final FileFormater formater,
+            final boolean sorted, final ListingExecutor executor,
+            final DataConnection dataConnection, final FtpSession session)
+            throws IOException {
+        if (dataConnection instanceof IODataConnection) {
+            ((IODataConnection) dataConnection).transferToClient(session,
+                    createListing(argument, fileSystemView, formater, sorted,
+                            executor));
+        } else {
+            dataConnection.transferToClient(session, listFiles(argument,
+                    fileSystemView, formater));
+        }
+    }
+
+    /**
+     * Send a listing over a data connection, using the listing cache if
+     * given.
+     * 
+     * @param format
+     *            Identifies the formater and its settings, listings are only
+     *            shared between requests using the same format
+     * @param sorted
+     *            False to list the files in the order of the directory
+     * @param cache
+     *            The listing cache, or null if listings are not cached
+     * @param executor
+     *            The executor formating large listings in parallel, or null
+     */
+    public void transferFiles(final ListArgument argument,
+            final FileSystemView fileSystemView, final FileFormater formater,
+            final String format, final boolean sorted,
+            final ListingCache cache, final ListingExecutor executor,
+            final DataConnection dataConnection, final FtpSession session)
+            throws IOException {
+        if (cache == null) {
+            transferFiles(argument, fileSystemView, formater, sorted,
+                    executor, dataConnection, session);
+            return;
+        }
+
+        FtpFile file = getFile(fileSystemView, argument.getFile());
+        if (file == null) {
+            transferFiles(argument, fileSystemView, formater, sorted,
+                    executor, dataConnection, session);
+            return;
+        }
+
+        String userName = session.getUser() == null ? null : session
+                .getUser().getName();
+        String key = ListingCache.getKey(file, userName);
+        String listingKey = getListingKey(argument, sorted ? format : format
+                + ";unsorted", userName);
+        long lastModified = file.getLastModified();
+
+        byte[] listing = cache.get(key, listingKey, lastModified);
+        if (listing == null) {
+            if (dataConnection instanceof IODataConnection) {
+                // send the listing while it is formated, only keeping a
+                // copy as long as it is small enough to be cached
+                final DataWriter writer = createListing(argument,
+                        fileSystemView, formater, sorted, executor);
+                final CopyingOutputStream copy = new CopyingOutputStream(
+                        cache.getMaxListingSize());
+                ((IODataConnection) dataConnection).transferToClient(
+                        session, new DataWriter() {
+                            public long writeTo(OutputStream out)
+                                    throws IOException {
+                                copy.setOut(out);
+                                return writer.writeTo(copy);
+                            }
+                        });
+                if (copy.getCopy() != null) {
+                    cache.put(key, listingKey, lastModified, copy.getCopy());
+                }
+                return;
             }
 
-            sb.append(traverseFiles(files, filter, formater));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            createListing(argument, fileSystemView, formater, sorted, executor)
+                    .writeTo(out);
+            listing = out.toByteArray();
+            cache.put(key, listingKey, lastModified, listing);
+        }
+
+        final byte[] bytes = listing;
+        if (dataConnection instanceof IODataConnection) {
+            ((IODataConnection) dataConnection).transferToClient(session,
+                    new DataWriter() {
+                        public long writeTo(OutputStream out)
+                                throws IOException {
+                            out.write(bytes);
+                            return bytes.length;
+                        }
+                    });
+        } else {
+            dataConnection.transferToClient(session, new String(bytes,
+                    CHARSET.name()));
         }
+    }
 
+    private String getListingKey(final ListArgument argument,
+            final String format, final String userName) {
+        // the user is part of the key as the permissions shown depend on it
+        StringBuilder sb = new StringBuilder();
+        sb.append(userName).append('\0').append(format).append('\0');
+        sb.append(argument.getOptions()).append('\0');
+        if (argument.getPattern() != null) {
+            sb.append(argument.getPattern());
+        }
         return sb.toString();
     }
 
     /**
-     * Get the file list. Files will be listed in alphabetlical order.
+     * Writes through to the data connection, keeping a copy of what was
+     * written until it grows larger than a limit
      */
-    private List<FtpFile> listFiles(FileSystemView fileSystemView, String file) {
-        List<FtpFile> files = null;
-        try {
-            FtpFile virtualFile = fileSystemView.getFile(file);
-            if (virtualFile.isFile()) {
-                files = new ArrayList<FtpFile>();
-                files.add(virtualFile);
-            } else {
-                files = virtualFile.listFiles();
+    private static class CopyingOutputStream extends OutputStream {
+
+        private final long maxCopySize;
+
+        private OutputStream out;
+
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        public CopyingOutputStream(final long maxCopySize) {
+            this.maxCopySize = maxCopySize;
+        }
+
+        public void setOut(final OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+                throws IOException {
+            out.write(b, off, len);
+            if (copy != null) {
+                if (copy.size() + len > maxCopySize) {
+                    // too large to be cached
+                    copy = null;
+                } else {
+                    copy.write(b, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * @return The bytes written, or null if they were too many
+         */
+        public byte[] getCopy() {
+            return copy == null ? null : copy.toByteArray();
+        }
+    }
+
+    /**
+     * Encodes lines as UTF-8 into a fixed size buffer, written to the stream
+     * when full
+     */
+    private static class EncodingLineWriter implements LineWriter {
+
+        private final OutputStream out;
+
+        private final CharsetEncoder encoder = CHARSET.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private long writtenBytes = 0;
+
+        public EncodingLineWriter(final OutputStream out) {
+            this.out = out;
+        }
+
+        public void write(final CharSequence line) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(line);
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, false);
+                if (result.isOverflow()) {
+                    flushBuffer();
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    result.throwException();
+                }
+            }
+        }
+
+        public void finish() throws IOException {
+            CharBuffer empty = CharBuffer.allocate(0);
+            while (encoder.encode(empty, buffer, true).isOverflow()) {
+                flushBuffer();
             }
+            while (encoder.flush(buffer).isOverflow()) {
+                flushBuffer();
+            }
+            flushBuffer();
+        }
+
+        private void flushBuffer() throws IOException {
+            if (buffer.position() > 0) {
+                out.write(buffer.array(), 0, buffer.position());
+                writtenBytes += buffer.position();
+                buffer.clear();
+            }
+        }
+
+        public long getWrittenBytes() {
+            return writtenBytes;
+        }
+    }
+
+    /**
+     * Get the listed file, or null if it can not be found
+     */
+    private FtpFile getFile(FileSystemView fileSystemView, String file) {
+        try {
+            return fileSystemView.getFile(file);
         } catch (FtpException ex) {
+            return null;
         }
-        return files;
     }
 }
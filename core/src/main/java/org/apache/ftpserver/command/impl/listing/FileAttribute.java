@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.command.impl.listing;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * The file attributes a {@link FileFormater} reads, beyond the file name.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public enum FileAttribute {
+
+    /**
+     * Whether the file is a file or a directory
+     */
+    TYPE,
+
+    /**
+     * The file size
+     */
+    SIZE,
+
+    /**
+     * The last modified time
+     */
+    LAST_MODIFIED,
+
+    /**
+     * The read and write permissions
+     */
+    PERMISSIONS,
+
+    /**
+     * The owner and group names
+     */
+    OWNER,
+
+    /**
+     * The number of links to the file
+     */
+    LINK_COUNT
+}
@@ -18,6 +18,8 @@
  */
 package org.apache.ftpserver.command.impl.listing;
 
+import java.util.Set;
+
 import org.apache.ftpserver.ftplet.FtpFile;
 
 /**
@@ -38,4 +40,24 @@ public interface FileFormater {
      */
     String format(FtpFile file);
 
+    /**
+     * Format the file into a buffer, without creating intermediate strings
+     * 
+     * @param file
+     *            The {@link FtpFile}
+     * @param sb
+     *            The buffer to append the formated file to
+     */
+    void format(FtpFile file, StringBuilder sb);
+
+    /**
+     * The attributes read when formating a file. Listings only read the
+     * attributes their formater needs, a formater which does not need the
+     * file type gets the files in listing order instead of the directories
+     * first.
+     * 
+     * @return The attributes read by {@link #format(FtpFile, StringBuilder)}
+     */
+    Set<FileAttribute> getRequiredAttributes();
+
 }
@@ -18,7 +18,9 @@
  */
 package org.apache.ftpserver.command.impl.listing;
 
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.util.DateUtils;
@@ -36,45 +38,77 @@ public class LISTFileFormater implements FileFormater {
 
     private final static char[] NEWLINE = { '\r', '\n' };
 
+    /**
+     * The permissions for group and others, never set
+     */
+    private final static char[] OTHER_PERMISSIONS = { '-', '-', '-', '-',
+            '-', '-' };
+
+    /**
+     * The minimum width of the size column
+     */
+    private final static int LENGTH_WIDTH = 12;
+
+    private final static Set<FileAttribute> REQUIRED_ATTRIBUTES = Collections
+            .unmodifiableSet(EnumSet.allOf(FileAttribute.class));
+
     /**
      * @see FileFormater#format(FtpFile)
      */
     public String format(FtpFile file) {
         StringBuilder sb = new StringBuilder();
-        sb.append(getPermission(file));
+        format(file, sb);
+        return sb.toString();
+    }
+
+    /**
+     * @see FileFormater#format(FtpFile, StringBuilder)
+     */
+    public void format(FtpFile file, StringBuilder sb) {
+        appendPermission(file, sb);
         sb.append(DELIM);
         sb.append(DELIM);
         sb.append(DELIM);
-        sb.append(String.valueOf(file.getLinkCount()));
+        sb.append(file.getLinkCount());
         sb.append(DELIM);
         sb.append(file.getOwnerName());
         sb.append(DELIM);
         sb.append(file.getGroupName());
         sb.append(DELIM);
-        sb.append(getLength(file));
+        appendLength(file, sb);
         sb.append(DELIM);
         sb.append(getLastModified(file));
         sb.append(DELIM);
         sb.append(file.getName());
         sb.append(NEWLINE);
+    }
 
-        return sb.toString();
+    /**
+     * All attributes are listed
+     * 
+     * @see FileFormater#getRequiredAttributes()
+     */
+    public Set<FileAttribute> getRequiredAttributes() {
+        return REQUIRED_ATTRIBUTES;
     }
 
     /**
-     * Get size
+     * Append the size, right aligned
      */
-    private String getLength(FtpFile file) {
-        String initStr = "            ";
+    private void appendLength(FtpFile file, StringBuilder sb) {
         long sz = 0;
         if (file.isFile()) {
             sz = file.getSize();
         }
-        String szStr = String.valueOf(sz);
-        if (szStr.length() > initStr.length()) {
-            return szStr;
+
+        int digits = 1;
+        for (long rest = sz / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = digits; i < LENGTH_WIDTH; i++) {
+            sb.append(DELIM);
         }
-        return initStr.substring(0, initStr.length() - szStr.length()) + szStr;
+        sb.append(sz);
     }
 
     /**
@@ -85,17 +119,15 @@ public class LISTFileFormater implements FileFormater {
     }
 
     /**
-     * Get permission string.
+     * Append the permission string.
      */
-    private char[] getPermission(FtpFile file) {
-        char permission[] = new char[10];
-        Arrays.fill(permission, '-');
-
-        permission[0] = file.isDirectory() ? 'd' : '-';
-        permission[1] = file.isReadable() ? 'r' : '-';
-        permission[2] = file.isWritable() ? 'w' : '-';
-        permission[3] = file.isDirectory() ? 'x' : '-'; 
-        return permission;
+    private void appendPermission(FtpFile file, StringBuilder sb) {
+        boolean isDirectory = file.isDirectory();
+        sb.append(isDirectory ? 'd' : '-');
+        sb.append(file.isReadable() ? 'r' : '-');
+        sb.append(file.isWritable() ? 'w' : '-');
+        sb.append(isDirectory ? 'x' : '-');
+        sb.append(OTHER_PERMISSIONS);
     }
 
     /*
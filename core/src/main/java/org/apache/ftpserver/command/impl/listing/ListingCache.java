@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.command.impl.listing;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ftpserver.filesystem.nativefs.impl.NativeFtpFile;
+import org.apache.ftpserver.ftplet.FtpFile;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Cache of encoded directory listings, shared by all sessions.
+ * 
+ * A cached listing is only used while the last modified time of the listed
+ * directory (or file) is unchanged, which catches files being created,
+ * removed or renamed by other processes, and while it is younger than the
+ * maximum age, which bounds how long changes to the content of listed files
+ * can go unnoticed. Changes made through the server are invalidated
+ * immediately by the commands making them.
+ * 
+ * The total size of the cached listings is bounded, the least recently used
+ * listings are evicted first.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ListingCache {
+
+    /**
+     * Listings of files modified within this time are not cached, as a second
+     * change within the resolution of the file system time stamps would not
+     * be detected.
+     */
+    private static final long TIMESTAMP_RESOLUTION = 2000;
+
+    private final long maxSize;
+
+    private final long maxAge;
+
+    // listings by directory key and listing key, in access order
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+            16, 0.75f, true);
+
+    // the listing keys cached for each directory
+    private final Map<String, Set<String>> directories = new HashMap<String, Set<String>>();
+
+    private long size = 0;
+
+    private long hitCount = 0;
+
+    private long missCount = 0;
+
+    private long evictionCount = 0;
+
+    private long invalidationCount = 0;
+
+    /**
+     * @param maxSize
+     *            The maximum number of bytes of cached listings
+     * @param maxAge
+     *            The maximum time in milliseconds a listing is used
+     */
+    public ListingCache(final long maxSize, final long maxAge) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Get a cached listing.
+     * 
+     * @param directoryKey
+     *            The key of the listed file, from {@link #getKey(FtpFile, String)}
+     * @param listingKey
+     *            The format and options of the listing
+     * @param lastModified
+     *            The current last modified time of the listed file
+     * @return The encoded listing, or null if none is cached or if it is out
+     *         of date
+     */
+    public synchronized byte[] get(final String directoryKey,
+            final String listingKey, final long lastModified) {
+        String key = directoryKey + '\0' + listingKey;
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.lastModified == lastModified
+                    && System.currentTimeMillis() - entry.created < maxAge) {
+                hitCount++;
+                return entry.listing;
+            }
+            remove(key, entry);
+        }
+        missCount++;
+        return null;
+    }
+
+    /**
+     * Cache a listing. Listings of recently modified files, and listings
+     * larger than a quarter of the cache, are not cached.
+     */
+    public synchronized void put(final String directoryKey,
+            final String listingKey, final long lastModified,
+            final byte[] listing) {
+        long now = System.currentTimeMillis();
+        if (now - lastModified < TIMESTAMP_RESOLUTION
+                || listing.length > getMaxListingSize()) {
+            return;
+        }
+
+        String key = directoryKey + '\0' + listingKey;
+        Entry old = entries.get(key);
+        if (old != null) {
+            remove(key, old);
+        }
+
+        entries.put(key, new Entry(directoryKey, listing, lastModified, now));
+        size += listing.length;
+
+        Set<String> keys = directories.get(directoryKey);
+        if (keys == null) {
+            keys = new HashSet<String>();
+            directories.put(directoryKey, keys);
+        }
+        keys.add(key);
+
+        Iterator<Map.Entry<String, Entry>> iter = entries.entrySet()
+                .iterator();
+        while (size > maxSize && iter.hasNext()) {
+            Map.Entry<String, Entry> eldest = iter.next();
+            iter.remove();
+            removeFromDirectory(eldest.getKey(), eldest.getValue());
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Remove all listings of a file and of its parent directory, must be
+     * called before the file is changed through the server.
+     * 
+     * @param file
+     *            The file about to be created, changed or removed
+     * @param userName
+     *            The name of the user changing the file
+     */
+    public synchronized void invalidate(final FtpFile file,
+            final String userName) {
+        invalidate(getKey(file, userName));
+        invalidate(getParentKey(file, userName));
+    }
+
+    private void invalidate(final String directoryKey) {
+        if (directoryKey == null) {
+            return;
+        }
+        Set<String> keys = directories.remove(directoryKey);
+        if (keys != null) {
+            for (String key : keys) {
+                Entry entry = entries.remove(key);
+                if (entry != null) {
+                    size -= entry.listing.length;
+                    invalidationCount++;
+                }
+            }
+        }
+    }
+
+    private void remove(final String key, final Entry entry) {
+        entries.remove(key);
+        removeFromDirectory(key, entry);
+    }
+
+    private void removeFromDirectory(final String key, final Entry entry) {
+        size -= entry.listing.length;
+        Set<String> keys = directories.get(entry.directoryKey);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                directories.remove(entry.directoryKey);
+            }
+        }
+    }
+
+    /**
+     * Get the key of a listed file. Files of the native file system are
+     * identified by their physical path, so that changes made by one user
+     * invalidate the listings of all users. Other files are identified by
+     * their path for the user.
+     */
+    public static String getKey(final FtpFile file, final String userName) {
+        if (file instanceof NativeFtpFile) {
+            return ((NativeFtpFile) file).getPhysicalFile().getAbsolutePath();
+        }
+        return userName + ':' + file.getAbsolutePath();
+    }
+
+    private static String getParentKey(final FtpFile file,
+            final String userName) {
+        if (file instanceof NativeFtpFile) {
+            File parent = ((NativeFtpFile) file).getPhysicalFile()
+                    .getAbsoluteFile().getParentFile();
+            return parent == null ? null : parent.getPath();
+        }
+        String path = file.getAbsolutePath();
+        int slashIndex = path.lastIndexOf('/');
+        if (slashIndex == -1 || path.equals("/")) {
+            return null;
+        }
+        return userName + ':'
+                + (slashIndex == 0 ? "/" : path.substring(0, slashIndex));
+    }
+
+    /**
+     * The size of the largest listing which may be cached
+     */
+    public long getMaxListingSize() {
+        return maxSize / 4;
+    }
+
+    /**
+     * The number of bytes of cached listings
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * The number of listings found in the cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * The number of listings not found in the cache, or out of date
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * The number of listings removed to keep the cache within its size
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * The number of listings removed because of changes through the server
+     */
+    public synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    /**
+     * Remove all cached listings
+     */
+    public synchronized void clear() {
+        entries.clear();
+        directories.clear();
+        size = 0;
+    }
+
+    private static class Entry {
+
+        private final String directoryKey;
+
+        private final byte[] listing;
+
+        private final long lastModified;
+
+        private final long created;
+
+        public Entry(final String directoryKey, final byte[] listing,
+                final long lastModified, final long created) {
+            this.directoryKey = directoryKey;
+            this.listing = listing;
+            this.lastModified = lastModified;
+            this.created = created;
+        }
+    }
+}
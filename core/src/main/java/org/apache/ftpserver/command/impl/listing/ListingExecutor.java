@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.command.impl.listing;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Bounded pool of threads formatting the entries of large directory
+ * listings concurrently, so that the latency of reading the attributes of
+ * each file is paid in parallel. Shared by all sessions of a listener, the
+ * number of threads caps the number of concurrent reads for the listener.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ListingExecutor {
+
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+
+    private final int threshold;
+
+    /**
+     * @param threads
+     *            The maximum number of threads
+     * @param threshold
+     *            The number of entries from which a listing is formated in
+     *            parallel
+     */
+    public ListingExecutor(final int threads, final int threshold) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.threshold = threshold;
+
+        final int pool = POOL_COUNT.incrementAndGet();
+        executor = new ThreadPoolExecutor(threads, threads, 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "FtpServer-listing-"
+                                + pool + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * The number of entries from which a listing is formated in parallel
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * The maximum number of entries formated concurrently
+     */
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Submit the formating of an entry.
+     * 
+     * @return The pending result, or null if the executor has been disposed
+     */
+    <T> Future<T> submit(final Callable<T> task) {
+        try {
+            return executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stop the threads, listings in progress are completed by their session
+     * thread.
+     */
+    public void dispose() {
+        List<Runnable> pending = executor.shutdownNow();
+
+        // release the sessions waiting for the tasks which will never run
+        for (Runnable task : pending) {
+            if (task instanceof Future<?>) {
+                ((Future<?>) task).cancel(false);
+            }
+        }
+    }
+}
@@ -18,6 +18,10 @@
  */
 package org.apache.ftpserver.command.impl.listing;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.util.DateUtils;
 
@@ -37,6 +41,8 @@ public class MLSTFileFormater implements FileFormater {
 
     private String[] selectedTypes = DEFAULT_TYPES;
 
+    private final Set<FileAttribute> requiredAttributes;
+
     /**
      * @param selectedTypes
      *            The types to show in the formated file
@@ -45,6 +51,31 @@ public class MLSTFileFormater implements FileFormater {
         if (selectedTypes != null) {
             this.selectedTypes = selectedTypes.clone();
         }
+
+        EnumSet<FileAttribute> attributes = EnumSet.noneOf(FileAttribute.class);
+        for (String type : this.selectedTypes) {
+            if (type.equalsIgnoreCase("size")) {
+                attributes.add(FileAttribute.SIZE);
+            } else if (type.equalsIgnoreCase("modify")) {
+                attributes.add(FileAttribute.LAST_MODIFIED);
+            } else if (type.equalsIgnoreCase("type")) {
+                attributes.add(FileAttribute.TYPE);
+            } else if (type.equalsIgnoreCase("perm")) {
+                // the permissions depend on the type of the file
+                attributes.add(FileAttribute.TYPE);
+                attributes.add(FileAttribute.PERMISSIONS);
+            }
+        }
+        requiredAttributes = Collections.unmodifiableSet(attributes);
+    }
+
+    /**
+     * Only the attributes of the selected types are read
+     * 
+     * @see FileFormater#getRequiredAttributes()
+     */
+    public Set<FileAttribute> getRequiredAttributes() {
+        return requiredAttributes;
     }
 
     /**
@@ -52,12 +83,19 @@ public class MLSTFileFormater implements FileFormater {
      */
     public String format(FtpFile file) {
         StringBuilder sb = new StringBuilder();
+        format(file, sb);
+        return sb.toString();
+    }
 
+    /**
+     * @see FileFormater#format(FtpFile, StringBuilder)
+     */
+    public void format(FtpFile file, StringBuilder sb) {
         for (int i = 0; i < selectedTypes.length; ++i) {
             String type = selectedTypes[i];
             if (type.equalsIgnoreCase("size")) {
                 sb.append("Size=");
-                sb.append(String.valueOf(file.getSize()));
+                sb.append(file.getSize());
                 sb.append(';');
             } else if (type.equalsIgnoreCase("modify")) {
                 String timeStr = DateUtils.getFtpDate(file.getLastModified());
@@ -100,7 +138,5 @@ public class MLSTFileFormater implements FileFormater {
         sb.append(file.getName());
 
         sb.append(NEWLINE);
-
-        return sb.toString();
     }
 }
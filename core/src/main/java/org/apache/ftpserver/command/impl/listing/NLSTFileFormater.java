@@ -18,6 +18,10 @@
  */
 package org.apache.ftpserver.command.impl.listing;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 import org.apache.ftpserver.ftplet.FtpFile;
 
 /**
@@ -31,14 +35,32 @@ public class NLSTFileFormater implements FileFormater {
 
     private final static char[] NEWLINE = { '\r', '\n' };
 
+    private final static Set<FileAttribute> REQUIRED_ATTRIBUTES = Collections
+            .unmodifiableSet(EnumSet.noneOf(FileAttribute.class));
+
     /**
      * @see FileFormater#format(FtpFile)
      */
     public String format(FtpFile file) {
         StringBuilder sb = new StringBuilder();
+        format(file, sb);
+        return sb.toString();
+    }
+
+    /**
+     * @see FileFormater#format(FtpFile, StringBuilder)
+     */
+    public void format(FtpFile file, StringBuilder sb) {
         sb.append(file.getName());
         sb.append(NEWLINE);
+    }
 
-        return sb.toString();
+    /**
+     * Only the file name is listed
+     * 
+     * @see FileFormater#getRequiredAttributes()
+     */
+    public Set<FileAttribute> getRequiredAttributes() {
+        return REQUIRED_ATTRIBUTES;
     }
 }
@@ -19,12 +19,17 @@
 
 package org.apache.ftpserver.config.spring;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 
 import org.apache.ftpserver.DataConnectionConfiguration;
 import org.apache.ftpserver.DataConnectionConfigurationFactory;
 import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.impl.CompressionEngine;
+import org.apache.ftpserver.impl.SharedPassivePortResolver;
+import org.apache.ftpserver.ipfilter.CidrIpFilter;
 import org.apache.ftpserver.ipfilter.DefaultIpFilter;
 import org.apache.ftpserver.ipfilter.IpFilterType;
 import org.apache.ftpserver.listener.ListenerFactory;
@@ -117,13 +122,28 @@ public class ListenerBeanDefinitionParser extends
         		throw new FtpServerConfigurationException("Element 'ipFilter' may not be used when 'blacklist' element is specified. ");
         	}
         	String filterType = ipFilterElement.getAttribute("type");
-        	try {
-				DefaultIpFilter ipFilter = new DefaultIpFilter(IpFilterType.parse(filterType), ipFilterElement.getTextContent());
-	            factoryBuilder.addPropertyValue("ipFilter", ipFilter);
-			}
-			catch (UnknownHostException e) {
-				throw new IllegalArgumentException("Invalid IP address or subnet in the 'ip-filter' element");
-			}
+        	String filterFile = ipFilterElement.getAttribute("file");
+        	if (StringUtils.hasText(filterFile)) {
+        		if (StringUtils.hasText(ipFilterElement.getTextContent())) {
+        			throw new FtpServerConfigurationException("Element 'ip-filter' may not list addresses when the 'file' attribute is specified. ");
+        		}
+        		try {
+        			CidrIpFilter ipFilter = new CidrIpFilter(IpFilterType.parse(filterType), new File(filterFile));
+        			factoryBuilder.addPropertyValue("ipFilter", ipFilter);
+        		}
+        		catch (IOException e) {
+        			throw new FtpServerConfigurationException("Failed to load the 'ip-filter' file", e);
+        		}
+        	}
+        	else {
+        		try {
+        			DefaultIpFilter ipFilter = new DefaultIpFilter(IpFilterType.parse(filterType), ipFilterElement.getTextContent());
+        			factoryBuilder.addPropertyValue("ipFilter", ipFilter);
+        		}
+        		catch (UnknownHostException e) {
+        			throw new IllegalArgumentException("Invalid IP address or subnet in the 'ip-filter' element");
+        		}
+        	}
         }
         
         BeanDefinition factoryDefinition = factoryBuilder.getBeanDefinition();
@@ -238,6 +258,30 @@ public class ListenerBeanDefinitionParser extends
             }
 
             dc.setIdleTime(SpringUtil.parseInt(element, "idle-timeout", dc.getIdleTime()));
+            dc.setZeroCopyEnabled(SpringUtil.parseBoolean(element, "zero-copy",
+                    dc.isZeroCopyEnabled()));
+            dc.setNonBlocking(SpringUtil.parseBoolean(element, "non-blocking",
+                    dc.isNonBlocking()));
+            dc.setMaxDownloadRate(SpringUtil.parseInt(element,
+                    "max-download-rate", dc.getMaxDownloadRate()));
+            dc.setMaxUploadRate(SpringUtil.parseInt(element,
+                    "max-upload-rate", dc.getMaxUploadRate()));
+            dc.setCompressionLevel(SpringUtil.parseInt(element,
+                    "compression-level", dc.getCompressionLevel()));
+            if (StringUtils.hasText(element.getAttribute("compression-strategy"))) {
+                dc.setCompressionStrategy(CompressionEngine.parseStrategy(element
+                        .getAttribute("compression-strategy")));
+            }
+            dc.setSkipCompressedData(SpringUtil.parseBoolean(element,
+                    "skip-compressed", dc.isSkipCompressedData()));
+            dc.setPassiveSocketPoolingEnabled(SpringUtil.parseBoolean(element,
+                    "pooled-passive-sockets", dc.isPassiveSocketPoolingEnabled()));
+            dc.setListingThreads(SpringUtil.parseInt(element,
+                    "listing-threads", dc.getListingThreads()));
+            dc.setParallelListingThreshold(SpringUtil.parseInt(element,
+                    "parallel-listing-threshold", dc.getParallelListingThreshold()));
+            dc.setListingSorted(SpringUtil.parseBoolean(element,
+                    "sorted-listings", dc.isListingSorted()));
 
             Element activeElm = SpringUtil.getChildElement(element,
                     FtpServerNamespaceHandler.FTPSERVER_NS, "active");
@@ -271,6 +315,13 @@ public class ListenerBeanDefinitionParser extends
                     dc.setPassiveExternalAddress(externalAddress);
                 }
 
+                String sharedPorts = SpringUtil.parseString(passiveElm,
+                        "shared-ports");
+                if (sharedPorts != null) {
+                    dc.setPassivePortResolver(new SharedPassivePortResolver(
+                            sharedPorts));
+                }
+
                 String ports = SpringUtil.parseString(passiveElm, "ports");
                 if (ports != null) {
                     throw new IllegalStateException("Data Connection Bean Definition Not Supported");
@@ -139,6 +139,54 @@ public class ServerBeanDefinitionParser extends
                     "login-failure-delay"));
         }
 
+        // Configure bandwidth limits
+        if (StringUtils.hasText(element.getAttribute("max-download-rate"))) {
+            connectionConfig.setMaxDownloadRate(SpringUtil.parseInt(element,
+                    "max-download-rate"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-upload-rate"))) {
+            connectionConfig.setMaxUploadRate(SpringUtil.parseInt(element,
+                    "max-upload-rate"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-user-download-rate"))) {
+            connectionConfig.setMaxUserDownloadRate(SpringUtil.parseInt(element,
+                    "max-user-download-rate"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-user-upload-rate"))) {
+            connectionConfig.setMaxUserUploadRate(SpringUtil.parseInt(element,
+                    "max-user-upload-rate"));
+        }
+        if (StringUtils.hasText(element.getAttribute("transfer-burst-size"))) {
+            connectionConfig.setTransferBurstSize(SpringUtil.parseInt(element,
+                    "transfer-burst-size"));
+        }
+
+        // Configure the listing cache
+        if (StringUtils.hasText(element.getAttribute("listing-cache-size"))) {
+            connectionConfig.setListingCacheSize(SpringUtil.parseInt(element,
+                    "listing-cache-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("listing-cache-max-age"))) {
+            connectionConfig.setListingCacheMaxAge(SpringUtil.parseInt(element,
+                    "listing-cache-max-age"));
+        }
+        if (StringUtils.hasText(element.getAttribute("authentication-threads"))) {
+            connectionConfig.setAuthenticationThreads(SpringUtil.parseInt(element,
+                    "authentication-threads"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-login-failure-delay"))) {
+            connectionConfig.setMaxLoginFailureDelay(SpringUtil.parseInt(element,
+                    "max-login-failure-delay"));
+        }
+        if (StringUtils.hasText(element.getAttribute("login-ban-threshold"))) {
+            connectionConfig.setLoginBanThreshold(SpringUtil.parseInt(element,
+                    "login-ban-threshold"));
+        }
+        if (StringUtils.hasText(element.getAttribute("login-ban-time"))) {
+            connectionConfig.setLoginBanTime(SpringUtil.parseInt(element,
+                    "login-ban-time"));
+        }
+
         factoryBuilder.addPropertyValue("connectionConfig", connectionConfig.createConnectionConfig());
 
        
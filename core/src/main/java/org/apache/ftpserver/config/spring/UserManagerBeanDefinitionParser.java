@@ -19,6 +19,7 @@
 
 package org.apache.ftpserver.config.spring;
 
+import org.apache.ftpserver.usermanager.CachingUserManagerFactory;
 import org.apache.ftpserver.usermanager.ClearTextPasswordEncryptor;
 import org.apache.ftpserver.usermanager.DbUserManagerFactory;
 import org.apache.ftpserver.usermanager.Md5PasswordEncryptor;
@@ -113,9 +114,33 @@ public class UserManagerBeanDefinitionParser extends
                     getSql(element, "is-admin"));
             factoryBuilder.addPropertyValue("sqlUserAuthenticate", getSql(element,
                     "authenticate"));
+
+            if (StringUtils.hasText(element.getAttribute("prepared-statements"))) {
+                factoryBuilder.addPropertyValue("preparedStatements", element
+                        .getAttribute("prepared-statements"));
+            }
+            if (StringUtils.hasText(element.getAttribute("max-connections"))) {
+                factoryBuilder.addPropertyValue("maxConnections", element
+                        .getAttribute("max-connections"));
+            }
         }
 
         BeanDefinition factoryDefinition = factoryBuilder.getBeanDefinition();
+
+        // cache the users if a cache size is configured
+        if (StringUtils.hasText(element.getAttribute("cache-size"))) {
+            BeanDefinitionBuilder cachingBuilder = BeanDefinitionBuilder
+                    .genericBeanDefinition(CachingUserManagerFactory.class);
+            cachingBuilder.addPropertyValue("userManagerFactory",
+                    factoryDefinition);
+            cachingBuilder.addPropertyValue("cacheSize", element
+                    .getAttribute("cache-size"));
+            if (StringUtils.hasText(element.getAttribute("cache-ttl"))) {
+                cachingBuilder.addPropertyValue("cacheTimeToLive", element
+                        .getAttribute("cache-ttl"));
+            }
+            factoryDefinition = cachingBuilder.getBeanDefinition();
+        }
         String factoryId = parserContext.getReaderContext().generateBeanName(factoryDefinition);
         
         BeanDefinitionHolder factoryHolder = new BeanDefinitionHolder(factoryDefinition, factoryId);
@@ -22,13 +22,13 @@ package org.apache.ftpserver.filesystem.nativefs.impl;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.StringTokenizer;
 
@@ -49,6 +49,11 @@ public class NativeFtpFile implements FtpFile {
 
     private final Logger LOG = LoggerFactory.getLogger(NativeFtpFile.class);
 
+    private static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+    // on unix like systems, hidden files are the ones starting with a dot
+    private static final boolean HIDDEN_BY_NAME = File.separatorChar == '/';
+
     // the file name with respect to the user root.
     // The path separator character will be '/' and
     // it will always begin with '/'.
@@ -58,11 +63,29 @@ public class NativeFtpFile implements FtpFile {
 
     private User user;
 
+    // attributes read from the file system, if this file is a snapshot
+    // taken while listing a directory. Null means that every call goes to
+    // the file system.
+    private FileAttributes attributes;
+
     /**
      * Constructor, internal do not use directly.
      */
     protected NativeFtpFile(final String fileName, final File file,
             final User user) {
+        this(fileName, file, user, false);
+    }
+
+    /**
+     * Constructor, internal do not use directly.
+     * 
+     * @param cacheAttributes
+     *            If true, each file attribute will only be read once from
+     *            the file system, until the file is modified through this
+     *            object
+     */
+    protected NativeFtpFile(final String fileName, final File file,
+            final User user, final boolean cacheAttributes) {
         if (fileName == null) {
             throw new IllegalArgumentException("fileName can not be null");
         }
@@ -80,6 +103,10 @@ public class NativeFtpFile implements FtpFile {
         this.fileName = fileName;
         this.file = file;
         this.user = user;
+
+        if (cacheAttributes) {
+            attributes = new FileAttributes();
+        }
     }
 
     /**
@@ -126,35 +153,70 @@ public class NativeFtpFile implements FtpFile {
      * Is a hidden file?
      */
     public boolean isHidden() {
-        return file.isHidden();
+        if (attributes == null) {
+            return file.isHidden();
+        }
+        if (attributes.hidden == null) {
+            // listed files exist, their name is enough where it decides
+            attributes.hidden = Boolean.valueOf(HIDDEN_BY_NAME ? file
+                    .getName().startsWith(".") : file.isHidden());
+        }
+        return attributes.hidden.booleanValue();
     }
 
     /**
      * Is it a directory?
      */
     public boolean isDirectory() {
-        return file.isDirectory();
+        if (attributes == null) {
+            return file.isDirectory();
+        }
+        if (attributes.directory == null) {
+            attributes.directory = Boolean.valueOf(file.isDirectory());
+        }
+        return attributes.directory.booleanValue();
     }
 
     /**
      * Is it a file?
      */
     public boolean isFile() {
-        return file.isFile();
+        if (attributes == null) {
+            return file.isFile();
+        }
+        if (attributes.file == null) {
+            // a directory is never a file, no need to ask again
+            attributes.file = isDirectory() ? Boolean.FALSE : Boolean
+                    .valueOf(file.isFile());
+        }
+        return attributes.file.booleanValue();
     }
 
     /**
      * Does this file exists?
      */
     public boolean doesExist() {
-        return file.exists();
+        if (attributes == null) {
+            return file.exists();
+        }
+        if (attributes.exists == null) {
+            attributes.exists = (isDirectory() || isFile()) ? Boolean.TRUE
+                    : Boolean.valueOf(file.exists());
+        }
+        return attributes.exists.booleanValue();
     }
 
     /**
      * Get file size.
      */
     public long getSize() {
-        return file.length();
+        if (attributes == null) {
+            return file.length();
+        }
+        if (attributes.size == -1) {
+            attributes.size = file.length();
+        }
+        return attributes.size;
     }
 
     /**
@@ -175,20 +237,27 @@ public class NativeFtpFile implements FtpFile {
      * Get link count
      */
     public int getLinkCount() {
-        return file.isDirectory() ? 3 : 1;
+        return isDirectory() ? 3 : 1;
     }
 
     /**
      * Get last modified time.
      */
     public long getLastModified() {
-        return file.lastModified();
+        if (attributes == null) {
+            return file.lastModified();
+        }
+        if (attributes.lastModified == UNKNOWN_TIME) {
+            attributes.lastModified = file.lastModified();
+        }
+        return attributes.lastModified;
     }
 
     /**
      * {@inheritDoc}
      */
     public boolean setLastModified(long time) {
+        invalidateAttributes();
         return file.setLastModified(time);
     }
 
@@ -196,7 +265,13 @@ public class NativeFtpFile implements FtpFile {
      * Check read permission.
      */
     public boolean isReadable() {
-        return file.canRead();
+        if (attributes == null) {
+            return file.canRead();
+        }
+        if (attributes.readable == null) {
+            attributes.readable = Boolean.valueOf(file.canRead());
+        }
+        return attributes.readable.booleanValue();
     }
 
     /**
@@ -210,15 +285,26 @@ public class NativeFtpFile implements FtpFile {
         }
 
         LOG.debug("Checking if file exists");
-        if (file.exists()) {
-            LOG.debug("Checking can write: " + file.canWrite());
-            return file.canWrite();
+        if (doesExist()) {
+            boolean canWrite = canWrite();
+            LOG.debug("Checking can write: " + canWrite);
+            return canWrite;
         }
 
         LOG.debug("Authorized");
         return true;
     }
 
+    private boolean canWrite() {
+        if (attributes == null) {
+            return file.canWrite();
+        }
+        if (attributes.writable == null) {
+            attributes.writable = Boolean.valueOf(file.canWrite());
+        }
+        return attributes.writable.booleanValue();
+    }
+
     /**
      * Has delete permission.
      */
@@ -260,6 +346,7 @@ public class NativeFtpFile implements FtpFile {
     public boolean delete() {
         boolean retVal = false;
         if (isRemovable()) {
+            invalidateAttributes();
             retVal = file.delete();
         }
         return retVal;
@@ -279,6 +366,8 @@ public class NativeFtpFile implements FtpFile {
                 // we fail
                 retVal = false;
             } else {
+                invalidateAttributes();
+                ((NativeFtpFile) dest).invalidateAttributes();
                 retVal = file.renameTo(destFile);
             }
         }
@@ -291,6 +380,7 @@ public class NativeFtpFile implements FtpFile {
     public boolean mkdir() {
         boolean retVal = false;
         if (isWritable()) {
+            invalidateAttributes();
             retVal = file.mkdir();
         }
         return retVal;
@@ -303,28 +393,52 @@ public class NativeFtpFile implements FtpFile {
         return file;
     }
 
+    /**
+     * Stop caching the file attributes, the file is about to change
+     */
+    private void invalidateAttributes() {
+        attributes = null;
+    }
+
     /**
      * List files. If not a directory or does not exist, null will be returned.
+     * The returned files cache their attributes, so that formatting a listing
+     * only reads each attribute once from the file system.
      */
     public List<FtpFile> listFiles() {
+        return listFiles(null, true);
+    }
+
+    /**
+     * List the files matching a filter. The filter is applied to the names
+     * read from the directory, before any file object is created.
+     * 
+     * @param filter
+     *            The filter selecting the files by name, or null to list all
+     *            files
+     * @param sorted
+     *            True to list the files in name order, false to list them in
+     *            the order of the directory
+     * @return The files, or null if not a directory or if it does not exist
+     */
+    public List<FtpFile> listFiles(final FilenameFilter filter,
+            final boolean sorted) {
 
         // is a directory
-        if (!file.isDirectory()) {
+        if (!isDirectory()) {
             return null;
         }
 
-        // directory - return all the files
-        File[] files = file.listFiles();
-        if (files == null) {
+        // directory - return all the matching files
+        String[] names = file.list(filter);
+        if (names == null) {
             return null;
         }
 
         // make sure the files are returned in order
-        Arrays.sort(files, new Comparator<File>() {
-            public int compare(File f1, File f2) {
-                return f1.getName().compareTo(f2.getName());
-            }
-        });
+        if (sorted) {
+            Arrays.sort(names);
+        }
 
         // get the virtual name of the base directory
         String virtualFileStr = getAbsolutePath();
@@ -333,11 +447,11 @@ public class NativeFtpFile implements FtpFile {
         }
 
         // now return all the files under the directory
-        FtpFile[] virtualFiles = new FtpFile[files.length];
-        for (int i = 0; i < files.length; ++i) {
-            File fileObj = files[i];
-            String fileName = virtualFileStr + fileObj.getName();
-            virtualFiles[i] = new NativeFtpFile(fileName, fileObj, user);
+        FtpFile[] virtualFiles = new FtpFile[names.length];
+        for (int i = 0; i < names.length; ++i) {
+            String fileName = virtualFileStr + names[i];
+            virtualFiles[i] = new NativeFtpFile(fileName, new File(file,
+                    names[i]), user, true);
         }
 
         return Collections.unmodifiableList(Arrays.asList(virtualFiles));
@@ -353,6 +467,7 @@ public class NativeFtpFile implements FtpFile {
         if (!isWritable()) {
             throw new IOException("No write permission : " + file.getName());
         }
+        invalidateAttributes();
 
         // create output stream
         final RandomAccessFile raf = new RandomAccessFile(file, "rw");
@@ -549,4 +664,29 @@ public class NativeFtpFile implements FtpFile {
 			return 0;
 		}
 	}
+
+    /**
+     * File attributes read from the file system. Every attribute is read on
+     * first use, so that a listing only pays for the attributes its format
+     * needs.
+     */
+    private static class FileAttributes {
+
+        private Boolean exists;
+
+        private Boolean directory;
+
+        private Boolean file;
+
+        private Boolean hidden;
+
+        private Boolean readable;
+
+        private Boolean writable;
+
+        // -1 until read
+        private long size = -1;
+
+        private long lastModified = UNKNOWN_TIME;
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Translates network line endings into local line endings for files received
+ * in ASCII mode. Every CR, LF or CRLF is replaced by the local line ending;
+ * some clients do not send CRLF so lone LFs are kept as line endings.
+ * 
+ * The data between line endings is copied in bulk rather than byte by byte.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class AsciiInboundTranslator implements LineEndingTranslator {
+
+    private final byte[] eol;
+
+    /**
+     * The last byte of the previous chunk
+     */
+    private byte lastByte = 0;
+
+    /**
+     * @param eol
+     *            The local line ending
+     */
+    public AsciiInboundTranslator(final byte[] eol) {
+        this.eol = eol.clone();
+    }
+
+    public int getMaxTranslatedLength(final int length) {
+        return Math.max(1, eol.length) * length;
+    }
+
+    public int translate(final byte[] src, final int offset, final int length,
+            final byte[] dest) {
+        if (length == 0) {
+            return 0;
+        }
+
+        int end = offset + length;
+        int runStart = offset;
+        int written = 0;
+        byte previous = lastByte;
+
+        for (int i = offset; i < end; i++) {
+            byte b = src[i];
+            if (b == '\r' || b == '\n') {
+                int runLength = i - runStart;
+                System.arraycopy(src, runStart, dest, written, runLength);
+                written += runLength;
+
+                // the LF of a CRLF has already been replaced with the CR
+                if (b == '\r' || previous != '\r') {
+                    System.arraycopy(eol, 0, dest, written, eol.length);
+                    written += eol.length;
+                }
+                runStart = i + 1;
+            }
+            previous = b;
+        }
+
+        int runLength = end - runStart;
+        System.arraycopy(src, runStart, dest, written, runLength);
+        written += runLength;
+
+        lastByte = previous;
+        return written;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Translates local line endings into the network representation, CRLF, for
+ * files sent in ASCII mode. A LF not preceded by a CR is prefixed with a CR,
+ * all other data is passed through unchanged.
+ * 
+ * The data between line endings is copied in bulk rather than byte by byte.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class AsciiOutboundTranslator implements LineEndingTranslator {
+
+    /**
+     * The last byte of the previous chunk
+     */
+    private byte lastByte = 0;
+
+    public int getMaxTranslatedLength(final int length) {
+        return 2 * length;
+    }
+
+    public int translate(final byte[] src, final int offset, final int length,
+            final byte[] dest) {
+        if (length == 0) {
+            return 0;
+        }
+
+        int end = offset + length;
+        int runStart = offset;
+        int written = 0;
+        byte previous = lastByte;
+
+        for (int i = offset; i < end; i++) {
+            byte b = src[i];
+            if (b == '\n' && previous != '\r') {
+                // copy everything up to the LF, which starts the next run
+                int runLength = i - runStart;
+                System.arraycopy(src, runStart, dest, written, runLength);
+                written += runLength;
+                dest[written++] = '\r';
+                runStart = i;
+            }
+            previous = b;
+        }
+
+        int runLength = end - runStart;
+        System.arraycopy(src, runStart, dest, written, runLength);
+        written += runLength;
+
+        lastByte = previous;
+        return written;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Runs the authentication of logins, and times the delayed replies to
+ * failed logins, outside of the threads handling the sessions. A session
+ * waiting for its login to complete does not hold a thread, so slow user
+ * managers and login failure delays can not exhaust the threads of the
+ * server. The logins are completed by the threads of their session.
+ * 
+ * The number of logins waiting for an authentication thread is bounded,
+ * logins are rejected once it is reached.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class AuthenticationExecutor {
+
+    /**
+     * The maximum number of logins waiting for each authentication thread
+     */
+    private static final int MAX_PENDING_PER_THREAD = 64;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * @param threads
+     *            The number of authentication threads, or 0 to authenticate
+     *            in the calling thread
+     */
+    public AuthenticationExecutor(final int threads) {
+        if (threads > 0) {
+            executor = new ThreadPoolExecutor(threads, threads, 60,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(
+                            threads * MAX_PENDING_PER_THREAD),
+                    createThreadFactory("FtpServer-authentication-"));
+        } else {
+            executor = null;
+        }
+        scheduler = new ScheduledThreadPoolExecutor(1,
+                createThreadFactory("FtpServer-login-delay-"));
+    }
+
+    private static ThreadFactory createThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix
+                        + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Are logins authenticated by the authentication threads?
+     */
+    public boolean isAsynchronous() {
+        return executor != null;
+    }
+
+    /**
+     * Run an authentication in an authentication thread.
+     * 
+     * @return false if too many logins are waiting, or if the executor has
+     *         been disposed
+     */
+    public boolean execute(final Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Run a task once a delay has passed. The task runs in a thread shared
+     * by all sessions and must only hand the actual work back to the
+     * session.
+     * 
+     * @param delay
+     *            The delay in milliseconds
+     */
+    public void schedule(final Runnable task, final long delay) {
+        try {
+            scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // disposed, do not wait
+            task.run();
+        }
+    }
+
+    /**
+     * Stop the threads, waiting logins are not completed.
+     */
+    public void dispose() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.listener.Listener;
+import org.apache.ftpserver.usermanager.impl.TransferClassRequest;
+import org.apache.ftpserver.usermanager.impl.TransferRateRequest;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Hands out {@link TransferRateLimiter}s for data transfers, enforcing
+ * bandwidth limits at four levels:
+ * <ul>
+ * <li>per session, using the rates from the user's
+ * {@link org.apache.ftpserver.usermanager.impl.TransferRatePermission}</li>
+ * <li>per user, shared by all sessions of the same user</li>
+ * <li>per listener, shared by all transfers on the listener</li>
+ * <li>server wide, shared by all transfers</li>
+ * </ul>
+ * The bandwidth of listeners and the server is shared among the transfers by
+ * a {@link TransferScheduler}, according to the weights from the users'
+ * {@link org.apache.ftpserver.usermanager.impl.TransferClassPermission}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class BandwidthShaper {
+
+    private static final String ATTRIBUTE_DOWNLOAD_BUCKET = FtpIoSession.ATTRIBUTE_PREFIX
+            + "download-bucket";
+
+    private static final String ATTRIBUTE_UPLOAD_BUCKET = FtpIoSession.ATTRIBUTE_PREFIX
+            + "upload-bucket";
+
+    private final int maxUserDownloadRate;
+
+    private final int maxUserUploadRate;
+
+    private final int burstSize;
+
+    private final TransferScheduler serverDownloadScheduler;
+
+    private final TransferScheduler serverUploadScheduler;
+
+    /**
+     * Per listener schedulers, null values for listeners without limits
+     */
+    private final Map<Listener, TransferScheduler[]> listenerSchedulers = new HashMap<Listener, TransferScheduler[]>();
+
+    /**
+     * Per user buckets, only kept while the user has transfers running
+     */
+    private final Map<String, UserBucket> userDownloadBuckets = new HashMap<String, UserBucket>();
+
+    private final Map<String, UserBucket> userUploadBuckets = new HashMap<String, UserBucket>();
+
+    public BandwidthShaper(final ServerConnectionConfig config) {
+        this.maxUserDownloadRate = config.getMaxUserDownloadRate();
+        this.maxUserUploadRate = config.getMaxUserUploadRate();
+        this.burstSize = config.getTransferBurstSize();
+
+        serverDownloadScheduler = createScheduler(config.getMaxDownloadRate());
+        serverUploadScheduler = createScheduler(config.getMaxUploadRate());
+    }
+
+    private TokenBucket createBucket(final int rate) {
+        if (rate <= 0) {
+            return null;
+        }
+        return new TokenBucket(rate, getBurstSize(rate, burstSize));
+    }
+
+    private TransferScheduler createScheduler(final int rate) {
+        if (rate <= 0) {
+            return null;
+        }
+        return new TransferScheduler(rate, burstSize);
+    }
+
+    /**
+     * Get the burst size for a bucket
+     * 
+     * @param rate
+     *            The rate of the bucket
+     * @param burstSize
+     *            The configured burst size, 0 for the default of a tenth of a
+     *            second worth of data
+     */
+    static long getBurstSize(final long rate, final int burstSize) {
+        if (burstSize > 0) {
+            return burstSize;
+        }
+        return Math.max(4096, rate / 10);
+    }
+
+    /**
+     * Get the limiter for a new transfer. The limiter must be released once
+     * the transfer has finished.
+     * 
+     * @param session
+     *            The session starting the transfer
+     * @param upload
+     *            true for uploads, false for downloads
+     * @return The limiter, {@link TransferRateLimiter#UNLIMITED} if no limits
+     *         apply
+     */
+    public TransferRateLimiter createLimiter(final FtpIoSession session,
+            final boolean upload) {
+        List<TokenBucket> buckets = new ArrayList<TokenBucket>(2);
+        final List<TransferScheduler.Flow> flows = new ArrayList<TransferScheduler.Flow>(
+                2);
+        final List<Runnable> releaseActions = new ArrayList<Runnable>(1);
+
+        TokenBucket sessionBucket = getSessionBucket(session, upload);
+        if (sessionBucket != null) {
+            buckets.add(sessionBucket);
+        }
+
+        User user = session.getUser();
+        int userRate = upload ? maxUserUploadRate : maxUserDownloadRate;
+        if (user != null && userRate > 0) {
+            buckets.add(acquireUserBucket(user.getName(), userRate, upload,
+                    releaseActions));
+        }
+
+        int weight = getWeight(user);
+
+        TransferScheduler listenerScheduler = getListenerScheduler(session
+                .getListener(), upload);
+        if (listenerScheduler != null) {
+            flows.add(listenerScheduler.register(weight));
+        }
+
+        TransferScheduler serverScheduler = upload ? serverUploadScheduler
+                : serverDownloadScheduler;
+        if (serverScheduler != null) {
+            flows.add(serverScheduler.register(weight));
+        }
+
+        if (buckets.isEmpty() && flows.isEmpty()) {
+            return TransferRateLimiter.UNLIMITED;
+        }
+
+        Runnable releaseAction = null;
+        if (!flows.isEmpty() || !releaseActions.isEmpty()) {
+            releaseAction = new Runnable() {
+                public void run() {
+                    for (TransferScheduler.Flow flow : flows) {
+                        flow.unregister();
+                    }
+                    for (Runnable action : releaseActions) {
+                        action.run();
+                    }
+                }
+            };
+        }
+
+        return new TransferRateLimiter(buckets
+                .toArray(new TokenBucket[buckets.size()]), flows
+                .toArray(new TransferScheduler.Flow[flows.size()]),
+                releaseAction);
+    }
+
+    /**
+     * The session bucket is kept for the lifetime of the session, so that the
+     * limit also holds across consecutive transfers.
+     */
+    private TokenBucket getSessionBucket(final FtpIoSession session,
+            final boolean upload) {
+        int rate = getUserRate(session.getUser(), upload);
+        String attribute = upload ? ATTRIBUTE_UPLOAD_BUCKET
+                : ATTRIBUTE_DOWNLOAD_BUCKET;
+
+        if (rate <= 0) {
+            session.removeAttribute(attribute);
+            return null;
+        }
+
+        TokenBucket bucket = (TokenBucket) session.getAttribute(attribute);
+        if (bucket == null || bucket.getRate() != rate) {
+            // new session, or a different user logged in
+            bucket = createBucket(rate);
+            session.setAttribute(attribute, bucket);
+        }
+        return bucket;
+    }
+
+    /**
+     * Get the bucket shared by all transfers of the user, adding the action
+     * releasing it once the transfer has finished
+     */
+    private TokenBucket acquireUserBucket(final String userName,
+            final int userRate, final boolean upload,
+            final List<Runnable> releaseActions) {
+        final Map<String, UserBucket> userBuckets = upload ? userUploadBuckets
+                : userDownloadBuckets;
+
+        UserBucket userBucket;
+        synchronized (userBuckets) {
+            userBucket = userBuckets.get(userName);
+            if (userBucket == null) {
+                userBucket = new UserBucket(createBucket(userRate));
+                userBuckets.put(userName, userBucket);
+            }
+            userBucket.transfers++;
+        }
+
+        releaseActions.add(new Runnable() {
+            public void run() {
+                synchronized (userBuckets) {
+                    UserBucket userBucket = userBuckets.get(userName);
+                    if (userBucket != null && --userBucket.transfers == 0) {
+                        userBuckets.remove(userName);
+                    }
+                }
+            }
+        });
+        return userBucket.bucket;
+    }
+
+    private TransferScheduler getListenerScheduler(final Listener listener,
+            final boolean upload) {
+        if (listener == null) {
+            return null;
+        }
+
+        TransferScheduler[] schedulers;
+        synchronized (listenerSchedulers) {
+            schedulers = listenerSchedulers.get(listener);
+            if (schedulers == null) {
+                ServerDataConnectionConfiguration dataCfg = (ServerDataConnectionConfiguration) listener
+                        .getDataConnectionConfiguration();
+                schedulers = new TransferScheduler[] {
+                        createScheduler(dataCfg.getMaxDownloadRate()),
+                        createScheduler(dataCfg.getMaxUploadRate()) };
+                listenerSchedulers.put(listener, schedulers);
+            }
+        }
+        return upload ? schedulers[1] : schedulers[0];
+    }
+
+    private int getUserRate(final User user, final boolean upload) {
+        if (user == null) {
+            return 0;
+        }
+
+        TransferRateRequest transferRateRequest = new TransferRateRequest();
+        transferRateRequest = (TransferRateRequest) user
+                .authorize(transferRateRequest);
+        if (transferRateRequest == null) {
+            return 0;
+        }
+        return upload ? transferRateRequest.getMaxUploadRate()
+                : transferRateRequest.getMaxDownloadRate();
+    }
+
+    private int getWeight(final User user) {
+        if (user == null) {
+            return 1;
+        }
+
+        TransferClassRequest transferClassRequest = new TransferClassRequest();
+        transferClassRequest = (TransferClassRequest) user
+                .authorize(transferClassRequest);
+        if (transferClassRequest == null) {
+            return 1;
+        }
+        return Math.max(1, transferClassRequest.getWeight());
+    }
+
+    /**
+     * A user's bucket and the number of transfers using it
+     */
+    private static class UserBucket {
+
+        private final TokenBucket bucket;
+
+        private int transfers;
+
+        public UserBucket(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+}
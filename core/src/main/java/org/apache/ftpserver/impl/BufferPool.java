@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * A server wide pool of byte buffers, used by the data transfer path and the
+ * reply encoder to avoid allocating short lived buffers. Buffers are pooled in
+ * size classes, powers of two from {@link #MIN_BUFFER_SIZE} to
+ * {@link #MAX_BUFFER_SIZE}; larger buffers are allocated and released without
+ * pooling. Direct (off heap) buffers are used for channel I/O, array backed
+ * heap buffers for copying streams.
+ * 
+ * Every buffer borrowed must be released exactly once, and must not be used
+ * after it has been released. When debug logging is enabled for this class,
+ * the allocation site of every borrowed buffer is recorded and buffers never
+ * released are reported when the pool is disposed.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class BufferPool {
+
+    private final Logger LOG = LoggerFactory.getLogger(BufferPool.class);
+
+    public static final int MIN_BUFFER_SIZE = 512;
+
+    public static final int MAX_BUFFER_SIZE = 128 * 1024;
+
+    private final SizeClass[] heapClasses;
+
+    private final SizeClass[] directClasses;
+
+    private final long maxPooledBytes;
+
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    private final AtomicInteger borrowed = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Allocation sites of borrowed buffers, only used for leak detection
+     */
+    private final Map<ByteBuffer, Throwable> borrowedBuffers;
+
+    /**
+     * @param maxPooledBytes
+     *            The maximum number of bytes kept in idle buffers
+     */
+    public BufferPool(final long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+
+        int classes = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE)
+                - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE) + 1;
+        heapClasses = new SizeClass[classes];
+        directClasses = new SizeClass[classes];
+        for (int i = 0; i < classes; i++) {
+            heapClasses[i] = new SizeClass(MIN_BUFFER_SIZE << i);
+            directClasses[i] = new SizeClass(MIN_BUFFER_SIZE << i);
+        }
+
+        if (LOG.isDebugEnabled()) {
+            borrowedBuffers = new IdentityHashMap<ByteBuffer, Throwable>();
+        } else {
+            borrowedBuffers = null;
+        }
+    }
+
+    /**
+     * Borrow a direct buffer, cleared and with a capacity of at least the
+     * requested size.
+     * 
+     * @param size
+     *            The minimum capacity
+     * @return The buffer
+     */
+    public ByteBuffer acquireDirect(final int size) {
+        return acquire(directClasses, size);
+    }
+
+    /**
+     * Borrow an array backed heap buffer, cleared and with a capacity of at
+     * least the requested size.
+     * 
+     * @param size
+     *            The minimum capacity
+     * @return The buffer
+     */
+    public ByteBuffer acquireHeap(final int size) {
+        return acquire(heapClasses, size);
+    }
+
+    private ByteBuffer acquire(final SizeClass[] classes, final int size) {
+        SizeClass sizeClass = getSizeClass(classes, size);
+
+        ByteBuffer buffer = null;
+        if (sizeClass != null) {
+            buffer = sizeClass.buffers.poll();
+        }
+
+        if (buffer != null) {
+            sizeClass.pooled.decrementAndGet();
+            pooledBytes.addAndGet(-buffer.capacity());
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            int capacity = sizeClass != null ? sizeClass.size : size;
+            boolean direct = classes == directClasses;
+            buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer
+                    .allocate(capacity);
+        }
+
+        borrowed.incrementAndGet();
+        if (borrowedBuffers != null) {
+            synchronized (borrowedBuffers) {
+                borrowedBuffers.put(buffer, new Throwable(
+                        "Buffer allocated but never released"));
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool.
+     * 
+     * @param buffer
+     *            The buffer, may be null
+     */
+    public void release(final ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+
+        if (borrowedBuffers != null) {
+            synchronized (borrowedBuffers) {
+                if (borrowedBuffers.remove(buffer) == null) {
+                    LOG.debug("Buffer released twice or not from this pool",
+                            new Throwable());
+                    return;
+                }
+            }
+        }
+        borrowed.decrementAndGet();
+
+        SizeClass[] classes = buffer.isDirect() ? directClasses : heapClasses;
+        SizeClass sizeClass = getSizeClass(classes, buffer.capacity());
+        if (sizeClass == null || sizeClass.size != buffer.capacity()) {
+            // not pooled
+            return;
+        }
+
+        if (pooledBytes.addAndGet(buffer.capacity()) > maxPooledBytes) {
+            // pool is full, leave the buffer to the garbage collector
+            pooledBytes.addAndGet(-buffer.capacity());
+            return;
+        }
+
+        buffer.clear();
+        sizeClass.pooled.incrementAndGet();
+        sizeClass.buffers.offer(buffer);
+    }
+
+    private SizeClass getSizeClass(final SizeClass[] classes, final int size) {
+        if (size > MAX_BUFFER_SIZE) {
+            return null;
+        }
+        for (SizeClass sizeClass : classes) {
+            if (sizeClass.size >= size) {
+                return sizeClass;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of buffers currently borrowed from the pool
+     */
+    public int getBorrowedBuffers() {
+        return borrowed.get();
+    }
+
+    /**
+     * @return The number of idle buffers kept in the pool
+     */
+    public int getPooledBuffers() {
+        int count = 0;
+        for (SizeClass sizeClass : heapClasses) {
+            count += sizeClass.pooled.get();
+        }
+        for (SizeClass sizeClass : directClasses) {
+            count += sizeClass.pooled.get();
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of idle buffers kept in the pool for a size class.
+     * 
+     * @param size
+     *            The size of the buffers
+     * @param direct
+     *            true for direct buffers, false for heap buffers
+     * @return The number of buffers, 0 if the size is not a size class
+     */
+    public int getPooledBuffers(final int size, final boolean direct) {
+        SizeClass sizeClass = getSizeClass(direct ? directClasses
+                : heapClasses, size);
+        if (sizeClass == null || sizeClass.size != size) {
+            return 0;
+        }
+        return sizeClass.pooled.get();
+    }
+
+    /**
+     * @return The number of bytes kept in idle buffers
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * @return The maximum number of bytes kept in idle buffers
+     */
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    /**
+     * @return The number of buffers taken from the pool
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of buffers that had to be allocated
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Drop all idle buffers and report buffers which have not been released,
+     * if leak detection is enabled.
+     * 
+     * @return The allocation sites of the buffers not released, empty if leak
+     *         detection is not enabled
+     */
+    public List<Throwable> dispose() {
+        for (SizeClass sizeClass : heapClasses) {
+            sizeClass.clear();
+        }
+        for (SizeClass sizeClass : directClasses) {
+            sizeClass.clear();
+        }
+
+        List<Throwable> leaks = new ArrayList<Throwable>();
+        if (borrowedBuffers != null) {
+            synchronized (borrowedBuffers) {
+                leaks.addAll(borrowedBuffers.values());
+            }
+            for (Throwable leak : leaks) {
+                LOG.debug("Buffer leak detected", leak);
+            }
+        }
+        return leaks;
+    }
+
+    /**
+     * The idle buffers of a single size
+     */
+    private class SizeClass {
+
+        private final int size;
+
+        private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+        /**
+         * Size of the queue, which is expensive to compute for a
+         * {@link ConcurrentLinkedQueue}
+         */
+        private final AtomicInteger pooled = new AtomicInteger();
+
+        public SizeClass(final int size) {
+            this.size = size;
+        }
+
+        public void clear() {
+            ByteBuffer buffer;
+            while ((buffer = buffers.poll()) != null) {
+                pooled.decrementAndGet();
+                pooledBytes.addAndGet(-buffer.capacity());
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Creates the compressing and decompressing streams for MODE Z transfers.
+ * The native zlib state of {@link Deflater}s and {@link Inflater}s is
+ * expensive to create and only freed by finalization unless ended
+ * explicitly, so instances are reset and pooled when a transfer has finished
+ * rather than left to the garbage collector.
+ * 
+ * Already compressed data, such as archives or images, can be sent with
+ * compression level 0: the data is still framed as a zlib stream, as the
+ * client expects, but no time is spent trying to compress it again.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CompressionEngine {
+
+    /**
+     * The maximum number of idle deflaters, and of idle inflaters, kept
+     */
+    private static final int MAX_POOLED = 32;
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<String>();
+
+    /**
+     * Leading bytes of common compressed file formats
+     */
+    private static final byte[][] COMPRESSED_SIGNATURES = {
+            { 0x1f, (byte) 0x8b }, // gzip
+            { 0x1f, (byte) 0x9d }, // compress
+            { 'P', 'K', 0x03, 0x04 }, // zip, jar, office documents
+            { 'B', 'Z', 'h' }, // bzip2
+            { (byte) 0xfd, '7', 'z', 'X', 'Z', 0x00 }, // xz
+            { '7', 'z', (byte) 0xbc, (byte) 0xaf, 0x27, 0x1c }, // 7-zip
+            { 'R', 'a', 'r', '!', 0x1a, 0x07 }, // rar
+            { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd }, // zstd
+            { (byte) 0x89, 'P', 'N', 'G' }, // png
+            { (byte) 0xff, (byte) 0xd8, (byte) 0xff }, // jpeg
+            { 'G', 'I', 'F', '8' }, // gif
+    };
+
+    static {
+        String[] extensions = { "gz", "tgz", "z", "zip", "jar", "war", "ear",
+                "bz2", "tbz", "tbz2", "xz", "txz", "lzma", "7z", "rar", "zst",
+                "cab", "png", "jpg", "jpeg", "gif", "webp", "mp3", "ogg",
+                "flac", "aac", "mp4", "m4a", "m4v", "mkv", "mov", "avi",
+                "webm", "docx", "xlsx", "pptx", "odt", "ods", "odp" };
+        for (String extension : extensions) {
+            COMPRESSED_EXTENSIONS.add(extension);
+        }
+    }
+
+    private final BufferPool bufferPool;
+
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+
+    private final AtomicInteger pooledDeflaters = new AtomicInteger();
+
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<Inflater>();
+
+    private final AtomicInteger pooledInflaters = new AtomicInteger();
+
+    private volatile boolean disposed = false;
+
+    /**
+     * @param bufferPool
+     *            The pool to borrow the stream buffers from
+     */
+    public CompressionEngine(final BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Create a stream compressing the data written to it.
+     * 
+     * @param out
+     *            The stream to write the compressed data to
+     * @param level
+     *            The compression level
+     * @param strategy
+     *            The compression strategy
+     * @param detectCompressedData
+     *            If true, the first block written is checked for the
+     *            signature of a compressed file format. If found, the data is
+     *            not compressed.
+     * @return The compressing stream, must be closed to release its resources
+     */
+    public OutputStream createOutputStream(final OutputStream out,
+            final int level, final int strategy,
+            final boolean detectCompressedData) {
+        return new PooledDeflaterOutputStream(out, this, level, strategy,
+                detectCompressedData);
+    }
+
+    /**
+     * Create a stream decompressing the data read from the provided stream.
+     * 
+     * @param in
+     *            The stream to read the compressed data from
+     * @return The decompressing stream, must be closed to release its
+     *         resources
+     */
+    public InputStream createInputStream(final InputStream in) {
+        return new PooledInflaterInputStream(in, this);
+    }
+
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    Deflater acquireDeflater(final int level, final int strategy) {
+        Deflater deflater = deflaters.poll();
+        if (deflater != null) {
+            pooledDeflaters.decrementAndGet();
+        } else {
+            deflater = new Deflater();
+        }
+        deflater.setLevel(level);
+        deflater.setStrategy(strategy);
+        return deflater;
+    }
+
+    void releaseDeflater(final Deflater deflater) {
+        if (disposed) {
+            deflater.end();
+            return;
+        }
+        if (pooledDeflaters.incrementAndGet() > MAX_POOLED) {
+            pooledDeflaters.decrementAndGet();
+            deflater.end();
+            return;
+        }
+        deflater.reset();
+        deflaters.offer(deflater);
+    }
+
+    Inflater acquireInflater() {
+        Inflater inflater = inflaters.poll();
+        if (inflater != null) {
+            pooledInflaters.decrementAndGet();
+        } else {
+            inflater = new Inflater();
+        }
+        return inflater;
+    }
+
+    void releaseInflater(final Inflater inflater) {
+        if (disposed) {
+            inflater.end();
+            return;
+        }
+        if (pooledInflaters.incrementAndGet() > MAX_POOLED) {
+            pooledInflaters.decrementAndGet();
+            inflater.end();
+            return;
+        }
+        inflater.reset();
+        inflaters.offer(inflater);
+    }
+
+    /**
+     * @return The number of idle deflaters in the pool
+     */
+    public int getPooledDeflaters() {
+        return pooledDeflaters.get();
+    }
+
+    /**
+     * @return The number of idle inflaters in the pool
+     */
+    public int getPooledInflaters() {
+        return pooledInflaters.get();
+    }
+
+    /**
+     * End all pooled deflaters and inflaters. Instances released afterwards
+     * are ended straight away.
+     */
+    public void dispose() {
+        disposed = true;
+
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            pooledDeflaters.decrementAndGet();
+            deflater.end();
+        }
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            pooledInflaters.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    /**
+     * Is the file, judging by its extension, already compressed?
+     * 
+     * @param fileName
+     *            The file name, may be null
+     * @return True if the file is known to be compressed
+     */
+    public static boolean isCompressedFileName(final String fileName) {
+        if (fileName == null) {
+            return false;
+        }
+        int dotIndex = fileName.lastIndexOf('.');
+        if (dotIndex == -1) {
+            return false;
+        }
+        return COMPRESSED_EXTENSIONS.contains(fileName.substring(dotIndex + 1)
+                .toLowerCase());
+    }
+
+    /**
+     * Does the data start with the signature of a compressed file format?
+     * 
+     * @param data
+     *            The first block of the file
+     * @param offset
+     *            The offset of the block in the array
+     * @param length
+     *            The length of the block
+     * @return True if the data is known to be compressed
+     */
+    public static boolean isCompressedData(final byte[] data,
+            final int offset, final int length) {
+        for (byte[] signature : COMPRESSED_SIGNATURES) {
+            if (signature.length > length) {
+                continue;
+            }
+
+            boolean matches = true;
+            for (int i = 0; i < signature.length; i++) {
+                if (data[offset + i] != signature[i]) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse the name of a compression strategy.
+     * 
+     * @param strategy
+     *            DEFAULT, FILTERED or HUFFMAN_ONLY, case insensitive
+     * @return The {@link Deflater} strategy
+     * @throws IllegalArgumentException
+     *             If the strategy is not known
+     */
+    public static int parseStrategy(final String strategy) {
+        if ("DEFAULT".equalsIgnoreCase(strategy)) {
+            return Deflater.DEFAULT_STRATEGY;
+        } else if ("FILTERED".equalsIgnoreCase(strategy)) {
+            return Deflater.FILTERED;
+        } else if ("HUFFMAN_ONLY".equalsIgnoreCase(strategy)) {
+            return Deflater.HUFFMAN_ONLY;
+        } else {
+            throw new IllegalArgumentException(
+                    "Unknown compression strategy: " + strategy);
+        }
+    }
+}
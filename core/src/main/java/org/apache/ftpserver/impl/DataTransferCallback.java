@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Notified when a data transfer running in the background has finished.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface DataTransferCallback {
+
+    /**
+     * The transfer completed successfully
+     * 
+     * @param transferredSize
+     *            The number of bytes transferred
+     */
+    void transferCompleted(long transferredSize);
+
+    /**
+     * The transfer failed
+     * 
+     * @param transferredSize
+     *            The number of bytes transferred before the failure
+     * @param e
+     *            The cause of the failure
+     */
+    void transferFailed(long transferredSize, IOException e);
+}
@@ -0,0 +1,602 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Drives non-blocking data transfers on a small, fixed number of selector
+ * threads. Each transfer moves data between a {@link FileChannel} and a
+ * non-blocking {@link SocketChannel} whenever the socket is ready, so a slow
+ * client only holds on to its socket buffer and not to a thread. Completed
+ * transfers are reported to their {@link DataTransferCallback} on a separate
+ * executor, so that callbacks never stall the selectors.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DataTransferReactor {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(DataTransferReactor.class);
+
+    /**
+     * The maximum number of bytes moved in a single step of a transfer
+     */
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * How often idle transfers are checked for, in milliseconds
+     */
+    private static final long IDLE_CHECK_INTERVAL = 1000;
+
+    private final Worker[] workers;
+
+    private final Thread[] workerThreads;
+
+    private final ExecutorService callbackExecutor;
+
+    private final AtomicInteger nextWorker = new AtomicInteger();
+
+    /**
+     * A transfer which has been started
+     */
+    public interface PendingTransfer {
+
+        /**
+         * Fail the transfer straight away, notifying its callback in the
+         * calling thread. The selector thread drops the transfer once its
+         * socket has been closed.
+         *
+         * @return false if the callback has already been notified
+         */
+        boolean abort();
+    }
+
+    /**
+     * Create a reactor
+     *
+     * @param selectorThreads
+     *            The number of selector threads
+     * @param callbackThreads
+     *            The number of threads used for completion callbacks
+     * @throws IOException
+     *             If a selector could not be opened
+     */
+    public DataTransferReactor(int selectorThreads, int callbackThreads)
+            throws IOException {
+        final AtomicInteger threadCount = new AtomicInteger();
+        callbackExecutor = Executors.newFixedThreadPool(callbackThreads,
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r,
+                                "DataTransferCallback-"
+                                        + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        workers = new Worker[selectorThreads];
+        workerThreads = new Thread[selectorThreads];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(Selector.open());
+
+            workerThreads[i] = new Thread(workers[i], "DataTransferReactor-"
+                    + i);
+            workerThreads[i].setDaemon(true);
+            workerThreads[i].start();
+        }
+    }
+
+    /**
+     * Start sending the content of a file to the client.
+     *
+     * @param session
+     *            The session owning the transfer
+     * @param out
+     *            The data socket
+     * @param in
+     *            The file, read from its current position until the end
+     * @param limiter
+     *            Enforces the bandwidth limits, released once the transfer
+     *            has finished
+     * @param idleTime
+     *            The maximum idle time in milliseconds, or 0 for unlimited
+     * @param callback
+     *            Notified when the transfer has completed or failed
+     * @return The started transfer
+     */
+    public PendingTransfer sendFile(FtpIoSession session, SocketChannel out,
+            FileChannel in, TransferRateLimiter limiter, int idleTime,
+            DataTransferCallback callback) throws IOException {
+        return submit(new SendFileTransfer(session, out, in, limiter,
+                idleTime, callback));
+    }
+
+    /**
+     * Start receiving a file from the client.
+     *
+     * @param session
+     *            The session owning the transfer
+     * @param in
+     *            The data socket, read until end of stream
+     * @param out
+     *            The file, written from its current position
+     * @param limiter
+     *            Enforces the bandwidth limits, released once the transfer
+     *            has finished
+     * @param idleTime
+     *            The maximum idle time in milliseconds, or 0 for unlimited
+     * @param callback
+     *            Notified when the transfer has completed or failed
+     * @return The started transfer
+     */
+    public PendingTransfer receiveFile(FtpIoSession session, SocketChannel in,
+            FileChannel out, TransferRateLimiter limiter, int idleTime,
+            DataTransferCallback callback) throws IOException {
+        return submit(new ReceiveFileTransfer(session, in, out, limiter,
+                idleTime, callback));
+    }
+
+    private Transfer submit(Transfer transfer) throws IOException {
+        try {
+            transfer.socket.configureBlocking(false);
+            transfer.position = transfer.file.position();
+        } catch (IOException e) {
+            transfer.limiter.release();
+            throw e;
+        }
+
+        int index = (nextWorker.getAndIncrement() & Integer.MAX_VALUE)
+                % workers.length;
+        workers[index].add(transfer);
+        return transfer;
+    }
+
+    /**
+     * Get the number of transfers currently being driven by the reactor
+     *
+     * @return The number of active transfers
+     */
+    public int getActiveTransfers() {
+        int count = 0;
+        for (Worker worker : workers) {
+            count += worker.activeTransfers.get();
+        }
+        return count;
+    }
+
+    /**
+     * Stop all selector threads, failing any transfer still in progress.
+     */
+    public void dispose() {
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+
+        try {
+            // let the workers fail their remaining transfers before the
+            // callback executor goes away
+            for (Thread thread : workerThreads) {
+                thread.join(5000);
+            }
+
+            callbackExecutor.shutdown();
+            callbackExecutor.awaitTermination(5000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // ignore, we're shutting down anyways
+        }
+    }
+
+    /**
+     * A single selector thread and the transfers registered with it
+     */
+    private class Worker implements Runnable {
+
+        private final Selector selector;
+
+        private final Queue<Transfer> newTransfers = new ConcurrentLinkedQueue<Transfer>();
+
+        /**
+         * Transfers waiting for their rate limit, only used by the worker
+         * thread
+         */
+        private final List<Transfer> pausedTransfers = new ArrayList<Transfer>();
+
+        /**
+         * All transfers registered with the selector, only used by the worker
+         * thread
+         */
+        private final Set<Transfer> transfers = new HashSet<Transfer>();
+
+        private final AtomicInteger activeTransfers = new AtomicInteger();
+
+        private volatile boolean running = true;
+
+        private long lastIdleCheck = System.currentTimeMillis();
+
+        public Worker(Selector selector) {
+            this.selector = selector;
+        }
+
+        public void add(Transfer transfer) {
+            activeTransfers.incrementAndGet();
+            newTransfers.add(transfer);
+            selector.wakeup();
+        }
+
+        public void stop() {
+            running = false;
+            selector.wakeup();
+        }
+
+        public void run() {
+            try {
+                while (running) {
+                    long timeout = registerNewTransfers();
+
+                    selector.select(timeout);
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys()
+                            .iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        process((Transfer) key.attachment());
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (now - lastIdleCheck >= IDLE_CHECK_INTERVAL) {
+                        checkIdle(now);
+                        lastIdleCheck = now;
+                    }
+                }
+            } catch (IOException e) {
+                LOG.error("Data transfer reactor failed", e);
+            } finally {
+                for (Transfer transfer : new ArrayList<Transfer>(transfers)) {
+                    complete(transfer, new ClosedChannelException());
+                }
+                Transfer transfer;
+                while ((transfer = newTransfers.poll()) != null) {
+                    complete(transfer, new ClosedChannelException());
+                }
+
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    LOG.warn("Failed to close selector", e);
+                }
+            }
+        }
+
+        /**
+         * Register new transfers and resume paused transfers which may
+         * continue.
+         *
+         * @return The maximum time to wait in the next select
+         */
+        private long registerNewTransfers() {
+            Transfer transfer;
+            while ((transfer = newTransfers.poll()) != null) {
+                try {
+                    transfer.key = transfer.socket.register(selector,
+                            transfer.getInterestOps(), transfer);
+                    transfer.lastActivity = System.currentTimeMillis();
+                    transfers.add(transfer);
+                } catch (IOException e) {
+                    complete(transfer, e);
+                }
+            }
+
+            long timeout = IDLE_CHECK_INTERVAL;
+            long now = System.currentTimeMillis();
+            Iterator<Transfer> paused = pausedTransfers.iterator();
+            while (paused.hasNext()) {
+                transfer = paused.next();
+                long delay = transfer.resumeTime - now;
+                if (delay <= 0) {
+                    paused.remove();
+                    if (transfer.key.isValid()) {
+                        transfer.key.interestOps(transfer.getInterestOps());
+                        transfer.lastActivity = now;
+                    } else {
+                        complete(transfer, new ClosedChannelException());
+                    }
+                } else {
+                    timeout = Math.min(timeout, delay);
+                }
+            }
+
+            return timeout;
+        }
+
+        private void process(Transfer transfer) {
+            try {
+                if (!transfer.key.isValid()) {
+                    throw new ClosedChannelException();
+                }
+
+                long count = transfer.step();
+                if (count < 0) {
+                    complete(transfer, null);
+                    return;
+                } else if (count == 0) {
+                    return;
+                }
+
+                transfer.transferred(count);
+
+                // stay within the rate limits
+                long delay = transfer.limiter.acquire(count);
+                if (delay > 0) {
+                    transfer.key.interestOps(0);
+                    transfer.resumeTime = System.currentTimeMillis() + delay;
+                    pausedTransfers.add(transfer);
+                }
+            } catch (IOException e) {
+                complete(transfer, e);
+            } catch (RuntimeException e) {
+                LOG.warn("Exception during data transfer", e);
+                complete(transfer, new IOException(e.getMessage()));
+            }
+        }
+
+        /**
+         * Fail transfers which have been idle for too long, or for which the
+         * data connection has been closed by someone else (e.g. on ABOR)
+         */
+        private void checkIdle(long now) {
+            for (Transfer transfer : new ArrayList<Transfer>(transfers)) {
+                if (!transfer.key.isValid()) {
+                    complete(transfer, new ClosedChannelException());
+                } else if (transfer.idleTime > 0
+                        && transfer.key.interestOps() != 0
+                        && now - transfer.lastActivity > transfer.idleTime) {
+                    complete(transfer, new SocketTimeoutException(
+                            "Data connection idle for more than "
+                                    + transfer.idleTime + " ms"));
+                }
+            }
+        }
+
+        private void complete(final Transfer transfer,
+                final IOException failure) {
+            if (transfer.key != null) {
+                transfer.key.cancel();
+            }
+            transfers.remove(transfer);
+            pausedTransfers.remove(transfer);
+            activeTransfers.decrementAndGet();
+            transfer.limiter.release();
+
+            if (failure != null) {
+                LOG.debug("Data transfer failed", failure);
+            }
+            if (!transfer.notified.compareAndSet(false, true)) {
+                // aborted
+                return;
+            }
+
+            Runnable notification = new Runnable() {
+                public void run() {
+                    if (failure == null) {
+                        transfer.callback
+                                .transferCompleted(transfer.transferredSize);
+                    } else {
+                        transfer.callback.transferFailed(
+                                transfer.transferredSize, failure);
+                    }
+                }
+            };
+
+            try {
+                callbackExecutor.execute(notification);
+            } catch (RejectedExecutionException e) {
+                // shutting down, notify directly
+                notification.run();
+            }
+        }
+    }
+
+    /**
+     * The state of a single transfer. Only accessed by the worker thread once
+     * submitted, except for aborting it.
+     */
+    private abstract static class Transfer implements PendingTransfer {
+
+        protected final FtpIoSession session;
+
+        protected final SocketChannel socket;
+
+        protected final FileChannel file;
+
+        private final TransferRateLimiter limiter;
+
+        private final int idleTime;
+
+        private final DataTransferCallback callback;
+
+        protected long position;
+
+        private volatile long transferredSize;
+
+        private final AtomicBoolean notified = new AtomicBoolean();
+
+        private long lastActivity;
+
+        private long resumeTime;
+
+        private SelectionKey key;
+
+        public Transfer(FtpIoSession session, SocketChannel socket,
+                FileChannel file, TransferRateLimiter limiter, int idleTime,
+                DataTransferCallback callback) {
+            this.session = session;
+            this.socket = socket;
+            this.file = file;
+            this.limiter = limiter;
+            this.idleTime = idleTime;
+            this.callback = callback;
+        }
+
+        public boolean abort() {
+            if (!notified.compareAndSet(false, true)) {
+                return false;
+            }
+            callback.transferFailed(transferredSize, new SocketException(
+                    "Data transfer aborted"));
+            return true;
+        }
+
+        /**
+         * @return The operations to wait for on the socket
+         */
+        public abstract int getInterestOps();
+
+        /**
+         * Move as much data as possible without blocking.
+         *
+         * @return The number of bytes moved, -1 when the transfer is done
+         */
+        public abstract long step() throws IOException;
+
+        /**
+         * Update the counters after bytes have been moved
+         */
+        protected void transferred(long count) {
+            position += count;
+            transferredSize += count;
+            lastActivity = System.currentTimeMillis();
+
+            session.updateLastAccessTime();
+        }
+
+        protected long getChunkSize() {
+            return limiter.getChunkSize(CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Sends a file, waiting for the socket to become writable whenever the
+     * socket send buffer is full
+     */
+    private static class SendFileTransfer extends Transfer {
+
+        public SendFileTransfer(FtpIoSession session, SocketChannel socket,
+                FileChannel file, TransferRateLimiter limiter, int idleTime,
+                DataTransferCallback callback) {
+            super(session, socket, file, limiter, idleTime, callback);
+        }
+
+        @Override
+        public int getInterestOps() {
+            return SelectionKey.OP_WRITE;
+        }
+
+        @Override
+        public long step() throws IOException {
+            long count = file.transferTo(position, getChunkSize(), socket);
+            if (count == 0 && position >= file.size()) {
+                return -1;
+            }
+            return count;
+        }
+
+        @Override
+        protected void transferred(long count) {
+            super.transferred(count);
+            session.increaseWrittenDataBytes((int) count);
+        }
+    }
+
+    /**
+     * Receives a file, waiting for the socket to become readable whenever no
+     * data is available
+     */
+    private static class ReceiveFileTransfer extends Transfer {
+
+        /**
+         * used to tell the end of stream apart from no data being available
+         */
+        private final ByteBuffer probe = ByteBuffer.allocate(1);
+
+        public ReceiveFileTransfer(FtpIoSession session, SocketChannel socket,
+                FileChannel file, TransferRateLimiter limiter, int idleTime,
+                DataTransferCallback callback) {
+            super(session, socket, file, limiter, idleTime, callback);
+        }
+
+        @Override
+        public int getInterestOps() {
+            return SelectionKey.OP_READ;
+        }
+
+        @Override
+        public long step() throws IOException {
+            long count = file.transferFrom(socket, position, getChunkSize());
+            if (count == 0) {
+                probe.clear();
+                int read = socket.read(probe);
+                if (read == -1) {
+                    return -1;
+                } else if (read > 0) {
+                    probe.flip();
+                    count = file.write(probe, position);
+                }
+            }
+            return count;
+        }
+
+        @Override
+        protected void transferred(long count) {
+            super.transferred(count);
+            session.increaseReadDataBytes((int) count);
+        }
+    }
+}
@@ -19,7 +19,6 @@
 
 package org.apache.ftpserver.impl;
 
-import org.apache.ftpserver.ConnectionConfig;
 import org.apache.ftpserver.ConnectionConfigFactory;
 
 /**
@@ -27,7 +26,7 @@ import org.apache.ftpserver.ConnectionConfigFactory;
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a> *
  */
-public class DefaultConnectionConfig implements ConnectionConfig {
+public class DefaultConnectionConfig implements ServerConnectionConfig {
 
     private int maxLogins = 10;
 
@@ -41,18 +40,55 @@ public class DefaultConnectionConfig implements ConnectionConfig {
     
     private int maxThreads = 0;
 
+    private int maxDownloadRate = 0;
+
+    private int maxUploadRate = 0;
+
+    private int maxUserDownloadRate = 0;
+
+    private int maxUserUploadRate = 0;
+
+    private int transferBurstSize = 0;
+
+    private int listingCacheSize = 0;
+
+    private int listingCacheMaxAge = 30;
+
+    private int authenticationThreads = 0;
+
+    private int maxLoginFailureDelay = 0;
+
+    private int loginBanThreshold = 0;
+
+    private int loginBanTime = 600;
+
     /**
      * Internal constructor, do not use directly. Use {@link ConnectionConfigFactory} instead
      */
     public DefaultConnectionConfig(boolean anonymousLoginEnabled,
             int loginFailureDelay, int maxLogins, int maxAnonymousLogins,
-            int maxLoginFailures, int maxThreads) {
+            int maxLoginFailures, int maxThreads, int maxDownloadRate,
+            int maxUploadRate, int maxUserDownloadRate, int maxUserUploadRate,
+            int transferBurstSize, int listingCacheSize,
+            int listingCacheMaxAge, int authenticationThreads,
+            int maxLoginFailureDelay, int loginBanThreshold, int loginBanTime) {
         this.anonymousLoginEnabled = anonymousLoginEnabled;
         this.loginFailureDelay = loginFailureDelay;
         this.maxLogins = maxLogins;
         this.maxAnonymousLogins = maxAnonymousLogins;
         this.maxLoginFailures = maxLoginFailures;
         this.maxThreads = maxThreads;
+        this.maxDownloadRate = maxDownloadRate;
+        this.maxUploadRate = maxUploadRate;
+        this.maxUserDownloadRate = maxUserDownloadRate;
+        this.maxUserUploadRate = maxUserUploadRate;
+        this.transferBurstSize = transferBurstSize;
+        this.listingCacheSize = listingCacheSize;
+        this.listingCacheMaxAge = listingCacheMaxAge;
+        this.authenticationThreads = authenticationThreads;
+        this.maxLoginFailureDelay = maxLoginFailureDelay;
+        this.loginBanThreshold = loginBanThreshold;
+        this.loginBanTime = loginBanTime;
     }
 
     public int getLoginFailureDelay() {
@@ -78,5 +114,49 @@ public class DefaultConnectionConfig implements ConnectionConfig {
     public int getMaxThreads() {
         return maxThreads;
     }
+
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    public int getMaxUserDownloadRate() {
+        return maxUserDownloadRate;
+    }
+
+    public int getMaxUserUploadRate() {
+        return maxUserUploadRate;
+    }
+
+    public int getTransferBurstSize() {
+        return transferBurstSize;
+    }
+
+    public int getListingCacheSize() {
+        return listingCacheSize;
+    }
+
+    public int getListingCacheMaxAge() {
+        return listingCacheMaxAge;
+    }
+
+    public int getAuthenticationThreads() {
+        return authenticationThreads;
+    }
+
+    public int getMaxLoginFailureDelay() {
+        return maxLoginFailureDelay;
+    }
+
+    public int getLoginBanThreshold() {
+        return loginBanThreshold;
+    }
+
+    public int getLoginBanTime() {
+        return loginBanTime;
+    }
     
 }
@@ -19,7 +19,6 @@
 
 package org.apache.ftpserver.impl;
 
-import org.apache.ftpserver.DataConnectionConfiguration;
 import org.apache.ftpserver.DataConnectionConfigurationFactory;
 import org.apache.ftpserver.ssl.SslConfiguration;
 
@@ -31,7 +30,7 @@ import org.apache.ftpserver.ssl.SslConfiguration;
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public class DefaultDataConnectionConfiguration implements
-        DataConnectionConfiguration {
+        ServerDataConnectionConfiguration {
 
     // maximum idle time in seconds
     private int idleTime;
@@ -49,6 +48,28 @@ public class DefaultDataConnectionConfiguration implements
 
     private final boolean implicitSsl;
 
+    private final boolean zeroCopyEnabled;
+
+    private final boolean nonBlocking;
+
+    private final int maxDownloadRate;
+
+    private final int maxUploadRate;
+
+    private final int compressionLevel;
+
+    private final int compressionStrategy;
+
+    private final boolean skipCompressedData;
+
+    private final boolean passiveSocketPoolingEnabled;
+
+    private final int listingThreads;
+
+    private final int parallelListingThreshold;
+
+    private final boolean listingSorted;
+
     /**
      * Internal constructor, do not use directly. Use {@link DataConnectionConfigurationFactory} instead.
      */
@@ -56,7 +77,12 @@ public class DefaultDataConnectionConfiguration implements
             SslConfiguration ssl, boolean activeEnabled, boolean activeIpCheck,
             String activeLocalAddress, int activeLocalPort,
             String passiveAddress, PassivePortResolver passivePortsResolver,
-            String passiveExternalAddress, boolean implicitSsl) {
+            String passiveExternalAddress, boolean implicitSsl,
+            boolean zeroCopyEnabled, boolean nonBlocking, int maxDownloadRate,
+            int maxUploadRate, int compressionLevel, int compressionStrategy,
+            boolean skipCompressedData, boolean passiveSocketPoolingEnabled,
+            int listingThreads, int parallelListingThreshold,
+            boolean listingSorted) {
         this.idleTime = idleTime;
         this.ssl = ssl;
         this.activeEnabled = activeEnabled;
@@ -67,6 +93,17 @@ public class DefaultDataConnectionConfiguration implements
         this.passivePortResolver = passivePortsResolver;
         this.passiveExternalAddress = passiveExternalAddress;
         this.implicitSsl = implicitSsl;
+        this.zeroCopyEnabled = zeroCopyEnabled;
+        this.nonBlocking = nonBlocking;
+        this.maxDownloadRate = maxDownloadRate;
+        this.maxUploadRate = maxUploadRate;
+        this.compressionLevel = compressionLevel;
+        this.compressionStrategy = compressionStrategy;
+        this.skipCompressedData = skipCompressedData;
+        this.passiveSocketPoolingEnabled = passiveSocketPoolingEnabled;
+        this.listingThreads = listingThreads;
+        this.parallelListingThreshold = parallelListingThreshold;
+        this.listingSorted = listingSorted;
     }
 
     /**
@@ -122,7 +159,7 @@ public class DefaultDataConnectionConfiguration implements
      * Get passive data port. Data port number zero (0) means that any available
      * port will be used.
      */
-    public synchronized int requestPassivePort(FtpIoSession session) {
+    public int requestPassivePort(FtpIoSession session) {
     	return passivePortResolver.requestPassivePort(session);
     }
 
@@ -138,7 +175,7 @@ public class DefaultDataConnectionConfiguration implements
     /**
      * Release data port
      */
-    public synchronized void releasePassivePort(final FtpIoSession session, final int port) {
+    public void releasePassivePort(final FtpIoSession session, final int port) {
         passivePortResolver.releasePassivePort(session,port);
     }
 
@@ -155,4 +192,88 @@ public class DefaultDataConnectionConfiguration implements
     public boolean isImplicitSsl() {
         return implicitSsl;
     }
+
+    /**
+     * @see ServerDataConnectionConfiguration#isZeroCopyEnabled()
+     */
+    public boolean isZeroCopyEnabled() {
+        return zeroCopyEnabled;
+    }
+
+    /**
+     * @see ServerDataConnectionConfiguration#isNonBlocking()
+     */
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    /**
+     * @see ServerDataConnectionConfiguration#getMaxDownloadRate()
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * @see ServerDataConnectionConfiguration#getMaxUploadRate()
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * @see ServerDataConnectionConfiguration#getCompressionLevel()
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @see ServerDataConnectionConfiguration#getCompressionStrategy()
+     */
+    public int getCompressionStrategy() {
+        return compressionStrategy;
+    }
+
+    /**
+     * @see ServerDataConnectionConfiguration#isSkipCompressedData()
+     */
+    public boolean isSkipCompressedData() {
+        return skipCompressedData;
+    }
+
+    /**
+     * @see ServerDataConnectionConfiguration#isPassiveSocketPoolingEnabled()
+     */
+    public boolean isPassiveSocketPoolingEnabled() {
+        return passiveSocketPoolingEnabled;
+    }
+
+    /**
+     * @see ServerDataConnectionConfiguration#isPassivePortSharingEnabled()
+     */
+    public boolean isPassivePortSharingEnabled() {
+        return passivePortResolver instanceof SharedPassivePortResolver;
+    }
+
+    /**
+     * @see ServerDataConnectionConfiguration#getListingThreads()
+     */
+    public int getListingThreads() {
+        return listingThreads;
+    }
+
+    /**
+     * @see ServerDataConnectionConfiguration#getParallelListingThreshold()
+     */
+    public int getParallelListingThreshold() {
+        return parallelListingThreshold;
+    }
+
+    /**
+     * @see ServerDataConnectionConfiguration#isListingSorted()
+     */
+    public boolean isListingSorted() {
+        return listingSorted;
+    }
 }
@@ -34,6 +34,7 @@ import org.apache.ftpserver.listener.Listener;
 import org.apache.mina.core.session.IdleStatus;
 import org.apache.mina.core.write.WriteToClosedSessionException;
 import org.apache.mina.filter.codec.ProtocolDecoderException;
+import org.apache.mina.filter.codec.RecoverableProtocolDecoderException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +50,13 @@ public class DefaultFtpHandler implements FtpHandler {
     private final static String[] NON_AUTHENTICATED_COMMANDS = new String[] {
             "USER", "PASS", "AUTH", "QUIT", "PROT", "PBSZ" };
 
+    /**
+     * Commands handled while a data transfer runs in the background, all
+     * others wait for the transfer to complete
+     */
+    private final static String[] TRANSFER_COMMANDS = new String[] {
+            "ABOR", "STAT" };
+
     private FtpServerContext context;
 
     private Listener listener;
@@ -145,6 +153,11 @@ public class DefaultFtpHandler implements FtpHandler {
                     "Client sent command that could not be decoded: {}",
                     ((ProtocolDecoderException)cause).getHexdump());
             session.write(new DefaultFtpReply(FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS, "Invalid character in command"));
+        } else if (cause instanceof RecoverableProtocolDecoderException) {
+            // the command line was too long and has been discarded
+            LOG.warn("Client sent command that could not be decoded: {}",
+                    cause.getMessage());
+            session.write(new DefaultFtpReply(FtpReply.REPLY_500_SYNTAX_ERROR_COMMAND_UNRECOGNIZED, "Command line too long"));
         } else if (cause instanceof WriteToClosedSessionException) {
             WriteToClosedSessionException writeToClosedSessionException = 
                 (WriteToClosedSessionException) cause;
@@ -171,8 +184,35 @@ public class DefaultFtpHandler implements FtpHandler {
         return okay;
     }
 
+    private boolean isCommandOkDuringTransfer(String command) {
+        for (String allowed : TRANSFER_COMMANDS) {
+            if (allowed.equals(command)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void messageReceived(final FtpIoSession session,
             final FtpRequest request) throws Exception {
+        if (session.deferRequest(request, isCommandOkDuringTransfer(request
+                .getCommand()))) {
+            // handled in order once the pending login or transfer has
+            // completed
+            return;
+        }
+
+        try {
+            handleRequest(session, request);
+        } finally {
+            // continue with the requests deferred during a login or a
+            // transfer, if any
+            session.replayDeferredRequest();
+        }
+    }
+
+    private void handleRequest(final FtpIoSession session,
+            final FtpRequest request) throws Exception {
         try {
             session.updateLastAccessTime();
             
@@ -208,6 +248,13 @@ public class DefaultFtpHandler implements FtpHandler {
                 if (command != null) {
                     synchronized (session) {
                         command.execute(session, context, request);
+
+                        if (session.isDataTransferPending()
+                                || session.isAuthenticationPending()) {
+                            // the command continues in the background,
+                            // Ftplets will be notified when it completes
+                            return;
+                        }
                     }
                 } else {
                     session.write(LocalizedFtpReply.translate(session, request,
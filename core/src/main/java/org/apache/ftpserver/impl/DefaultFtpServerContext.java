@@ -19,8 +19,10 @@
 
 package org.apache.ftpserver.impl;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -28,8 +30,11 @@ import java.util.concurrent.TimeUnit;
 
 import org.apache.ftpserver.ConnectionConfig;
 import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.DataConnectionConfiguration;
 import org.apache.ftpserver.command.CommandFactory;
 import org.apache.ftpserver.command.CommandFactoryFactory;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
+import org.apache.ftpserver.command.impl.listing.ListingExecutor;
 import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
 import org.apache.ftpserver.ftplet.Authority;
 import org.apache.ftpserver.ftplet.FileSystemFactory;
@@ -44,7 +49,9 @@ import org.apache.ftpserver.message.MessageResource;
 import org.apache.ftpserver.message.MessageResourceFactory;
 import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
 import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.CachingUserManager;
 import org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission;
+import org.apache.ftpserver.usermanager.impl.DbUserManager;
 import org.apache.ftpserver.usermanager.impl.TransferRatePermission;
 import org.apache.ftpserver.usermanager.impl.WritePermission;
 import org.apache.mina.filter.executor.OrderedThreadPoolExecutor;
@@ -86,6 +93,36 @@ public class DefaultFtpServerContext implements FtpServerContext {
      * The thread pool executor to be used by the server using this context
      */
     private ThreadPoolExecutor threadPoolExecutor = null;
+
+    /**
+     * The reactor for non-blocking data transfers, if used
+     */
+    private DataTransferReactor dataTransferReactor = null;
+
+    private BandwidthShaper bandwidthShaper = null;
+
+    /**
+     * The maximum number of bytes kept in idle pooled buffers
+     */
+    private static final long MAX_POOLED_BYTES = 16 * 1024 * 1024;
+
+    private BufferPool bufferPool = null;
+
+    private CompressionEngine compressionEngine = null;
+
+    private final ReplyCache replyCache = new ReplyCache();
+
+    private PassiveSocketPool passiveSocketPool = null;
+
+    private SharedPassiveAcceptors sharedPassiveAcceptors = null;
+
+    private ListingCache listingCache = null;
+
+    private final Map<DataConnectionConfiguration, ListingExecutor> listingExecutors = new IdentityHashMap<DataConnectionConfiguration, ListingExecutor>();
+
+    private AuthenticationExecutor authenticationExecutor = null;
+
+    private LoginThrottle loginThrottle = null;
     
     static {
         ADMIN_AUTHORITIES.add(new WritePermission());
@@ -208,6 +245,50 @@ public class DefaultFtpServerContext implements FtpServerContext {
                 // TODO: how to handle?
             }
         }
+        synchronized (this) {
+            if (dataTransferReactor != null) {
+                LOG.debug("Shutting down the data transfer reactor");
+                dataTransferReactor.dispose();
+                dataTransferReactor = null;
+            }
+            if (compressionEngine != null) {
+                compressionEngine.dispose();
+                compressionEngine = null;
+            }
+            if (passiveSocketPool != null) {
+                LOG.debug("Closing the pooled passive sockets");
+                passiveSocketPool.dispose();
+                passiveSocketPool = null;
+            }
+            if (sharedPassiveAcceptors != null) {
+                LOG.debug("Closing the shared passive ports");
+                sharedPassiveAcceptors.dispose();
+                sharedPassiveAcceptors = null;
+            }
+            if (listingCache != null) {
+                listingCache.clear();
+                listingCache = null;
+            }
+            for (ListingExecutor listingExecutor : listingExecutors.values()) {
+                listingExecutor.dispose();
+            }
+            listingExecutors.clear();
+            if (authenticationExecutor != null) {
+                authenticationExecutor.dispose();
+                authenticationExecutor = null;
+            }
+            if (bufferPool != null) {
+                bufferPool.dispose();
+                bufferPool = null;
+            }
+        }
+
+        // close the pooled database connections
+        if (userManager instanceof DbUserManager) {
+            ((DbUserManager) userManager).dispose();
+        } else if (userManager instanceof CachingUserManager) {
+            ((CachingUserManager) userManager).dispose();
+        }
     }
 
     public Listener getListener(String name) {
@@ -258,8 +339,104 @@ public class DefaultFtpServerContext implements FtpServerContext {
         return connectionConfig;
     }
 
-    public void setConnectionConfig(ConnectionConfig connectionConfig) {
+    /**
+     * The connection configuration, including the settings internal to the
+     * server
+     */
+    private ServerConnectionConfig getServerConnectionConfig() {
+        return (ServerConnectionConfig) connectionConfig;
+    }
+
+    public synchronized void setConnectionConfig(ConnectionConfig connectionConfig) {
         this.connectionConfig = connectionConfig;
+        this.bandwidthShaper = null;
+        this.listingCache = null;
+        this.loginThrottle = null;
+        if (authenticationExecutor != null) {
+            authenticationExecutor.dispose();
+            authenticationExecutor = null;
+        }
+    }
+
+    public synchronized BandwidthShaper getBandwidthShaper() {
+        if (bandwidthShaper == null) {
+            bandwidthShaper = new BandwidthShaper(getServerConnectionConfig());
+        }
+        return bandwidthShaper;
+    }
+
+    public synchronized BufferPool getBufferPool() {
+        if (bufferPool == null) {
+            bufferPool = new BufferPool(MAX_POOLED_BYTES);
+        }
+        return bufferPool;
+    }
+
+    public ReplyCache getReplyCache() {
+        return replyCache;
+    }
+
+    public synchronized ListingCache getListingCache() {
+        ServerConnectionConfig config = getServerConnectionConfig();
+        if (listingCache == null && config.getListingCacheSize() > 0) {
+            listingCache = new ListingCache(config.getListingCacheSize(),
+                    config.getListingCacheMaxAge() * 1000L);
+        }
+        return listingCache;
+    }
+
+    public synchronized ListingExecutor getListingExecutor(
+            ServerDataConnectionConfiguration config) {
+        if (config.getListingThreads() <= 0) {
+            return null;
+        }
+        ListingExecutor listingExecutor = listingExecutors.get(config);
+        if (listingExecutor == null) {
+            LOG.debug("Intializing listing executor with {} threads", config
+                    .getListingThreads());
+            listingExecutor = new ListingExecutor(config.getListingThreads(),
+                    config.getParallelListingThreshold());
+            listingExecutors.put(config, listingExecutor);
+        }
+        return listingExecutor;
+    }
+
+    public synchronized AuthenticationExecutor getAuthenticationExecutor() {
+        if (authenticationExecutor == null) {
+            LOG.debug("Intializing authentication executor with {} threads",
+                    getServerConnectionConfig().getAuthenticationThreads());
+            authenticationExecutor = new AuthenticationExecutor(
+                    getServerConnectionConfig().getAuthenticationThreads());
+        }
+        return authenticationExecutor;
+    }
+
+    public synchronized LoginThrottle getLoginThrottle() {
+        if (loginThrottle == null) {
+            loginThrottle = new LoginThrottle(getServerConnectionConfig());
+        }
+        return loginThrottle;
+    }
+
+    public synchronized PassiveSocketPool getPassiveSocketPool() {
+        if (passiveSocketPool == null) {
+            passiveSocketPool = new PassiveSocketPool();
+        }
+        return passiveSocketPool;
+    }
+
+    public synchronized SharedPassiveAcceptors getSharedPassiveAcceptors() {
+        if (sharedPassiveAcceptors == null) {
+            sharedPassiveAcceptors = new SharedPassiveAcceptors();
+        }
+        return sharedPassiveAcceptors;
+    }
+
+    public synchronized CompressionEngine getCompressionEngine() {
+        if (compressionEngine == null) {
+            compressionEngine = new CompressionEngine(getBufferPool());
+        }
+        return compressionEngine;
     }
     
     public synchronized ThreadPoolExecutor getThreadPoolExecutor() {
@@ -279,4 +456,19 @@ public class DefaultFtpServerContext implements FtpServerContext {
         }
         return threadPoolExecutor;
     }
+
+    public synchronized DataTransferReactor getDataTransferReactor() {
+        if (dataTransferReactor == null) {
+            int processors = Runtime.getRuntime().availableProcessors();
+            LOG.debug("Intializing data transfer reactor with {} selector threads", processors);
+            try {
+                dataTransferReactor = new DataTransferReactor(processors,
+                        2 * processors);
+            } catch (IOException e) {
+                throw new IllegalStateException(
+                        "Failed to create the data transfer reactor", e);
+            }
+        }
+        return dataTransferReactor;
+    }
 }
@@ -21,14 +21,18 @@ package org.apache.ftpserver.impl;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.usermanager.impl.TransferClassRequest;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -76,6 +80,10 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
 
     private AtomicLong bytesDownload = new AtomicLong(0L);
 
+    private Map<String, AtomicLong> classBytesUpload = new ConcurrentHashMap<String, AtomicLong>();
+
+    private Map<String, AtomicLong> classBytesDownload = new ConcurrentHashMap<String, AtomicLong>();
+
     private static class UserLogins {
         private Map<InetAddress, AtomicInteger> perAddress = new ConcurrentHashMap<InetAddress, AtomicInteger>();
 
@@ -166,6 +174,32 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
         return bytesDownload.get();
     }
 
+    /**
+     * Get the transfer classes that have uploaded or downloaded files.
+     */
+    public Set<String> getTransferClasses() {
+        Set<String> transferClasses = new HashSet<String>(classBytesUpload
+                .keySet());
+        transferClasses.addAll(classBytesDownload.keySet());
+        return Collections.unmodifiableSet(transferClasses);
+    }
+
+    /**
+     * Get total number of bytes uploaded by a transfer class.
+     */
+    public long getTotalUploadSize(final String transferClass) {
+        AtomicLong bytes = classBytesUpload.get(transferClass);
+        return bytes == null ? 0 : bytes.get();
+    }
+
+    /**
+     * Get total number of bytes downloaded by a transfer class.
+     */
+    public long getTotalDownloadSize(final String transferClass) {
+        AtomicLong bytes = classBytesDownload.get(transferClass);
+        return bytes == null ? 0 : bytes.get();
+    }
+
     /**
      * Get total directory created.
      */
@@ -268,6 +302,7 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
             final FtpFile file, final long size) {
         uploadCount.incrementAndGet();
         bytesUpload.addAndGet(size);
+        addClassBytes(classBytesUpload, session, size);
         notifyUpload(session, file, size);
     }
 
@@ -278,9 +313,30 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
             final FtpFile file, final long size) {
         downloadCount.incrementAndGet();
         bytesDownload.addAndGet(size);
+        addClassBytes(classBytesDownload, session, size);
         notifyDownload(session, file, size);
     }
 
+    private void addClassBytes(final Map<String, AtomicLong> classBytes,
+            final FtpIoSession session, final long size) {
+        String transferClass = TransferClassRequest.DEFAULT_TRANSFER_CLASS;
+        User user = session.getUser();
+        if (user != null) {
+            TransferClassRequest transferClassRequest = (TransferClassRequest) user
+                    .authorize(new TransferClassRequest());
+            if (transferClassRequest != null) {
+                transferClass = transferClassRequest.getTransferClass();
+            }
+        }
+
+        AtomicLong bytes = classBytes.get(transferClass);
+        if (bytes == null) {
+            bytes = new AtomicLong(0L);
+            classBytes.put(transferClass, bytes);
+        }
+        bytes.addAndGet(size);
+    }
+
     /**
      * Increment delete count.
      */
@@ -577,5 +633,8 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
 
         bytesUpload.set(0);
         bytesDownload.set(0);
+
+        classBytesUpload.clear();
+        classBytesDownload.clear();
     }
 }
@@ -23,6 +23,7 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.security.cert.Certificate;
 import java.util.Date;
+import java.util.LinkedList;
 import java.util.Set;
 import java.util.UUID;
 
@@ -33,6 +34,7 @@ import org.apache.ftpserver.ftplet.DataType;
 import org.apache.ftpserver.ftplet.FileSystemView;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.ftpserver.ftplet.FtpSession;
 import org.apache.ftpserver.ftplet.Structure;
 import org.apache.ftpserver.ftplet.User;
@@ -50,6 +52,7 @@ import org.apache.mina.core.session.IoSession;
 import org.apache.mina.core.session.IoSessionConfig;
 import org.apache.mina.core.write.WriteRequest;
 import org.apache.mina.core.write.WriteRequestQueue;
+import org.apache.mina.filter.executor.ExecutorFilter;
 import org.apache.mina.filter.ssl.SslFilter;
 import org.slf4j.LoggerFactory;
 
@@ -112,6 +115,24 @@ public class FtpIoSession implements IoSession {
 	private static final String ATTRIBUTE_CACHED_REMOTE_ADDRESS = ATTRIBUTE_PREFIX
 			+ "cached-remote-address";
 
+	private static final String ATTRIBUTE_DATA_TRANSFER_PENDING = ATTRIBUTE_PREFIX
+			+ "data-transfer-pending";
+
+	private static final String ATTRIBUTE_AUTHENTICATION_PENDING = ATTRIBUTE_PREFIX
+			+ "authentication-pending";
+
+	private static final String ATTRIBUTE_DEFERRED_REQUESTS = ATTRIBUTE_PREFIX
+			+ "deferred-requests";
+
+	private static final String ATTRIBUTE_REPLAYED_REQUEST = ATTRIBUTE_PREFIX
+			+ "replayed-request";
+
+	/**
+	 * The number of deferred requests after which the session is no longer
+	 * read
+	 */
+	private static final int MAX_DEFERRED_REQUESTS = 64;
+
 	private IoSession wrappedSession;
 
 	private FtpServerContext context;
@@ -549,8 +570,12 @@ public class FtpIoSession implements IoSession {
 		if (containsAttribute(ATTRIBUTE_DATA_CONNECTION)) {
 			return (ServerDataConnectionFactory) getAttribute(ATTRIBUTE_DATA_CONNECTION);
 		} else {
-			IODataConnectionFactory dataCon = new IODataConnectionFactory(
-					context, this);
+			IODataConnectionFactory dataCon;
+			if (getDataConnectionConfiguration().isNonBlocking()) {
+				dataCon = new NioDataConnectionFactory(context, this);
+			} else {
+				dataCon = new IODataConnectionFactory(context, this);
+			}
 			dataCon
 					.setServerControlAddress(((InetSocketAddress) getLocalAddress())
 							.getAddress());
@@ -560,6 +585,174 @@ public class FtpIoSession implements IoSession {
 		}
 	}
 
+	/**
+	 * Is a data transfer started by the current command still running in the
+	 * background? Requests received in the meantime, except those which may
+	 * be handled during a transfer, are deferred until it has completed.
+	 */
+	public boolean isDataTransferPending() {
+		return containsAttribute(ATTRIBUTE_DATA_TRANSFER_PENDING);
+	}
+
+	/**
+	 * Get the data connection running a transfer in the background.
+	 * 
+	 * @return The data connection, or null if no transfer is running
+	 */
+	public NioDataConnection getPendingDataTransfer() {
+		return (NioDataConnection) getAttribute(ATTRIBUTE_DATA_TRANSFER_PENDING);
+	}
+
+	/**
+	 * Start or end a data transfer running in the background.
+	 * 
+	 * @param connection
+	 *            The data connection running the transfer, or null once the
+	 *            transfer has completed
+	 */
+	public void setPendingDataTransfer(NioDataConnection connection) {
+		synchronized (wrappedSession) {
+			if (connection != null) {
+				setAttribute(ATTRIBUTE_DATA_TRANSFER_PENDING, connection);
+				if (!containsAttribute(ATTRIBUTE_DEFERRED_REQUESTS)) {
+					setAttribute(ATTRIBUTE_DEFERRED_REQUESTS,
+							new LinkedList<FtpRequest>());
+				}
+			} else {
+				removeAttribute(ATTRIBUTE_DATA_TRANSFER_PENDING);
+			}
+		}
+	}
+
+	/**
+	 * Is a login being completed in the background? Requests received in the
+	 * meantime are deferred until it has completed.
+	 */
+	public boolean isAuthenticationPending() {
+		return containsAttribute(ATTRIBUTE_AUTHENTICATION_PENDING);
+	}
+
+	/**
+	 * Start or end a login completed in the background. Requests are deferred
+	 * from its start until all requests deferred meanwhile have been handled.
+	 */
+	public void setAuthenticationPending(boolean pending) {
+		synchronized (wrappedSession) {
+			if (pending) {
+				setAttribute(ATTRIBUTE_AUTHENTICATION_PENDING, Boolean.TRUE);
+				if (!containsAttribute(ATTRIBUTE_DEFERRED_REQUESTS)) {
+					setAttribute(ATTRIBUTE_DEFERRED_REQUESTS,
+							new LinkedList<FtpRequest>());
+				}
+			} else {
+				removeAttribute(ATTRIBUTE_AUTHENTICATION_PENDING);
+			}
+		}
+	}
+
+	/**
+	 * Defer the handling of a request if a login or a data transfer is
+	 * pending, or if requests deferred earlier have not all been handled yet.
+	 * Once too many requests are deferred, the session is not read until
+	 * they have been handled.
+	 * 
+	 * @param allowedDuringTransfer
+	 *            Can the request be handled while a data transfer is running,
+	 *            e.g. ABOR?
+	 * @return true if the request has been deferred, false if it must be
+	 *         handled now
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean deferRequest(FtpRequest request,
+			boolean allowedDuringTransfer) {
+		synchronized (wrappedSession) {
+			LinkedList<FtpRequest> deferred = (LinkedList<FtpRequest>) getAttribute(ATTRIBUTE_DEFERRED_REQUESTS);
+			if (deferred == null) {
+				return false;
+			}
+			if (getAttribute(ATTRIBUTE_REPLAYED_REQUEST) == request) {
+				removeAttribute(ATTRIBUTE_REPLAYED_REQUEST);
+				return false;
+			}
+			if (allowedDuringTransfer
+					&& containsAttribute(ATTRIBUTE_DATA_TRANSFER_PENDING)
+					&& !containsAttribute(ATTRIBUTE_AUTHENTICATION_PENDING)) {
+				return false;
+			}
+			deferred.add(request);
+			if (deferred.size() < MAX_DEFERRED_REQUESTS) {
+				return true;
+			}
+		}
+
+		// resumed once the deferred requests have been handled
+		suspendRead();
+		return true;
+	}
+
+	/**
+	 * Hand the first deferred request back to the filter chain, so that it is
+	 * handled in order by the threads of the session, and not by the thread
+	 * which completed the login or the transfer. Does nothing while a login
+	 * or a transfer is pending or a handed back request has not been handled
+	 * yet. Once all deferred
+	 * requests have been handled, the session is read again.
+	 */
+	@SuppressWarnings("unchecked")
+	public void replayDeferredRequest() {
+		FtpRequest request;
+		synchronized (wrappedSession) {
+			LinkedList<FtpRequest> deferred = (LinkedList<FtpRequest>) getAttribute(ATTRIBUTE_DEFERRED_REQUESTS);
+			if (deferred == null
+					|| containsAttribute(ATTRIBUTE_AUTHENTICATION_PENDING)
+					|| containsAttribute(ATTRIBUTE_DATA_TRANSFER_PENDING)
+					|| containsAttribute(ATTRIBUTE_REPLAYED_REQUEST)) {
+				return;
+			}
+			request = deferred.poll();
+			if (request == null) {
+				removeAttribute(ATTRIBUTE_DEFERRED_REQUESTS);
+			} else {
+				setAttribute(ATTRIBUTE_REPLAYED_REQUEST, request);
+			}
+		}
+
+		if (request != null) {
+			fireSessionMessage(request);
+		} else if (isConnected()) {
+			resumeRead();
+		}
+	}
+
+	/**
+	 * Run a task in the threads of the session, in order with the requests
+	 * handled by them. Used to complete commands which continued outside of
+	 * the session, so that the completion does not hold a thread shared by
+	 * all sessions.
+	 */
+	public void runInSession(Runnable task) {
+		fireSessionMessage(task);
+	}
+
+	/**
+	 * Hand a message to the filter chain at its thread pool. The filters in
+	 * front of it, e.g. SSL, only expect data read from the client.
+	 */
+	private void fireSessionMessage(Object message) {
+		IoFilterChain.Entry entry = getFilterChain().getEntry(
+				ExecutorFilter.class);
+		if (entry == null) {
+			getFilterChain().fireMessageReceived(message);
+			return;
+		}
+		try {
+			entry.getFilter().messageReceived(entry.getNextFilter(),
+					wrappedSession, message);
+		} catch (Exception e) {
+			getFilterChain().fireExceptionCaught(e);
+		}
+	}
+
 	public FileSystemView getFileSystemView() {
 		return (FileSystemView) getAttribute(ATTRIBUTE_FILE_SYSTEM);
 	}
@@ -583,6 +776,22 @@ public class FtpIoSession implements IoSession {
 		setAttribute(ATTRIBUTE_LISTENER, listener);
 	}
 
+	/**
+	 * The data connection configuration of the listener, including the
+	 * settings internal to the server
+	 */
+	public ServerDataConnectionConfiguration getDataConnectionConfiguration() {
+		return (ServerDataConnectionConfiguration) getListener()
+				.getDataConnectionConfiguration();
+	}
+
+	/**
+	 * The pool of passive sockets of the server
+	 */
+	public PassiveSocketPool getPassiveSocketPool() {
+		return context.getPassiveSocketPool();
+	}
+
 	public FtpSession getFtpletSession() {
 		return new DefaultFtpSession(this);
 	}
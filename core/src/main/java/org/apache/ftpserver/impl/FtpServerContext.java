@@ -24,6 +24,8 @@ import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.ftpserver.ConnectionConfig;
 import org.apache.ftpserver.command.CommandFactory;
+import org.apache.ftpserver.command.impl.listing.ListingCache;
+import org.apache.ftpserver.command.impl.listing.ListingExecutor;
 import org.apache.ftpserver.ftplet.FtpletContext;
 import org.apache.ftpserver.ftpletcontainer.FtpletContainer;
 import org.apache.ftpserver.listener.Listener;
@@ -70,4 +72,81 @@ public interface FtpServerContext extends FtpletContext {
      * @return the thread pool executor for this context.
      */
     ThreadPoolExecutor getThreadPoolExecutor();
+
+    /**
+     * Returns the reactor driving non-blocking data transfers for this
+     * context, created on first use.
+     * @return the data transfer reactor for this context.
+     */
+    DataTransferReactor getDataTransferReactor();
+
+    /**
+     * Returns the shaper enforcing the bandwidth limits for data transfers,
+     * created on first use from the connection configuration.
+     * @return the bandwidth shaper for this context.
+     */
+    BandwidthShaper getBandwidthShaper();
+
+    /**
+     * Returns the pool of buffers shared by the data transfers and the reply
+     * encoders, created on first use.
+     * @return the buffer pool for this context.
+     */
+    BufferPool getBufferPool();
+
+    /**
+     * Returns the engine creating the streams for MODE Z transfers, created
+     * on first use.
+     * @return the compression engine for this context.
+     */
+    CompressionEngine getCompressionEngine();
+
+    /**
+     * Returns the cache of replies which do not depend on the request.
+     * @return the reply cache for this context.
+     */
+    ReplyCache getReplyCache();
+
+    /**
+     * Returns the cache of directory listings, created on first use from the
+     * connection configuration.
+     * @return the listing cache, or null if listings are not cached
+     */
+    ListingCache getListingCache();
+
+    /**
+     * Returns the executor formating large listings for the listeners using
+     * a data connection configuration, created on first use.
+     * @param config the data connection configuration of the listener
+     * @return the listing executor, or null if listing threads are not enabled
+     */
+    ListingExecutor getListingExecutor(ServerDataConnectionConfiguration config);
+
+    /**
+     * Returns the executor running the authentication of logins and the
+     * delayed replies to failed logins, created on first use from the
+     * connection configuration.
+     * @return the authentication executor for this context.
+     */
+    AuthenticationExecutor getAuthenticationExecutor();
+
+    /**
+     * Returns the throttle of failed logins, created on first use from the
+     * connection configuration.
+     * @return the login throttle for this context.
+     */
+    LoginThrottle getLoginThrottle();
+
+    /**
+     * Returns the pool of passive server sockets kept bound between data
+     * connections.
+     * @return the passive socket pool for this context.
+     */
+    PassiveSocketPool getPassiveSocketPool();
+
+    /**
+     * Returns the acceptors of the passive ports shared between sessions.
+     * @return the shared passive port acceptors for this context.
+     */
+    SharedPassiveAcceptors getSharedPassiveAcceptors();
 }
@@ -19,21 +19,23 @@
 
 package org.apache.ftpserver.impl;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.net.Socket;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.zip.Deflater;
 
 import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataType;
 import org.apache.ftpserver.ftplet.FtpSession;
-import org.apache.ftpserver.usermanager.impl.TransferRateRequest;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,17 +56,40 @@ public class IODataConnection implements DataConnection {
 
     private static final byte[] EOL = System.getProperty("line.separator").getBytes();
 
+    /**
+     * The maximum number of bytes sent or received in a single zero-copy
+     * operation
+     */
+    private static final int ZERO_COPY_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * The number of times in a row a zero-copy transfer may make no progress
+     * before the rest of the file is copied instead
+     */
+    private static final int MAX_ZERO_COPY_STALLS = 16;
+
+    /**
+     * The size of the pooled buffers used when copying streams
+     */
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+
     private FtpIoSession session;
 
     private Socket socket;
 
     private ServerDataConnectionFactory factory;
 
+    private FtpServerContext serverContext;
+
+    private String fileName;
+
     public IODataConnection(final Socket socket, final FtpIoSession session,
-            final ServerDataConnectionFactory factory) {
+            final ServerDataConnectionFactory factory,
+            final FtpServerContext serverContext) {
         this.session = session;
         this.socket = socket;
         this.factory = factory;
+        this.serverContext = serverContext;
     }
 
     /**
@@ -82,7 +107,8 @@ public class IODataConnection implements DataConnection {
             // create input stream
             InputStream is = dataSoc.getInputStream();
             if (factory.isZipMode()) {
-                is = new InflaterInputStream(is);
+                is = serverContext.getCompressionEngine()
+                        .createInputStream(is);
             }
             return is;
         } catch (IOException ex) {
@@ -106,7 +132,7 @@ public class IODataConnection implements DataConnection {
             // create output stream
             OutputStream os = dataSoc.getOutputStream();
             if (factory.isZipMode()) {
-                os = new DeflaterOutputStream(os);
+                os = createCompressingStream(os);
             }
             return os;
         } catch (IOException ex) {
@@ -115,27 +141,57 @@ public class IODataConnection implements DataConnection {
         }
     }
 
+    /**
+     * Wrap the data output stream for MODE Z, using the compression level
+     * and strategy of the session. Already compressed files are framed but
+     * not compressed again, if the listener is configured to do so.
+     */
+    private OutputStream createCompressingStream(final OutputStream os) {
+        ServerDataConnectionConfiguration dataCfg = session
+                .getDataConnectionConfiguration();
+        boolean skipCompressed = dataCfg.isSkipCompressedData();
+
+        int level = factory.getZipLevel();
+        if (skipCompressed && CompressionEngine.isCompressedFileName(fileName)) {
+            level = Deflater.NO_COMPRESSION;
+        }
+
+        return serverContext.getCompressionEngine().createOutputStream(os,
+                level, factory.getZipStrategy(), skipCompressed);
+    }
+
+    /**
+     * Set the name of the file transferred over this connection, used to
+     * decide whether the data is worth compressing in MODE Z.
+     * 
+     * @param fileName
+     *            The file name, or null if unknown
+     */
+    public void setFileName(final String fileName) {
+        this.fileName = fileName;
+    }
+
     /*
      * (non-Javadoc)
      *
      * @seeorg.apache.ftpserver.FtpDataConnection2#transferFromClient(java.io.
      * OutputStream)
      */
-    public final long transferFromClient(FtpSession session,
+    public long transferFromClient(FtpSession session,
             final OutputStream out) throws IOException {
-        TransferRateRequest transferRateRequest = new TransferRateRequest();
-        transferRateRequest = (TransferRateRequest) session.getUser()
-                .authorize(transferRateRequest);
-        int maxRate = 0;
-        if (transferRateRequest != null) {
-            maxRate = transferRateRequest.getMaxUploadRate();
-        }
+        TransferRateLimiter limiter = createRateLimiter(true);
 
         InputStream is = getDataInputStream();
         try {
-            return transfer(session, false, is, out, maxRate);
+            FileChannel fileChannel = getZeroCopyChannel(session, out);
+            if (fileChannel != null) {
+                return transferFromClient(session, fileChannel, limiter);
+            }
+
+            return transfer(session, false, is, out, limiter);
         } finally {
             IoUtils.close(is);
+            limiter.release();
         }
     }
 
@@ -146,24 +202,165 @@ public class IODataConnection implements DataConnection {
      * org.apache.ftpserver.FtpDataConnection2#transferToClient(java.io.InputStream
      * )
      */
-    public final long transferToClient(FtpSession session, final InputStream in)
+    public long transferToClient(FtpSession session, final InputStream in)
             throws IOException {
-        TransferRateRequest transferRateRequest = new TransferRateRequest();
-        transferRateRequest = (TransferRateRequest) session.getUser()
-                .authorize(transferRateRequest);
-        int maxRate = 0;
-        if (transferRateRequest != null) {
-            maxRate = transferRateRequest.getMaxDownloadRate();
-        }
+        TransferRateLimiter limiter = createRateLimiter(false);
 
         OutputStream out = getDataOutputStream();
         try {
-            return transfer(session, true, in, out, maxRate);
+            FileChannel fileChannel = getZeroCopyChannel(session, in);
+            if (fileChannel != null) {
+                return transferToClient(session, fileChannel, in, out, limiter);
+            }
+
+            return transfer(session, true, in, out, limiter);
         } finally {
             IoUtils.close(out);
+            limiter.release();
         }
     }
 
+    /**
+     * Get the limiter enforcing the bandwidth limits for a new transfer. The
+     * limiter must be released once the transfer has finished.
+     */
+    protected TransferRateLimiter createRateLimiter(final boolean upload) {
+        return serverContext.getBandwidthShaper().createLimiter(session,
+                upload);
+    }
+
+    /**
+     * Get the translator for the line endings of an ASCII transfer. Override
+     * to support other representations, e.g. EBCDIC.
+     * 
+     * @param toClient
+     *            true if the data is sent to the client, false if it is
+     *            received from the client
+     */
+    protected LineEndingTranslator createLineEndingTranslator(
+            final boolean toClient) {
+        if (toClient) {
+            return new AsciiOutboundTranslator();
+        } else {
+            return new AsciiInboundTranslator(EOL);
+        }
+    }
+
+    /**
+     * Get the file channel to use for a zero-copy transfer of the provided
+     * stream. Zero-copy is only possible for binary transfers of files over
+     * a plain, non compressed data connection backed by a
+     * {@link SocketChannel}.
+     * 
+     * @return The file channel, or null if the stream must be copied
+     */
+    private FileChannel getZeroCopyChannel(final FtpSession session,
+            final InputStream in) {
+        if (!(in instanceof FileInputStream) || !isZeroCopyPossible(session)) {
+            return null;
+        }
+
+        return ((FileInputStream) in).getChannel();
+    }
+
+    /**
+     * Get the file channel to use for a zero-copy transfer into the provided
+     * stream, or null if the data must be copied.
+     */
+    private FileChannel getZeroCopyChannel(final FtpSession session,
+            final OutputStream out) {
+        if (!(out instanceof FileOutputStream) || !isZeroCopyPossible(session)) {
+            return null;
+        }
+
+        return ((FileOutputStream) out).getChannel();
+    }
+
+    private boolean isZeroCopyPossible(final FtpSession session) {
+        ServerDataConnectionConfiguration dataCfg = this.session
+                .getDataConnectionConfiguration();
+        return dataCfg.isZeroCopyEnabled()
+                && session.getDataType() == DataType.BINARY
+                && !factory.isZipMode() && socket != null
+                && socket.getChannel() != null;
+    }
+
+    /**
+     * Transfer a file to the client using
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * , starting at the current position of the channel. This allows the
+     * operating system to send the file directly from the file system cache to
+     * the socket. If the transfer stops making progress, the rest of the file
+     * is copied from the stream instead.
+     */
+    private final long transferToClient(final FtpSession session,
+            final FileChannel in, final InputStream fallbackIn,
+            final OutputStream fallbackOut, final TransferRateLimiter limiter)
+            throws IOException {
+        long transferredSize = 0L;
+
+        // with a rate limit, keep the chunks small enough for the transfer
+        // to be paced smoothly
+        long chunkSize = limiter.getChunkSize(ZERO_COPY_CHUNK_SIZE);
+
+        try {
+            SocketChannel out = socket.getChannel();
+
+            DefaultFtpSession defaultFtpSession = null;
+            if (session instanceof DefaultFtpSession) {
+                defaultFtpSession = (DefaultFtpSession) session;
+            }
+
+            long position = in.position();
+            int stalls = 0;
+            while (true) {
+
+                long count = in.transferTo(position, chunkSize, out);
+
+                if (count <= 0) {
+                    if (position >= in.size()) {
+                        break;
+                    } else if (++stalls >= MAX_ZERO_COPY_STALLS) {
+                        // the stream shares the position of the channel
+                        LOG.debug("Zero-copy transfer stalled, copying the rest of the file");
+                        in.position(position);
+                        transferredSize += transfer(session, true, fallbackIn,
+                                fallbackOut, limiter);
+                        break;
+                    }
+                    Thread.yield();
+                    continue;
+                }
+                stalls = 0;
+
+                // update MINA session
+                if (defaultFtpSession != null) {
+                    defaultFtpSession.increaseWrittenDataBytes((int) count);
+                }
+
+                position += count;
+                transferredSize += count;
+
+                notifyObserver();
+
+                // stay within the rate limits
+                if (!pause(limiter.acquire(count))) {
+                    break;
+                }
+            }
+        } catch(IOException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        } catch(RuntimeException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        }
+
+        return transferredSize;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -173,74 +370,79 @@ public class IODataConnection implements DataConnection {
      */
     public final void transferToClient(FtpSession session, final String str)
             throws IOException {
+        final byte[] bytes = str.getBytes("UTF-8");
+        transferToClient(session, new DataWriter() {
+            public long writeTo(OutputStream out) throws IOException {
+                out.write(bytes);
+                return bytes.length;
+            }
+        });
+    }
+
+    /**
+     * Transfer content generated while it is written, e.g. a directory
+     * listing.
+     * 
+     * @param session
+     *            The current session
+     * @param writer
+     *            Writes the content to the data connection
+     * @return The number of bytes written
+     */
+    public final long transferToClient(FtpSession session,
+            final DataWriter writer) throws IOException {
         OutputStream out = getDataOutputStream();
-        Writer writer = null;
         try {
-            writer = new OutputStreamWriter(out, "UTF-8");
-            writer.write(str);
+            long written = writer.writeTo(out);
 
             // update session
             if (session instanceof DefaultFtpSession) {
-                ((DefaultFtpSession) session).increaseWrittenDataBytes(str
-                        .getBytes("UTF-8").length);
+                ((DefaultFtpSession) session)
+                        .increaseWrittenDataBytes((int) Math.min(written,
+                                Integer.MAX_VALUE));
             }
+            return written;
         } finally {
-            if (writer != null) {
-                writer.flush();
+            try {
+                out.flush();
+            } finally {
+                IoUtils.close(out);
             }
-            IoUtils.close(writer);
         }
-
     }
 
     private final long transfer(FtpSession session, boolean isWrite,
-            final InputStream in, final OutputStream out, final int maxRate)
-            throws IOException {
+            final InputStream in, final OutputStream out,
+            final TransferRateLimiter limiter) throws IOException {
         long transferredSize = 0L;
 
         boolean isAscii = session.getDataType() == DataType.ASCII;
-        long startTime = System.currentTimeMillis();
-        byte[] buff = new byte[4096];
 
-        BufferedInputStream bis = null;
-        BufferedOutputStream bos = null;
+        BufferPool bufferPool = serverContext.getBufferPool();
+        ByteBuffer readBuffer = bufferPool.acquireHeap(STREAM_BUFFER_SIZE);
+        ByteBuffer writeBuffer = null;
         try {
-            bis = IoUtils.getBufferedInputStream(in);
-
-            bos = IoUtils.getBufferedOutputStream(out);
+            byte[] buff = readBuffer.array();
+            int readSize = limiter.getChunkSize(readBuffer.capacity());
+
+            LineEndingTranslator translator = null;
+            byte[] translated = null;
+            if (isAscii) {
+                translator = createLineEndingTranslator(isWrite);
+                writeBuffer = bufferPool.acquireHeap(translator
+                        .getMaxTranslatedLength(readSize));
+                translated = writeBuffer.array();
+            }
 
             DefaultFtpSession defaultFtpSession = null;
             if (session instanceof DefaultFtpSession) {
                 defaultFtpSession = (DefaultFtpSession) session;
             }
 
-            byte lastByte = 0;
             while (true) {
 
-                // if current rate exceeds the max rate, sleep for 50ms
-                // and again check the current transfer rate
-                if (maxRate > 0) {
-
-                    // prevent "divide by zero" exception
-                    long interval = System.currentTimeMillis() - startTime;
-                    if (interval == 0) {
-                        interval = 1;
-                    }
-
-                    // check current rate
-                    long currRate = (transferredSize * 1000L) / interval;
-                    if (currRate > maxRate) {
-                        try {
-                            Thread.sleep(50);
-                        } catch (InterruptedException ex) {
-                            break;
-                        }
-                        continue;
-                    }
-                }
-
                 // read data
-                int count = bis.read(buff);
+                int count = in.read(buff, 0, readSize);
 
                 if (count == -1) {
                     break;
@@ -256,42 +458,117 @@ public class IODataConnection implements DataConnection {
                 }
 
                 // write data
-                // if ascii, replace \n by \r\n
                 if (isAscii) {
-                    for (int i = 0; i < count; ++i) {
-                        byte b = buff[i];
-                        if(isWrite) {
-                            if (b == '\n' && lastByte != '\r') {
-                                bos.write('\r');
-                            }
-
-                            bos.write(b);
-                        } else {
-                            if(b == '\n') {
-                                // for reads, we should always get \r\n
-                                // so what we do here is to ignore \n bytes
-                                // and on \r dump the system local line ending
-                                // Some clients won't transform new lines into \r\n so we make sure we don't delete new lines
-								if (lastByte != '\r'){
-								    bos.write(EOL);
-                                }
-                            } else if(b == '\r') {
-                                bos.write(EOL);
-                            } else {
-                                // not a line ending, just output
-                                bos.write(b);
-                            }
-                        }
-                        // store this byte so that we can compare it for line endings
-                        lastByte = b;
-                    }
+                    int length = translator.translate(buff, 0, count,
+                            translated);
+                    out.write(translated, 0, length);
                 } else {
-                    bos.write(buff, 0, count);
+                    out.write(buff, 0, count);
+                }
+
+                transferredSize += count;
+
+                notifyObserver();
+
+                // stay within the rate limits
+                if (!pause(limiter.acquire(count))) {
+                    break;
+                }
+            }
+        } catch(IOException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        } catch(RuntimeException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        } finally {
+            try {
+                out.flush();
+            } finally {
+                bufferPool.release(readBuffer);
+                bufferPool.release(writeBuffer);
+            }
+        }
+
+        return transferredSize;
+    }
+
+    /**
+     * Transfer data from the client straight into a file using
+     * {@link FileChannel#transferFrom(java.nio.channels.ReadableByteChannel, long, long)}
+     * , starting at the current position of the channel.
+     * 
+     * The socket channel is read in non-blocking mode, waiting for data with a
+     * selector, so that the data connection idle time is still enforced.
+     */
+    private final long transferFromClient(final FtpSession session,
+            final FileChannel out, final TransferRateLimiter limiter)
+            throws IOException {
+        long transferredSize = 0L;
+
+        long chunkSize = limiter.getChunkSize(ZERO_COPY_CHUNK_SIZE);
+
+        // zero means wait forever, as for the socket timeout
+        int idleTime = this.session.getListener()
+                .getDataConnectionConfiguration().getIdleTime() * 1000;
+
+        Selector selector = null;
+        try {
+            SocketChannel in = socket.getChannel();
+            selector = Selector.open();
+            in.configureBlocking(false);
+            in.register(selector, SelectionKey.OP_READ);
+
+            // used to tell the end of stream apart from a spurious wake up
+            ByteBuffer probe = ByteBuffer.allocate(1);
+
+            DefaultFtpSession defaultFtpSession = null;
+            if (session instanceof DefaultFtpSession) {
+                defaultFtpSession = (DefaultFtpSession) session;
+            }
+
+            long position = out.position();
+            while (true) {
+
+                // wait for data
+                if (selector.select(idleTime) == 0) {
+                    throw new SocketTimeoutException(
+                            "Data connection idle for more than " + idleTime
+                                    + " ms");
                 }
+                selector.selectedKeys().clear();
+
+                long count = out.transferFrom(in, position, chunkSize);
+
+                if (count == 0) {
+                    probe.clear();
+                    int read = in.read(probe);
+                    if (read == -1) {
+                        break;
+                    } else if (read == 0) {
+                        continue;
+                    }
 
+                    probe.flip();
+                    count = out.write(probe, position);
+                }
+
+                // update MINA session
+                if (defaultFtpSession != null) {
+                    defaultFtpSession.increaseReadDataBytes((int) count);
+                }
+
+                position += count;
                 transferredSize += count;
 
                 notifyObserver();
+
+                // stay within the rate limits
+                if (!pause(limiter.acquire(count))) {
+                    break;
+                }
             }
         } catch(IOException e) {
             LOG.warn("Exception during data transfer, closing data connection socket", e);
@@ -302,14 +579,30 @@ public class IODataConnection implements DataConnection {
             factory.closeDataConnection();
             throw e;
         } finally {
-            if (bos != null) {
-                bos.flush();
+            if (selector != null) {
+                selector.close();
             }
         }
 
         return transferredSize;
     }
 
+    /**
+     * Pause the transfer for as long as required by the rate limits.
+     * 
+     * @return false if interrupted while pausing
+     */
+    private boolean pause(final long delay) {
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Notify connection manager observer.
      */
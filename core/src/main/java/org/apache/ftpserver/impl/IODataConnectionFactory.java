@@ -24,13 +24,15 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
-import org.apache.ftpserver.DataConnectionConfiguration;
 import org.apache.ftpserver.DataConnectionException;
 import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.FtpException;
@@ -58,6 +60,18 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
     ServerSocket servSoc;
 
+    /**
+     * True if the server socket was acquired from the
+     * {@link PassiveSocketPool}
+     */
+    private boolean pooledServSoc = false;
+
+    /**
+     * The reservation on a shared passive port, used instead of a server
+     * socket
+     */
+    private SharedPassiveAcceptor.Reservation reservation;
+
     InetAddress address;
 
     int port = 0;
@@ -70,6 +84,10 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
     private boolean isZip = false;
 
+    private int zipLevel;
+
+    private int zipStrategy;
+
     InetAddress serverControlAddress;
 
     FtpIoSession session;
@@ -78,10 +96,13 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
             final FtpIoSession session) {
         this.session = session;
         this.serverContext = serverContext;
-        if (session.getListener().getDataConnectionConfiguration()
-                .isImplicitSsl()) {
+        ServerDataConnectionConfiguration dataCfg = session
+                .getDataConnectionConfiguration();
+        if (dataCfg.isImplicitSsl()) {
             secure = true;
         }
+        zipLevel = dataCfg.getCompressionLevel();
+        zipStrategy = dataCfg.getCompressionStrategy();
     }
 
     /**
@@ -102,15 +123,20 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
         // close server socket if any
         if (servSoc != null) {
-            try {
-                servSoc.close();
-            } catch (Exception ex) {
-                LOG.warn("FtpDataConnection.closeDataSocket()", ex);
+            if (pooledServSoc) {
+                serverContext.getPassiveSocketPool().release(servSoc);
+                pooledServSoc = false;
+            } else {
+                try {
+                    servSoc.close();
+                } catch (Exception ex) {
+                    LOG.warn("FtpDataConnection.closeDataSocket()", ex);
+                }
             }
 
             if (session != null) {
-                DataConnectionConfiguration dcc = session.getListener()
-                        .getDataConnectionConfiguration();
+                ServerDataConnectionConfiguration dcc = session
+                .getDataConnectionConfiguration();
                 if (dcc != null) {
                     dcc.releasePassivePort(session,  port);
                 }
@@ -119,10 +145,40 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
             servSoc = null;
         }
 
+        // cancel the reservation on a shared port if any
+        if (reservation != null) {
+            reservation.cancel();
+            reservation = null;
+
+            if (session != null) {
+                ServerDataConnectionConfiguration dcc = session
+                .getDataConnectionConfiguration();
+                if (dcc != null) {
+                    dcc.releasePassivePort(session, port);
+                }
+            }
+        }
+
         // reset request time
         requestTime = 0L;
     }
 
+    /**
+     * Close the data connection if it still uses the data socket, else only
+     * close the socket.
+     */
+    public synchronized void closeDataConnection(final Socket socket) {
+        if (socket == dataSoc) {
+            closeDataConnection();
+        } else if (socket != null) {
+            try {
+                socket.close();
+            } catch (Exception ex) {
+                LOG.warn("FtpDataConnection.closeDataSocket()", ex);
+            }
+        }
+    }
+
     /**
      * Port command.
      */
@@ -140,7 +196,7 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
     }
 
     private SslConfiguration getSslConfiguration() {
-        DataConnectionConfiguration dataCfg = session.getListener()
+        ServerDataConnectionConfiguration dataCfg = session
                 .getDataConnectionConfiguration();
 
         SslConfiguration configuration = dataCfg.getSslConfiguration();
@@ -173,8 +229,8 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
         // open passive server socket and get parameters
         try {
-            DataConnectionConfiguration dataCfg = session.getListener()
-                    .getDataConnectionConfiguration();
+            ServerDataConnectionConfiguration dataCfg = session
+                .getDataConnectionConfiguration();
 
             String passiveAddress = dataCfg.getPassiveAddress();
 
@@ -184,6 +240,29 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                 address = resolveAddress(dataCfg.getPassiveAddress());
             }
 
+            if (dataCfg.isPassivePortSharingEnabled()) {
+                // the port is shared with other sessions, the data connection
+                // is matched to this session by the client address
+                if (!(session.getRemoteAddress() instanceof InetSocketAddress)) {
+                    throw new DataConnectionException(
+                            "Shared passive ports require an IP client address.");
+                }
+                InetAddress clientAddress = ((InetSocketAddress) session
+                        .getRemoteAddress()).getAddress();
+
+                LOG.debug("Reserving shared passive port {} on address \"{}\"",
+                        passivePort, address);
+                reservation = serverContext.getSharedPassiveAcceptors()
+                        .getAcceptor(address, passivePort).reserve(
+                                clientAddress);
+                port = passivePort;
+
+                passive = true;
+                requestTime = System.currentTimeMillis();
+
+                return new InetSocketAddress(address, port);
+            }
+
             if (secure) {
                 LOG
                         .debug(
@@ -209,7 +288,22 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                         .debug(
                                 "Opening passive data connection on address \"{}\" and port {}",
                                 address, passivePort);
-                servSoc = new ServerSocket(passivePort, 0, address);
+                if (useSocketChannels(dataCfg)
+                        && dataCfg.isPassiveSocketPoolingEnabled()
+                        && passivePort != 0) {
+                    // keep the socket bound after the data connection
+                    servSoc = serverContext.getPassiveSocketPool().acquire(
+                            address, passivePort);
+                    pooledServSoc = true;
+                } else if (useSocketChannels(dataCfg)) {
+                    // open the server socket through a channel, the accepted
+                    // sockets will then be backed by a SocketChannel which
+                    // allows for zero-copy transfers
+                    servSoc = ServerSocketChannel.open().socket();
+                    servSoc.bind(new InetSocketAddress(address, passivePort), 0);
+                } else {
+                    servSoc = new ServerSocket(passivePort, 0, address);
+                }
                 LOG
                         .debug(
                                 "Passive data connection created on address \"{}\" and port {}",
@@ -224,8 +318,17 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
             return new InetSocketAddress(address, port);
         } catch (Exception ex) {
+            if (pooledServSoc && servSoc != null) {
+                serverContext.getPassiveSocketPool().release(servSoc);
+            }
+            pooledServSoc = false;
             servSoc = null;
             closeDataConnection();
+
+            // the port is not released when closing as the server socket was
+            // not opened
+            session.getListener().getDataConnectionConfiguration()
+                    .releasePassivePort(session, passivePort);
             throw new DataConnectionException(
                     "Failed to initate passive data connection: "
                             + ex.getMessage(), ex);
@@ -256,17 +359,26 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
      * @see org.apache.ftpserver.FtpDataConnectionFactory2#openConnection()
      */
     public DataConnection openConnection() throws Exception {
-        return new IODataConnection(createDataSocket(), session, this);
+        return new IODataConnection(createDataSocket(), session, this,
+                serverContext);
+    }
+
+    /**
+     * Should plain data sockets be backed by socket channels?
+     */
+    protected boolean useSocketChannels(
+            ServerDataConnectionConfiguration dataCfg) {
+        return dataCfg.isZeroCopyEnabled();
     }
 
     /**
      * Get the data socket. In case of error returns null.
      */
-    private synchronized Socket createDataSocket() throws Exception {
+    protected synchronized Socket createDataSocket() throws Exception {
 
         // get socket depending on the selection
         dataSoc = null;
-        DataConnectionConfiguration dataConfig = session.getListener()
+        ServerDataConnectionConfiguration dataConfig = session
                 .getDataConnectionConfiguration();
         try {
             if (!passive) {
@@ -293,7 +405,13 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                     dataSoc = ssoc;
                 } else {
                     LOG.debug("Opening active data connection");
-                    dataSoc = new Socket();
+                    if (useSocketChannels(dataConfig)) {
+                        // backed by a SocketChannel to allow for zero-copy
+                        // transfers
+                        dataSoc = SocketChannel.open().socket();
+                    } else {
+                        dataSoc = new Socket();
+                    }
                 }
 
                 dataSoc.setReuseAddress(true);
@@ -331,7 +449,7 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                     SSLContext ctx = ssl.getSSLContext();
                     SSLSocketFactory ssocketFactory = ctx.getSocketFactory();
 
-                    Socket serverSocket = servSoc.accept();
+                    Socket serverSocket = acceptPassive();
 
                     SSLSocket sslSocket = (SSLSocket) ssocketFactory
                             .createSocket(serverSocket, serverSocket
@@ -355,10 +473,10 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                 } else {
                     LOG.debug("Opening passive data connection");
 
-                    dataSoc = servSoc.accept();
+                    dataSoc = acceptPassive();
                 }
-                DataConnectionConfiguration dataCfg = session.getListener()
-                    .getDataConnectionConfiguration();
+                ServerDataConnectionConfiguration dataCfg = session
+                .getDataConnectionConfiguration();
 
                 dataSoc.setSoTimeout(dataCfg.getIdleTime() * 1000);
                 LOG.debug("Passive data connection opened");
@@ -380,6 +498,64 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         return dataSoc;
     }
 
+    /**
+     * Accept the passive data connection
+     */
+    private Socket acceptPassive() throws Exception {
+        if (reservation != null) {
+            ServerDataConnectionConfiguration dataCfg = session
+                .getDataConnectionConfiguration();
+            return reservation.accept(dataCfg.getIdleTime() * 1000L);
+        } else if (pooledServSoc) {
+            return acceptFromClient();
+        } else {
+            return servSoc.accept();
+        }
+    }
+
+    /**
+     * Accept the data connection from the client's address on a pooled server
+     * socket. As the socket stays bound between sessions, connections from
+     * other addresses are closed. Refused connections do not extend the time
+     * allowed for the client to connect.
+     */
+    private Socket acceptFromClient() throws Exception {
+        InetAddress clientAddress = null;
+        if (session.getRemoteAddress() instanceof InetSocketAddress) {
+            clientAddress = ((InetSocketAddress) session.getRemoteAddress())
+                    .getAddress();
+        }
+
+        // zero means wait forever, as for the socket timeout
+        int timeout = servSoc.getSoTimeout();
+        long deadline = System.currentTimeMillis() + timeout;
+
+        while (true) {
+            if (timeout > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException(
+                            "Timed out waiting for the data connection");
+                }
+                servSoc.setSoTimeout((int) remaining);
+            }
+
+            Socket socket = servSoc.accept();
+            if (clientAddress == null
+                    || clientAddress.equals(socket.getInetAddress())) {
+                return socket;
+            }
+
+            LOG.warn("Refusing passive data connection from {}, expected {}",
+                    socket.getInetAddress(), clientAddress);
+            try {
+                socket.close();
+            } catch (Exception ex) {
+                // ignore
+            }
+        }
+    }
+
     /*
      *  (non-Javadoc)
      *   Returns an InetAddress object from a hostname or IP address.
@@ -429,6 +605,34 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         isZip = zip;
     }
 
+    /**
+     * Get the compression level used in zip mode.
+     */
+    public int getZipLevel() {
+        return zipLevel;
+    }
+
+    /**
+     * Set the compression level used in zip mode.
+     */
+    public void setZipLevel(final int level) {
+        zipLevel = level;
+    }
+
+    /**
+     * Get the compression strategy used in zip mode.
+     */
+    public int getZipStrategy() {
+        return zipStrategy;
+    }
+
+    /**
+     * Set the compression strategy used in zip mode.
+     */
+    public void setZipStrategy(final int strategy) {
+        zipStrategy = strategy;
+    }
+
     /**
      * Check the data connection idle status.
      */
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Translates the line endings of a stream of data, e.g. between the local
+ * and the network representation for TYPE A transfers. The data is passed
+ * through in consecutive chunks, an instance keeps the state needed to
+ * handle line endings split over chunks and must only be used for a single
+ * transfer.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface LineEndingTranslator {
+
+    /**
+     * Get the maximum number of bytes produced when translating a chunk
+     * 
+     * @param length
+     *            The size of the chunk
+     * @return The maximum size of the translated chunk
+     */
+    int getMaxTranslatedLength(int length);
+
+    /**
+     * Translate the next chunk of data.
+     * 
+     * @param src
+     *            The data to translate
+     * @param offset
+     *            The offset of the chunk in src
+     * @param length
+     *            The size of the chunk
+     * @param dest
+     *            The array to write the translated data to, starting at
+     *            index 0. Must be at least
+     *            {@link #getMaxTranslatedLength(int)} long.
+     * @return The number of bytes written to dest
+     */
+    int translate(byte[] src, int offset, int length, byte[] dest);
+}
@@ -19,16 +19,12 @@
 
 package org.apache.ftpserver.impl;
 
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.net.SocketAddress;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
 import org.apache.ftpserver.ftplet.DefaultFtpReply;
-import org.apache.ftpserver.ftplet.FileSystemView;
 import org.apache.ftpserver.ftplet.FtpRequest;
-import org.apache.ftpserver.ftplet.FtpStatistics;
 import org.apache.ftpserver.message.MessageResource;
-import org.apache.ftpserver.util.DateUtils;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -99,17 +95,28 @@ public class LocalizedFtpReply extends DefaultFtpReply {
 
     public static LocalizedFtpReply translate(FtpIoSession session, FtpRequest request,
             FtpServerContext context, int code, String subId, String basicMsg) {
-        String msg = translateMessage(session, request, context, code, subId,
-                basicMsg);
+        ReplyCache cache = context.getReplyCache();
+        String lang = session.getLanguage();
+
+        MessageTemplate template = cache.get(code, subId, lang);
+        if (template == null) {
+            template = MessageTemplate.compile(code, getMessage(context, code,
+                    subId, lang));
+            template = cache.put(subId, lang, template);
+        }
+
+        if (!template.hasVariables()) {
+            // the same reply can be used for every request
+            return template.getReply();
+        }
 
-        return new LocalizedFtpReply(code, msg);
+        String msg = template.render(session, request, context, basicMsg);
+        return new LocalizedFtpReply(code, msg, false);
     }
 
-    private static String translateMessage(FtpIoSession session,
-            FtpRequest request, FtpServerContext context, int code,
-            String subId, String basicMsg) {
+    private static String getMessage(FtpServerContext context, int code,
+            String subId, String lang) {
         MessageResource resource = context.getMessageResource();
-        String lang = session.getLanguage();
 
         String msg = null;
         if (resource != null) {
@@ -118,387 +125,47 @@ public class LocalizedFtpReply extends DefaultFtpReply {
         if (msg == null) {
             msg = "";
         }
-        msg = replaceVariables(session, request, context, code, basicMsg, msg);
-
         return msg;
     }
 
     /**
-     * Replace server variables.
-     */
-    private static String replaceVariables(FtpIoSession session,
-            FtpRequest request, FtpServerContext context, int code,
-            String basicMsg, String str) {
-
-        int startIndex = 0;
-        int openIndex = str.indexOf('{', startIndex);
-        if (openIndex == -1) {
-            return str;
-        }
-
-        int closeIndex = str.indexOf('}', startIndex);
-        if ((closeIndex == -1) || (openIndex > closeIndex)) {
-            return str;
-        }
-
-        StringBuilder sb = new StringBuilder(128);
-        sb.append(str.substring(startIndex, openIndex));
-        while (true) {
-            String varName = str.substring(openIndex + 1, closeIndex);
-            sb.append(getVariableValue(session, request, context, code,
-                    basicMsg, varName));
-
-            startIndex = closeIndex + 1;
-            openIndex = str.indexOf('{', startIndex);
-            if (openIndex == -1) {
-                sb.append(str.substring(startIndex));
-                break;
-            }
-
-            closeIndex = str.indexOf('}', startIndex);
-            if ((closeIndex == -1) || (openIndex > closeIndex)) {
-                sb.append(str.substring(startIndex));
-                break;
-            }
-            sb.append(str.substring(startIndex, openIndex));
-        }
-        return sb.toString();
-    }
-
-    /**
-     * Get the variable value.
+     * The encoded reply, if the reply is shared between requests
      */
-    private static String getVariableValue(FtpIoSession session,
-            FtpRequest request, FtpServerContext context, int code,
-            String basicMsg, String varName) {
-
-        String varVal = null;
-
-        // all output variables
-        if (varName.startsWith("output.")) {
-            varVal = getOutputVariableValue(session, code, basicMsg, varName);
-        }
-
-        // all server variables
-        else if (varName.startsWith("server.")) {
-            varVal = getServerVariableValue(session, varName);
-        }
-
-        // all request variables
-        else if (varName.startsWith("request.")) {
-            varVal = getRequestVariableValue(session, request, varName);
-        }
-
-        // all statistical variables
-        else if (varName.startsWith("stat.")) {
-            varVal = getStatisticalVariableValue(session, context, varName);
-        }
-
-        // all client variables
-        else if (varName.startsWith("client.")) {
-            varVal = getClientVariableValue(session, varName);
-        }
-
-        if (varVal == null) {
-            varVal = "";
-        }
-        return varVal;
-    }
-
-    /**
-     * Get client variable value.
-     */
-    private static String getClientVariableValue(FtpIoSession session,
-            String varName) {
-
-        String varVal = null;
-
-        // client ip
-        if (varName.equals(CLIENT_IP)) {
-            if (session.getRemoteAddress() instanceof InetSocketAddress) {
-                InetSocketAddress remoteSocketAddress = (InetSocketAddress) session
-                        .getRemoteAddress();
-                varVal = remoteSocketAddress.getAddress().getHostAddress();
-            }
-
-        }
-
-        // client connection time
-        else if (varName.equals(CLIENT_CON_TIME)) {
-            varVal = DateUtils.getISO8601Date(session.getCreationTime());
-        }
-
-        // client login name
-        else if (varName.equals(CLIENT_LOGIN_NAME)) {
-            if (session.getUser() != null) {
-                varVal = session.getUser().getName();
-            }
-        }
-
-        // client login time
-        else if (varName.equals(CLIENT_LOGIN_TIME)) {
-            varVal = DateUtils.getISO8601Date(session.getLoginTime().getTime());
-        }
-
-        // client last access time
-        else if (varName.equals(CLIENT_ACCESS_TIME)) {
-            varVal = DateUtils.getISO8601Date(session.getLastAccessTime()
-                    .getTime());
-        }
-
-        // client home
-        else if (varName.equals(CLIENT_HOME)) {
-            varVal = session.getUser().getHomeDirectory();
-        }
-
-        // client directory
-        else if (varName.equals(CLIENT_DIR)) {
-            FileSystemView fsView = session.getFileSystemView();
-            if (fsView != null) {
-                try {
-                    varVal = fsView.getWorkingDirectory().getAbsolutePath();
-                } catch (Exception ex) {
-                    varVal = "";
-                }
-            }
-        }
-        return varVal;
-    }
-
-    /**
-     * Get output variable value.
-     */
-    private static String getOutputVariableValue(FtpIoSession session,
-            int code, String basicMsg, String varName) {
-        String varVal = null;
-
-        // output code
-        if (varName.equals(OUTPUT_CODE)) {
-            varVal = String.valueOf(code);
-        }
-
-        // output message
-        else if (varName.equals(OUTPUT_MSG)) {
-            varVal = basicMsg;
-        }
-
-        return varVal;
-    }
-
-    /**
-     * Get request variable value.
-     */
-    private static String getRequestVariableValue(FtpIoSession session,
-            FtpRequest request, String varName) {
-
-        String varVal = null;
-
-        if (request == null) {
-            return "";
-        }
-
-        // request line
-        if (varName.equals(REQUEST_LINE)) {
-            varVal = request.getRequestLine();
-        }
-
-        // request command
-        else if (varName.equals(REQUEST_CMD)) {
-            varVal = request.getCommand();
-        }
-
-        // request argument
-        else if (varName.equals(REQUEST_ARG)) {
-            varVal = request.getArgument();
-        }
-
-        return varVal;
-    }
+    private final ByteBuffer encodedReply;
 
     /**
-     * Get server variable value.
+     * Only allow creating through factory method and {@link MessageTemplate}
      */
-    private static String getServerVariableValue(FtpIoSession session,
-            String varName) {
-
-        String varVal = null;
-
-        SocketAddress localSocketAddress = session.getLocalAddress();
-
-        if (localSocketAddress instanceof InetSocketAddress) {
-            InetSocketAddress localInetSocketAddress = (InetSocketAddress) localSocketAddress;
-            // server address
-            if (varName.equals(SERVER_IP)) {
-
-                InetAddress addr = localInetSocketAddress.getAddress();
-
-                if (addr != null) {
-                    varVal = addr.getHostAddress();
-                }
-            }
+    LocalizedFtpReply(int code, String message, boolean encode) {
+        super(code, message);
 
-            // server port
-            else if (varName.equals(SERVER_PORT)) {
-                varVal = String.valueOf(localInetSocketAddress.getPort());
+        if (encode) {
+            byte[] bytes;
+            try {
+                bytes = toString().getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                // UTF-8 is always supported
+                throw new IllegalStateException(e);
             }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes);
+            buffer.flip();
+            encodedReply = buffer.asReadOnlyBuffer();
+        } else {
+            encodedReply = null;
         }
-
-        return varVal;
     }
 
     /**
-     * Get statistical connection variable value.
+     * Get the reply encoded as UTF-8, for replies which do not depend on the
+     * request or session. The returned buffer is shared and must not be
+     * modified, write a duplicate of it.
+     * 
+     * @return The read-only encoded reply, or null if the reply is not
+     *         pre-encoded
      */
-    private static String getStatisticalConnectionVariableValue(
-            FtpIoSession session, FtpServerContext context, String varName) {
-        String varVal = null;
-        FtpStatistics stat = context.getFtpStatistics();
-
-        // total connection number
-        if (varName.equals(STAT_CON_TOTAL)) {
-            varVal = String.valueOf(stat.getTotalConnectionNumber());
-        }
-
-        // current connection number
-        else if (varName.equals(STAT_CON_CURR)) {
-            varVal = String.valueOf(stat.getCurrentConnectionNumber());
-        }
-
-        return varVal;
-    }
-
-    /**
-     * Get statistical directory variable value.
-     */
-    private static String getStatisticalDirectoryVariableValue(
-            FtpIoSession session, FtpServerContext context, String varName) {
-        String varVal = null;
-        FtpStatistics stat = context.getFtpStatistics();
-
-        // total directory created
-        if (varName.equals(STAT_DIR_CREATE_COUNT)) {
-            varVal = String.valueOf(stat.getTotalDirectoryCreated());
-        }
-
-        // total directory removed
-        else if (varName.equals(STAT_DIR_DELETE_COUNT)) {
-            varVal = String.valueOf(stat.getTotalDirectoryRemoved());
-        }
-
-        return varVal;
-    }
-
-    /**
-     * Get statistical file variable value.
-     */
-    private static String getStatisticalFileVariableValue(FtpIoSession session,
-            FtpServerContext context, String varName) {
-        String varVal = null;
-        FtpStatistics stat = context.getFtpStatistics();
-
-        // total number of file upload
-        if (varName.equals(STAT_FILE_UPLOAD_COUNT)) {
-            varVal = String.valueOf(stat.getTotalUploadNumber());
-        }
-
-        // total bytes uploaded
-        else if (varName.equals(STAT_FILE_UPLOAD_BYTES)) {
-            varVal = String.valueOf(stat.getTotalUploadSize());
-        }
-
-        // total number of file download
-        else if (varName.equals(STAT_FILE_DOWNLOAD_COUNT)) {
-            varVal = String.valueOf(stat.getTotalDownloadNumber());
-        }
-
-        // total bytes downloaded
-        else if (varName.equals(STAT_FILE_DOWNLOAD_BYTES)) {
-            varVal = String.valueOf(stat.getTotalDownloadSize());
-        }
-
-        // total number of files deleted
-        else if (varName.equals(STAT_FILE_DELETE_COUNT)) {
-            varVal = String.valueOf(stat.getTotalDeleteNumber());
-        }
-
-        return varVal;
-    }
-
-    /**
-     * Get statistical login variable value.
-     */
-    private static String getStatisticalLoginVariableValue(
-            FtpIoSession session, FtpServerContext context, String varName) {
-        String varVal = null;
-        FtpStatistics stat = context.getFtpStatistics();
-
-        // total login number
-        if (varName.equals(STAT_LOGIN_TOTAL)) {
-            varVal = String.valueOf(stat.getTotalLoginNumber());
-        }
-
-        // current login number
-        else if (varName.equals(STAT_LOGIN_CURR)) {
-            varVal = String.valueOf(stat.getCurrentLoginNumber());
-        }
-
-        // total anonymous login number
-        else if (varName.equals(STAT_LOGIN_ANON_TOTAL)) {
-            varVal = String.valueOf(stat.getTotalAnonymousLoginNumber());
-        }
-
-        // current anonymous login number
-        else if (varName.equals(STAT_LOGIN_ANON_CURR)) {
-            varVal = String.valueOf(stat.getCurrentAnonymousLoginNumber());
-        }
-
-        return varVal;
-    }
-
-    /**
-     * Get statistical variable value.
-     */
-    private static String getStatisticalVariableValue(FtpIoSession session,
-            FtpServerContext context, String varName) {
-
-        String varVal = null;
-        FtpStatistics stat = context.getFtpStatistics();
-
-        // server start time
-        if (varName.equals(STAT_START_TIME)) {
-            varVal = DateUtils.getISO8601Date(stat.getStartTime().getTime());
-        }
-
-        // connection statistical variables
-        else if (varName.startsWith("stat.con")) {
-            varVal = getStatisticalConnectionVariableValue(session, context,
-                    varName);
-        }
-
-        // login statistical variables
-        else if (varName.startsWith("stat.login.")) {
-            varVal = getStatisticalLoginVariableValue(session, context, varName);
-        }
-
-        // file statistical variable
-        else if (varName.startsWith("stat.file")) {
-            varVal = getStatisticalFileVariableValue(session, context, varName);
-        }
-
-        // directory statistical variable
-        else if (varName.startsWith("stat.dir.")) {
-            varVal = getStatisticalDirectoryVariableValue(session, context,
-                    varName);
-        }
-
-        return varVal;
-    }
-
-    /**
-     * Private constructor, only allow creating through factory method
-     */
-    private LocalizedFtpReply(int code, String message) {
-        super(code, message);
+    public ByteBuffer getEncodedReply() {
+        return encodedReply;
     }
 
     
@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ftpserver.ipfilter.IpFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Throttles failed logins. Recent failures are counted per remote address
+ * and per user name, and decay over time. The delay before replying to a
+ * failed login doubles with each recent failure, and addresses with too
+ * many recent failures are banned for a while.
+ * 
+ * As an {@link IpFilter}, rejects the banned addresses, so that their
+ * connections can be closed as soon as they are accepted.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class LoginThrottle implements IpFilter {
+
+    private final Logger LOG = LoggerFactory.getLogger(LoginThrottle.class);
+
+    /**
+     * The time in milliseconds for the count of failures to halve
+     */
+    private static final long FAILURE_HALF_LIFE = 5 * 60 * 1000L;
+
+    /**
+     * The longest time in milliseconds an address can be banned for
+     */
+    private static final long MAX_BAN_TIME = 24 * 60 * 60 * 1000L;
+
+    /**
+     * The default number of addresses, and of user names, tracked
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static class Failures {
+        private double count;
+
+        private long updated;
+
+        private int bans;
+    }
+
+    private final int loginFailureDelay;
+
+    private final int maxLoginFailureDelay;
+
+    private final int banThreshold;
+
+    private final long banTime;
+
+    private final int maxEntries;
+
+    private final Map<InetAddress, Failures> addresses;
+
+    private final Map<String, Failures> users;
+
+    /**
+     * The end of the ban of each banned address
+     */
+    private final Map<InetAddress, Long> bans = new ConcurrentHashMap<InetAddress, Long>();
+
+    public LoginThrottle(final ServerConnectionConfig config) {
+        this(config.getLoginFailureDelay(), config.getMaxLoginFailureDelay(),
+                config.getLoginBanThreshold(), config.getLoginBanTime(),
+                DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param loginFailureDelay
+     *            The delay in milliseconds after a single failure
+     * @param maxLoginFailureDelay
+     *            The longest delay in milliseconds, or 0 if the delay does
+     *            not increase
+     * @param banThreshold
+     *            The number of recent failures from an address after which
+     *            it is banned, or 0 to never ban addresses
+     * @param banTime
+     *            The time in seconds an address is first banned for
+     * @param maxEntries
+     *            The number of addresses, and of user names, tracked
+     */
+    public LoginThrottle(final int loginFailureDelay,
+            final int maxLoginFailureDelay, final int banThreshold,
+            final int banTime, final int maxEntries) {
+        this.loginFailureDelay = loginFailureDelay;
+        this.maxLoginFailureDelay = maxLoginFailureDelay;
+        this.banThreshold = banThreshold;
+        this.banTime = banTime * 1000L;
+        this.maxEntries = maxEntries;
+        this.addresses = createMap();
+        this.users = createMap();
+    }
+
+    private <K> Map<K, Failures> createMap() {
+        return new LinkedHashMap<K, Failures>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Failures> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Is the address not banned?
+     */
+    public boolean accept(final InetAddress address) {
+        if (address == null || bans.isEmpty()) {
+            return true;
+        }
+
+        Long end = bans.get(address);
+        if (end == null) {
+            return true;
+        } else if (end.longValue() > System.currentTimeMillis()) {
+            return false;
+        } else {
+            bans.remove(address);
+            return true;
+        }
+    }
+
+    /**
+     * Record a failed login, banning the address if it failed too often.
+     * 
+     * @param address
+     *            The remote address, or null if unknown
+     * @param userName
+     *            The user name, or null if unknown
+     * @return The delay in milliseconds before replying to the login
+     */
+    public synchronized int loginFailed(final InetAddress address,
+            final String userName) {
+        long now = System.currentTimeMillis();
+
+        double count = 0;
+        if (address != null) {
+            Failures failures = getFailures(addresses, address, now);
+            failures.count++;
+            count = failures.count;
+
+            if (banThreshold > 0 && failures.count >= banThreshold) {
+                ban(address, failures, now);
+            }
+        }
+        if (userName != null) {
+            Failures failures = getFailures(users, userName, now);
+            failures.count++;
+            count = Math.max(count, failures.count);
+        }
+
+        return getDelay(count);
+    }
+
+    /**
+     * Record a successful login, forgetting the failures for the user.
+     * Failures from the address are kept, so that a valid account can not be
+     * used to hide guessing the passwords of others.
+     */
+    public synchronized void loginSucceeded(final InetAddress address,
+            final String userName) {
+        if (userName != null) {
+            users.remove(userName);
+        }
+    }
+
+    private <K> Failures getFailures(final Map<K, Failures> map, final K key,
+            final long now) {
+        Failures failures = map.get(key);
+        if (failures == null) {
+            failures = new Failures();
+            map.put(key, failures);
+        } else if (now > failures.updated) {
+            failures.count *= Math.pow(0.5, (now - failures.updated)
+                    / (double) FAILURE_HALF_LIFE);
+        }
+        failures.updated = now;
+        return failures;
+    }
+
+    private void ban(final InetAddress address, final Failures failures,
+            final long now) {
+        failures.count = 0;
+        failures.bans++;
+
+        long time = MAX_BAN_TIME;
+        if (failures.bans < 32) {
+            time = Math.min(banTime << (failures.bans - 1), MAX_BAN_TIME);
+        }
+
+        if (!bans.containsKey(address) && bans.size() >= maxEntries) {
+            trimBans(now);
+        }
+        bans.put(address, Long.valueOf(now + time));
+        LOG.warn("Banning {} for {} seconds after repeated login failures",
+                address.getHostAddress(), Long.valueOf(time / 1000));
+    }
+
+    /**
+     * Remove the expired bans, or if none has expired, the ban closest to
+     * expiring, so that the number of bans stays bounded.
+     */
+    private void trimBans(final long now) {
+        Map.Entry<InetAddress, Long> earliest = null;
+        Iterator<Map.Entry<InetAddress, Long>> entries = bans.entrySet()
+                .iterator();
+        while (entries.hasNext()) {
+            Map.Entry<InetAddress, Long> entry = entries.next();
+            if (entry.getValue().longValue() <= now) {
+                entries.remove();
+            } else if (bans.size() >= maxEntries
+                    && (earliest == null || entry.getValue().longValue() < earliest
+                            .getValue().longValue())) {
+                earliest = entry;
+            }
+        }
+
+        if (earliest != null && bans.size() >= maxEntries) {
+            bans.remove(earliest.getKey());
+        }
+    }
+
+    private int getDelay(final double count) {
+        if (maxLoginFailureDelay <= loginFailureDelay || count <= 1) {
+            return loginFailureDelay;
+        }
+        double delay = loginFailureDelay * Math.pow(2, count - 1);
+        return (int) Math.min(delay, maxLoginFailureDelay);
+    }
+
+    /**
+     * Get the number of addresses currently banned, including those whose
+     * ban has recently expired.
+     */
+    public int getBannedAddresses() {
+        return bans.size();
+    }
+}
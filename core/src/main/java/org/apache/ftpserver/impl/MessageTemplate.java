@@ -0,0 +1,535 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpStatistics;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.util.DateUtils;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * A reply message compiled into literal segments and variable slots, so that
+ * the message is only parsed once. Variables are written using
+ * <code>{variable.name}</code>, see the constants in {@link LocalizedFtpReply}
+ * for the supported variables. Unknown variables are replaced by an empty
+ * string.
+ * 
+ * A template is compiled for a single reply code, the
+ * {@link LocalizedFtpReply#OUTPUT_CODE} variable is resolved when compiling.
+ * Templates without any other variables render the same reply for every
+ * request, which is then created once, see {@link #getReply()}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class MessageTemplate {
+
+    /**
+     * Rendered messages are short, keep a builder per thread unless it has
+     * grown larger than this
+     */
+    private static final int MAX_KEPT_BUILDER_SIZE = 8 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUILDER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(128);
+        }
+    };
+
+    private final int code;
+
+    /**
+     * The literal segments, one more than the number of variables. Literal
+     * i is written before variable i.
+     */
+    private final String[] literals;
+
+    private final Variable[] variables;
+
+    /**
+     * The length of all literal segments
+     */
+    private final int literalLength;
+
+    /**
+     * The shared reply, if the template has no variables
+     */
+    private final LocalizedFtpReply reply;
+
+    private MessageTemplate(final int code, final String[] literals,
+            final Variable[] variables) {
+        this.code = code;
+        this.literals = literals;
+        this.variables = variables;
+
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        literalLength = length;
+
+        if (variables.length == 0) {
+            reply = new LocalizedFtpReply(code, literals[0], true);
+        } else {
+            reply = null;
+        }
+    }
+
+    /**
+     * Compile a message.
+     * 
+     * @param code
+     *            The reply code the message is used for
+     * @param message
+     *            The message, may contain variables
+     * @return The compiled template
+     */
+    public static MessageTemplate compile(final int code, final String message) {
+        List<String> literals = new ArrayList<String>();
+        List<Variable> variables = new ArrayList<Variable>();
+
+        StringBuilder literal = new StringBuilder();
+        int startIndex = 0;
+        while (true) {
+            int openIndex = message.indexOf('{', startIndex);
+            int closeIndex = message.indexOf('}', startIndex);
+            if (openIndex == -1 || closeIndex == -1 || openIndex > closeIndex) {
+                literal.append(message, startIndex, message.length());
+                break;
+            }
+
+            literal.append(message, startIndex, openIndex);
+            String varName = message.substring(openIndex + 1, closeIndex);
+            startIndex = closeIndex + 1;
+
+            if (varName.equals(LocalizedFtpReply.OUTPUT_CODE)) {
+                literal.append(code);
+                continue;
+            }
+
+            Variable variable = Variable.forName(varName);
+            if (variable == null) {
+                // unknown variables are replaced by nothing
+                continue;
+            }
+            literals.add(literal.toString());
+            literal.setLength(0);
+            variables.add(variable);
+        }
+        literals.add(literal.toString());
+
+        return new MessageTemplate(code, literals.toArray(new String[literals
+                .size()]), variables.toArray(new Variable[variables.size()]));
+    }
+
+    /**
+     * @return The reply code this template was compiled for
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return true if the message depends on the request or session
+     */
+    public boolean hasVariables() {
+        return variables.length > 0;
+    }
+
+    /**
+     * Get the shared reply of a template without variables.
+     * 
+     * @return The reply, or null if the template has variables
+     */
+    public LocalizedFtpReply getReply() {
+        return reply;
+    }
+
+    /**
+     * Render the message.
+     * 
+     * @param session
+     *            The session the reply is sent to
+     * @param request
+     *            The current request, may be null
+     * @param context
+     *            The server context
+     * @param basicMsg
+     *            The value of the {@link LocalizedFtpReply#OUTPUT_MSG}
+     *            variable
+     * @return The message with all variables replaced
+     */
+    public String render(final FtpIoSession session, final FtpRequest request,
+            final FtpServerContext context, final String basicMsg) {
+        if (variables.length == 0) {
+            return literals[0];
+        }
+
+        StringBuilder sb = BUILDER.get();
+        if (sb.capacity() > MAX_KEPT_BUILDER_SIZE) {
+            sb = new StringBuilder(literalLength + 64);
+            BUILDER.set(sb);
+        }
+        sb.setLength(0);
+
+        for (int i = 0; i < variables.length; i++) {
+            sb.append(literals[i]);
+            variables[i].append(sb, session, request, context, basicMsg);
+        }
+        sb.append(literals[variables.length]);
+        return sb.toString();
+    }
+
+    /**
+     * The variables which can be used in messages
+     */
+    private static enum Variable {
+        CLIENT_ACCESS_TIME(LocalizedFtpReply.CLIENT_ACCESS_TIME) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                appendDate(sb, session.getLastAccessTime());
+            }
+        },
+
+        CLIENT_CON_TIME(LocalizedFtpReply.CLIENT_CON_TIME) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(DateUtils.getISO8601Date(session.getCreationTime()));
+            }
+        },
+
+        CLIENT_DIR(LocalizedFtpReply.CLIENT_DIR) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                FileSystemView fsView = session.getFileSystemView();
+                if (fsView != null) {
+                    try {
+                        sb.append(fsView.getWorkingDirectory()
+                                .getAbsolutePath());
+                    } catch (Exception ex) {
+                        // ignore, leave empty
+                    }
+                }
+            }
+        },
+
+        CLIENT_HOME(LocalizedFtpReply.CLIENT_HOME) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                User user = session.getUser();
+                if (user != null) {
+                    appendNonNull(sb, user.getHomeDirectory());
+                }
+            }
+        },
+
+        CLIENT_IP(LocalizedFtpReply.CLIENT_IP) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                if (session.getRemoteAddress() instanceof InetSocketAddress) {
+                    InetSocketAddress remoteSocketAddress = (InetSocketAddress) session
+                            .getRemoteAddress();
+                    sb.append(remoteSocketAddress.getAddress()
+                            .getHostAddress());
+                }
+            }
+        },
+
+        CLIENT_LOGIN_NAME(LocalizedFtpReply.CLIENT_LOGIN_NAME) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                User user = session.getUser();
+                if (user != null) {
+                    appendNonNull(sb, user.getName());
+                }
+            }
+        },
+
+        CLIENT_LOGIN_TIME(LocalizedFtpReply.CLIENT_LOGIN_TIME) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                appendDate(sb, session.getLoginTime());
+            }
+        },
+
+        OUTPUT_MSG(LocalizedFtpReply.OUTPUT_MSG) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                appendNonNull(sb, basicMsg);
+            }
+        },
+
+        REQUEST_ARG(LocalizedFtpReply.REQUEST_ARG) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                if (request != null) {
+                    appendNonNull(sb, request.getArgument());
+                }
+            }
+        },
+
+        REQUEST_CMD(LocalizedFtpReply.REQUEST_CMD) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                if (request != null) {
+                    appendNonNull(sb, request.getCommand());
+                }
+            }
+        },
+
+        REQUEST_LINE(LocalizedFtpReply.REQUEST_LINE) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                if (request != null) {
+                    appendNonNull(sb, request.getRequestLine());
+                }
+            }
+        },
+
+        SERVER_IP(LocalizedFtpReply.SERVER_IP) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                SocketAddress localSocketAddress = session.getLocalAddress();
+                if (localSocketAddress instanceof InetSocketAddress) {
+                    InetAddress addr = ((InetSocketAddress) localSocketAddress)
+                            .getAddress();
+                    if (addr != null) {
+                        sb.append(addr.getHostAddress());
+                    }
+                }
+            }
+        },
+
+        SERVER_PORT(LocalizedFtpReply.SERVER_PORT) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                SocketAddress localSocketAddress = session.getLocalAddress();
+                if (localSocketAddress instanceof InetSocketAddress) {
+                    sb.append(((InetSocketAddress) localSocketAddress)
+                            .getPort());
+                }
+            }
+        },
+
+        STAT_CON_CURR(LocalizedFtpReply.STAT_CON_CURR) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(stat(context).getCurrentConnectionNumber());
+            }
+        },
+
+        STAT_CON_TOTAL(LocalizedFtpReply.STAT_CON_TOTAL) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(stat(context).getTotalConnectionNumber());
+            }
+        },
+
+        STAT_DIR_CREATE_COUNT(LocalizedFtpReply.STAT_DIR_CREATE_COUNT) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(stat(context).getTotalDirectoryCreated());
+            }
+        },
+
+        STAT_DIR_DELETE_COUNT(LocalizedFtpReply.STAT_DIR_DELETE_COUNT) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(stat(context).getTotalDirectoryRemoved());
+            }
+        },
+
+        STAT_FILE_DELETE_COUNT(LocalizedFtpReply.STAT_FILE_DELETE_COUNT) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(stat(context).getTotalDeleteNumber());
+            }
+        },
+
+        STAT_FILE_DOWNLOAD_BYTES(LocalizedFtpReply.STAT_FILE_DOWNLOAD_BYTES) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(stat(context).getTotalDownloadSize());
+            }
+        },
+
+        STAT_FILE_DOWNLOAD_COUNT(LocalizedFtpReply.STAT_FILE_DOWNLOAD_COUNT) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(stat(context).getTotalDownloadNumber());
+            }
+        },
+
+        STAT_FILE_UPLOAD_BYTES(LocalizedFtpReply.STAT_FILE_UPLOAD_BYTES) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(stat(context).getTotalUploadSize());
+            }
+        },
+
+        STAT_FILE_UPLOAD_COUNT(LocalizedFtpReply.STAT_FILE_UPLOAD_COUNT) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(stat(context).getTotalUploadNumber());
+            }
+        },
+
+        STAT_LOGIN_ANON_CURR(LocalizedFtpReply.STAT_LOGIN_ANON_CURR) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(stat(context).getCurrentAnonymousLoginNumber());
+            }
+        },
+
+        STAT_LOGIN_ANON_TOTAL(LocalizedFtpReply.STAT_LOGIN_ANON_TOTAL) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(stat(context).getTotalAnonymousLoginNumber());
+            }
+        },
+
+        STAT_LOGIN_CURR(LocalizedFtpReply.STAT_LOGIN_CURR) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(stat(context).getCurrentLoginNumber());
+            }
+        },
+
+        STAT_LOGIN_TOTAL(LocalizedFtpReply.STAT_LOGIN_TOTAL) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(stat(context).getTotalLoginNumber());
+            }
+        },
+
+        STAT_START_TIME(LocalizedFtpReply.STAT_START_TIME) {
+            @Override
+            void append(StringBuilder sb, FtpIoSession session,
+                    FtpRequest request, FtpServerContext context,
+                    String basicMsg) {
+                sb.append(DateUtils.getISO8601Date(stat(context)
+                        .getStartTime().getTime()));
+            }
+        };
+
+        private static final Map<String, Variable> VARIABLES = new HashMap<String, Variable>();
+
+        static {
+            for (Variable variable : values()) {
+                VARIABLES.put(variable.name, variable);
+            }
+        }
+
+        private final String name;
+
+        private Variable(final String name) {
+            this.name = name;
+        }
+
+        public static Variable forName(final String name) {
+            return VARIABLES.get(name);
+        }
+
+        abstract void append(StringBuilder sb, FtpIoSession session,
+                FtpRequest request, FtpServerContext context, String basicMsg);
+
+        private static FtpStatistics stat(final FtpServerContext context) {
+            return context.getFtpStatistics();
+        }
+
+        private static void appendDate(final StringBuilder sb, final Date date) {
+            if (date != null) {
+                sb.append(DateUtils.getISO8601Date(date.getTime()));
+            }
+        }
+
+        private static void appendNonNull(final StringBuilder sb,
+                final String str) {
+            if (str != null) {
+                sb.append(str);
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.ftpserver.ftplet.DataType;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.FtpletResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A data connection backed by a socket channel. Binary file transfers are
+ * driven by the server's {@link DataTransferReactor} instead of by the calling
+ * thread.
+ *
+ * Commands can start a transfer in the background, in which case the command
+ * returns straight away and the {@link DataTransferCallback} is notified once
+ * the transfer has finished. The blocking
+ * {@link org.apache.ftpserver.ftplet.DataConnection} methods are still
+ * available, e.g. for Ftplets, and simply wait for the reactor.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioDataConnection extends IODataConnection {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(NioDataConnection.class);
+
+    private final FtpIoSession session;
+
+    private final Socket socket;
+
+    private final ServerDataConnectionFactory factory;
+
+    private final FtpServerContext serverContext;
+
+    private volatile DataTransferReactor.PendingTransfer pendingTransfer;
+
+    public NioDataConnection(final Socket socket, final FtpIoSession session,
+            final ServerDataConnectionFactory factory,
+            final FtpServerContext serverContext) {
+        super(socket, session, factory, serverContext);
+        this.session = session;
+        this.socket = socket;
+        this.factory = factory;
+        this.serverContext = serverContext;
+    }
+
+    /**
+     * Can the current transfer be driven by the reactor? Only binary, non
+     * compressed transfers are supported.
+     */
+    private boolean isReactorTransferPossible() {
+        return session.getDataType() == DataType.BINARY
+                && !factory.isZipMode() && socket.getChannel() != null;
+    }
+
+    private int getIdleTime() {
+        return session.getListener().getDataConnectionConfiguration()
+                .getIdleTime() * 1000;
+    }
+
+    /**
+     * Start sending a file to the client in the background. Once the transfer
+     * has finished, the callback is notified, the data connection is closed
+     * and the Ftplets are notified that the command has completed.
+     *
+     * @param request
+     *            The request that started the transfer
+     * @param in
+     *            The file to send
+     * @param callback
+     *            Notified when the transfer has finished
+     * @return true if the transfer was started, false if the stream can not be
+     *         transferred in the background and
+     *         {@link #transferToClient(FtpSession, InputStream)} must be used
+     *         instead.
+     */
+    public boolean transferToClient(final FtpRequest request,
+            final InputStream in, final DataTransferCallback callback)
+            throws IOException {
+        if (!(in instanceof FileInputStream) || !isReactorTransferPossible()) {
+            return false;
+        }
+
+        session.setPendingDataTransfer(this);
+        try {
+            pendingTransfer = serverContext.getDataTransferReactor().sendFile(session,
+                    socket.getChannel(), ((FileInputStream) in).getChannel(),
+                    createRateLimiter(false), getIdleTime(),
+                    new CommandCallback(request, callback));
+        } catch (IOException e) {
+            session.setPendingDataTransfer(null);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Start receiving a file from the client in the background. Once the
+     * transfer has finished, the callback is notified, the data connection is
+     * closed and the Ftplets are notified that the command has completed.
+     *
+     * @param request
+     *            The request that started the transfer
+     * @param out
+     *            The file to write to
+     * @param callback
+     *            Notified when the transfer has finished
+     * @return true if the transfer was started, false if the stream can not be
+     *         transferred in the background and
+     *         {@link #transferFromClient(FtpSession, OutputStream)} must be
+     *         used instead.
+     */
+    public boolean transferFromClient(final FtpRequest request,
+            final OutputStream out, final DataTransferCallback callback)
+            throws IOException {
+        if (!(out instanceof FileOutputStream) || !isReactorTransferPossible()) {
+            return false;
+        }
+
+        session.setPendingDataTransfer(this);
+        try {
+            pendingTransfer = serverContext.getDataTransferReactor().receiveFile(session,
+                    socket.getChannel(), ((FileOutputStream) out).getChannel(),
+                    createRateLimiter(true), getIdleTime(),
+                    new CommandCallback(request, callback));
+        } catch (IOException e) {
+            session.setPendingDataTransfer(null);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Abort the transfer running in the background, if any. The command which
+     * started it is completed straight away, in the calling thread, as if the
+     * transfer had failed.
+     * 
+     * @return false if no transfer was running
+     */
+    public boolean abortTransfer() {
+        DataTransferReactor.PendingTransfer transfer = pendingTransfer;
+        return transfer != null && transfer.abort();
+    }
+
+    /**
+     * Blocking facade, waits for the reactor to send the file
+     */
+    @Override
+    public long transferToClient(final FtpSession session, final InputStream in)
+            throws IOException {
+        if (!(in instanceof FileInputStream) || !isReactorTransferPossible()) {
+            return super.transferToClient(session, in);
+        }
+
+        BlockingCallback callback = new BlockingCallback();
+        serverContext.getDataTransferReactor().sendFile(this.session,
+                socket.getChannel(), ((FileInputStream) in).getChannel(),
+                createRateLimiter(false), getIdleTime(), callback);
+        return callback.await();
+    }
+
+    /**
+     * Blocking facade, waits for the reactor to receive the file
+     */
+    @Override
+    public long transferFromClient(final FtpSession session,
+            final OutputStream out) throws IOException {
+        if (!(out instanceof FileOutputStream) || !isReactorTransferPossible()) {
+            return super.transferFromClient(session, out);
+        }
+
+        BlockingCallback callback = new BlockingCallback();
+        serverContext.getDataTransferReactor().receiveFile(this.session,
+                socket.getChannel(), ((FileOutputStream) out).getChannel(),
+                createRateLimiter(true), getIdleTime(), callback);
+        return callback.await();
+    }
+
+    /**
+     * Completes a command once its background transfer has finished
+     */
+    private class CommandCallback implements DataTransferCallback {
+
+        private final FtpRequest request;
+
+        private final DataTransferCallback callback;
+
+        public CommandCallback(FtpRequest request,
+                DataTransferCallback callback) {
+            this.request = request;
+            this.callback = callback;
+        }
+
+        public void transferCompleted(long transferredSize) {
+            synchronized (session) {
+                try {
+                    callback.transferCompleted(transferredSize);
+                } finally {
+                    done();
+                }
+            }
+            afterCommand();
+            session.replayDeferredRequest();
+        }
+
+        public void transferFailed(long transferredSize, IOException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            synchronized (session) {
+                try {
+                    callback.transferFailed(transferredSize, e);
+                } finally {
+                    done();
+                }
+            }
+            afterCommand();
+            session.replayDeferredRequest();
+        }
+
+        private void done() {
+            // the session may have set up another data connection already
+            factory.closeDataConnection(socket);
+            pendingTransfer = null;
+            session.setPendingDataTransfer(null);
+        }
+
+        /**
+         * The command has now completed, notify the Ftplets as
+         * {@link DefaultFtpHandler} would have done for a blocking transfer
+         */
+        private void afterCommand() {
+            FtpletResult ftpletRet;
+            try {
+                ftpletRet = serverContext.getFtpletContainer().afterCommand(
+                        session.getFtpletSession(), request,
+                        session.getLastReply());
+            } catch (Exception e) {
+                LOG.debug("Ftplet container threw exception", e);
+                ftpletRet = FtpletResult.DISCONNECT;
+            }
+            if (ftpletRet == FtpletResult.DISCONNECT) {
+                LOG.debug("Ftplet returned DISCONNECT, session will be closed");
+                session.close(false).awaitUninterruptibly(10000);
+            }
+        }
+    }
+
+    /**
+     * Waits for the reactor for the blocking facade
+     */
+    private class BlockingCallback implements DataTransferCallback {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private long transferredSize;
+
+        private IOException failure;
+
+        public void transferCompleted(long transferredSize) {
+            this.transferredSize = transferredSize;
+            latch.countDown();
+        }
+
+        public void transferFailed(long transferredSize, IOException e) {
+            this.transferredSize = transferredSize;
+            this.failure = e;
+            latch.countDown();
+        }
+
+        public long await() throws IOException {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                factory.closeDataConnection(socket);
+                throw new InterruptedIOException(
+                        "Interrupted while waiting for data transfer");
+            }
+
+            if (failure != null) {
+                LOG.warn("Exception during data transfer, closing data connection socket", failure);
+                factory.closeDataConnection(socket);
+                throw failure;
+            }
+            return transferredSize;
+        }
+    }
+}
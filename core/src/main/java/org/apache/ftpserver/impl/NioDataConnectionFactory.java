@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.Socket;
+
+import org.apache.ftpserver.ftplet.DataConnection;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Data connection factory for non-blocking data connections. PORT and PASV
+ * are handled as by {@link IODataConnectionFactory}, but plain data sockets
+ * are always backed by socket channels so that file transfers can be handed
+ * over to the server's {@link DataTransferReactor}. SSL/TLS data connections
+ * fall back to blocking {@link IODataConnection}s.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioDataConnectionFactory extends IODataConnectionFactory {
+
+    private final FtpServerContext serverContext;
+
+    public NioDataConnectionFactory(final FtpServerContext serverContext,
+            final FtpIoSession session) {
+        super(serverContext, session);
+        this.serverContext = serverContext;
+    }
+
+    /**
+     * Always use socket channels for plain data connections
+     */
+    @Override
+    protected boolean useSocketChannels(
+            ServerDataConnectionConfiguration dataCfg) {
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.FtpDataConnectionFactory2#openConnection()
+     */
+    @Override
+    public DataConnection openConnection() throws Exception {
+        Socket socket = createDataSocket();
+        if (socket.getChannel() == null) {
+            return new IODataConnection(socket, session, this, serverContext);
+        }
+        return new NioDataConnection(socket, session, this, serverContext);
+    }
+}
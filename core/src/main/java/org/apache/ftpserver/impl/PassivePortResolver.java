@@ -1,5 +1,9 @@
 package org.apache.ftpserver.impl;
 
+/**
+ * Reserves and releases passive ports. Implementations are called
+ * concurrently for all sessions of a listener and must be thread safe.
+ */
 public interface PassivePortResolver {
 
     /**
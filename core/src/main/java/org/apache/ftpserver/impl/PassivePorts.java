@@ -22,11 +22,14 @@ package org.apache.ftpserver.impl;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +39,13 @@ import org.slf4j.LoggerFactory;
  * 
  * Provides support for parsing a passive ports string as well as keeping track
  * of reserved passive ports.
+ * 
+ * Reserved ports are tracked in a bitmap, which is updated without locking.
+ * The search for a free port starts at a random position, so that the next
+ * passive port can not be predicted. If ports are checked before being
+ * reserved, a port found bound by another process is not checked again for
+ * {@link #DEFAULT_BIND_FAILURE_TIMEOUT} milliseconds, unless no other port is
+ * available.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -47,15 +57,50 @@ public class PassivePorts {
 
     private static final Integer MAX_PORT_INTEGER = Integer.valueOf(MAX_PORT);
 
-    private List<Integer> freeList;
+    /**
+     * The time in milliseconds a port found bound by another process is
+     * skipped for
+     */
+    public static final long DEFAULT_BIND_FAILURE_TIMEOUT = 10000;
+
+    /**
+     * The configured ports, sorted, not including the "any" port 0
+     */
+    private final int[] ports;
+
+    /**
+     * One bit per port in {@link #ports}, set when the port is reserved
+     */
+    private final AtomicLongArray reserved;
+
+    /**
+     * The time until which each port is skipped, 0 if the port has not failed
+     * the bound check
+     */
+    private final AtomicLongArray bindFailedUntil;
+
+    /**
+     * True if port 0 is configured, i.e. any port can be used
+     */
+    private final boolean anyPort;
 
-    private Set<Integer> usedList;
+    private final long bindFailureTimeout;
 
-    private Random r = new Random();
+    private final Random r = new Random();
 
     private String passivePortsString;
 
-    private boolean checkIfBound;
+    private final boolean checkIfBound;
+
+    private final AtomicLong reservations = new AtomicLong();
+
+    private final AtomicLong exhausted = new AtomicLong();
+
+    private final AtomicLong bindFailures = new AtomicLong();
+
+    private final AtomicLong reservationNanos = new AtomicLong();
+
+    private final AtomicLong maxReservationNanos = new AtomicLong();
 
     /**
      * Parse a string containing passive ports
@@ -71,7 +116,7 @@ public class PassivePorts {
      *             If any of of the ports in the string is invalid (e.g. not an
      *             integer or too large for a port number)
      */
-    private static Set<Integer> parse(final String portsString) {
+    static Set<Integer> parse(final String portsString) {
         Set<Integer> passivePortsList = new HashSet<Integer>();
 
         boolean inRange = false;
@@ -151,6 +196,20 @@ public class PassivePorts {
     }
 
     public PassivePorts(Set<Integer> passivePorts, boolean checkIfBound) {
+        this(passivePorts, checkIfBound, DEFAULT_BIND_FAILURE_TIMEOUT);
+    }
+
+    /**
+     * @param passivePorts
+     *            The ports
+     * @param checkIfBound
+     *            Check that ports are not bound by another process before
+     *            reserving them
+     * @param bindFailureTimeout
+     *            The time in milliseconds a port found bound is skipped for
+     */
+    public PassivePorts(Set<Integer> passivePorts, boolean checkIfBound,
+            long bindFailureTimeout) {
         if (passivePorts == null) {
             throw new NullPointerException("passivePorts can not be null");
         } else if(passivePorts.isEmpty()) {
@@ -158,16 +217,36 @@ public class PassivePorts {
         	passivePorts.add(0);
         }
 
-        this.freeList = new ArrayList<Integer>(passivePorts);
-        this.usedList = new HashSet<Integer>(passivePorts.size());
+        anyPort = passivePorts.contains(0);
+
+        int[] sorted = new int[passivePorts.size()];
+        int count = 0;
+        for (Integer port : passivePorts) {
+            if (port != 0) {
+                sorted[count++] = port;
+            }
+        }
+        this.ports = new int[count];
+        System.arraycopy(sorted, 0, this.ports, 0, count);
+        Arrays.sort(this.ports);
+
+        this.reserved = new AtomicLongArray((count + 63) >>> 6);
+        this.bindFailedUntil = checkIfBound ? new AtomicLongArray(count)
+                : null;
 
         this.checkIfBound = checkIfBound;
+        this.bindFailureTimeout = bindFailureTimeout;
     }
 
     /**
      * Checks that the port of not bound by another application
+     * 
+     * @param pool
+     *            The passive socket pool of the server, or null. The ports of
+     *            its idle sockets are bound by this server, not by another
+     *            application.
      */
-    private boolean checkPortUnbound(int port) {
+    private boolean checkPortUnbound(int port, final PassiveSocketPool pool) {
         // is this check disabled?
         if (!checkIfBound) {
             return true;
@@ -184,8 +263,8 @@ public class PassivePorts {
             ss.setReuseAddress(true);
             return true;
         } catch (IOException e) {
-            // port probably in use, check next
-            return false;
+            // port probably in use, check next, unless kept bound by the pool
+            return pool != null && pool.isIdle(port);
         } finally {
             if (ss != null) {
                 try {
@@ -198,56 +277,170 @@ public class PassivePorts {
         }
     }
 
-    public synchronized int reserveNextPort() {
-    	// create a copy of the free ports, so that we can keep track of the tested ports
-    	List<Integer> freeCopy = new ArrayList<Integer>(freeList);
-    	
-        // Loop until we have found a port, or exhausted all available ports
-        while (freeCopy.size() > 0) {
-            // Otherwise, pick one at random
-            int i = r.nextInt(freeCopy.size());
-            Integer ret = freeCopy.get(i);
-            log.debug("Attempting to reserve port: '{}'", ret);
-
-            if (ret == 0) {
-                // "Any" port should not be removed from our free list,
-                // nor added to the used list
-                return 0;
-
-            } else if (checkPortUnbound(ret)) {
-                // Not used by someone else, so lets reserve it and return it
-                log.debug("Reserving port: '{}'", ret);
-                freeList.remove(i);
-                usedList.add(ret);
-                log.debug(stats());
-                return ret;
+    public int reserveNextPort() {
+        return reserveNextPort((PassiveSocketPool) null);
+    }
 
-            } else {
-            	freeCopy.remove(i);
-                // log port unavailable, but left in pool
-                log.warn("Passive port in use by another process: " + ret);
+    /**
+     * Reserve a port, checking that it is not bound by another process if
+     * enabled.
+     * 
+     * @param pool
+     *            The passive socket pool of the server, or null if passive
+     *            sockets are not pooled. The ports of its idle sockets pass the
+     *            bound check.
+     * @return The port, 0 for any port, or -1 if no port is available
+     */
+    public int reserveNextPort(final PassiveSocketPool pool) {
+        long start = System.nanoTime();
+
+        int port = -1;
+        if (ports.length > 0) {
+            int startIndex = r.nextInt(ports.length);
+
+            // first try the ports which have not recently failed the bound
+            // check, then all of them
+            port = reserveNextPort(startIndex, true, pool);
+            if (port == -1 && checkIfBound) {
+                port = reserveNextPort(startIndex, false, pool);
             }
         }
 
+        if (port == -1 && anyPort) {
+            // "Any" port is never reserved
+            port = 0;
+        }
+
+        long time = System.nanoTime() - start;
+        reservations.incrementAndGet();
+        reservationNanos.addAndGet(time);
+        long max;
+        while (time > (max = maxReservationNanos.get())
+                && !maxReservationNanos.compareAndSet(max, time)) {
+            // retry
+        }
+
+        if (port == -1) {
+            exhausted.incrementAndGet();
+            log.warn("No passive port available, {}", stats());
+        } else {
+            log.debug("Reserving port: '{}'", port);
+        }
+        return port;
+    }
+
+    /**
+     * Reserve the first free port starting at an index, wrapping around at
+     * the end of the ports.
+     */
+    private int reserveNextPort(final int startIndex, final boolean skipFailed,
+            final PassiveSocketPool pool) {
+        long now = skipFailed && checkIfBound ? System.currentTimeMillis() : 0;
+
+        int words = reserved.length();
+        int startWord = startIndex >>> 6;
+        for (int i = 0; i <= words; i++) {
+            int w = (startWord + i) % words;
+
+            // in the first word, only look at the bits from the start index,
+            // the lower bits are searched after wrapping around
+            long mask = validBits(w);
+            if (i == 0) {
+                mask &= -1L << (startIndex & 63);
+            } else if (i == words) {
+                mask &= ~(-1L << (startIndex & 63));
+            }
+
+            long word = reserved.get(w);
+            long candidates = ~word & mask;
+            while (candidates != 0) {
+                int bit = Long.numberOfTrailingZeros(candidates);
+                long bitMask = 1L << bit;
+                int index = (w << 6) + bit;
+
+                if (skipFailed && checkIfBound
+                        && bindFailedUntil.get(index) > now) {
+                    candidates &= ~bitMask;
+                    continue;
+                }
+
+                if (!reserved.compareAndSet(w, word, word | bitMask)) {
+                    // another thread changed the word, try again
+                    word = reserved.get(w);
+                    candidates = ~word & mask;
+                    continue;
+                }
+
+                int port = ports[index];
+                if (checkPortUnbound(port, pool)) {
+                    return port;
+                }
+
+                // log port unavailable, but left in pool
+                log.warn("Passive port in use by another process: " + port);
+                bindFailures.incrementAndGet();
+                bindFailedUntil.set(index, System.currentTimeMillis()
+                        + bindFailureTimeout);
+                clear(index);
+
+                // check the next port
+                mask &= ~bitMask;
+                word = reserved.get(w);
+                candidates = ~word & mask;
+            }
+        }
         return -1;
     }
 
-    public synchronized void releasePort(final int port) {
+    /**
+     * The bits of a word which map to a port
+     */
+    private long validBits(final int word) {
+        int bits = ports.length - (word << 6);
+        return bits >= 64 ? -1L : (1L << bits) - 1;
+    }
+
+    /**
+     * Clear the reserved bit of a port
+     * 
+     * @return true if the port was reserved
+     */
+    private boolean clear(final int index) {
+        int w = index >>> 6;
+        long bitMask = 1L << (index & 63);
+        while (true) {
+            long word = reserved.get(w);
+            if ((word & bitMask) == 0) {
+                return false;
+            }
+            if (reserved.compareAndSet(w, word, word & ~bitMask)) {
+                return true;
+            }
+        }
+    }
+
+    public void releasePort(final int port) {
         log.debug("Attempting to release port: '{}'", port);
 
         if (port == 0) {
             // Ignore port 0 being released,
             // since its not put on the used list
+            return;
+        }
 
-        } else if (usedList.remove(port)) {
-            freeList.add(port);
-            log.debug(stats());
+        int index = Arrays.binarySearch(ports, port);
+        if (index >= 0 && clear(index)) {
+            log.debug("Released port: '{}'", port);
         } else {
             // log attempt to release unused port
             log.warn("Releasing unreserved passive port: " + port);
         }
     }
 
+    private boolean isReserved(final int index) {
+        return (reserved.get(index >>> 6) & (1L << (index & 63))) != 0;
+    }
+
     @Override
     public String toString() {
         if (passivePortsString != null) {
@@ -256,7 +449,10 @@ public class PassivePorts {
 
         StringBuilder sb = new StringBuilder();
 
-        for (Integer port : freeList) {
+        if (anyPort) {
+            sb.append("0,");
+        }
+        for (int port : ports) {
             sb.append(port);
             sb.append(",");
         }
@@ -266,19 +462,86 @@ public class PassivePorts {
     }
 
     public int freePortsCount() {
-        return freeList.size();
+        int used = usedPortsCount();
+        return ports.length - used + (anyPort ? 1 : 0);
     }
 
     public int usedPortsCount() {
-        return usedList.size();
+        int used = 0;
+        for (int i = 0; i < reserved.length(); i++) {
+            used += Long.bitCount(reserved.get(i));
+        }
+        return used;
+    }
+
+    /**
+     * @return A snapshot of the ports not reserved
+     */
+    public List<Integer> freePorts() {
+        List<Integer> free = new ArrayList<Integer>();
+        if (anyPort) {
+            free.add(0);
+        }
+        for (int i = 0; i < ports.length; i++) {
+            if (!isReserved(i)) {
+                free.add(ports[i]);
+            }
+        }
+        return free;
+    }
+
+    /**
+     * @return A snapshot of the reserved ports
+     */
+    public Set<Integer> usedPorts() {
+        Set<Integer> used = new HashSet<Integer>();
+        for (int i = 0; i < ports.length; i++) {
+            if (isReserved(i)) {
+                used.add(ports[i]);
+            }
+        }
+        return used;
+    }
+
+    /**
+     * @return The number of reservations, successful or not
+     */
+    public long getReservationCount() {
+        return reservations.get();
+    }
+
+    /**
+     * @return The number of reservations which failed as no port was
+     *         available
+     */
+    public long getExhaustedCount() {
+        return exhausted.get();
     }
 
-    public List<Integer> freePorts() { return freeList; }
+    /**
+     * @return The number of ports found bound by another process
+     */
+    public long getBindFailureCount() {
+        return bindFailures.get();
+    }
 
-    public Set<Integer> usedPorts() { return usedList; }
+    /**
+     * @return The average time in nanoseconds taken to reserve a port
+     */
+    public long getAverageReservationTime() {
+        long count = reservations.get();
+        return count == 0 ? 0 : reservationNanos.get() / count;
+    }
+
+    /**
+     * @return The maximum time in nanoseconds taken to reserve a port
+     */
+    public long getMaxReservationTime() {
+        return maxReservationNanos.get();
+    }
 
     public String stats() {
         return "Free Ports " + freePortsCount() + " and Used Ports " + usedPortsCount();
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Keeps passive server sockets bound and listening between data connections,
+ * so that a PASV does not have to bind a new socket and closing the data
+ * connection does not leave the port in TIME_WAIT. Sockets are kept per local
+ * address and port. As the port is reserved through the passive ports before
+ * acquiring the socket, a socket is only used by a single session at a time.
+ * 
+ * Connections queued on a socket while it was idle, e.g. late connections
+ * meant for the previous session, are discarded when the socket is acquired.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PassiveSocketPool {
+
+    private final Logger LOG = LoggerFactory.getLogger(PassiveSocketPool.class);
+
+    private final ConcurrentMap<SocketAddress, ServerSocketChannel> idle = new ConcurrentHashMap<SocketAddress, ServerSocketChannel>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile boolean disposed = false;
+
+    /**
+     * Get a listening server socket, from the pool if one is bound to the
+     * address and port, else a newly bound one.
+     * 
+     * @param address
+     *            The local address
+     * @param port
+     *            The local port, must not be 0
+     * @return The server socket, backed by a {@link ServerSocketChannel} in
+     *         blocking mode
+     * @throws IOException
+     *             If a new socket could not be bound
+     */
+    public ServerSocket acquire(final InetAddress address, final int port)
+            throws IOException {
+        if (port == 0) {
+            throw new IllegalArgumentException("Port 0 can not be pooled");
+        }
+
+        ServerSocketChannel channel = idle.remove(new InetSocketAddress(
+                address, port));
+        if (channel != null) {
+            try {
+                discardPendingConnections(channel);
+                hits.incrementAndGet();
+                return channel.socket();
+            } catch (IOException e) {
+                LOG.debug("Pooled passive socket failed, binding a new one", e);
+                close(channel);
+            }
+        }
+
+        misses.incrementAndGet();
+        channel = ServerSocketChannel.open();
+        try {
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(new InetSocketAddress(address, port), 0);
+        } catch (IOException e) {
+            close(channel);
+            throw e;
+        }
+        return channel.socket();
+    }
+
+    /**
+     * Return a server socket to the pool. The socket is closed instead if it
+     * was not acquired from a pool, or if the pool has been disposed.
+     * 
+     * @param socket
+     *            The server socket
+     */
+    public void release(final ServerSocket socket) {
+        ServerSocketChannel channel = socket.getChannel();
+        if (channel == null || !channel.isOpen() || !socket.isBound()
+                || disposed) {
+            close(socket);
+            return;
+        }
+
+        if (idle.putIfAbsent(socket.getLocalSocketAddress(), channel) != null) {
+            // should not happen as ports are reserved before being acquired
+            close(socket);
+            return;
+        }
+
+        if (disposed) {
+            // disposed while releasing
+            if (idle.remove(socket.getLocalSocketAddress(), channel)) {
+                close(socket);
+            }
+        }
+    }
+
+    /**
+     * Accept and close any connection queued while the socket was idle
+     */
+    private void discardPendingConnections(final ServerSocketChannel channel)
+            throws IOException {
+        channel.configureBlocking(false);
+        try {
+            SocketChannel pending;
+            while ((pending = channel.accept()) != null) {
+                LOG.debug("Discarding connection made to idle passive socket: {}",
+                        pending.socket().getRemoteSocketAddress());
+                try {
+                    pending.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        } finally {
+            channel.configureBlocking(true);
+        }
+    }
+
+    /**
+     * Is an idle socket of the pool bound to the port, on any address?
+     */
+    public boolean isIdle(final int port) {
+        for (SocketAddress address : idle.keySet()) {
+            if (((InetSocketAddress) address).getPort() == port) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of idle sockets in the pool
+     */
+    public int getIdleSockets() {
+        return idle.size();
+    }
+
+    /**
+     * @return The number of sockets acquired from the pool
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of sockets which had to be bound
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Close all idle sockets. Sockets released after this are closed.
+     */
+    public void dispose() {
+        disposed = true;
+
+        Iterator<ServerSocketChannel> iter = idle.values().iterator();
+        while (iter.hasNext()) {
+            ServerSocketChannel channel = iter.next();
+            iter.remove();
+            close(channel.socket());
+        }
+    }
+
+    private void close(final ServerSocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close passive socket", e);
+        }
+    }
+
+    private void close(final ServerSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close passive socket", e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * An {@link InflaterInputStream} for MODE Z transfers, using a pooled
+ * {@link Inflater} and reading compressed data into a buffer borrowed from
+ * the {@link BufferPool}. Both are returned to their pools when the stream is
+ * closed. Created by {@link CompressionEngine}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PooledInflaterInputStream extends InflaterInputStream {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final CompressionEngine engine;
+
+    private ByteBuffer buffer;
+
+    private boolean released = false;
+
+    public PooledInflaterInputStream(final InputStream in,
+            final CompressionEngine engine) {
+        // the minimal buffer allocated here is replaced by the pooled one
+        super(in, engine.acquireInflater(), 1);
+        this.engine = engine;
+
+        buffer = engine.getBufferPool().acquireHeap(BUFFER_SIZE);
+        buf = buffer.array();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (!released) {
+                released = true;
+                engine.releaseInflater(inf);
+                engine.getBufferPool().release(buffer);
+                buffer = null;
+            }
+        }
+    }
+}
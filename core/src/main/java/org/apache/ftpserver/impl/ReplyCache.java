@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Cache of the compiled reply messages, per language, sub id and reply code.
+ * Messages are looked up and compiled into a {@link MessageTemplate} the first
+ * time they are used. Templates without variables also hold the reply, with
+ * its text already encoded, so that the same bytes can be written to every
+ * session.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ReplyCache {
+
+    /**
+     * Upper bound on the number of cached templates, in case sub ids are not
+     * constants
+     */
+    private static final int MAX_ENTRIES = 4096;
+
+    /**
+     * The templates by language and sub id, each sub id has a small array of
+     * templates, one per reply code, which is replaced when a template is
+     * added
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, MessageTemplate[]>> templates = new ConcurrentHashMap<String, ConcurrentMap<String, MessageTemplate[]>>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Get a cached template.
+     * 
+     * @param code
+     *            The reply code
+     * @param subId
+     *            The sub id, may be null
+     * @param lang
+     *            The language, may be null
+     * @return The template, or null if not cached
+     */
+    public MessageTemplate get(final int code, final String subId,
+            final String lang) {
+        ConcurrentMap<String, MessageTemplate[]> langTemplates = templates
+                .get(nonNull(lang));
+        if (langTemplates == null) {
+            return null;
+        }
+        MessageTemplate[] codeTemplates = langTemplates.get(nonNull(subId));
+        if (codeTemplates == null) {
+            return null;
+        }
+        for (MessageTemplate template : codeTemplates) {
+            if (template.getCode() == code) {
+                return template;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cache a template.
+     * 
+     * @param subId
+     *            The sub id, may be null
+     * @param lang
+     *            The language, may be null
+     * @param template
+     *            The compiled message
+     * @return The cached template, which is a template cached concurrently for
+     *         the same reply if there is one
+     */
+    public MessageTemplate put(final String subId, final String lang,
+            final MessageTemplate template) {
+        if (size.get() >= MAX_ENTRIES) {
+            return template;
+        }
+
+        ConcurrentMap<String, MessageTemplate[]> langTemplates = templates
+                .get(nonNull(lang));
+        if (langTemplates == null) {
+            langTemplates = new ConcurrentHashMap<String, MessageTemplate[]>();
+            ConcurrentMap<String, MessageTemplate[]> existing = templates
+                    .putIfAbsent(nonNull(lang), langTemplates);
+            if (existing != null) {
+                langTemplates = existing;
+            }
+        }
+
+        String key = nonNull(subId);
+        while (true) {
+            MessageTemplate[] codeTemplates = langTemplates.get(key);
+            if (codeTemplates == null) {
+                if (langTemplates.putIfAbsent(key,
+                        new MessageTemplate[] { template }) == null) {
+                    break;
+                }
+                continue;
+            }
+
+            for (MessageTemplate cached : codeTemplates) {
+                if (cached.getCode() == template.getCode()) {
+                    // cached concurrently
+                    return cached;
+                }
+            }
+            MessageTemplate[] newTemplates = new MessageTemplate[codeTemplates.length + 1];
+            System.arraycopy(codeTemplates, 0, newTemplates, 0, codeTemplates.length);
+            newTemplates[codeTemplates.length] = template;
+            if (langTemplates.replace(key, codeTemplates, newTemplates)) {
+                break;
+            }
+        }
+        size.incrementAndGet();
+        return template;
+    }
+
+    /**
+     * @return The number of cached templates
+     */
+    public int size() {
+        return size.get();
+    }
+
+    private String nonNull(final String str) {
+        return str == null ? "" : str;
+    }
+}
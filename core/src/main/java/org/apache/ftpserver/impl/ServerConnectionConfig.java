@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import org.apache.ftpserver.ConnectionConfig;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * This is same as <code>org.apache.ftpserver.ConnectionConfig</code> with the
+ * bandwidth, listing cache and login throttling settings of the server.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface ServerConnectionConfig extends ConnectionConfig {
+
+    /**
+     * The maximum rate, in bytes per second, at which all users together can
+     * download from the server.
+     * 
+     * @return The maximum download rate, or 0 if unlimited
+     */
+    int getMaxDownloadRate();
+
+    /**
+     * The maximum rate, in bytes per second, at which all users together can
+     * upload to the server.
+     * 
+     * @return The maximum upload rate, or 0 if unlimited
+     */
+    int getMaxUploadRate();
+
+    /**
+     * The maximum rate, in bytes per second, at which a single user can
+     * download, shared by all sessions of that user.
+     * 
+     * @return The maximum download rate per user, or 0 if unlimited
+     */
+    int getMaxUserDownloadRate();
+
+    /**
+     * The maximum rate, in bytes per second, at which a single user can
+     * upload, shared by all sessions of that user.
+     * 
+     * @return The maximum upload rate per user, or 0 if unlimited
+     */
+    int getMaxUserUploadRate();
+
+    /**
+     * The number of bytes which can be transferred at full speed after a
+     * rate limited transfer has been idle.
+     * 
+     * @return The burst size in bytes, or 0 to use a tenth of a second worth
+     *         of data at the limiting rate
+     */
+    int getTransferBurstSize();
+
+    /**
+     * The maximum number of bytes of directory listings cached by the server,
+     * shared by all sessions.
+     * 
+     * @return The size of the listing cache in bytes, or 0 if listings are
+     *         not cached
+     */
+    int getListingCacheSize();
+
+    /**
+     * The maximum number of seconds a cached directory listing is used.
+     * Listings are refreshed as soon as the listed directory is modified,
+     * this limits how long changes to the listed files themselves can go
+     * unnoticed.
+     * 
+     * @return The maximum age of cached listings in seconds
+     */
+    int getListingCacheMaxAge();
+
+    /**
+     * The number of threads calling the user manager to authenticate logins.
+     * While a login is authenticated, its session does not hold a thread of
+     * the server.
+     * 
+     * @return The number of authentication threads, or 0 if logins are
+     *         authenticated by the thread handling the PASS command
+     */
+    int getAuthenticationThreads();
+
+    /**
+     * The longest delay in milliseconds before replying to a failed login.
+     * The login failure delay doubles with each recent failure from the same
+     * address or for the same user, up to this delay.
+     * 
+     * @return The maximum delay in milliseconds, or 0 if the login failure
+     *         delay does not increase
+     */
+    int getMaxLoginFailureDelay();
+
+    /**
+     * The number of recent failed logins from an address after which the
+     * address is banned. Connections from a banned address are closed as
+     * soon as they are accepted.
+     * 
+     * @return The number of failed logins, or 0 if addresses are never
+     *         banned
+     */
+    int getLoginBanThreshold();
+
+    /**
+     * The time an address is banned for, doubling each time the address is
+     * banned again.
+     * 
+     * @return The ban time in seconds
+     */
+    int getLoginBanTime();
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * This is same as <code>org.apache.ftpserver.DataConnectionConfiguration</code>
+ * with the transfer, compression and listing settings of the server.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface ServerDataConnectionConfiguration extends
+        DataConnectionConfiguration {
+
+    /**
+     * Are zero-copy transfers enabled? If so, binary transfers of native files
+     * over plain data connections are moved between the file and the socket
+     * using {@link java.nio.channels.FileChannel#transferTo} and
+     * {@link java.nio.channels.FileChannel#transferFrom}.
+     * @return True if zero-copy transfers are enabled
+     */
+    boolean isZeroCopyEnabled();
+
+    /**
+     * Are data transfers non-blocking? If so, binary file transfers over plain
+     * data connections are driven by a small number of shared selector threads
+     * rather than by the thread executing the command.
+     * @return True if data transfers are non-blocking
+     */
+    boolean isNonBlocking();
+
+    /**
+     * The maximum rate, in bytes per second, at which all users of the
+     * listener together can download. The bandwidth is shared among the
+     * transfers according to the weights of their users.
+     * @return The maximum download rate, or 0 if unlimited
+     */
+    int getMaxDownloadRate();
+
+    /**
+     * The maximum rate, in bytes per second, at which all users of the
+     * listener together can upload.
+     * @return The maximum upload rate, or 0 if unlimited
+     */
+    int getMaxUploadRate();
+
+    /**
+     * The default compression level for MODE Z transfers, from 0 (no
+     * compression) to 9, or -1 for the zlib default. Clients can change the
+     * level with <code>OPTS MODE Z LEVEL</code>.
+     * @return The compression level
+     */
+    int getCompressionLevel();
+
+    /**
+     * The default compression strategy for MODE Z transfers, one of the
+     * strategies of {@link java.util.zip.Deflater}.
+     * @return The compression strategy
+     */
+    int getCompressionStrategy();
+
+    /**
+     * Should MODE Z transfers of already compressed data, e.g. archives or
+     * images, be sent without compressing them again? Compressed data is
+     * detected by file extension or from the first block of the file.
+     * @return True if compressed data is not compressed again
+     */
+    boolean isSkipCompressedData();
+
+    /**
+     * Should passive server sockets be kept bound and listening between data
+     * connections? Only applies to plain, non SSL, data connections backed by
+     * socket channels, i.e. when zero-copy or non-blocking data connections
+     * are enabled, and to configured passive ports other than 0. Connections
+     * to a pooled socket from another address than the client's are refused.
+     * @return True if passive sockets are pooled
+     */
+    boolean isPassiveSocketPoolingEnabled();
+
+    /**
+     * Are the passive ports shared between sessions? If so, each passive port
+     * accepts the data connections of many sessions, which are told apart by
+     * the client address. See {@link org.apache.ftpserver.impl.SharedPassivePortResolver}.
+     * @return True if passive ports are shared
+     */
+    boolean isPassivePortSharingEnabled();
+
+    /**
+     * The maximum number of threads reading the attributes of listed files
+     * concurrently, shared by all sessions of the listener. Helps on file
+     * systems where each read has a high latency, like network file systems.
+     * @return The number of listing threads, or 0 if files are always
+     *         listed by the session thread
+     */
+    int getListingThreads();
+
+    /**
+     * The number of entries from which the attributes of a listed directory
+     * are read concurrently, if listing threads are enabled.
+     * @return The minimum number of entries of a directory listed in parallel
+     */
+    int getParallelListingThreshold();
+
+    /**
+     * Are directory listings sorted by name? If not, the files of native
+     * directories are listed in the order they are read from the directory,
+     * which saves sorting large directories.
+     * @return True if listings are sorted
+     */
+    boolean isListingSorted();
+}
@@ -21,6 +21,7 @@ package org.apache.ftpserver.impl;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.Socket;
 
 import org.apache.ftpserver.DataConnectionException;
 import org.apache.ftpserver.ftplet.DataConnectionFactory;
@@ -58,6 +59,13 @@ public interface ServerDataConnectionFactory extends DataConnectionFactory {
 
     void setZipMode(boolean zip);
 
+    /**
+     * Close the data connection if it still uses a data socket, else only
+     * close that socket. Used when a data connection is no longer needed once
+     * the session may have set up another one.
+     */
+    void closeDataConnection(Socket socket);
+
     /**
      * Check the data connection idle status.
      */
@@ -78,6 +86,26 @@ public interface ServerDataConnectionFactory extends DataConnectionFactory {
      */
     boolean isZipMode();
 
+    /**
+     * Set the compression level used in zip mode.
+     */
+    void setZipLevel(int level);
+
+    /**
+     * Get the compression level used in zip mode.
+     */
+    int getZipLevel();
+
+    /**
+     * Set the compression strategy used in zip mode.
+     */
+    void setZipStrategy(int strategy);
+
+    /**
+     * Get the compression strategy used in zip mode.
+     */
+    int getZipStrategy();
+
     /**
      * Get client address.
      */
@@ -19,6 +19,8 @@
 
 package org.apache.ftpserver.impl;
 
+import java.util.Set;
+
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpStatistics;
 
@@ -32,6 +34,27 @@ import org.apache.ftpserver.ftplet.FtpStatistics;
  */
 public interface ServerFtpStatistics extends FtpStatistics {
 
+    /**
+     * Get the transfer classes of the users that have uploaded or downloaded
+     * files.
+     * @return The names of the transfer classes
+     */
+    Set<String> getTransferClasses();
+
+    /**
+     * Get total number of bytes uploaded by users of a transfer class.
+     * @param transferClass The name of the transfer class
+     * @return The total number of bytes uploaded by the transfer class
+     */
+    long getTotalUploadSize(String transferClass);
+
+    /**
+     * Get total number of bytes downloaded by users of a transfer class.
+     * @param transferClass The name of the transfer class
+     * @return The total number of bytes downloaded by the transfer class
+     */
+    long getTotalDownloadSize(String transferClass);
+
     /**
      * Set statistics observer.
      */
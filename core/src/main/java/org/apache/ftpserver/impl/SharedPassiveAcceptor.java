@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Accepts the passive data connections of many sessions on a single port.
+ * A session expecting a data connection makes a {@link Reservation} for the
+ * client's address before replying to PASV. Each incoming connection is handed
+ * to the oldest pending reservation for its remote address, connections from
+ * addresses without a pending reservation are closed.
+ * 
+ * Sessions from the same address waiting on the same port are served in the
+ * order of their reservations, {@link SharedPassivePortResolver} avoids this
+ * by spreading the sessions of an address over the shared ports.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SharedPassiveAcceptor implements Runnable {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(SharedPassiveAcceptor.class);
+
+    /**
+     * The shortest and longest pauses in milliseconds after failing to
+     * accept a connection, doubling with each failure in a row
+     */
+    private static final long MIN_ACCEPT_BACKOFF = 10;
+
+    private static final long MAX_ACCEPT_BACKOFF = 1000;
+
+    private final ServerSocketChannel channel;
+
+    private final ConcurrentMap<InetAddress, Queue<Reservation>> reservations = new ConcurrentHashMap<InetAddress, Queue<Reservation>>();
+
+    private final Thread thread;
+
+    private final AtomicLong accepted = new AtomicLong();
+
+    private final AtomicLong refused = new AtomicLong();
+
+    private volatile boolean disposed = false;
+
+    /**
+     * Bind the port and start accepting connections.
+     * 
+     * @param address
+     *            The local address
+     * @param port
+     *            The local port
+     * @throws IOException
+     *             If the port could not be bound
+     */
+    public SharedPassiveAcceptor(final InetAddress address, final int port)
+            throws IOException {
+        channel = ServerSocketChannel.open();
+        try {
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(new InetSocketAddress(address, port), 0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        thread = new Thread(this, "SharedPassiveAcceptor-"
+                + channel.socket().getLocalPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reserve the next data connection from a client address.
+     * 
+     * @param clientAddress
+     *            The address of the client
+     * @return The reservation, which must be cancelled if the connection is
+     *         not accepted
+     */
+    public Reservation reserve(final InetAddress clientAddress) {
+        Reservation reservation = new Reservation(clientAddress);
+
+        while (true) {
+            Queue<Reservation> queue = reservations.get(clientAddress);
+            if (queue == null) {
+                queue = new ConcurrentLinkedQueue<Reservation>();
+                Queue<Reservation> existing = reservations.putIfAbsent(
+                        clientAddress, queue);
+                if (existing != null) {
+                    queue = existing;
+                }
+            }
+            queue.offer(reservation);
+
+            // the queue might have been removed as empty concurrently
+            if (reservations.get(clientAddress) == queue
+                    || reservation.isDone()) {
+                return reservation;
+            }
+            queue.remove(reservation);
+        }
+    }
+
+    /**
+     * @return The local port
+     */
+    public int getPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    /**
+     * @return The number of connections handed to a session
+     */
+    public long getAcceptedCount() {
+        return accepted.get();
+    }
+
+    /**
+     * @return The number of connections closed as no session expected them
+     */
+    public long getRefusedCount() {
+        return refused.get();
+    }
+
+    /**
+     * @return The number of client addresses with pending reservations
+     */
+    int getReservedAddressCount() {
+        return reservations.size();
+    }
+
+    public void run() {
+        long backoff = 0;
+        while (!disposed) {
+            SocketChannel socketChannel;
+            try {
+                socketChannel = channel.accept();
+                backoff = 0;
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                if (disposed) {
+                    break;
+                }
+                LOG.warn("Failed to accept passive data connection", e);
+
+                // e.g. out of file descriptors, give it time to recover
+                backoff = Math.min(MAX_ACCEPT_BACKOFF, Math.max(
+                        MIN_ACCEPT_BACKOFF, 2 * backoff));
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+                continue;
+            }
+
+            Socket socket = socketChannel.socket();
+            InetAddress remoteAddress = socket.getInetAddress();
+            if (!dispatch(remoteAddress, socket)) {
+                refused.incrementAndGet();
+                LOG.warn("Refusing passive data connection from {}, no session expects it",
+                        remoteAddress);
+                close(socket);
+            } else {
+                accepted.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Hand the socket to the oldest pending reservation of the address
+     */
+    private boolean dispatch(final InetAddress remoteAddress,
+            final Socket socket) {
+        Queue<Reservation> queue = reservations.get(remoteAddress);
+        if (queue == null) {
+            return false;
+        }
+
+        Reservation reservation;
+        while ((reservation = queue.poll()) != null) {
+            if (reservation.complete(socket)) {
+                break;
+            }
+        }
+
+        if (queue.isEmpty()) {
+            reservations.remove(remoteAddress, queue);
+        }
+        return reservation != null;
+    }
+
+    /**
+     * Stop accepting connections and close the port. Pending reservations
+     * fail.
+     */
+    public void dispose() {
+        disposed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close shared passive port", e);
+        }
+
+        for (Queue<Reservation> queue : reservations.values()) {
+            Reservation reservation;
+            while ((reservation = queue.poll()) != null) {
+                reservation.cancel();
+            }
+        }
+        reservations.clear();
+    }
+
+    private static void close(final Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * A session waiting for its data connection
+     */
+    public class Reservation {
+
+        private final InetAddress clientAddress;
+
+        private Socket socket;
+
+        private boolean cancelled = false;
+
+        private Reservation(final InetAddress clientAddress) {
+            this.clientAddress = clientAddress;
+        }
+
+        /**
+         * @return The port the client must connect to
+         */
+        public int getPort() {
+            return SharedPassiveAcceptor.this.getPort();
+        }
+
+        private synchronized boolean isDone() {
+            return cancelled || socket != null;
+        }
+
+        private synchronized boolean complete(final Socket socket) {
+            if (cancelled || this.socket != null) {
+                return false;
+            }
+            this.socket = socket;
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * Wait for the client to connect.
+         * 
+         * @param timeout
+         *            The maximum time to wait in milliseconds, 0 to wait
+         *            forever
+         * @return The data connection
+         * @throws IOException
+         *             If the client did not connect in time, or the
+         *             reservation was cancelled
+         */
+        public synchronized Socket accept(final long timeout)
+                throws IOException {
+            long end = System.currentTimeMillis() + timeout;
+            while (socket == null && !cancelled) {
+                long wait = end - System.currentTimeMillis();
+                if (timeout > 0 && wait <= 0) {
+                    break;
+                }
+                try {
+                    wait(timeout > 0 ? wait : 0);
+                } catch (InterruptedException e) {
+                    throw new IOException(
+                            "Interrupted while waiting for data connection");
+                }
+            }
+
+            if (socket != null) {
+                Socket ret = socket;
+                socket = null;
+                // only a single connection per reservation
+                cancelled = true;
+                return ret;
+            } else if (cancelled) {
+                throw new IOException("Data connection reservation cancelled");
+            } else {
+                cancel();
+                throw new SocketTimeoutException(
+                        "Timed out waiting for data connection");
+            }
+        }
+
+        /**
+         * Give up the reservation, closing the data connection if it has been
+         * made but not accepted.
+         */
+        public void cancel() {
+            Socket unused;
+            synchronized (this) {
+                cancelled = true;
+                unused = socket;
+                socket = null;
+                notifyAll();
+            }
+
+            if (unused != null) {
+                close(unused);
+            }
+
+            Queue<Reservation> queue = reservations.get(clientAddress);
+            if (queue != null) {
+                queue.remove(this);
+                if (queue.isEmpty()) {
+                    reservations.remove(clientAddress, queue);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * The {@link SharedPassiveAcceptor}s of a server, one per local address and
+ * port, created when first used.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SharedPassiveAcceptors {
+
+    private final Map<InetSocketAddress, SharedPassiveAcceptor> acceptors = new HashMap<InetSocketAddress, SharedPassiveAcceptor>();
+
+    private boolean disposed = false;
+
+    /**
+     * Get the acceptor for a local address and port, binding the port if
+     * needed.
+     * 
+     * @param address
+     *            The local address
+     * @param port
+     *            The local port
+     * @return The acceptor
+     * @throws IOException
+     *             If the port could not be bound
+     */
+    public synchronized SharedPassiveAcceptor getAcceptor(
+            final InetAddress address, final int port) throws IOException {
+        if (disposed) {
+            throw new IOException("Shared passive ports have been closed");
+        }
+
+        InetSocketAddress key = new InetSocketAddress(address, port);
+        SharedPassiveAcceptor acceptor = acceptors.get(key);
+        if (acceptor == null) {
+            acceptor = new SharedPassiveAcceptor(address, port);
+            acceptors.put(key, acceptor);
+        }
+        return acceptor;
+    }
+
+    /**
+     * Close all shared ports.
+     */
+    public synchronized void dispose() {
+        disposed = true;
+        for (SharedPassiveAcceptor acceptor : acceptors.values()) {
+            acceptor.dispose();
+        }
+        acceptors.clear();
+    }
+}
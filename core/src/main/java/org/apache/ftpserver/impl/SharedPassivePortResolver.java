@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Resolves passive ports which are shared by many sessions, see
+ * {@link SharedPassiveAcceptor}. Ports are not reserved exclusively, each PASV
+ * is given the shared port used by the fewest sessions of the client's
+ * address, then by the fewest sessions overall, so that a client with
+ * several sessions gets different ports. Once every port is used by a
+ * session of the client's address, its next PASV is refused, as the data
+ * connections from the same address to the same port can not be matched to
+ * their sessions.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SharedPassivePortResolver implements PassivePortResolver {
+
+    private final String portsString;
+
+    private final int[] ports;
+
+    /**
+     * The number of sessions using each port
+     */
+    private final int[] sessions;
+
+    /**
+     * The number of sessions using each port, by client address
+     */
+    private final Map<InetAddress, int[]> clientSessions = new HashMap<InetAddress, int[]>();
+
+    /**
+     * @param ports
+     *            The shared ports, in the same format as for
+     *            {@link PassivePorts}. Port 0 is not allowed.
+     */
+    public SharedPassivePortResolver(final String ports) {
+        Set<Integer> portSet = PassivePorts.parse(ports);
+        if (portSet.isEmpty() || portSet.contains(0)) {
+            throw new IllegalArgumentException(
+                    "Shared passive ports must be fixed ports: " + ports);
+        }
+
+        this.portsString = ports;
+        this.ports = new int[portSet.size()];
+        int i = 0;
+        for (Integer port : portSet) {
+            this.ports[i++] = port;
+        }
+        Arrays.sort(this.ports);
+        this.sessions = new int[this.ports.length];
+    }
+
+    public synchronized int requestPassivePort(final FtpIoSession session) {
+        int[] counts = clientSessions.get(getClientAddress(session));
+
+        int best = 0;
+        for (int i = 1; i < ports.length; i++) {
+            int clientDiff = counts == null ? 0 : counts[i] - counts[best];
+            if (clientDiff < 0
+                    || (clientDiff == 0 && sessions[i] < sessions[best])) {
+                best = i;
+            }
+        }
+
+        if (counts != null && counts[best] > 0) {
+            // every port already has a data connection pending for this
+            // client, another one could not be told apart from it
+            return -1;
+        }
+
+        sessions[best]++;
+        if (counts == null) {
+            counts = new int[ports.length];
+            clientSessions.put(getClientAddress(session), counts);
+        }
+        counts[best]++;
+        return ports[best];
+    }
+
+    public synchronized void releasePassivePort(final FtpIoSession session,
+            final int port) {
+        int index = Arrays.binarySearch(ports, port);
+        if (index < 0 || sessions[index] == 0) {
+            return;
+        }
+        sessions[index]--;
+
+        InetAddress clientAddress = getClientAddress(session);
+        int[] counts = clientSessions.get(clientAddress);
+        if (counts != null && counts[index] > 0) {
+            counts[index]--;
+
+            for (int count : counts) {
+                if (count > 0) {
+                    return;
+                }
+            }
+            clientSessions.remove(clientAddress);
+        }
+    }
+
+    /**
+     * Get the number of sessions using a port.
+     * 
+     * @param port
+     *            The port
+     * @return The number of sessions, 0 if the port is not shared
+     */
+    public synchronized int getSessionCount(final int port) {
+        int index = Arrays.binarySearch(ports, port);
+        return index < 0 ? 0 : sessions[index];
+    }
+
+    private InetAddress getClientAddress(final FtpIoSession session) {
+        if (session.getRemoteAddress() instanceof InetSocketAddress) {
+            return ((InetSocketAddress) session.getRemoteAddress())
+                    .getAddress();
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return portsString;
+    }
+}
@@ -16,11 +16,18 @@ public class SingleRangePassivePortResolver implements PassivePortResolver {
         this.passivePorts = passivePorts;
     }
 
-    public synchronized int requestPassivePort(FtpIoSession session) {
-        return passivePorts.reserveNextPort();
+    public int requestPassivePort(FtpIoSession session) {
+        // the ports of pooled passive sockets stay bound while idle
+        PassiveSocketPool pool = null;
+        if (session != null
+                && session.getDataConnectionConfiguration()
+                        .isPassiveSocketPoolingEnabled()) {
+            pool = session.getPassiveSocketPool();
+        }
+        return passivePorts.reserveNextPort(pool);
     }
 
-    public synchronized void releasePassivePort(FtpIoSession session, int port) {
+    public void releasePassivePort(FtpIoSession session, int port) {
         passivePorts.releasePort(port);
     }
 
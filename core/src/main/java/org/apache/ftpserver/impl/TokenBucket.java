@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * A token bucket limiting the rate of a data flow. Tokens, one per byte, are
+ * added at a fixed rate up to the burst size. Bytes can be sent as long as
+ * there are tokens left. Taking more tokens than available puts the bucket in
+ * debt, and the caller is told how long to wait before sending any more, so
+ * that the caller can decide how to wait.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private long rate;
+
+    private long burstSize;
+
+    private long tokens;
+
+    private long lastRefill;
+
+    /**
+     * @param rate
+     *            The rate in bytes per second
+     * @param burstSize
+     *            The maximum number of bytes that can be sent at once after
+     *            the bucket has been idle
+     */
+    public TokenBucket(final long rate, final long burstSize) {
+        this(rate, burstSize, System.nanoTime());
+    }
+
+    TokenBucket(final long rate, final long burstSize, final long now) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        if (burstSize <= 0) {
+            throw new IllegalArgumentException("Burst size must be positive");
+        }
+        this.rate = rate;
+        this.burstSize = burstSize;
+        this.tokens = burstSize;
+        this.lastRefill = now;
+    }
+
+    /**
+     * @return The rate in bytes per second
+     */
+    public synchronized long getRate() {
+        return rate;
+    }
+
+    /**
+     * @return The burst size in bytes
+     */
+    public synchronized long getBurstSize() {
+        return burstSize;
+    }
+
+    /**
+     * Change the rate of the bucket. Tokens already added at the old rate are
+     * kept, up to the new burst size.
+     * 
+     * @param rate
+     *            The rate in bytes per second
+     * @param burstSize
+     *            The maximum number of bytes that can be sent at once after
+     *            the bucket has been idle
+     */
+    public void setRate(final long rate, final long burstSize) {
+        setRate(rate, burstSize, System.nanoTime());
+    }
+
+    synchronized void setRate(final long rate, final long burstSize,
+            final long now) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        if (burstSize <= 0) {
+            throw new IllegalArgumentException("Burst size must be positive");
+        }
+        refill(now);
+
+        this.rate = rate;
+        this.burstSize = burstSize;
+        tokens = Math.min(tokens, burstSize);
+    }
+
+    /**
+     * Take tokens for bytes that are about to be, or have just been, sent.
+     * 
+     * @param bytes
+     *            The number of bytes
+     * @return The number of nanoseconds to wait before sending more data, 0
+     *         if more data can be sent right away
+     */
+    public long consume(final long bytes) {
+        return consume(bytes, System.nanoTime());
+    }
+
+    synchronized long consume(final long bytes, final long now) {
+        refill(now);
+
+        tokens -= bytes;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (-tokens * NANOS_PER_SECOND + rate - 1) / rate;
+    }
+
+    private void refill(final long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed <= 0) {
+            return;
+        }
+
+        long missing = burstSize - tokens;
+        if (missing <= 0 || elapsed >= missing * NANOS_PER_SECOND / rate) {
+            tokens = burstSize;
+            lastRefill = now;
+        } else {
+            // only move the refill time forward by the time the added tokens
+            // account for, so that fractions of tokens are not lost
+            long added = elapsed * rate / NANOS_PER_SECOND;
+            tokens += added;
+            lastRefill += added * NANOS_PER_SECOND / rate;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Limits the rate of a single data transfer using the token buckets of the
+ * session and the user, and its share of the bandwidth of the listener and
+ * the server. Obtained from {@link BandwidthShaper} and must be released once
+ * the transfer has finished.
+ * 
+ * The limiter never blocks, it only tells the caller for how long to pause
+ * the transfer, which makes it usable both by threads copying streams and by
+ * the {@link DataTransferReactor}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TransferRateLimiter {
+
+    /**
+     * A limiter for unlimited transfers
+     */
+    public static final TransferRateLimiter UNLIMITED = new TransferRateLimiter(
+            new TokenBucket[0], new TransferScheduler.Flow[0], null);
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private static final int MIN_CHUNK_SIZE = 1024;
+
+    private final TokenBucket[] buckets;
+
+    private final TransferScheduler.Flow[] flows;
+
+    private final Runnable releaseAction;
+
+    private boolean released = false;
+
+    TransferRateLimiter(final TokenBucket[] buckets,
+            final TransferScheduler.Flow[] flows,
+            final Runnable releaseAction) {
+        this.buckets = buckets;
+        this.flows = flows;
+        this.releaseAction = releaseAction;
+    }
+
+    /**
+     * @return true if the transfer is rate limited
+     */
+    public boolean isLimited() {
+        return buckets.length > 0 || flows.length > 0;
+    }
+
+    /**
+     * Get a suitable number of bytes to move in a single step, small enough
+     * for the transfer to be paced smoothly.
+     * 
+     * @param maxChunkSize
+     *            The chunk size used for unlimited transfers
+     * @return The chunk size
+     */
+    public int getChunkSize(final int maxChunkSize) {
+        long chunkSize = maxChunkSize;
+        for (TokenBucket bucket : buckets) {
+            chunkSize = Math.min(chunkSize, bucket.getBurstSize());
+        }
+        for (TransferScheduler.Flow flow : flows) {
+            chunkSize = Math.min(chunkSize, flow.getBurstSize());
+        }
+        return (int) Math.max(Math.min(MIN_CHUNK_SIZE, maxChunkSize),
+                chunkSize);
+    }
+
+    /**
+     * Account for bytes that have been transferred.
+     * 
+     * @param bytes
+     *            The number of bytes transferred
+     * @return The number of milliseconds to pause the transfer before moving
+     *         any more data, 0 if the transfer can continue right away
+     */
+    public long acquire(final long bytes) {
+        long delay = 0;
+        for (TokenBucket bucket : buckets) {
+            delay = Math.max(delay, bucket.consume(bytes));
+        }
+        for (TransferScheduler.Flow flow : flows) {
+            delay = Math.max(delay, flow.consume(bytes));
+        }
+        return (delay + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Release the limiter once the transfer has finished. Can safely be
+     * called more than once.
+     */
+    public void release() {
+        if (releaseAction == null) {
+            return;
+        }
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            released = true;
+        }
+        releaseAction.run();
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Shares a bandwidth cap, e.g. of a listener or the whole server, among the
+ * transfers using it in proportion to their weights. Each transfer registers
+ * a {@link Flow} with its own token bucket, the rates of which are
+ * periodically recalculated using weighted max-min fairness: transfers that
+ * use less than their share, as they are limited by the client or by other
+ * limits, keep what they use and the remaining bandwidth is split among the
+ * others. A shared token bucket enforces the cap itself in between
+ * recalculations.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TransferScheduler {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * How often the use of the flows is measured and the bandwidth
+     * redistributed
+     */
+    private static final long REALLOCATION_INTERVAL = NANOS_PER_SECOND / 4;
+
+    /**
+     * The minimum rate of any flow, so that no transfer stalls completely
+     */
+    private static final long MIN_RATE = 1024;
+
+    /**
+     * A flow using less than this part of its rate is considered to be limited
+     * by something else
+     */
+    private static final double UNDERUSE_RATIO = 0.9;
+
+    private final long capacity;
+
+    private final int burstSize;
+
+    private final TokenBucket sharedBucket;
+
+    private final List<Flow> flows = new ArrayList<Flow>();
+
+    private volatile long lastReallocation;
+
+    /**
+     * @param capacity
+     *            The bandwidth to share in bytes per second
+     * @param burstSize
+     *            The configured burst size, 0 for the default
+     */
+    public TransferScheduler(final long capacity, final int burstSize) {
+        this(capacity, burstSize, System.nanoTime());
+    }
+
+    TransferScheduler(final long capacity, final int burstSize, final long now) {
+        this.capacity = capacity;
+        this.burstSize = burstSize;
+        this.sharedBucket = new TokenBucket(capacity, BandwidthShaper
+                .getBurstSize(capacity, burstSize), now);
+        this.lastReallocation = now;
+    }
+
+    /**
+     * @return The bandwidth shared in bytes per second
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Register a new transfer. The flow must be unregistered once the
+     * transfer has finished.
+     * 
+     * @param weight
+     *            The weight of the transfer, at least 1
+     * @return The flow of the transfer
+     */
+    public Flow register(final int weight) {
+        return register(weight, System.nanoTime());
+    }
+
+    synchronized Flow register(final int weight, final long now) {
+        Flow flow = new Flow(Math.max(1, weight), now);
+        flows.add(flow);
+        allocate(now);
+        return flow;
+    }
+
+    synchronized void unregister(final Flow flow, final long now) {
+        if (flows.remove(flow)) {
+            allocate(now);
+        }
+    }
+
+    /**
+     * @return The number of transfers currently sharing the bandwidth
+     */
+    public synchronized int getActiveFlows() {
+        return flows.size();
+    }
+
+    private void reallocateIfDue(final long now) {
+        if (now - lastReallocation < REALLOCATION_INTERVAL) {
+            return;
+        }
+
+        synchronized (this) {
+            long elapsed = now - lastReallocation;
+            if (elapsed < REALLOCATION_INTERVAL) {
+                return;
+            }
+            lastReallocation = now;
+
+            for (Flow flow : flows) {
+                flow.measure(elapsed);
+            }
+            allocate(now);
+        }
+    }
+
+    /**
+     * Distribute the capacity among the flows using weighted max-min
+     * fairness, based on the last measured use of each flow
+     */
+    private void allocate(final long now) {
+        List<Flow> unallocated = new ArrayList<Flow>(flows);
+        long remaining = capacity;
+
+        boolean underused = true;
+        while (underused && !unallocated.isEmpty()) {
+            underused = false;
+
+            long totalWeight = getTotalWeight(unallocated);
+            long available = remaining;
+            Iterator<Flow> iter = unallocated.iterator();
+            while (iter.hasNext()) {
+                Flow flow = iter.next();
+                long share = available * flow.weight / totalWeight;
+
+                if (flow.isUnderused() && flow.used < share) {
+                    // leave room for the flow to speed up again
+                    flow.allocate(Math.min(share, 2 * flow.used), now);
+                    remaining -= flow.used;
+                    iter.remove();
+                    underused = true;
+                }
+            }
+        }
+
+        long totalWeight = getTotalWeight(unallocated);
+        for (Flow flow : unallocated) {
+            flow.allocate(remaining * flow.weight / totalWeight, now);
+        }
+    }
+
+    private long getTotalWeight(final List<Flow> flows) {
+        long totalWeight = 0;
+        for (Flow flow : flows) {
+            totalWeight += flow.weight;
+        }
+        return totalWeight;
+    }
+
+    /**
+     * A single transfer sharing the bandwidth
+     */
+    public class Flow {
+
+        private final int weight;
+
+        private final TokenBucket bucket;
+
+        private final AtomicLong transferred = new AtomicLong();
+
+        /**
+         * The allocated rate, 0 until the use of the flow has been measured
+         */
+        private long allocated = 0;
+
+        /**
+         * The rate used during the last measurement
+         */
+        private long used = 0;
+
+        private boolean measured = false;
+
+        private Flow(final int weight, final long now) {
+            this.weight = weight;
+            this.bucket = new TokenBucket(capacity, BandwidthShaper
+                    .getBurstSize(capacity, burstSize), now);
+        }
+
+        /**
+         * @return The weight of the flow
+         */
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * @return The rate currently allocated to the flow in bytes per second
+         */
+        public long getRate() {
+            return bucket.getRate();
+        }
+
+        /**
+         * @return The burst size of the flow
+         */
+        public long getBurstSize() {
+            return bucket.getBurstSize();
+        }
+
+        /**
+         * Account for bytes that have been transferred.
+         * 
+         * @param bytes
+         *            The number of bytes transferred
+         * @return The number of nanoseconds to wait before sending more data
+         */
+        public long consume(final long bytes) {
+            return consume(bytes, System.nanoTime());
+        }
+
+        long consume(final long bytes, final long now) {
+            transferred.addAndGet(bytes);
+            long delay = Math.max(bucket.consume(bytes, now), sharedBucket
+                    .consume(bytes, now));
+
+            reallocateIfDue(now);
+            return delay;
+        }
+
+        /**
+         * Stop sharing the bandwidth with this flow
+         */
+        public void unregister() {
+            unregister(System.nanoTime());
+        }
+
+        void unregister(final long now) {
+            TransferScheduler.this.unregister(this, now);
+        }
+
+        private void measure(final long elapsed) {
+            used = (long) (transferred.getAndSet(0) * (double) NANOS_PER_SECOND / elapsed);
+            measured = true;
+        }
+
+        private boolean isUnderused() {
+            return measured && used < allocated * UNDERUSE_RATIO;
+        }
+
+        private void allocate(final long rate, final long now) {
+            allocated = Math.max(MIN_RATE, rate);
+            bucket.setRate(allocated, BandwidthShaper.getBurstSize(
+                    allocated, burstSize), now);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ipfilter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.ftpserver.util.IoUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of the <code>IpFilter</code> interface for large lists of
+ * IP addresses and CIDR ranges, IPv4 or IPv6. Addresses are looked up in a
+ * prefix trie, in a time independent of the number of ranges.
+ * 
+ * The ranges can be replaced all at once, for example by reloading them from
+ * a file. The new ranges are prepared aside and then swapped in, connections
+ * are checked against either the old or the new ranges, without ever waiting
+ * for the reload.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ * 
+ */
+
+public class CidrIpFilter implements IpFilter {
+
+	/**
+	 * Logger
+	 */
+	private final Logger LOGGER = LoggerFactory.getLogger(CidrIpFilter.class);
+
+	/**
+	 * A range, as an address and a prefix length
+	 */
+	private static class Cidr {
+
+		private final byte[] address;
+
+		private final int prefixLength;
+
+		private final String text;
+
+		public Cidr(byte[] address, int prefixLength, String text) {
+			this.address = address;
+			this.prefixLength = prefixLength;
+			this.text = text;
+		}
+	}
+
+	/**
+	 * The ranges in effect, never modified once created
+	 */
+	private static class Snapshot {
+
+		private final List<Cidr> cidrs;
+
+		private final Set<String> subnets;
+
+		private final PrefixTrie ipv4;
+
+		private final PrefixTrie ipv6;
+
+		public Snapshot(List<Cidr> cidrs) {
+			this.cidrs = cidrs;
+			Set<String> texts = new LinkedHashSet<String>();
+			PrefixTrie.Builder ipv4Builder = new PrefixTrie.Builder();
+			PrefixTrie.Builder ipv6Builder = new PrefixTrie.Builder();
+			for (Cidr cidr : cidrs) {
+				if (cidr.address.length == 4) {
+					ipv4Builder.add(cidr.address, cidr.prefixLength);
+				}
+				else {
+					ipv6Builder.add(cidr.address, cidr.prefixLength);
+				}
+				texts.add(cidr.text);
+			}
+			this.subnets = Collections.unmodifiableSet(texts);
+			this.ipv4 = ipv4Builder.build();
+			this.ipv6 = ipv6Builder.build();
+		}
+	}
+
+	/**
+	 * filter type
+	 */
+	private final IpFilterType type;
+
+	/**
+	 * The file the ranges are loaded from, if any
+	 */
+	private final File file;
+
+	private volatile Snapshot snapshot = new Snapshot(new ArrayList<Cidr>(0));
+
+	/**
+	 * Creates a new instance of <code>CidrIpFilter</code>, without any range.
+	 * 
+	 * @param type
+	 *            the filter type
+	 */
+	public CidrIpFilter(IpFilterType type) {
+		this.type = type;
+		this.file = null;
+	}
+
+	/**
+	 * Creates a new instance of <code>CidrIpFilter</code>.
+	 * 
+	 * @param type
+	 *            the filter type
+	 * @param addresses
+	 *            a comma, space, tab, LF separated list of IP addresses/CIDRs.
+	 * @throws UnknownHostException
+	 *             propagated
+	 * @throws NumberFormatException
+	 *             propagated
+	 */
+	public CidrIpFilter(IpFilterType type, String addresses)
+		throws NumberFormatException, UnknownHostException {
+		this.type = type;
+		this.file = null;
+		if (addresses != null) {
+			List<Cidr> cidrs = new ArrayList<Cidr>();
+			for (String token : addresses.split("[\\s,]+")) {
+				if (token.length() > 0) {
+					cidrs.add(parse(token));
+				}
+			}
+			snapshot = new Snapshot(cidrs);
+		}
+	}
+
+	/**
+	 * Creates a new instance of <code>CidrIpFilter</code> with the ranges
+	 * from a file. The file lists IP addresses/CIDRs separated by commas or
+	 * whitespace, the rest of a line following a '#' is ignored.
+	 * 
+	 * @param type
+	 *            the filter type
+	 * @param file
+	 *            the file to load the ranges from, and to reload them from on
+	 *            {@link #reload()}
+	 * @throws IOException
+	 *             if the file can not be read, or lists an invalid address
+	 */
+	public CidrIpFilter(IpFilterType type, File file) throws IOException {
+		this.type = type;
+		this.file = file;
+		reload();
+	}
+
+	/**
+	 * Returns the type of this filter.
+	 * 
+	 * @return the type of this filter.
+	 */
+	public IpFilterType getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the file the ranges are loaded from.
+	 * 
+	 * @return the file, or <code>null</code> if the ranges are not loaded from
+	 *         a file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the ranges of this filter.
+	 * 
+	 * @return the unmodifiable set of ranges, in CIDR notation
+	 */
+	public Set<String> getSubnets() {
+		return snapshot.subnets;
+	}
+
+	/**
+	 * Reloads the ranges from the file this filter was created with. If the
+	 * file can not be read, the current ranges are kept.
+	 * 
+	 * @throws IOException
+	 *             if the file can not be read, or lists an invalid address
+	 * @throws IllegalStateException
+	 *             if the filter was not created from a file
+	 */
+	public synchronized void reload() throws IOException {
+		if (file == null) {
+			throw new IllegalStateException("Filter not loaded from a file");
+		}
+
+		List<Cidr> cidrs = new ArrayList<Cidr>();
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8"));
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				int comment = line.indexOf('#');
+				if (comment != -1) {
+					line = line.substring(0, comment);
+				}
+				for (String token : line.trim().split("[\\s,]+")) {
+					if (token.length() > 0) {
+						try {
+							cidrs.add(parse(token));
+						}
+						catch (RuntimeException e) {
+							IOException ioe = new IOException(
+								"Invalid IP address or subnet " + token
+									+ " at line " + lineNumber + " of "
+									+ file);
+							ioe.initCause(e);
+							throw ioe;
+						}
+					}
+				}
+			}
+		}
+		finally {
+			IoUtils.close(reader);
+		}
+
+		snapshot = new Snapshot(cidrs);
+		LOGGER.info("Loaded {} subnets from {}", Integer.valueOf(snapshot.subnets
+			.size()), file);
+	}
+
+	/**
+	 * Replaces all the ranges of this filter at once.
+	 * 
+	 * @param subnets
+	 *            the IP addresses/CIDRs
+	 * @throws UnknownHostException
+	 *             propagated, the current ranges are then kept
+	 * @throws NumberFormatException
+	 *             propagated, the current ranges are then kept
+	 */
+	public synchronized void setSubnets(Collection<String> subnets)
+		throws NumberFormatException, UnknownHostException {
+		List<Cidr> cidrs = new ArrayList<Cidr>(subnets.size());
+		for (String subnet : subnets) {
+			cidrs.add(parse(subnet));
+		}
+		snapshot = new Snapshot(cidrs);
+	}
+
+	/**
+	 * Adds the given string representation of InetAddress or CIDR notation to
+	 * this filter. All the ranges are copied, use
+	 * {@link #setSubnets(Collection)} to add many ranges.
+	 * 
+	 * @param str
+	 *            the string representation of InetAddress or CIDR notation
+	 * @return if the given element was added or not. <code>true</code>, if the
+	 *         given element was added to the filter; <code>false</code>, if the
+	 *         element already exists in the filter.
+	 * @throws NumberFormatException
+	 *             propagated
+	 * @throws UnknownHostException
+	 *             propagated
+	 */
+	public synchronized boolean add(String str) throws NumberFormatException,
+		UnknownHostException {
+		Cidr cidr = parse(str);
+		Set<String> subnets = snapshot.subnets;
+		if (subnets.contains(cidr.text)) {
+			return false;
+		}
+
+		List<Cidr> cidrs = new ArrayList<Cidr>(snapshot.cidrs);
+		cidrs.add(cidr);
+		snapshot = new Snapshot(cidrs);
+		return true;
+	}
+
+	/**
+	 * Parses an IP address or CIDR, ignoring the bits of the address beyond
+	 * the prefix.
+	 */
+	private static Cidr parse(String str) throws NumberFormatException,
+		UnknownHostException {
+		// This is required so we do not block loopback address if some one adds
+		// a string with blanks as the InetAddress class assumes loopback
+		// address on blank string.
+		String trimmed = str.trim();
+		if (trimmed.length() < 1) {
+			throw new IllegalArgumentException("Invalid IP Address or Subnet: "
+				+ str);
+		}
+
+		int slash = trimmed.indexOf('/');
+		InetAddress inetAddress = InetAddress.getByName(slash == -1 ? trimmed
+			: trimmed.substring(0, slash));
+		byte[] address = inetAddress.getAddress();
+		int prefixLength = address.length * 8;
+		if (slash != -1) {
+			prefixLength = Integer.parseInt(trimmed.substring(slash + 1));
+			if (prefixLength < 0 || prefixLength > address.length * 8) {
+				throw new IllegalArgumentException(
+					"Invalid IP Address or Subnet: " + str);
+			}
+		}
+
+		// clear the bits beyond the prefix
+		for (int i = prefixLength; i < address.length * 8; i++) {
+			address[i >>> 3] &= ~(1 << (7 - (i & 7)));
+		}
+
+		String text = InetAddress.getByAddress(address).getHostAddress() + "/"
+			+ prefixLength;
+		return new Cidr(address, prefixLength, text);
+	}
+
+	/**
+	 * Finds the longest range matching an address.
+	 * 
+	 * @return the prefix length of the range, or -1 if no range matches
+	 */
+	private int match(InetAddress address) {
+		Snapshot current = snapshot;
+		if (address instanceof Inet4Address) {
+			return current.ipv4.match(address.getAddress());
+		}
+		else {
+			return current.ipv6.match(address.getAddress());
+		}
+	}
+
+	public boolean accept(InetAddress address) {
+		int prefixLength = match(address);
+		switch (type) {
+			case ALLOW:
+				if (LOGGER.isDebugEnabled()) {
+					if (prefixLength == -1) {
+						LOGGER.debug(
+							"Denying connection from {} because it does not match any of the whitelist subnets",
+							address);
+					}
+					else {
+						LOGGER.debug(
+							"Allowing connection from {} because it matches with a whitelist subnet of prefix length {}",
+							address, Integer.valueOf(prefixLength));
+					}
+				}
+				return prefixLength != -1;
+			case DENY:
+				if (LOGGER.isDebugEnabled()) {
+					if (prefixLength == -1) {
+						LOGGER.debug(
+							"Allowing connection from {} because it does not match any of the blacklist subnets",
+							address);
+					}
+					else {
+						LOGGER.debug(
+							"Denying connection from {} because it matches with a blacklist subnet of prefix length {}",
+							address, Integer.valueOf(prefixLength));
+					}
+				}
+				return prefixLength == -1;
+			default:
+				throw new RuntimeException(
+					"Unknown or unimplemented filter type: " + type);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return type + " " + snapshot.subnets;
+	}
+}
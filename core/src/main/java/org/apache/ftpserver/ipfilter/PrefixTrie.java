@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ipfilter;
+
+/**
+ * An immutable binary trie of address prefixes, all of the same address
+ * family, finding the longest prefix matching an address.
+ * 
+ * The nodes are stored in arrays rather than as objects, so that tries of
+ * hundreds of thousands of prefixes stay compact and quick to walk.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ * 
+ */
+class PrefixTrie {
+
+	/**
+	 * Marks the children at which a prefix ends
+	 */
+	private static final int TERMINAL = 0x80000000;
+
+	/**
+	 * The children of each node, at 2 * node for a 0 bit and 2 * node + 1
+	 * for a 1 bit, with the {@link #TERMINAL} bit set if a prefix ends at the
+	 * child. 0 when there is no child, as the root, node 0, is never a child.
+	 * Keeping the end of the prefixes with the children saves a memory access
+	 * for each bit of the looked up addresses.
+	 */
+	private final int[] children;
+
+	/**
+	 * Does a prefix of length 0 match all addresses?
+	 */
+	private final boolean matchAll;
+
+	private PrefixTrie(int[] children, boolean matchAll) {
+		this.children = children;
+		this.matchAll = matchAll;
+	}
+
+	/**
+	 * Finds the longest prefix matching the given address.
+	 * 
+	 * @param address
+	 *            the address, in network byte order
+	 * @return the length of the longest matching prefix, or -1 if no prefix
+	 *         matches
+	 */
+	public int match(byte[] address) {
+		int longest = matchAll ? 0 : -1;
+		int node = 0;
+		int bits = address.length * 8;
+		for (int i = 0; i < bits; i++) {
+			int bit = (address[i >>> 3] >>> (7 - (i & 7))) & 1;
+			int child = children[(node << 1) | bit];
+			if (child == 0) {
+				break;
+			}
+			if ((child & TERMINAL) != 0) {
+				longest = i + 1;
+			}
+			node = child & ~TERMINAL;
+		}
+		return longest;
+	}
+
+	/**
+	 * Builds a {@link PrefixTrie}, not thread safe.
+	 */
+	static class Builder {
+
+		private int[] children = new int[64];
+
+		private boolean[] terminal = new boolean[32];
+
+		private int nodes = 1;
+
+		/**
+		 * Adds a prefix.
+		 * 
+		 * @param address
+		 *            the address, in network byte order
+		 * @param prefixLength
+		 *            the number of leading bits of the address in the prefix
+		 */
+		public void add(byte[] address, int prefixLength) {
+			int node = 0;
+			for (int i = 0; i < prefixLength; i++) {
+				int bit = (address[i >>> 3] >>> (7 - (i & 7))) & 1;
+				int index = (node << 1) | bit;
+				if (children[index] == 0) {
+					// newNode() may grow the arrays
+					int child = newNode();
+					children[index] = child;
+				}
+				node = children[index];
+			}
+			terminal[node] = true;
+		}
+
+		private int newNode() {
+			if (nodes == terminal.length) {
+				int[] newChildren = new int[children.length * 2];
+				System.arraycopy(children, 0, newChildren, 0, children.length);
+				children = newChildren;
+				boolean[] newTerminal = new boolean[terminal.length * 2];
+				System.arraycopy(terminal, 0, newTerminal, 0, terminal.length);
+				terminal = newTerminal;
+			}
+			return nodes++;
+		}
+
+		public PrefixTrie build() {
+			int[] trimmedChildren = new int[nodes * 2];
+			for (int i = 0; i < trimmedChildren.length; i++) {
+				int child = children[i];
+				if (child != 0 && terminal[child]) {
+					child |= TERMINAL;
+				}
+				trimmedChildren[i] = child;
+			}
+			return new PrefixTrie(trimmedChildren, terminal[0]);
+		}
+	}
+}
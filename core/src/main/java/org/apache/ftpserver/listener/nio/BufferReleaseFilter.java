@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.listener.nio;
+
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Returns the buffers encoded by {@link FtpResponseEncoder} to the pool once
+ * they have been sent. Must be placed closer to the head of the filter chain
+ * than the codec filter. Buffers of replies never sent, e.g. because the
+ * session was closed, are left to the garbage collector.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class BufferReleaseFilter extends IoFilterAdapter {
+
+    @Override
+    public void messageSent(NextFilter nextFilter, IoSession session,
+            WriteRequest writeRequest) throws Exception {
+        Object message = writeRequest.getMessage();
+        if (message instanceof PooledIoBuffer) {
+            ((PooledIoBuffer) message).release();
+        }
+
+        nextFilter.messageSent(session, writeRequest);
+    }
+}
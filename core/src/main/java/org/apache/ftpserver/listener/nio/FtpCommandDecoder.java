@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.listener.nio;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.MalformedInputException;
+import java.util.Arrays;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolDecoderAdapter;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.apache.mina.filter.codec.RecoverableProtocolDecoderException;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Decodes FTP command lines, terminated by LF or CRLF, into
+ * {@link LazyFtpRequest}s. The command is parsed straight from the received
+ * bytes and known commands are mapped to shared strings, so that a command
+ * without argument, e.g. NOOP, is decoded without creating any string. The
+ * argument is only checked to be valid UTF-8 and decoded when it is used.
+ * 
+ * Lines longer than the maximum line length are discarded and reported with
+ * a {@link RecoverableProtocolDecoderException}, as are lines which are not
+ * valid UTF-8, with a {@link MalformedInputException} as cause.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FtpCommandDecoder extends ProtocolDecoderAdapter {
+
+    public static final int DEFAULT_MAX_LINE_LENGTH = 1024;
+
+    private static final AttributeKey CONTEXT = new AttributeKey(
+            FtpCommandDecoder.class, "context");
+
+    private static final String[] KNOWN_COMMANDS = { "ABOR", "ACCT", "APPE",
+            "AUTH", "CDUP", "CWD", "DELE", "EPRT", "EPSV", "FEAT", "HELP",
+            "LANG", "LIST", "MD5", "MDTM", "MFMT", "MKD", "MLSD", "MLST",
+            "MMD5", "MODE", "NLST", "NOOP", "OPTS", "PASS", "PASV", "PBSZ",
+            "PORT", "PROT", "PWD", "QUIT", "REIN", "REST", "RETR", "RMD",
+            "RNFR", "RNTO", "SITE", "SIZE", "STAT", "STOR", "STOU", "STRU",
+            "SYST", "TYPE", "USER" };
+
+    /**
+     * The known commands packed into longs, one byte per character, sorted
+     */
+    private static final long[] COMMAND_KEYS = new long[KNOWN_COMMANDS.length];
+
+    /**
+     * The known commands, in the order of {@link #COMMAND_KEYS}
+     */
+    private static final String[] COMMANDS = new String[KNOWN_COMMANDS.length];
+
+    static {
+        for (int i = 0; i < KNOWN_COMMANDS.length; i++) {
+            long key = 0;
+            for (int j = 0; j < KNOWN_COMMANDS[i].length(); j++) {
+                key = (key << 8) | KNOWN_COMMANDS[i].charAt(j);
+            }
+            COMMAND_KEYS[i] = key;
+        }
+        Arrays.sort(COMMAND_KEYS);
+        for (String command : KNOWN_COMMANDS) {
+            long key = 0;
+            for (int j = 0; j < command.length(); j++) {
+                key = (key << 8) | command.charAt(j);
+            }
+            COMMANDS[Arrays.binarySearch(COMMAND_KEYS, key)] = command;
+        }
+    }
+
+    private final int maxLineLength;
+
+    public FtpCommandDecoder() {
+        this(DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * @param maxLineLength
+     *            The maximum length, in bytes, of a command line
+     */
+    public FtpCommandDecoder(final int maxLineLength) {
+        this.maxLineLength = maxLineLength;
+    }
+
+    public void decode(final IoSession session, final IoBuffer in,
+            final ProtocolDecoderOutput out) throws Exception {
+        Context ctx = (Context) session.getAttribute(CONTEXT);
+
+        int start = in.position();
+        int limit = in.limit();
+        for (int i = start; i < limit; i++) {
+            if (in.get(i) != '\n') {
+                continue;
+            }
+
+            // the line is consumed even if it turns out to be invalid
+            int lineStart = start;
+            start = i + 1;
+            in.position(start);
+
+            if (ctx != null && ctx.discarding) {
+                // end of a line which was too long
+                ctx.discarding = false;
+            } else if (ctx != null && ctx.buffer.position() > 0) {
+                // end of a line received in pieces
+                IoBuffer buffer = ctx.buffer;
+                if (buffer.position() + i - lineStart > maxLineLength) {
+                    buffer.clear();
+                    throw new RecoverableProtocolDecoderException(
+                            "Line is too long");
+                }
+                append(buffer, in, lineStart, i);
+                buffer.flip();
+                try {
+                    decodeLine(buffer, 0, buffer.limit(), out);
+                } finally {
+                    buffer.clear();
+                }
+            } else {
+                if (i - lineStart > maxLineLength) {
+                    throw new RecoverableProtocolDecoderException(
+                            "Line is too long");
+                }
+                decodeLine(in, lineStart, i, out);
+            }
+        }
+
+        // keep the start of an incomplete line
+        in.position(limit);
+        if (start < limit) {
+            if (ctx == null) {
+                ctx = new Context();
+                session.setAttribute(CONTEXT, ctx);
+            }
+
+            if (!ctx.discarding) {
+                if (ctx.buffer.position() + limit - start > maxLineLength) {
+                    ctx.buffer.clear();
+                    ctx.discarding = true;
+                    throw new RecoverableProtocolDecoderException(
+                            "Line is too long");
+                }
+                append(ctx.buffer, in, start, limit);
+            }
+        }
+    }
+
+    private void append(final IoBuffer buffer, final IoBuffer in,
+            final int start, final int end) {
+        int position = in.position();
+        int limit = in.limit();
+
+        in.limit(end);
+        in.position(start);
+        buffer.put(in);
+
+        in.limit(limit);
+        in.position(position);
+    }
+
+    /**
+     * Decode a single line, excluding the LF
+     */
+    private void decodeLine(final IoBuffer buffer, int start, int end,
+            final ProtocolDecoderOutput out) throws Exception {
+        // trim, like String.trim()
+        while (start < end && isWhitespace(buffer.get(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(buffer.get(end - 1))) {
+            end--;
+        }
+
+        if (!isValidUtf8(buffer, start, end)) {
+            throw new RecoverableProtocolDecoderException(
+                    new MalformedInputException(end - start));
+        }
+
+        int commandEnd = start;
+        boolean ascii = true;
+        boolean upperCase = true;
+        while (commandEnd < end && buffer.get(commandEnd) != ' ') {
+            byte b = buffer.get(commandEnd);
+            ascii &= b >= 0;
+            upperCase &= b < 'a' || b > 'z';
+            commandEnd++;
+        }
+
+        // strip the X of the old RFC 775 commands, e.g. XMKD
+        int commandStart = start;
+        if (commandStart < commandEnd
+                && (buffer.get(commandStart) == 'X' || buffer
+                        .get(commandStart) == 'x')) {
+            commandStart++;
+        }
+
+        String command = ascii ? getCommand(buffer, commandStart, commandEnd)
+                : null;
+        if (command == null) {
+            command = decode(buffer, commandStart, commandEnd).toUpperCase();
+        }
+
+        boolean hasArgument = commandEnd < end;
+        byte[] lineBytes = null;
+        if (hasArgument || !upperCase || commandStart != start) {
+            lineBytes = new byte[end - start];
+            for (int i = 0; i < lineBytes.length; i++) {
+                lineBytes[i] = buffer.get(start + i);
+            }
+        }
+
+        out.write(new LazyFtpRequest(command, lineBytes,
+                hasArgument ? commandEnd + 1 - start : -1));
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    /**
+     * Get the shared string for a known, ASCII, command
+     * 
+     * @return The command, or null if not known
+     */
+    private static String getCommand(final IoBuffer buffer, final int start,
+            final int end) {
+        if (end - start > 8) {
+            return null;
+        }
+
+        long key = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= 'a' && b <= 'z') {
+                b -= 'a' - 'A';
+            }
+            key = (key << 8) | b;
+        }
+
+        int index = Arrays.binarySearch(COMMAND_KEYS, key);
+        return index >= 0 ? COMMANDS[index] : null;
+    }
+
+    private static String decode(final IoBuffer buffer, final int start,
+            final int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Check for well formed UTF-8, rejecting overlong encodings and
+     * surrogates as {@link java.nio.charset.CharsetDecoder} does
+     */
+    static boolean isValidUtf8(final IoBuffer buffer, final int start,
+            final int end) {
+        int i = start;
+        while (i < end) {
+            int b = buffer.get(i) & 0xff;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+
+            int continuation;
+            int min = 0x80;
+            int max = 0xbf;
+            if (b < 0xc2) {
+                return false;
+            } else if (b < 0xe0) {
+                continuation = 1;
+            } else if (b < 0xf0) {
+                continuation = 2;
+                if (b == 0xe0) {
+                    min = 0xa0;
+                } else if (b == 0xed) {
+                    max = 0x9f;
+                }
+            } else if (b < 0xf5) {
+                continuation = 3;
+                if (b == 0xf0) {
+                    min = 0x90;
+                } else if (b == 0xf4) {
+                    max = 0x8f;
+                }
+            } else {
+                return false;
+            }
+
+            if (i + continuation >= end) {
+                return false;
+            }
+            for (int j = 1; j <= continuation; j++) {
+                int c = buffer.get(i + j) & 0xff;
+                if (c < min || c > max) {
+                    return false;
+                }
+                // only the second byte has a restricted range
+                min = 0x80;
+                max = 0xbf;
+            }
+            i += continuation + 1;
+        }
+        return true;
+    }
+
+    @Override
+    public void dispose(final IoSession session) throws Exception {
+        session.removeAttribute(CONTEXT);
+    }
+
+    /**
+     * Decoding state of a session with an incomplete line
+     */
+    private static class Context {
+
+        private final IoBuffer buffer = IoBuffer.allocate(128).setAutoExpand(
+                true);
+
+        /**
+         * Set while skipping the rest of a line which was too long
+         */
+        private boolean discarding = false;
+    }
+}
@@ -55,8 +55,19 @@ public class FtpHandlerAdapter implements IoHandler {
 
     public void messageReceived(IoSession session, Object message)
             throws Exception {
+        if (message instanceof Runnable) {
+            // handed back by FtpIoSession.runInSession()
+            ((Runnable) message).run();
+            return;
+        }
+
         FtpIoSession ftpSession = new FtpIoSession(session, context);
-        FtpRequest request = new DefaultFtpRequest(message.toString());
+        FtpRequest request;
+        if (message instanceof FtpRequest) {
+            request = (FtpRequest) message;
+        } else {
+            request = new DefaultFtpRequest(message.toString());
+        }
 
         ftpHandler.messageReceived(ftpSession, request);
     }
@@ -19,6 +19,7 @@
 
 package org.apache.ftpserver.listener.nio;
 
+import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.logging.LoggingFilter;
 import org.slf4j.Logger;
@@ -67,24 +68,27 @@ public class FtpLoggingFilter extends LoggingFilter {
     @Override
     public void messageReceived(NextFilter nextFilter, IoSession session,
             Object message) throws Exception {
-        String request = (String) message;
-
-        String logMessage;
-        if (maskPassword) {
-
-            if (request.trim().toUpperCase().startsWith("PASS ")) {
+        // tasks handed back to the session were not received from the client
+        if (logger.isInfoEnabled() && !(message instanceof Runnable)) {
+            String logMessage;
+            if (maskPassword && isPassword(message)) {
                 logMessage = "PASS *****";
             } else {
-                logMessage = request;
+                logMessage = message.toString();
             }
-        } else {
-            logMessage = request;
-        }
 
-        logger.info("RECEIVED: {}", logMessage);
+            logger.info("RECEIVED: {}", logMessage);
+        }
         nextFilter.messageReceived(session, message);
     }
 
+    private boolean isPassword(Object message) {
+        if (message instanceof FtpRequest) {
+            return "PASS".equals(((FtpRequest) message).getCommand());
+        }
+        return message.toString().trim().toUpperCase().startsWith("PASS ");
+    }
+
     /**
      * Are password masked?
      * 
@@ -19,10 +19,16 @@
  */
 package org.apache.ftpserver.listener.nio;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
 
 import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.impl.BufferPool;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
@@ -32,21 +38,88 @@ import org.apache.mina.filter.codec.demux.MessageEncoder;
 /**
  * <strong>Internal class, do not use directly.</strong>
  * 
- * A {@link MessageEncoder} that encodes {@link FtpReply}.
+ * A {@link MessageEncoder} that encodes {@link FtpReply}. If a
+ * {@link BufferPool} is provided, replies are encoded into pooled direct
+ * buffers which are returned to the pool by the {@link BufferReleaseFilter}.
+ * Replies pre-encoded by the {@link org.apache.ftpserver.impl.ReplyCache} are
+ * written without encoding.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public class FtpResponseEncoder extends ProtocolEncoderAdapter {
-    private static final CharsetEncoder ENCODER = Charset.forName("UTF-8")
-            .newEncoder();
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * The maximum number of bytes a single char is encoded into
+     */
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    /**
+     * Encoders are stateful, keep one per thread
+     */
+    private static final ThreadLocal<CharsetEncoder> ENCODER = new ThreadLocal<CharsetEncoder>() {
+        @Override
+        protected CharsetEncoder initialValue() {
+            return CHARSET.newEncoder();
+        }
+    };
+
+    private final BufferPool bufferPool;
+
+    public FtpResponseEncoder() {
+        this(null);
+    }
+
+    /**
+     * @param bufferPool
+     *            The pool to borrow the reply buffers from, or null to
+     *            allocate a new buffer for every reply
+     */
+    public FtpResponseEncoder(final BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
 
     public void encode(IoSession session, Object message,
             ProtocolEncoderOutput out) throws Exception {
+        if (message instanceof LocalizedFtpReply) {
+            ByteBuffer encoded = ((LocalizedFtpReply) message)
+                    .getEncodedReply();
+            if (encoded != null) {
+                // shared between sessions, write a view with its own position
+                out.write(IoBuffer.wrap(encoded.duplicate()));
+                return;
+            }
+        }
+
         String value = message.toString();
+        CharsetEncoder encoder = ENCODER.get();
+
+        int maxLength = value.length() * MAX_BYTES_PER_CHAR;
+        if (bufferPool != null && maxLength <= BufferPool.MAX_BUFFER_SIZE) {
+            ByteBuffer buffer = bufferPool.acquireDirect(maxLength);
+            try {
+                encoder.reset();
+                CoderResult result = encoder.encode(CharBuffer.wrap(value),
+                        buffer, true);
+                if (result.isUnderflow()) {
+                    result = encoder.flush(buffer);
+                }
+                if (!result.isUnderflow()) {
+                    result.throwException();
+                }
+            } catch (CharacterCodingException e) {
+                bufferPool.release(buffer);
+                throw e;
+            }
+
+            buffer.flip();
+            out.write(new PooledIoBuffer(bufferPool, buffer));
+            return;
+        }
 
         IoBuffer buf = IoBuffer.allocate(value.length()).setAutoExpand(true);
 
-        buf.putString(value, ENCODER);
+        buf.putString(value, encoder);
 
         buf.flip();
         out.write(buf);
@@ -19,13 +19,11 @@
  */
 package org.apache.ftpserver.listener.nio;
 
-import java.nio.charset.Charset;
-
+import org.apache.ftpserver.impl.BufferPool;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFactory;
 import org.apache.mina.filter.codec.ProtocolDecoder;
 import org.apache.mina.filter.codec.ProtocolEncoder;
-import org.apache.mina.filter.codec.textline.TextLineDecoder;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -35,10 +33,22 @@ import org.apache.mina.filter.codec.textline.TextLineDecoder;
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public class FtpServerProtocolCodecFactory implements ProtocolCodecFactory {
-    private ProtocolDecoder decoder = new TextLineDecoder(Charset
-            .forName("UTF-8"));
+    private ProtocolDecoder decoder = new FtpCommandDecoder();
+
+    private ProtocolEncoder encoder;
 
-    private ProtocolEncoder encoder = new FtpResponseEncoder();
+    public FtpServerProtocolCodecFactory() {
+        this(null);
+    }
+
+    /**
+     * @param bufferPool
+     *            The pool to encode replies into, or null to allocate a new
+     *            buffer for every reply
+     */
+    public FtpServerProtocolCodecFactory(final BufferPool bufferPool) {
+        encoder = new FtpResponseEncoder(bufferPool);
+    }
 
     public ProtocolDecoder getDecoder(IoSession session) throws Exception {
         return decoder;
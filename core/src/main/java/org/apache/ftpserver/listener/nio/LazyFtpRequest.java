@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.listener.nio;
+
+import java.io.UnsupportedEncodingException;
+
+import org.apache.ftpserver.ftplet.FtpRequest;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * FTP request created by {@link FtpCommandDecoder}. The command is parsed
+ * when the request is decoded, the argument and request line are kept as
+ * UTF-8 bytes and only turned into strings when asked for.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class LazyFtpRequest implements FtpRequest {
+
+    private final String command;
+
+    /**
+     * The trimmed request line, or null if it is equal to the command
+     */
+    private final byte[] lineBytes;
+
+    /**
+     * The offset of the argument in the request line, or -1 if there is no
+     * argument
+     */
+    private final int argumentOffset;
+
+    private String line;
+
+    private String argument;
+
+    /**
+     * @param command
+     *            The command, upper case and without any X prefix
+     * @param lineBytes
+     *            The trimmed request line as valid UTF-8, or null if the line
+     *            only contains the command
+     * @param argumentOffset
+     *            The offset of the argument in the line, or -1
+     */
+    public LazyFtpRequest(final String command, final byte[] lineBytes,
+            final int argumentOffset) {
+        this.command = command;
+        this.lineBytes = lineBytes;
+        this.argumentOffset = argumentOffset;
+    }
+
+    /**
+     * Get the ftp command.
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Get ftp input argument.
+     */
+    public String getArgument() {
+        if (argument == null && argumentOffset != -1) {
+            argument = decode(argumentOffset);
+        }
+        return argument;
+    }
+
+    /**
+     * Get the ftp request line.
+     */
+    public String getRequestLine() {
+        if (line == null) {
+            line = lineBytes == null ? command : decode(0);
+        }
+        return line;
+    }
+
+    /**
+     * Has argument.
+     */
+    public boolean hasArgument() {
+        return argumentOffset != -1;
+    }
+
+    private String decode(final int offset) {
+        try {
+            return new String(lineBytes, offset, lineBytes.length - offset,
+                    "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return getRequestLine();
+    }
+}
@@ -36,6 +36,7 @@ import org.apache.ftpserver.impl.DefaultFtpHandler;
 import org.apache.ftpserver.impl.FtpHandler;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.ServerConnectionConfig;
 import org.apache.ftpserver.ipfilter.IpFilter;
 import org.apache.ftpserver.ipfilter.MinaIpFilter;
 import org.apache.ftpserver.listener.Listener;
@@ -133,6 +134,14 @@ public class NioListener extends AbstractListener {
             ((SocketSessionConfig) acceptor.getSessionConfig())
                     .setReceiveBufferSize(512);
     
+            if (((ServerConnectionConfig) context.getConnectionConfig())
+                    .getLoginBanThreshold() > 0) {
+                // close connections from banned addresses before anything
+                // else is done for them
+                acceptor.getFilterChain().addLast("loginThrottle",
+                        new MinaIpFilter(context.getLoginThrottle()));
+            }
+
             MdcInjectionFilter mdcFilter = new MdcInjectionFilter();
     
             acceptor.getFilterChain().addLast("mdcFilter", mdcFilter);
@@ -143,10 +152,14 @@ public class NioListener extends AbstractListener {
             	acceptor.getFilterChain().addLast("ipFilter", new MinaIpFilter(ipFilter));
             }
     
+            // release the pooled reply buffers straight from the I/O thread
+            acceptor.getFilterChain().addLast("bufferRelease",
+                    new BufferReleaseFilter());
             acceptor.getFilterChain().addLast("threadPool",
                     new ExecutorFilter(context.getThreadPoolExecutor()));
             acceptor.getFilterChain().addLast("codec",
-                    new ProtocolCodecFilter(new FtpServerProtocolCodecFactory()));
+                    new ProtocolCodecFilter(new FtpServerProtocolCodecFactory(
+                            context.getBufferPool())));
             acceptor.getFilterChain().addLast("mdcFilter2", mdcFilter);
             acceptor.getFilterChain().addLast("logger", new FtpLoggingFilter());
     
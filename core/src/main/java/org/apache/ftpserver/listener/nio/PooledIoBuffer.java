@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.listener.nio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.ftpserver.impl.BufferPool;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.buffer.IoBufferWrapper;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * An {@link IoBuffer} wrapping a buffer borrowed from a {@link BufferPool}.
+ * The buffer is returned to the pool by the {@link BufferReleaseFilter} once
+ * it has been written to the session.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PooledIoBuffer extends IoBufferWrapper {
+
+    private final BufferPool bufferPool;
+
+    private final ByteBuffer buffer;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    public PooledIoBuffer(final BufferPool bufferPool, final ByteBuffer buffer) {
+        super(IoBuffer.wrap(buffer));
+        this.bufferPool = bufferPool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Return the buffer to the pool, the buffer must not be used afterwards.
+     * Only the first call has any effect.
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            bufferPool.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.impl.CachingUserManager;
+
+/**
+ * Factory for a <code>UserManager</code> caching the users of another user
+ * manager.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CachingUserManagerFactory implements UserManagerFactory {
+
+    private UserManager userManager;
+
+    private UserManagerFactory userManagerFactory;
+
+    private int cacheSize = 10000;
+
+    private int cacheTimeToLive = 60;
+
+    /**
+     * Creates a {@link CachingUserManager} instance based on the provided
+     * configuration
+     */
+    public UserManager createUserManager() {
+        UserManager cachedUserManager = userManager;
+        if (cachedUserManager == null && userManagerFactory != null) {
+            cachedUserManager = userManagerFactory.createUserManager();
+        }
+        if (cachedUserManager == null) {
+            throw new FtpServerConfigurationException(
+                    "A user manager or user manager factory must be provided");
+        }
+        return new CachingUserManager(cachedUserManager, cacheSize,
+                cacheTimeToLive * 1000L);
+    }
+
+    /**
+     * Get the cached user manager
+     * @return The user manager, or null if it is created by the user manager factory
+     */
+    public UserManager getUserManager() {
+        return userManager;
+    }
+
+    /**
+     * Set the user manager to cache
+     * @param userManager The user manager
+     */
+    public void setUserManager(UserManager userManager) {
+        this.userManager = userManager;
+    }
+
+    /**
+     * Get the factory of the cached user manager
+     * @return The user manager factory
+     */
+    public UserManagerFactory getUserManagerFactory() {
+        return userManagerFactory;
+    }
+
+    /**
+     * Set the factory creating the user manager to cache, used if no user
+     * manager is set
+     * @param userManagerFactory The user manager factory
+     */
+    public void setUserManagerFactory(UserManagerFactory userManagerFactory) {
+        this.userManagerFactory = userManagerFactory;
+    }
+
+    /**
+     * Get the maximum number of cached users
+     * @return The maximum number of cached users
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Set the maximum number of cached users, and of cached authentications.
+     * The default value is 10000.
+     * @param cacheSize The maximum number of cached users
+     */
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Get the time a cached user is used
+     * @return The time to live in seconds
+     */
+    public int getCacheTimeToLive() {
+        return cacheTimeToLive;
+    }
+
+    /**
+     * Set the time a cached user is used before it is looked up again. The
+     * default value is 60 seconds.
+     * @param cacheTimeToLive The time to live in seconds
+     */
+    public void setCacheTimeToLive(int cacheTimeToLive) {
+        this.cacheTimeToLive = cacheTimeToLive;
+    }
+}
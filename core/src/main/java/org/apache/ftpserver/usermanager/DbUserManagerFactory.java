@@ -51,6 +51,10 @@ public class DbUserManagerFactory implements UserManagerFactory {
     private DataSource dataSource;
 
     private PasswordEncryptor passwordEncryptor = new Md5PasswordEncryptor();
+
+    private boolean preparedStatements = false;
+
+    private int maxConnections = 0;
     
     public UserManager createUserManager() {
         if (dataSource == null) {
@@ -88,7 +92,8 @@ public class DbUserManagerFactory implements UserManagerFactory {
         
         return new DbUserManager(dataSource, selectAllStmt, selectUserStmt, 
                 insertUserStmt, updateUserStmt, deleteUserStmt, authenticateStmt, 
-                isAdminStmt, passwordEncryptor, adminName);
+                isAdminStmt, passwordEncryptor, adminName, preparedStatements,
+                maxConnections);
     }
     
     /**
@@ -287,4 +292,48 @@ public class DbUserManagerFactory implements UserManagerFactory {
     public void setPasswordEncryptor(PasswordEncryptor passwordEncryptor) {
         this.passwordEncryptor = passwordEncryptor;
     }
-}
\ No newline at end of file
+
+    /**
+     * Are the SQL statements run as prepared statements?
+     * 
+     * @return true if prepared statements are used
+     */
+    public boolean isPreparedStatements() {
+        return preparedStatements;
+    }
+
+    /**
+     * Set whether the SQL statements are run as prepared statements, with
+     * the variables bound to parameters instead of being substituted in the
+     * SQL. The default value is false.
+     * 
+     * @param preparedStatements
+     *            true to use prepared statements
+     */
+    public void setPreparedStatements(boolean preparedStatements) {
+        this.preparedStatements = preparedStatements;
+    }
+
+    /**
+     * Get the maximum number of pooled connections
+     * 
+     * @return The maximum number of connections, 0 if connections are not
+     *         pooled
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Set the maximum number of connections pooled by the user manager, for
+     * data sources which do not pool connections. The prepared statements
+     * are kept open with the pooled connections. The default value is 0,
+     * connections are not pooled.
+     * 
+     * @param maxConnections
+     *            The maximum number of connections
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+}
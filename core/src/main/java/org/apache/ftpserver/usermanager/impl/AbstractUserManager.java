@@ -53,6 +53,10 @@ public abstract class AbstractUserManager implements UserManager {
 
     public static final String ATTR_MAX_LOGIN_PER_IP = "maxloginperip";
 
+    public static final String ATTR_TRANSFER_CLASS = "transferclass";
+
+    public static final String ATTR_TRANSFER_WEIGHT = "transferweight";
+
     private String adminName;
     
     private PasswordEncryptor passwordEncryptor = new Md5PasswordEncryptor();
@@ -0,0 +1,462 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.ftpserver.ftplet.Authentication;
+import org.apache.ftpserver.ftplet.AuthenticationFailedException;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.AnonymousAuthentication;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * {@link UserManager} caching the users and the successful authentications
+ * of another user manager. Unknown users are cached too, so that logins with
+ * unknown user names are rejected without asking the user manager.
+ * 
+ * Concurrent lookups of the same user wait for a single lookup of the user
+ * manager. Entries are used until they are older than the time to live, the
+ * least recently used entries are evicted when the cache is full. Users saved
+ * or deleted through this user manager are removed from the cache
+ * immediately, changes made directly to the underlying user store are seen
+ * once the cached entries expire, or after {@link #refresh()}.
+ * 
+ * Passwords are not cached, only a salted digest of the passwords of
+ * successful authentications. The cached authentications assume that the
+ * underlying user manager authenticates on the user name and password only,
+ * and not on the {@link UserMetadata}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CachingUserManager implements UserManager {
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    private final UserManager userManager;
+
+    private final int maxSize;
+
+    private final long timeToLive;
+
+    // users by name, null for unknown users
+    private final Map<String, Entry> users;
+
+    // authenticated users by name
+    private final Map<String, Entry> authentications;
+
+    // the generation of the last invalidation of each user, users loaded
+    // before they were invalidated are not cached
+    private final Map<String, Long> invalidations;
+
+    // the generation of the invalidations which are no longer tracked
+    private long invalidationFloor = 0;
+
+    private long generation = 0;
+
+    private final byte[] salt = new byte[16];
+
+    private long hitCount = 0;
+
+    private long missCount = 0;
+
+    private long evictionCount = 0;
+
+    /**
+     * Internal constructor, do not use directly
+     * 
+     * @param userManager
+     *            The cached user manager
+     * @param maxSize
+     *            The maximum number of cached users, and of cached
+     *            authentications
+     * @param timeToLive
+     *            The time in milliseconds a cached entry is used
+     */
+    public CachingUserManager(final UserManager userManager,
+            final int maxSize, final long timeToLive) {
+        if (userManager == null) {
+            throw new IllegalArgumentException("userManager can not be null");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.userManager = userManager;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        users = createMap();
+        authentications = createMap();
+        invalidations = new LinkedHashMap<String, Long>() {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, Long> eldest) {
+                if (size() > maxSize) {
+                    // assume that the forgotten users have just been
+                    // invalidated
+                    invalidationFloor = eldest.getValue();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        new SecureRandom().nextBytes(salt);
+    }
+
+    private Map<String, Entry> createMap() {
+        return new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the cached user manager
+     */
+    public UserManager getUserManager() {
+        return userManager;
+    }
+
+    /**
+     * Get a user, from the cache if possible
+     */
+    public User getUserByName(final String username) throws FtpException {
+        if (username == null) {
+            return userManager.getUserByName(username);
+        }
+        return get(users, username, null, new Callable<User>() {
+            public User call() throws FtpException {
+                return userManager.getUserByName(username);
+            }
+        });
+    }
+
+    /**
+     * Check if a user exists, from the cache if possible
+     */
+    public boolean doesExist(final String username) throws FtpException {
+        return getUserByName(username) != null;
+    }
+
+    /**
+     * Authenticate a user, from the cache if the user has been authenticated
+     * with the same password before
+     */
+    public User authenticate(final Authentication authentication)
+            throws AuthenticationFailedException {
+        String username;
+        byte[] credential;
+        if (authentication instanceof UsernamePasswordAuthentication) {
+            UsernamePasswordAuthentication upauth = (UsernamePasswordAuthentication) authentication;
+            username = upauth.getUsername();
+            credential = digest(upauth.getPassword());
+        } else if (authentication instanceof AnonymousAuthentication) {
+            username = "anonymous";
+            credential = null;
+        } else {
+            return userManager.authenticate(authentication);
+        }
+
+        if (username == null) {
+            return userManager.authenticate(authentication);
+        }
+
+        try {
+            // unknown users are rejected without asking the user manager
+            if (getUserByName(username) == null) {
+                throw new AuthenticationFailedException("Authentication failed");
+            }
+
+            return get(authentications, username, credential,
+                    new Callable<User>() {
+                        public User call() throws FtpException {
+                            return userManager.authenticate(authentication);
+                        }
+                    });
+        } catch (AuthenticationFailedException e) {
+            throw e;
+        } catch (FtpException e) {
+            throw new AuthenticationFailedException("Authentication failed", e);
+        }
+    }
+
+    /**
+     * Get a cached entry, or load it. Concurrent loads of the same key wait
+     * for the first one.
+     */
+    private User get(final Map<String, Entry> cache, final String key,
+            final byte[] credential, final Callable<User> loader)
+            throws FtpException {
+        Entry entry;
+        boolean load = false;
+        boolean shared = false;
+        long loadGeneration;
+        synchronized (this) {
+            loadGeneration = generation;
+            long now = System.currentTimeMillis();
+            entry = cache.get(key);
+            if (entry != null && entry.expires <= now) {
+                cache.remove(key);
+                entry = null;
+            }
+
+            if (entry != null && isSameCredential(entry.credential, credential)) {
+                hitCount++;
+            } else {
+                missCount++;
+                load = true;
+
+                // an authentication with another password does not replace
+                // the cached one unless it succeeds
+                shared = entry == null;
+                entry = new Entry(new FutureTask<User>(loader), credential,
+                        now + timeToLive);
+                if (shared) {
+                    cache.put(key, entry);
+                }
+            }
+        }
+
+        if (load) {
+            entry.task.run();
+        }
+
+        try {
+            User user = entry.task.get();
+            if (load && !shared) {
+                synchronized (this) {
+                    // the user might have changed while it was loaded
+                    if (getInvalidation(key) <= loadGeneration) {
+                        cache.put(key, entry);
+                    }
+                }
+            }
+            return user;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FtpException("Interrupted while loading user " + key, e);
+        } catch (ExecutionException e) {
+            // failures are not cached
+            if (shared) {
+                synchronized (this) {
+                    if (cache.get(key) == entry) {
+                        cache.remove(key);
+                    }
+                }
+            }
+
+            Throwable cause = e.getCause();
+            if (cause instanceof FtpException) {
+                throw (FtpException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new FtpException("Failed to load user " + key, cause);
+            }
+        }
+    }
+
+    private static boolean isSameCredential(final byte[] credential1,
+            final byte[] credential2) {
+        if (credential1 == null || credential2 == null) {
+            return credential1 == credential2;
+        }
+        return MessageDigest.isEqual(credential1, credential2);
+    }
+
+    private byte[] digest(final String password) {
+        try {
+            MessageDigest md = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            md.update(salt);
+            md.update((password == null ? "" : password).getBytes("UTF-8"));
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            // this should never happen
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Save a user and remove it from the cache
+     */
+    public void save(final User user) throws FtpException {
+        try {
+            userManager.save(user);
+        } finally {
+            invalidate(user.getName());
+        }
+    }
+
+    /**
+     * Delete a user and remove it from the cache
+     */
+    public void delete(final String username) throws FtpException {
+        try {
+            userManager.delete(username);
+        } finally {
+            invalidate(username);
+        }
+    }
+
+    /**
+     * Reload the users of the cached user manager if it is a
+     * {@link PropertiesUserManager}, and empty the cache
+     */
+    public void refresh() {
+        if (userManager instanceof PropertiesUserManager) {
+            ((PropertiesUserManager) userManager).refresh();
+        }
+        clear();
+    }
+
+    /**
+     * Empty the cache and dispose the cached user manager if it is a
+     * {@link DbUserManager} or another {@link CachingUserManager}
+     */
+    public void dispose() {
+        clear();
+        if (userManager instanceof DbUserManager) {
+            ((DbUserManager) userManager).dispose();
+        } else if (userManager instanceof CachingUserManager) {
+            ((CachingUserManager) userManager).dispose();
+        }
+    }
+
+    public String[] getAllUserNames() throws FtpException {
+        return userManager.getAllUserNames();
+    }
+
+    public String getAdminName() throws FtpException {
+        return userManager.getAdminName();
+    }
+
+    public boolean isAdmin(final String username) throws FtpException {
+        return userManager.isAdmin(username);
+    }
+
+    /**
+     * Remove a user from the cache
+     */
+    public synchronized void invalidate(final String username) {
+        users.remove(username);
+        authentications.remove(username);
+
+        // kept in the order of the generations
+        invalidations.remove(username);
+        invalidations.put(username, ++generation);
+    }
+
+    /**
+     * Remove all users from the cache
+     */
+    public synchronized void clear() {
+        users.clear();
+        authentications.clear();
+
+        invalidations.clear();
+        invalidationFloor = ++generation;
+    }
+
+    /**
+     * Get the generation of the last invalidation of a user
+     */
+    private long getInvalidation(final String username) {
+        Long invalidation = invalidations.get(username);
+        return invalidation == null ? invalidationFloor : invalidation;
+    }
+
+    /**
+     * The number of cached users and authentications
+     */
+    public synchronized int getSize() {
+        return users.size() + authentications.size();
+    }
+
+    /**
+     * The number of lookups found in the cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * The number of lookups not found in the cache, or expired
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * The number of entries removed to keep the cache within its size
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * The ratio of lookups found in the cache, between 0 and 1
+     */
+    public synchronized double getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private static class Entry {
+
+        private final FutureTask<User> task;
+
+        private final byte[] credential;
+
+        private final long expires;
+
+        public Entry(final FutureTask<User> task, final byte[] credential,
+                final long expires) {
+            this.task = task;
+            this.credential = credential;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Bounded pool of the connections of a {@link DataSource} which does not
+ * pool connections itself. The prepared statements of each connection are
+ * kept open with the connection, so that they are parsed once by the
+ * database.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DbConnectionPool {
+
+    private final DataSource dataSource;
+
+    private final long timeout;
+
+    private final Semaphore permits;
+
+    // most recently used first
+    private final LinkedList<Connection> idleConnections = new LinkedList<Connection>();
+
+    private final Map<Connection, Map<String, PreparedStatement>> statements = new IdentityHashMap<Connection, Map<String, PreparedStatement>>();
+
+    // the connection of each statement kept open by the pool
+    private final Map<PreparedStatement, Connection> pooledStatements = new IdentityHashMap<PreparedStatement, Connection>();
+
+    private boolean closed = false;
+
+    /**
+     * @param dataSource
+     *            The pooled data source
+     * @param maxConnections
+     *            The maximum number of open connections
+     * @param timeout
+     *            The maximum time in milliseconds to wait for a connection
+     */
+    public DbConnectionPool(final DataSource dataSource,
+            final int maxConnections, final long timeout) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException(
+                    "maxConnections must be positive");
+        }
+        this.dataSource = dataSource;
+        this.timeout = timeout;
+        permits = new Semaphore(maxConnections, true);
+    }
+
+    /**
+     * Get a connection, waiting for one to be released if all are in use.
+     * The connection must be given back with {@link #release(Connection)} or
+     * {@link #discard(Connection)}.
+     */
+    public Connection getConnection() throws SQLException {
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new SQLException(
+                        "Timed out waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(
+                    "Interrupted while waiting for a database connection");
+        }
+
+        boolean success = false;
+        try {
+            Connection con;
+            synchronized (this) {
+                if (closed) {
+                    throw new SQLException("Connection pool is closed");
+                }
+                con = idleConnections.poll();
+            }
+            if (con == null) {
+                con = dataSource.getConnection();
+                con.setAutoCommit(true);
+            }
+            success = true;
+            return con;
+        } finally {
+            if (!success) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Get a prepared statement of a connection of the pool, preparing it on
+     * first use. The statement must not be closed.
+     */
+    public PreparedStatement prepareStatement(final Connection con,
+            final String sql) throws SQLException {
+        Map<String, PreparedStatement> conStatements;
+        synchronized (this) {
+            conStatements = statements.get(con);
+            if (conStatements == null) {
+                conStatements = new HashMap<String, PreparedStatement>();
+                statements.put(con, conStatements);
+            }
+        }
+
+        // only used by the thread holding the connection
+        PreparedStatement stmt = conStatements.get(sql);
+        if (stmt == null) {
+            stmt = con.prepareStatement(sql);
+            conStatements.put(sql, stmt);
+            synchronized (this) {
+                pooledStatements.put(stmt, con);
+            }
+        }
+        return stmt;
+    }
+
+    /**
+     * Check if a statement is kept open by the pool
+     */
+    public synchronized boolean isPooled(final PreparedStatement stmt) {
+        return pooledStatements.containsKey(stmt);
+    }
+
+    /**
+     * Give a connection back to the pool
+     */
+    public void release(final Connection con) {
+        boolean valid;
+        try {
+            valid = !con.isClosed();
+        } catch (SQLException e) {
+            valid = false;
+        }
+
+        synchronized (this) {
+            if (valid && !closed) {
+                idleConnections.addFirst(con);
+            } else {
+                valid = false;
+            }
+        }
+        if (!valid) {
+            close(con);
+        }
+        permits.release();
+    }
+
+    /**
+     * Close a connection which failed, instead of giving it back to the pool
+     */
+    public void discard(final Connection con) {
+        close(con);
+        permits.release();
+    }
+
+    /**
+     * Close the idle connections, connections in use are closed when they
+     * are released.
+     */
+    public void close() {
+        LinkedList<Connection> connections;
+        synchronized (this) {
+            closed = true;
+            connections = new LinkedList<Connection>(idleConnections);
+            idleConnections.clear();
+        }
+        for (Connection con : connections) {
+            close(con);
+        }
+    }
+
+    private void close(final Connection con) {
+        Map<String, PreparedStatement> conStatements;
+        synchronized (this) {
+            conStatements = statements.remove(con);
+            if (conStatements != null) {
+                for (PreparedStatement stmt : conStatements.values()) {
+                    pooledStatements.remove(stmt);
+                }
+            }
+        }
+        if (conStatements != null) {
+            for (PreparedStatement stmt : conStatements.values()) {
+                try {
+                    stmt.close();
+                } catch (SQLException e) {
+                    // ignore
+                }
+            }
+        }
+        try {
+            con.close();
+        } catch (SQLException e) {
+            // ignore
+        }
+    }
+}
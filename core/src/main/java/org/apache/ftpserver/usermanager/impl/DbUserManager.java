@@ -20,12 +20,15 @@
 package org.apache.ftpserver.usermanager.impl;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.sql.DataSource;
 
@@ -58,6 +61,11 @@ public class DbUserManager extends AbstractUserManager {
 
     private final Logger LOG = LoggerFactory.getLogger(DbUserManager.class);
 
+    /**
+     * The maximum time in milliseconds to wait for a pooled connection
+     */
+    private static final long CONNECTION_TIMEOUT = 30000;
+
     private String insertUserStmt;
 
     private String updateUserStmt;
@@ -74,6 +82,13 @@ public class DbUserManager extends AbstractUserManager {
 
     private DataSource dataSource;
 
+    private final boolean preparedStatements;
+
+    private final DbConnectionPool connectionPool;
+
+    // compiled statements by configured statement
+    private final Map<String, SqlTemplate> templates = new ConcurrentHashMap<String, SqlTemplate>();
+
     /**
      * Internal constructor, do not use directly. Use {@link DbUserManagerFactory} instead.
      */
@@ -82,6 +97,20 @@ public class DbUserManager extends AbstractUserManager {
             String updateUserStmt, String deleteUserStmt,
             String authenticateStmt, String isAdminStmt,
             PasswordEncryptor passwordEncryptor, String adminName) {
+        this(dataSource, selectAllStmt, selectUserStmt, insertUserStmt,
+                updateUserStmt, deleteUserStmt, authenticateStmt, isAdminStmt,
+                passwordEncryptor, adminName, false, 0);
+    }
+
+    /**
+     * Internal constructor, do not use directly. Use {@link DbUserManagerFactory} instead.
+     */
+    public DbUserManager(DataSource dataSource, String selectAllStmt,
+            String selectUserStmt, String insertUserStmt,
+            String updateUserStmt, String deleteUserStmt,
+            String authenticateStmt, String isAdminStmt,
+            PasswordEncryptor passwordEncryptor, String adminName,
+            boolean preparedStatements, int maxConnections) {
         super(adminName, passwordEncryptor);
         this.dataSource = dataSource;
         this.selectAllStmt = selectAllStmt;
@@ -91,6 +120,25 @@ public class DbUserManager extends AbstractUserManager {
         this.deleteUserStmt = deleteUserStmt;
         this.authenticateStmt = authenticateStmt;
         this.isAdminStmt = isAdminStmt;
+        this.preparedStatements = preparedStatements;
+        if (maxConnections > 0) {
+            connectionPool = new DbConnectionPool(dataSource, maxConnections,
+                    CONNECTION_TIMEOUT);
+        } else {
+            connectionPool = null;
+        }
+
+        if (preparedStatements) {
+            String[] stmts = new String[] { selectAllStmt, selectUserStmt,
+                    insertUserStmt, updateUserStmt, deleteUserStmt,
+                    authenticateStmt, isAdminStmt };
+            for (String stmt : stmts) {
+                if (getTemplate(stmt) == null) {
+                    LOG.warn("Variables in string literals can not be replaced by parameters, "
+                            + "the values are substituted in the SQL: " + stmt);
+                }
+            }
+        }
 
         Connection con = null; 
         try { 
@@ -277,26 +325,24 @@ public class DbUserManager extends AbstractUserManager {
             return false;
         }
 
-        Statement stmt = null;
+        Connection con = null;
+        PreparedStatement stmt = null;
         ResultSet rs = null;
         try {
-
-            // create the sql query
-            HashMap<String, Object> map = new HashMap<String, Object>();
-            map.put(ATTR_LOGIN, escapeString(login));
-            String sql = StringUtils.replaceString(isAdminStmt, map);
-            LOG.info(sql);
-
             // execute query
-            stmt = createConnection().createStatement();
-            rs = stmt.executeQuery(sql);
+            con = createConnection();
+            stmt = prepareStatement(con, isAdminStmt, createLoginMap(login));
+            rs = stmt.executeQuery();
             return rs.next();
         } catch (SQLException ex) {
             LOG.error("DbUserManager.isAdmin()", ex);
+            closeFailed(con);
+            con = null;
             throw new FtpException("DbUserManager.isAdmin()", ex);
         } finally {
             closeQuitely(rs);
             closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
@@ -304,33 +350,88 @@ public class DbUserManager extends AbstractUserManager {
      * Open connection to database.
      */
     protected Connection createConnection() throws SQLException {
+        if (connectionPool != null) {
+            return connectionPool.getConnection();
+        }
+
         Connection connection = dataSource.getConnection();
         connection.setAutoCommit(true);
 
         return connection;
     }
 
+    /**
+     * Prepare a configured statement. The variables are bound to parameters
+     * in prepared statement mode, else the escaped values are substituted in
+     * the SQL.
+     */
+    private PreparedStatement prepareStatement(Connection con, String stmt,
+            Map<String, Object> map) throws SQLException {
+        if (preparedStatements) {
+            SqlTemplate template = getTemplate(stmt);
+            if (template != null) {
+                PreparedStatement pstmt;
+                if (connectionPool != null) {
+                    pstmt = connectionPool.prepareStatement(con, template
+                            .getSql());
+                } else {
+                    pstmt = con.prepareStatement(template.getSql());
+                }
+                template.bind(pstmt, map);
+                return pstmt;
+            }
+        }
+
+        HashMap<String, Object> escapedMap = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                value = escapeString((String) value);
+            }
+            escapedMap.put(entry.getKey(), value);
+        }
+        String sql = StringUtils.replaceString(stmt, escapedMap);
+        LOG.debug(sql);
+
+        return con.prepareStatement(sql);
+    }
+
+    private SqlTemplate getTemplate(String stmt) {
+        SqlTemplate template = templates.get(stmt);
+        if (template == null) {
+            template = SqlTemplate.compile(stmt);
+            if (template != null) {
+                templates.put(stmt, template);
+            }
+        }
+        return template;
+    }
+
+    private HashMap<String, Object> createLoginMap(String login) {
+        HashMap<String, Object> map = new HashMap<String, Object>();
+        map.put(ATTR_LOGIN, login);
+        return map;
+    }
 
     /**
      * Delete user. Delete the row from the table.
      */
     public void delete(String name) throws FtpException {
-        // create sql query
-        HashMap<String, Object> map = new HashMap<String, Object>();
-        map.put(ATTR_LOGIN, escapeString(name));
-        String sql = StringUtils.replaceString(deleteUserStmt, map);
-        LOG.info(sql);
-
         // execute query
-        Statement stmt = null;
+        Connection con = null;
+        PreparedStatement stmt = null;
         try {
-            stmt = createConnection().createStatement();
-            stmt.executeUpdate(sql);
+            con = createConnection();
+            stmt = prepareStatement(con, deleteUserStmt, createLoginMap(name));
+            stmt.executeUpdate();
         } catch (SQLException ex) {
             LOG.error("DbUserManager.delete()", ex);
+            closeFailed(con);
+            con = null;
             throw new FtpException("DbUserManager.delete()", ex);
         } finally {
             closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
@@ -343,12 +444,12 @@ public class DbUserManager extends AbstractUserManager {
             throw new NullPointerException("User name is null.");
         }
 
-        Statement stmt = null;
+        Connection con = null;
+        PreparedStatement stmt = null;
         try {
 
             // create sql query
-            HashMap<String, Object> map = new HashMap<String, Object>();
-            map.put(ATTR_LOGIN, escapeString(user.getName()));
+            HashMap<String, Object> map = createLoginMap(user.getName());
 
             String password = null;
             if(user.getPassword() != null) {
@@ -357,30 +458,24 @@ public class DbUserManager extends AbstractUserManager {
             } else {
                 // password was not provided, either load from the existing user and store that again
                 // or store as null
-                ResultSet rs = null;
+                User userWithPassword = selectUserByName(user.getName());
 
-                try {
-                    User userWithPassword = selectUserByName(user.getName());
-
-                    if(userWithPassword != null) {
-                        // user exists, reuse password
-                        password = userWithPassword.getPassword();
-                    }
-                } finally {
-                    closeQuitely(rs);
+                if(userWithPassword != null) {
+                    // user exists, reuse password
+                    password = userWithPassword.getPassword();
                 }
             }
-            map.put(ATTR_PASSWORD, escapeString(password));
+            map.put(ATTR_PASSWORD, password);
 
 
             String home = user.getHomeDirectory();
             if (home == null) {
                 home = "/";
             }
-            map.put(ATTR_HOME, escapeString(home));
-            map.put(ATTR_ENABLE, String.valueOf(user.getEnabled()));
+            map.put(ATTR_HOME, home);
+            map.put(ATTR_ENABLE, Boolean.valueOf(user.getEnabled()));
 
-            map.put(ATTR_WRITE_PERM, String.valueOf(user
+            map.put(ATTR_WRITE_PERM, Boolean.valueOf(user
                     .authorize(new WriteRequest()) != null));
             map.put(ATTR_MAX_IDLE_TIME, user.getMaxIdleTime());
 
@@ -414,38 +509,38 @@ public class DbUserManager extends AbstractUserManager {
                 map.put(ATTR_MAX_LOGIN_PER_IP, 0);
             }
 
-            String sql = null;
+            String sqlStmt = null;
             if (!doesExist(user.getName())) {
-                sql = StringUtils.replaceString(insertUserStmt, map);
+                sqlStmt = insertUserStmt;
             } else {
-                sql = StringUtils.replaceString(updateUserStmt, map);
+                sqlStmt = updateUserStmt;
             }
-            LOG.info(sql);
 
             // execute query
-            stmt = createConnection().createStatement();
-            stmt.executeUpdate(sql);
+            con = createConnection();
+            stmt = prepareStatement(con, sqlStmt, map);
+            stmt.executeUpdate();
         } catch (SQLException ex) {
             LOG.error("DbUserManager.save()", ex);
+            closeFailed(con);
+            con = null;
             throw new FtpException("DbUserManager.save()", ex);
         } finally {
             closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
-    private void closeQuitely(Statement stmt) {
+    private void closeQuitely(PreparedStatement stmt) {
         if(stmt != null) {
-	    Connection con = null;
-	    try {
-		con = stmt.getConnection();
-	    } catch (Exception e) {
-	    }
-	    try {
-                stmt.close();
+            try {
+                // statements of pooled connections are reused
+                if (connectionPool == null || !connectionPool.isPooled(stmt)) {
+                    stmt.close();
+                }
             } catch (SQLException e) {
                 // ignore
             }
-	    closeQuitely(con);
         }
     }
 
@@ -461,6 +556,10 @@ public class DbUserManager extends AbstractUserManager {
 
     protected void closeQuitely(Connection con) {
 	if (con != null) {
+	    if (connectionPool != null) {
+	        connectionPool.release(con);
+	        return;
+	    }
 	    try {
 		con.close();
 	    } catch (SQLException e) {
@@ -469,58 +568,99 @@ public class DbUserManager extends AbstractUserManager {
 	}
     }
 
-    private BaseUser selectUserByName(String name) throws SQLException {
-        // create sql query
-        HashMap<String, Object> map = new HashMap<String, Object>();
-        map.put(ATTR_LOGIN, escapeString(name));
-        String sql = StringUtils.replaceString(selectUserStmt, map);
-        LOG.info(sql);
+    /**
+     * Close a connection on which a statement failed, it is not reused
+     */
+    private void closeFailed(Connection con) {
+        if (con != null && connectionPool != null) {
+            connectionPool.discard(con);
+        } else {
+            closeQuitely(con);
+        }
+    }
+
+    /**
+     * Close the pooled connections.
+     */
+    public void dispose() {
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
+    }
 
-        Statement stmt = null;
+    private BaseUser selectUserByName(String name) throws SQLException {
+        Connection con = null;
+        PreparedStatement stmt = null;
         ResultSet rs = null;
         try {
             // execute query
-            stmt = createConnection().createStatement();
-            rs = stmt.executeQuery(sql);
+            con = createConnection();
+            stmt = prepareStatement(con, selectUserStmt, createLoginMap(name));
+            rs = stmt.executeQuery();
 
             // populate user object
             BaseUser thisUser = null;
             if (rs.next()) {
-                thisUser = new BaseUser();
-                thisUser.setName(rs.getString(ATTR_LOGIN));
-                thisUser.setPassword(rs.getString(ATTR_PASSWORD));
-                thisUser.setHomeDirectory(rs.getString(ATTR_HOME));
-                thisUser.setEnabled(rs.getBoolean(ATTR_ENABLE));
-                thisUser.setMaxIdleTime(rs.getInt(ATTR_MAX_IDLE_TIME));
-
-                List<Authority> authorities = new ArrayList<Authority>();
-                if (rs.getBoolean(ATTR_WRITE_PERM)) {
-                    authorities.add(new WritePermission());
-                }
-
-                authorities.add(new ConcurrentLoginPermission(rs
-                        .getInt(ATTR_MAX_LOGIN_NUMBER), rs
-                        .getInt(ATTR_MAX_LOGIN_PER_IP)));
-                authorities.add(new TransferRatePermission(rs
-                        .getInt(ATTR_MAX_DOWNLOAD_RATE), rs
-                        .getInt(ATTR_MAX_UPLOAD_RATE)));
-
-                thisUser.setAuthorities(authorities);
+                thisUser = createUser(rs);
             }
             return thisUser;
 
+        } catch (SQLException ex) {
+            closeFailed(con);
+            con = null;
+            throw ex;
         } finally {
             closeQuitely(rs);
             closeQuitely(stmt);
+            closeQuitely(con);
+        }
+    }
+
+    /**
+     * Create a user from the current row of a result set.
+     */
+    private BaseUser createUser(ResultSet rs) throws SQLException {
+        BaseUser thisUser = new BaseUser();
+        thisUser.setName(rs.getString(ATTR_LOGIN));
+        thisUser.setPassword(rs.getString(ATTR_PASSWORD));
+        thisUser.setHomeDirectory(rs.getString(ATTR_HOME));
+        thisUser.setEnabled(rs.getBoolean(ATTR_ENABLE));
+        thisUser.setMaxIdleTime(rs.getInt(ATTR_MAX_IDLE_TIME));
+
+        List<Authority> authorities = new ArrayList<Authority>();
+        if (rs.getBoolean(ATTR_WRITE_PERM)) {
+            authorities.add(new WritePermission());
+        }
+
+        authorities.add(new ConcurrentLoginPermission(rs
+                .getInt(ATTR_MAX_LOGIN_NUMBER), rs
+                .getInt(ATTR_MAX_LOGIN_PER_IP)));
+        authorities.add(new TransferRatePermission(rs
+                .getInt(ATTR_MAX_DOWNLOAD_RATE), rs
+                .getInt(ATTR_MAX_UPLOAD_RATE)));
+
+        thisUser.setAuthorities(authorities);
+        return thisUser;
+    }
+
+    /**
+     * Check if a result set holds the user attributes, and not only the
+     * password.
+     */
+    private boolean hasUserColumns(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (ATTR_HOME.equalsIgnoreCase(metaData.getColumnName(i))) {
+                return true;
+            }
         }
+        return false;
     }
 
     /**
      * Get the user object. Fetch the row from the table.
      */
     public User getUserByName(String name) throws FtpException {
-        Statement stmt = null;
-        ResultSet rs = null;
         try {
 
             BaseUser user = selectUserByName(name);
@@ -535,9 +675,6 @@ public class DbUserManager extends AbstractUserManager {
         } catch (SQLException ex) {
             LOG.error("DbUserManager.getUserByName()", ex);
             throw new FtpException("DbUserManager.getUserByName()", ex);
-        } finally {
-            closeQuitely(rs);
-            closeQuitely(stmt);
         }
     }
 
@@ -545,26 +682,24 @@ public class DbUserManager extends AbstractUserManager {
      * User existance check.
      */
     public boolean doesExist(String name) throws FtpException {
-        Statement stmt = null;
+        Connection con = null;
+        PreparedStatement stmt = null;
         ResultSet rs = null;
         try {
-
-            // create the sql
-            HashMap<String, Object> map = new HashMap<String, Object>();
-            map.put(ATTR_LOGIN, escapeString(name));
-            String sql = StringUtils.replaceString(selectUserStmt, map);
-            LOG.info(sql);
-
             // execute query
-            stmt = createConnection().createStatement();
-            rs = stmt.executeQuery(sql);
+            con = createConnection();
+            stmt = prepareStatement(con, selectUserStmt, createLoginMap(name));
+            rs = stmt.executeQuery();
             return rs.next();
         } catch (SQLException ex) {
             LOG.error("DbUserManager.doesExist()", ex);
+            closeFailed(con);
+            con = null;
             throw new FtpException("DbUserManager.doesExist()", ex);
         } finally {
             closeQuitely(rs);
             closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
@@ -573,17 +708,15 @@ public class DbUserManager extends AbstractUserManager {
      */
     public String[] getAllUserNames() throws FtpException {
 
-        Statement stmt = null;
+        Connection con = null;
+        PreparedStatement stmt = null;
         ResultSet rs = null;
         try {
-
-            // create sql query
-            String sql = selectAllStmt;
-            LOG.info(sql);
-
             // execute query
-            stmt = createConnection().createStatement();
-            rs = stmt.executeQuery(sql);
+            con = createConnection();
+            stmt = prepareStatement(con, selectAllStmt,
+                    new HashMap<String, Object>());
+            rs = stmt.executeQuery();
 
             // populate list
             ArrayList<String> names = new ArrayList<String>();
@@ -593,15 +726,20 @@ public class DbUserManager extends AbstractUserManager {
             return names.toArray(new String[0]);
         } catch (SQLException ex) {
             LOG.error("DbUserManager.getAllUserNames()", ex);
+            closeFailed(con);
+            con = null;
             throw new FtpException("DbUserManager.getAllUserNames()", ex);
         } finally {
             closeQuitely(rs);
             closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
     /**
-     * User authentication.
+     * User authentication. If the authenticate statement selects the user
+     * attributes as well as the password, the user is created from its
+     * result, else the user is selected after the password has been checked.
      */
     public User authenticate(Authentication authentication)
             throws AuthenticationFailedException {
@@ -619,48 +757,67 @@ public class DbUserManager extends AbstractUserManager {
                 password = "";
             }
 
-            Statement stmt = null;
+            String storedPassword;
+            BaseUser authenticatedUser = null;
+            Connection con = null;
+            PreparedStatement stmt = null;
             ResultSet rs = null;
             try {
-
-                // create the sql query
-                HashMap<String, Object> map = new HashMap<String, Object>();
-                map.put(ATTR_LOGIN, escapeString(user));
-                String sql = StringUtils.replaceString(authenticateStmt, map);
-                LOG.info(sql);
-
                 // execute query
-                stmt = createConnection().createStatement();
-                rs = stmt.executeQuery(sql);
-                if (rs.next()) {
-                    try {
-                        String storedPassword = rs.getString(ATTR_PASSWORD);
-                        if (getPasswordEncryptor().matches(password, storedPassword)) {
-                            return getUserByName(user);
-                        } else {
-                            throw new AuthenticationFailedException(
-                                    "Authentication failed");
-                        }
-                    } catch (FtpException e) {
-                        throw new AuthenticationFailedException(
-                                "Authentication failed", e);
-                    }
-                } else {
+                con = createConnection();
+                stmt = prepareStatement(con, authenticateStmt,
+                        createLoginMap(user));
+                rs = stmt.executeQuery();
+                if (!rs.next()) {
                     throw new AuthenticationFailedException(
                             "Authentication failed");
                 }
+
+                storedPassword = rs.getString(ATTR_PASSWORD);
+                if (hasUserColumns(rs)) {
+                    authenticatedUser = createUser(rs);
+                }
             } catch (SQLException ex) {
                 LOG.error("DbUserManager.authenticate()", ex);
+                closeFailed(con);
+                con = null;
                 throw new AuthenticationFailedException(
                         "Authentication failed", ex);
             } finally {
                 closeQuitely(rs);
                 closeQuitely(stmt);
+                closeQuitely(con);
+            }
+
+            if (storedPassword == null
+                    || !getPasswordEncryptor().matches(password, storedPassword)) {
+                throw new AuthenticationFailedException("Authentication failed");
+            }
+
+            if (authenticatedUser != null) {
+                // reset the password, not to be sent to API users
+                authenticatedUser.setPassword(null);
+                return authenticatedUser;
+            }
+
+            try {
+                User authenticated = getUserByName(user);
+                if (authenticated == null) {
+                    throw new AuthenticationFailedException(
+                            "Authentication failed");
+                }
+                return authenticated;
+            } catch (AuthenticationFailedException e) {
+                throw e;
+            } catch (FtpException e) {
+                throw new AuthenticationFailedException(
+                        "Authentication failed", e);
             }
         } else if (authentication instanceof AnonymousAuthentication) {
             try {
-                if (doesExist("anonymous")) {
-                    return getUserByName("anonymous");
+                User anonymous = getUserByName("anonymous");
+                if (anonymous != null) {
+                    return anonymous;
                 } else {
                     throw new AuthenticationFailedException(
                             "Authentication failed");
@@ -697,4 +854,4 @@ public class DbUserManager extends AbstractUserManager {
         }
         return valBuf.toString();
     }
-}
\ No newline at end of file
+}
@@ -282,6 +282,20 @@ public class PropertiesUserManager extends AbstractUserManager {
             userDataProp.remove(thisPrefix + ATTR_MAX_DOWNLOAD_RATE);
         }
 
+        TransferClassRequest transferClassRequest = new TransferClassRequest();
+        transferClassRequest = (TransferClassRequest) usr
+                .authorize(transferClassRequest);
+
+        if (transferClassRequest != null) {
+            userDataProp.setProperty(thisPrefix + ATTR_TRANSFER_CLASS,
+                    transferClassRequest.getTransferClass());
+            userDataProp.setProperty(thisPrefix + ATTR_TRANSFER_WEIGHT,
+                    transferClassRequest.getWeight());
+        } else {
+            userDataProp.remove(thisPrefix + ATTR_TRANSFER_CLASS);
+            userDataProp.remove(thisPrefix + ATTR_TRANSFER_WEIGHT);
+        }
+
         // request that always will succeed
         ConcurrentLoginRequest concurrentLoginRequest = new ConcurrentLoginRequest(
                 0, 0);
@@ -443,6 +457,15 @@ public class PropertiesUserManager extends AbstractUserManager {
 
         authorities.add(new TransferRatePermission(downloadRate, uploadRate));
 
+        String transferClass = userDataProp.getProperty(baseKey
+                + ATTR_TRANSFER_CLASS);
+        if (transferClass != null) {
+            int transferWeight = userDataProp.getInteger(baseKey
+                    + ATTR_TRANSFER_WEIGHT, 1);
+            authorities.add(new TransferClassPermission(transferClass,
+                    transferWeight));
+        }
+
         user.setAuthorities(authorities);
 
         user.setMaxIdleTime(userDataProp.getInteger(baseKey
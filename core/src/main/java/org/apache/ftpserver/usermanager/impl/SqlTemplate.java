@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * SQL statement of the {@link DbUserManager}, compiled to a parameterized
+ * statement. The <code>{name}</code> and <code>'{name}'</code> variables of
+ * the configured statement are replaced by parameters, which are bound to
+ * the values of the variables instead of being substituted in the SQL.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SqlTemplate {
+
+    private final String sql;
+
+    private final String[] names;
+
+    private final boolean[] quoted;
+
+    private SqlTemplate(final String sql, final List<String> names,
+            final List<Boolean> quoted) {
+        this.sql = sql;
+        this.names = names.toArray(new String[names.size()]);
+        this.quoted = new boolean[quoted.size()];
+        for (int i = 0; i < this.quoted.length; i++) {
+            this.quoted[i] = quoted.get(i).booleanValue();
+        }
+    }
+
+    /**
+     * Compile a statement.
+     * 
+     * @param statement
+     *            The statement with variables
+     * @return The compiled statement, or null if a variable can not be
+     *         replaced by a parameter, as it is part of a longer string
+     *         literal
+     */
+    public static SqlTemplate compile(final String statement) {
+        StringBuilder sb = new StringBuilder(statement.length());
+        List<String> names = new ArrayList<String>();
+        List<Boolean> quoted = new ArrayList<Boolean>();
+
+        boolean inLiteral = false;
+        int i = 0;
+        while (i < statement.length()) {
+            char ch = statement.charAt(i);
+            int closeIndex = ch == '{' ? statement.indexOf('}', i) : -1;
+
+            if (closeIndex == -1) {
+                if (ch == '\'') {
+                    inLiteral = !inLiteral;
+                }
+                sb.append(ch);
+                i++;
+                continue;
+            }
+
+            String name = statement.substring(i + 1, closeIndex);
+            if (!inLiteral) {
+                names.add(name);
+                quoted.add(Boolean.FALSE);
+            } else if (statement.charAt(i - 1) == '\''
+                    && closeIndex + 1 < statement.length()
+                    && statement.charAt(closeIndex + 1) == '\'') {
+                // a string literal only holding the variable
+                sb.setLength(sb.length() - 1);
+                names.add(name);
+                quoted.add(Boolean.TRUE);
+                inLiteral = false;
+                closeIndex++;
+            } else {
+                return null;
+            }
+            sb.append('?');
+            i = closeIndex + 1;
+        }
+
+        return new SqlTemplate(sb.toString(), names, quoted);
+    }
+
+    /**
+     * Get the parameterized SQL
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Bind the values of the variables to the parameters of a statement
+     * prepared from {@link #getSql()}.
+     */
+    public void bind(final PreparedStatement stmt,
+            final Map<String, Object> values) throws SQLException {
+        for (int i = 0; i < names.length; i++) {
+            Object value = values.get(names[i]);
+            if (value == null || quoted[i]) {
+                stmt.setString(i + 1, value == null ? null : value.toString());
+            } else {
+                stmt.setObject(i + 1, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.AuthorizationRequest;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * The transfer class permission, giving the user's transfers a weight when
+ * sharing the bandwidth of a listener or the server with other users
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TransferClassPermission implements Authority {
+
+    private String transferClass;
+
+    private int weight;
+
+    public TransferClassPermission(String transferClass, int weight) {
+        this.transferClass = transferClass;
+        this.weight = weight;
+    }
+
+    /**
+     * @see Authority#authorize(AuthorizationRequest)
+     */
+    public AuthorizationRequest authorize(AuthorizationRequest request) {
+        if (request instanceof TransferClassRequest) {
+            TransferClassRequest transferClassRequest = (TransferClassRequest) request;
+
+            transferClassRequest.setTransferClass(transferClass);
+            transferClassRequest.setWeight(weight);
+
+            return transferClassRequest;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @see Authority#canAuthorize(AuthorizationRequest)
+     */
+    public boolean canAuthorize(AuthorizationRequest request) {
+        return request instanceof TransferClassRequest;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import org.apache.ftpserver.ftplet.AuthorizationRequest;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Request for getting the transfer class and weight of a user
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TransferClassRequest implements AuthorizationRequest {
+
+    /**
+     * The transfer class of users without a {@link TransferClassPermission}
+     */
+    public static final String DEFAULT_TRANSFER_CLASS = "default";
+
+    private String transferClass = DEFAULT_TRANSFER_CLASS;
+
+    private int weight = 1;
+
+    /**
+     * @return the transferClass
+     */
+    public String getTransferClass() {
+        return transferClass;
+    }
+
+    /**
+     * @param transferClass
+     *            the transferClass to set
+     */
+    public void setTransferClass(String transferClass) {
+        this.transferClass = transferClass;
+    }
+
+    /**
+     * @return the weight
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * @param weight
+     *            the weight to set
+     */
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+}
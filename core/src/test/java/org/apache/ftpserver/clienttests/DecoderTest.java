@@ -30,6 +30,7 @@ import java.nio.charset.MalformedInputException;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
 
 
 /**
@@ -79,4 +80,21 @@ public class DecoderTest extends ClientTestTemplate {
         assertEquals(501, client.getReplyCode());
     }
 
+    public void testLineTooLong() throws Exception {
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+
+        StringBuilder sb = new StringBuilder("CWD ");
+        for (int i = 0; i < 2000; i++) {
+            sb.append('x');
+        }
+        sb.append("\r\n");
+        ((MyFTPClient)client).sendRawCommand(sb.toString().getBytes("UTF-8"));
+        client.completePendingCommand();
+
+        assertEquals(500, client.getReplyCode());
+
+        // the session is still usable
+        assertTrue(FTPReply.isPositiveCompletion(client.noop()));
+    }
+
 }
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.util.zip.Deflater;
+
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>*
+*/
+public class OptsModeTest extends ClientTestTemplate {
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+    }
+
+    private ServerDataConnectionFactory getDataConnection() {
+        return server.getListener("default").getActiveSessions().iterator()
+                .next().getDataConnection();
+    }
+
+    public void testLevel() throws Exception {
+        assertEquals(Deflater.DEFAULT_COMPRESSION, getDataConnection()
+                .getZipLevel());
+
+        assertTrue(FTPReply.isPositiveCompletion(client
+                .sendCommand("OPTS MODE Z LEVEL 9")));
+
+        assertEquals(9, getDataConnection().getZipLevel());
+    }
+
+    public void testLevelAndStrategy() throws Exception {
+        assertTrue(FTPReply.isPositiveCompletion(client
+                .sendCommand("OPTS MODE Z LEVEL 1 STRATEGY filtered")));
+
+        assertEquals(1, getDataConnection().getZipLevel());
+        assertEquals(Deflater.FILTERED, getDataConnection().getZipStrategy());
+    }
+
+    public void testResetToDefaults() throws Exception {
+        assertTrue(FTPReply.isPositiveCompletion(client
+                .sendCommand("OPTS MODE Z LEVEL 9")));
+        assertTrue(FTPReply.isPositiveCompletion(client
+                .sendCommand("OPTS MODE Z")));
+
+        assertEquals(Deflater.DEFAULT_COMPRESSION, getDataConnection()
+                .getZipLevel());
+    }
+
+    public void testInvalidLevel() throws Exception {
+        assertEquals(501, client.sendCommand("OPTS MODE Z LEVEL 10"));
+        assertEquals(501, client.sendCommand("OPTS MODE Z LEVEL foo"));
+        assertEquals(501, client.sendCommand("OPTS MODE Z LEVEL"));
+
+        assertEquals(Deflater.DEFAULT_COMPRESSION, getDataConnection()
+                .getZipLevel());
+    }
+
+    public void testInvalidOption() throws Exception {
+        assertEquals(501, client.sendCommand("OPTS MODE Z STRATEGY foo"));
+        assertEquals(501, client.sendCommand("OPTS MODE Z BLOCKSIZE 10"));
+        assertEquals(501, client.sendCommand("OPTS MODE S LEVEL 1"));
+        assertEquals(501, client.sendCommand("OPTS MODE"));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.impl.SingleRangePassivePortResolver;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+* Lists a directory in passive mode more times than there are passive ports,
+* with the passive sockets pooled.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class PooledPassiveSocketTest extends ClientTestTemplate {
+
+    private static final File TEST_FILE = new File(ROOT_DIR, "test.txt");
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory server = super.createServer();
+
+        ListenerFactory listenerFactory = new ListenerFactory(server
+                .getListener("default"));
+
+        DataConnectionConfigurationFactory dccFactory = new DataConnectionConfigurationFactory();
+
+        int passivePort = TestUtil.findFreePort(12444);
+
+        dccFactory.setPassivePortResolver(SingleRangePassivePortResolver
+                .buildFromRange(passivePort + "-" + (passivePort + 1)));
+        dccFactory.setZeroCopyEnabled(true);
+        dccFactory.setPassiveSocketPoolingEnabled(true);
+
+        listenerFactory.setDataConnectionConfiguration(dccFactory
+                .createDataConnectionConfiguration());
+
+        server.addListener("default", listenerFactory.createListener());
+
+        return server;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.setRemoteVerificationEnabled(false);
+        client.enterLocalPassiveMode();
+    }
+
+    public void testListReusesPooledSockets() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, "data".getBytes("UTF-8"));
+
+        for (int i = 0; i < 6; i++) {
+            FTPFile[] files = client.listFiles();
+            assertEquals(1, files.length);
+            assertEquals("test.txt", files[0].getName());
+        }
+
+        assertTrue(server.getServerContext().getPassiveSocketPool()
+                .getHits() > 0);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* Runs the retrieve tests with non-blocking data connections
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>*
+*/
+public class RetrieveNonBlockingTest extends RetrievePassiveTest {
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory server = super.createServer();
+
+        ListenerFactory listenerFactory = new ListenerFactory(server.getListener("default"));
+
+        DataConnectionConfigurationFactory dccFactory = new DataConnectionConfigurationFactory();
+        dccFactory.setNonBlocking(true);
+
+        listenerFactory.setDataConnectionConfiguration(dccFactory.createDataConnectionConfiguration());
+
+        server.addListener("default", listenerFactory.createListener());
+
+        return server;
+    }
+
+    public void testAbortDuringTransfer() throws Exception {
+        File bigFile = new File(ROOT_DIR, "big.bin");
+        TestUtil.writeDataToFile(bigFile, new byte[20 * 1024 * 1024]);
+
+        InputStream is = client.retrieveFileStream(bigFile.getName());
+        assertNotNull(is);
+        assertTrue(is.read(new byte[1024]) > 0);
+
+        // the transfer is stuck on the full socket buffers, ABOR must fail
+        // it before replying itself
+        assertEquals(426, client.sendCommand("ABOR"));
+        assertEquals(226, client.getReply());
+        is.close();
+
+        // the session takes data connection commands again
+        assertNotNull(client.listFiles());
+    }
+}
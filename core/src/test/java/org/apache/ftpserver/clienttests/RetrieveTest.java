@@ -21,7 +21,9 @@ package org.apache.ftpserver.clienttests;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.Random;
 
+import org.apache.commons.net.ftp.FTP;
 import org.apache.ftpserver.test.TestUtil;
 
 /**
@@ -114,6 +116,27 @@ public class RetrieveTest extends ClientTestTemplate {
         TestUtil.assertArraysEqual(expected, baos.toByteArray());
     }
 
+    public void testRetrieveBinaryWithRestart() throws Exception {
+        // larger than a single zero-copy chunk
+        byte[] binaryData = new byte[3 * 1024 * 1024 + 17];
+        new Random().nextBytes(binaryData);
+        int skipLen = 1024 * 1024 + 5;
+
+        TestUtil.writeDataToFile(TEST_FILE, binaryData);
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        client.setRestartOffset(skipLen);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile(TEST_FILENAME, baos));
+
+        int len = binaryData.length - skipLen;
+        byte[] expected = new byte[len];
+        System.arraycopy(binaryData, skipLen, expected, 0, len);
+
+        TestUtil.assertArraysEqual(expected, baos.toByteArray());
+    }
+
     public void testRetrieveWithPath() throws Exception {
         File dir = new File(ROOT_DIR, "foo/bar");
         dir.mkdirs();
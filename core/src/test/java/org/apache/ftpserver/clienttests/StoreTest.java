@@ -21,7 +21,9 @@ package org.apache.ftpserver.clienttests;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.util.Random;
 
+import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.ftpserver.test.TestUtil;
 
@@ -127,6 +129,37 @@ public class StoreTest extends ClientTestTemplate {
         TestUtil.assertFileEqual(oneAndAHalfTestData, testFile);
     }
 
+    public void testStoreBinaryWithRestart() throws Exception {
+        File testFile = new File(ROOT_DIR, TEST_FILENAME);
+        TestUtil.writeDataToFile(testFile, testData);
+
+        // larger than a single zero-copy chunk
+        byte[] binaryData = new byte[3 * 1024 * 1024 + 17];
+        new Random().nextBytes(binaryData);
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        client.setRestartOffset(SKIP_LEN);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                binaryData)));
+
+        byte[] expected = new byte[SKIP_LEN + binaryData.length];
+        System.arraycopy(testData, 0, expected, 0, SKIP_LEN);
+        System.arraycopy(binaryData, 0, expected, SKIP_LEN, binaryData.length);
+
+        TestUtil.assertFileEqual(expected, testFile);
+    }
+
+    public void testStoreEmptyBinaryFile() throws Exception {
+        File testFile = new File(ROOT_DIR, TEST_FILENAME);
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                new byte[0])));
+
+        assertTrue(testFile.exists());
+        assertEquals(0, testFile.length());
+    }
+
     public void testStoreEmptyFile() throws Exception {
         File testFile = new File(ROOT_DIR, TEST_FILENAME);
 
@@ -19,16 +19,25 @@
 
 package org.apache.ftpserver.commands.impl.listing;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import junit.framework.TestCase;
 
 import org.apache.ftpserver.command.impl.listing.DirectoryLister;
 import org.apache.ftpserver.command.impl.listing.FileFormater;
+import org.apache.ftpserver.command.impl.listing.LISTFileFormater;
 import org.apache.ftpserver.command.impl.listing.ListArgument;
+import org.apache.ftpserver.command.impl.listing.ListingExecutor;
+import org.apache.ftpserver.command.impl.listing.MLSTFileFormater;
 import org.apache.ftpserver.command.impl.listing.NLSTFileFormater;
 import org.apache.ftpserver.filesystem.nativefs.impl.NativeFileSystemView;
 import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.test.TestUtil;
 import org.apache.ftpserver.usermanager.impl.BaseUser;
 import org.apache.ftpserver.util.IoUtils;
@@ -89,6 +98,158 @@ public class DirectoryListerTest extends TestCase {
         assertEquals("dir3\r\ntest3.txt\r\ntest4.txt\r\n", actual);
     }
 
+    public void testNamesInListingOrder() throws Exception {
+        new File(TEST_DIR2, "a.txt").createNewFile();
+        new File(TEST_DIR2, "b").mkdir();
+
+        ListArgument arg = new ListArgument(TEST_DIR2.getName(), null, null);
+
+        // the file type is not needed, the directories are not listed first
+        assertEquals("a.txt\r\nb\r\n", directoryLister.listFiles(arg,
+                fileSystemView, new NLSTFileFormater()));
+
+        // listing the type, directories first
+        String listing = directoryLister.listFiles(arg, fileSystemView,
+                new MLSTFileFormater(null));
+        assertTrue(listing.indexOf(" b\r\n") < listing.indexOf(" a.txt\r\n"));
+    }
+
+    public void testStreamListing() throws Exception {
+        ListArgument arg = new ListArgument(TEST_DIR1.getName(), null, null);
+        FileFormater formater = new NLSTFileFormater();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = directoryLister.createListing(arg, fileSystemView,
+                formater).writeTo(out);
+
+        assertEquals("dir3\r\ntest3.txt\r\ntest4.txt\r\n", out.toString("UTF-8"));
+        assertEquals(out.size(), written);
+    }
+
+    public void testStreamLargeListing() throws Exception {
+        // larger than the encoding buffer, with multi byte characters
+        for (int i = 0; i < 500; i++) {
+            new File(TEST_DIR2, "f\u00e5\u00e4\u00f6-" + i + ".txt").createNewFile();
+        }
+
+        ListArgument arg = new ListArgument(TEST_DIR2.getName(), null, null);
+        FileFormater formater = new NLSTFileFormater();
+
+        String expected = directoryLister.listFiles(arg, fileSystemView,
+                formater);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = directoryLister.createListing(arg, fileSystemView,
+                formater).writeTo(out);
+
+        assertEquals(expected, out.toString("UTF-8"));
+        assertEquals(expected.getBytes("UTF-8").length, written);
+    }
+
+    public void testParallelListing() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            new File(TEST_DIR2, "file-" + i + ".txt").createNewFile();
+            new File(TEST_DIR2, "dir-" + i).mkdir();
+        }
+        new File(TEST_DIR2, ".hidden").createNewFile();
+
+        ListArgument arg = new ListArgument(TEST_DIR2.getName(), null, null);
+        FileFormater formater = new LISTFileFormater();
+
+        String expected = directoryLister.listFiles(arg, fileSystemView,
+                formater);
+
+        // small threshold and window to list in parallel in many windows
+        ListingExecutor executor = new ListingExecutor(2, 10);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            directoryLister.createListing(arg, fileSystemView, formater,
+                    true, executor).writeTo(out);
+
+            assertEquals(expected, out.toString("UTF-8"));
+        } finally {
+            executor.dispose();
+        }
+    }
+
+    public void testParallelListingAfterDispose() throws Exception {
+        ListArgument arg = new ListArgument(TEST_DIR1.getName(), null, null);
+        FileFormater formater = new NLSTFileFormater();
+
+        // the files are listed by the calling thread
+        ListingExecutor executor = new ListingExecutor(2, 1);
+        executor.dispose();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        directoryLister.createListing(arg, fileSystemView, formater, true,
+                executor).writeTo(out);
+
+        assertEquals("dir3\r\ntest3.txt\r\ntest4.txt\r\n", out.toString("UTF-8"));
+    }
+
+    public void testUnsortedListingWithPattern() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            new File(TEST_DIR2, "file-" + i + ".txt").createNewFile();
+            new File(TEST_DIR2, "file-" + i + ".log").createNewFile();
+        }
+
+        ListArgument arg = new ListArgument(TEST_DIR2.getName(), "*.txt",
+                null);
+        FileFormater formater = new NLSTFileFormater();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        directoryLister.createListing(arg, fileSystemView, formater, false,
+                null).writeTo(out);
+
+        List<String> names = new ArrayList<String>(Arrays.asList(out
+                .toString("UTF-8").split("\r\n")));
+        assertEquals(20, names.size());
+        Collections.sort(names);
+        assertEquals(directoryLister.listFiles(arg, fileSystemView, formater),
+                toLines(names));
+    }
+
+    public void testListPage() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            new File(TEST_DIR2, "file-" + (char) ('a' + i)).createNewFile();
+        }
+        new File(TEST_DIR2, ".hidden").createNewFile();
+        FtpFile dir = fileSystemView.getFile(TEST_DIR2.getName());
+
+        List<String> names = new ArrayList<String>();
+        String after = null;
+        while (true) {
+            List<FtpFile> page = directoryLister.listPage(dir, after, 10,
+                    false);
+            assertTrue(page.size() <= 10);
+            for (FtpFile file : page) {
+                names.add(file.getName());
+            }
+            if (page.size() < 10) {
+                break;
+            }
+            after = page.get(page.size() - 1).getName();
+        }
+
+        assertEquals(25, names.size());
+        assertEquals("file-a", names.get(0));
+        assertEquals("file-y", names.get(24));
+        List<String> sorted = new ArrayList<String>(names);
+        Collections.sort(sorted);
+        assertEquals(sorted, names);
+
+        assertNull(directoryLister.listPage(fileSystemView.getFile(TEST_FILE1
+                .getName()), null, 10, false));
+    }
+
+    private static String toLines(List<String> names) {
+        StringBuilder sb = new StringBuilder();
+        for (String name : names) {
+            sb.append(name).append("\r\n");
+        }
+        return sb.toString();
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -99,4 +260,4 @@ public class DirectoryListerTest extends TestCase {
             IoUtils.delete(TEST_TMP_DIR);
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.commands.impl.listing;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.command.impl.listing.ListingCache;
+import org.apache.ftpserver.filesystem.nativefs.impl.NativeFileSystemView;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class ListingCacheTest extends TestCase {
+
+    private static final File TEST_TMP_DIR = new File("test-tmp");
+
+    private static final File ROOT_DIR = new File(TEST_TMP_DIR, "ftproot");
+
+    private static final File TEST_DIR1 = new File(ROOT_DIR, "dir1");
+
+    private static final File TEST_FILE1_IN_DIR1 = new File(TEST_DIR1,
+            "test1.txt");
+
+    // old enough to not be considered as recently modified
+    private static final long MODIFIED = System.currentTimeMillis() - 60000;
+
+    private static final byte[] LISTING = "test1.txt\r\n".getBytes();
+
+    private ListingCache cache = new ListingCache(1000, 60000);
+
+    public void testHit() {
+        assertNull(cache.get("/dir", "LIST", MODIFIED));
+        cache.put("/dir", "LIST", MODIFIED, LISTING);
+
+        assertSame(LISTING, cache.get("/dir", "LIST", MODIFIED));
+        assertNull(cache.get("/dir", "NLST", MODIFIED));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(LISTING.length, cache.getSize());
+    }
+
+    public void testDirectoryModified() {
+        cache.put("/dir", "LIST", MODIFIED, LISTING);
+
+        assertNull(cache.get("/dir", "LIST", MODIFIED + 1000));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testMaxAge() throws Exception {
+        cache = new ListingCache(1000, 0);
+        cache.put("/dir", "LIST", MODIFIED, LISTING);
+
+        assertNull(cache.get("/dir", "LIST", MODIFIED));
+    }
+
+    public void testRecentlyModifiedNotCached() {
+        long now = System.currentTimeMillis();
+        cache.put("/dir", "LIST", now, LISTING);
+
+        assertNull(cache.get("/dir", "LIST", now));
+    }
+
+    public void testTooLargeNotCached() {
+        cache.put("/dir", "LIST", MODIFIED, new byte[251]);
+
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testMaxListingSize() {
+        assertEquals(250, cache.getMaxListingSize());
+
+        cache.put("/dir", "LIST", MODIFIED,
+                new byte[(int) cache.getMaxListingSize()]);
+        assertEquals(cache.getMaxListingSize(), cache.getSize());
+    }
+
+    public void testEvictLeastRecentlyUsed() {
+        cache.put("/dir1", "LIST", MODIFIED, new byte[250]);
+        cache.put("/dir2", "LIST", MODIFIED, new byte[250]);
+        cache.put("/dir3", "LIST", MODIFIED, new byte[250]);
+        cache.put("/dir4", "LIST", MODIFIED, new byte[250]);
+
+        // use dir1 so that dir2 is the least recently used
+        assertNotNull(cache.get("/dir1", "LIST", MODIFIED));
+        cache.put("/dir5", "LIST", MODIFIED, new byte[250]);
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1000, cache.getSize());
+        assertNotNull(cache.get("/dir1", "LIST", MODIFIED));
+        assertNull(cache.get("/dir2", "LIST", MODIFIED));
+        assertNotNull(cache.get("/dir5", "LIST", MODIFIED));
+    }
+
+    public void testInvalidateParentDirectory() throws Exception {
+        ROOT_DIR.mkdirs();
+        TEST_DIR1.mkdirs();
+        TEST_FILE1_IN_DIR1.createNewFile();
+
+        BaseUser user = new BaseUser();
+        user.setName("user1");
+        user.setHomeDirectory(ROOT_DIR.getAbsolutePath());
+        FileSystemView view = new NativeFileSystemView(user, false);
+
+        FtpFile dir = view.getFile("/dir1");
+        FtpFile file = view.getFile("/dir1/test1.txt");
+        String dirKey = ListingCache.getKey(dir, "user1");
+        cache.put(dirKey, "LIST", MODIFIED, LISTING);
+        cache.put(dirKey, "NLST", MODIFIED, LISTING);
+        cache.put(ListingCache.getKey(file, "user1"), "LIST", MODIFIED,
+                LISTING);
+        cache.put("/other", "LIST", MODIFIED, LISTING);
+
+        // the listings of the file and of its directory are invalidated
+        cache.invalidate(file, "user2");
+
+        assertEquals(3, cache.getInvalidationCount());
+        assertNull(cache.get(dirKey, "LIST", MODIFIED));
+        assertNull(cache.get(dirKey, "NLST", MODIFIED));
+        assertNotNull(cache.get("/other", "LIST", MODIFIED));
+    }
+
+    protected void tearDown() throws Exception {
+        if (TEST_TMP_DIR.exists()) {
+            IoUtils.delete(TEST_TMP_DIR);
+        }
+    }
+}
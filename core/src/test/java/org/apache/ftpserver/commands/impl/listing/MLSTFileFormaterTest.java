@@ -23,11 +23,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Calendar;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.TimeZone;
 
 import junit.framework.TestCase;
 
+import org.apache.ftpserver.command.impl.listing.FileAttribute;
 import org.apache.ftpserver.command.impl.listing.MLSTFileFormater;
 import org.apache.ftpserver.ftplet.FtpFile;
 
@@ -141,6 +143,18 @@ public class MLSTFileFormaterTest extends TestCase {
                 formater.format(TEST_FILE));
     }
 
+    public void testRequiredAttributes() {
+        assertEquals(EnumSet.of(FileAttribute.SIZE,
+                FileAttribute.LAST_MODIFIED, FileAttribute.TYPE), formater
+                .getRequiredAttributes());
+
+        assertTrue(new MLSTFileFormater(new String[0])
+                .getRequiredAttributes().isEmpty());
+        assertEquals(EnumSet.of(FileAttribute.TYPE,
+                FileAttribute.PERMISSIONS), new MLSTFileFormater(
+                new String[] { "Perm" }).getRequiredAttributes());
+    }
+
     public void testSingleDir() {
         FtpFile dir = new MockFileObject() {
             public boolean isDirectory() {
@@ -20,7 +20,9 @@
 package org.apache.ftpserver.filesystem.nativefs.impl;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -174,6 +176,37 @@ public class NativeFileObjectTest extends FtpFileTestTemplate {
     	assertTrue(physicalFile.delete());
     }
 
+    public void testListedFilesCacheAttributes() throws IOException {
+        NativeFtpFile root = (NativeFtpFile) createFileObject("/", USER);
+        FtpFile listed = root.listFiles().get(1);
+        assertEquals(TEST_FILE1.getName(), listed.getName());
+        assertEquals(0, listed.getSize());
+        assertTrue(listed.isFile());
+
+        // changes made behind the back of a listed file are not seen
+        FileOutputStream fos = new FileOutputStream(TEST_FILE1);
+        fos.write(new byte[10]);
+        fos.close();
+        assertEquals(0, listed.getSize());
+
+        // but files not coming from a listing are always up to date
+        assertEquals(10, createFileObject(FILE1_PATH, USER).getSize());
+    }
+
+    public void testListedFileAttributesInvalidatedOnChange() throws IOException {
+        NativeFtpFile root = (NativeFtpFile) createFileObject("/", USER);
+        FtpFile listed = root.listFiles().get(1);
+        assertTrue(listed.doesExist());
+
+        OutputStream out = listed.createOutputStream(0);
+        out.write(new byte[10]);
+        out.close();
+        assertEquals(10, listed.getSize());
+
+        assertTrue(listed.delete());
+        assertFalse(listed.doesExist());
+    }
+
     protected void tearDown() throws Exception {
         cleanTmpDirs();
     }
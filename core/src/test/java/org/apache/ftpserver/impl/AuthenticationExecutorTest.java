@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class AuthenticationExecutorTest extends TestCase {
+
+    private static class Recorder implements Runnable {
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile Thread thread;
+
+        private volatile long time;
+
+        public void run() {
+            thread = Thread.currentThread();
+            time = System.currentTimeMillis();
+            done.countDown();
+        }
+
+        public boolean await() throws InterruptedException {
+            return done.await(5, TimeUnit.SECONDS);
+        }
+    }
+
+    public void testSynchronous() {
+        AuthenticationExecutor executor = new AuthenticationExecutor(0);
+        try {
+            assertFalse(executor.isAsynchronous());
+        } finally {
+            executor.dispose();
+        }
+    }
+
+    public void testExecuteInAuthenticationThread() throws Exception {
+        AuthenticationExecutor executor = new AuthenticationExecutor(2);
+        try {
+            assertTrue(executor.isAsynchronous());
+
+            Recorder task = new Recorder();
+            assertTrue(executor.execute(task));
+
+            assertTrue(task.await());
+            assertNotSame(Thread.currentThread(), task.thread);
+            assertTrue(task.thread.getName().startsWith(
+                    "FtpServer-authentication-"));
+        } finally {
+            executor.dispose();
+        }
+    }
+
+    public void testRejectWhenTooManyPending() throws Exception {
+        AuthenticationExecutor executor = new AuthenticationExecutor(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            Runnable blocking = new Runnable() {
+                public void run() {
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        // disposed
+                    }
+                }
+            };
+
+            boolean rejected = false;
+            for (int i = 0; i < 1000 && !rejected; i++) {
+                rejected = !executor.execute(blocking);
+            }
+            assertTrue(rejected);
+        } finally {
+            blocked.countDown();
+            executor.dispose();
+        }
+    }
+
+    public void testSchedule() throws Exception {
+        AuthenticationExecutor executor = new AuthenticationExecutor(1);
+        try {
+            Recorder task = new Recorder();
+            long start = System.currentTimeMillis();
+            executor.schedule(task, 200);
+
+            assertTrue(task.await());
+            assertTrue(task.time - start >= 150);
+            // only the delay runs in the scheduler, the task hands the work
+            // back to the session itself
+            assertTrue(task.thread.getName().startsWith(
+                    "FtpServer-login-delay-"));
+        } finally {
+            executor.dispose();
+        }
+    }
+
+    public void testScheduleWithoutAuthenticationThreads() throws Exception {
+        AuthenticationExecutor executor = new AuthenticationExecutor(0);
+        try {
+            Recorder task = new Recorder();
+            executor.schedule(task, 10);
+
+            assertTrue(task.await());
+            assertTrue(task.thread.getName().startsWith(
+                    "FtpServer-login-delay-"));
+        } finally {
+            executor.dispose();
+        }
+    }
+
+    public void testScheduleAfterDispose() {
+        AuthenticationExecutor executor = new AuthenticationExecutor(1);
+        executor.dispose();
+
+        Recorder task = new Recorder();
+        executor.schedule(task, 10000);
+
+        assertSame(Thread.currentThread(), task.thread);
+        assertFalse(executor.execute(task));
+    }
+}
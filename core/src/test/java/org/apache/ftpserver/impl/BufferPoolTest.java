@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class BufferPoolTest extends TestCase {
+
+    public void testAcquireRoundsUpToSizeClass() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+
+        assertEquals(512, pool.acquireHeap(1).capacity());
+        assertEquals(4096, pool.acquireHeap(3000).capacity());
+        assertEquals(4096, pool.acquireDirect(4096).capacity());
+        assertEquals(3, pool.getBorrowedBuffers());
+        assertTrue(pool.acquireDirect(100).isDirect());
+        assertFalse(pool.acquireHeap(100).isDirect());
+    }
+
+    public void testReleasedBufferIsReused() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+
+        ByteBuffer buffer = pool.acquireHeap(1000);
+        buffer.put((byte) 1);
+        pool.release(buffer);
+
+        assertEquals(0, pool.getBorrowedBuffers());
+        assertEquals(1, pool.getPooledBuffers(1024, false));
+        assertEquals(1024, pool.getPooledBytes());
+
+        ByteBuffer reused = pool.acquireHeap(1024);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(1024, reused.remaining());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(0, pool.getPooledBuffers());
+    }
+
+    public void testHeapAndDirectPooledSeparately() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+
+        pool.release(pool.acquireDirect(512));
+
+        assertEquals(1, pool.getPooledBuffers(512, true));
+        assertEquals(0, pool.getPooledBuffers(512, false));
+        assertFalse(pool.acquireHeap(512).isDirect());
+    }
+
+    public void testLargeBuffersNotPooled() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+
+        ByteBuffer buffer = pool.acquireHeap(BufferPool.MAX_BUFFER_SIZE + 1);
+        assertEquals(BufferPool.MAX_BUFFER_SIZE + 1, buffer.capacity());
+        pool.release(buffer);
+
+        assertEquals(0, pool.getPooledBuffers());
+        assertEquals(0, pool.getBorrowedBuffers());
+    }
+
+    public void testMaxPooledBytes() {
+        BufferPool pool = new BufferPool(1024);
+
+        ByteBuffer buffer1 = pool.acquireHeap(1024);
+        ByteBuffer buffer2 = pool.acquireHeap(1024);
+        pool.release(buffer1);
+        pool.release(buffer2);
+
+        assertEquals(1, pool.getPooledBuffers());
+        assertEquals(1024, pool.getPooledBytes());
+    }
+
+    public void testDispose() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+
+        pool.release(pool.acquireHeap(512));
+        pool.release(pool.acquireDirect(512));
+        pool.dispose();
+
+        assertEquals(0, pool.getPooledBuffers());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    public void testReleaseNull() {
+        BufferPool pool = new BufferPool(1024);
+        pool.release(null);
+        assertEquals(0, pool.getBorrowedBuffers());
+    }
+}
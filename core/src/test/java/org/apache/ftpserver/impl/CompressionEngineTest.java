@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class CompressionEngineTest extends TestCase {
+
+    private BufferPool bufferPool = new BufferPool(1024 * 1024);
+
+    private CompressionEngine engine = new CompressionEngine(bufferPool);
+
+    private byte[] compress(byte[] data, int level, boolean detect)
+            throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream out = engine.createOutputStream(compressed, level,
+                Deflater.DEFAULT_STRATEGY, detect);
+        out.write(data);
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    private byte[] decompress(byte[] data) throws Exception {
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        InputStream in = engine.createInputStream(new ByteArrayInputStream(
+                data));
+        byte[] buffer = new byte[1024];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            decompressed.write(buffer, 0, count);
+        }
+        in.close();
+        return decompressed.toByteArray();
+    }
+
+    private byte[] text() {
+        byte[] data = new byte[100000];
+        Arrays.fill(data, (byte) 'a');
+        return data;
+    }
+
+    public void testRoundTrip() throws Exception {
+        byte[] data = text();
+
+        byte[] compressed = compress(data, Deflater.DEFAULT_COMPRESSION, true);
+        assertTrue(compressed.length < data.length / 10);
+        assertTrue(Arrays.equals(data, decompress(compressed)));
+    }
+
+    public void testDeflatersAndInflatersPooled() throws Exception {
+        byte[] compressed = compress(text(), 9, false);
+        decompress(compressed);
+
+        assertEquals(1, engine.getPooledDeflaters());
+        assertEquals(1, engine.getPooledInflaters());
+        assertEquals(0, bufferPool.getBorrowedBuffers());
+
+        // reused instances must be reset
+        byte[] data = "foo".getBytes();
+        assertTrue(Arrays.equals(data, decompress(compress(data, 1, false))));
+        assertEquals(1, engine.getPooledDeflaters());
+        assertEquals(1, engine.getPooledInflaters());
+    }
+
+    public void testCompressedDataNotCompressedAgain() throws Exception {
+        byte[] data = text();
+        data[0] = 0x1f;
+        data[1] = (byte) 0x8b;
+
+        byte[] compressed = compress(data, 9, true);
+        assertTrue(compressed.length > data.length);
+        assertTrue(Arrays.equals(data, decompress(compressed)));
+
+        // without detection, the data is compressed
+        assertTrue(compress(data, 9, false).length < data.length / 10);
+    }
+
+    public void testIsCompressedData() {
+        byte[] random = new byte[1000];
+        new Random(1).nextBytes(random);
+        random[0] = 'a';
+
+        assertFalse(CompressionEngine.isCompressedData(random, 0, random.length));
+        assertFalse(CompressionEngine.isCompressedData(new byte[] { 0x1f }, 0, 1));
+        assertTrue(CompressionEngine.isCompressedData(new byte[] { 'x', 'P',
+                'K', 3, 4 }, 1, 4));
+    }
+
+    public void testIsCompressedFileName() {
+        assertTrue(CompressionEngine.isCompressedFileName("foo.tar.gz"));
+        assertTrue(CompressionEngine.isCompressedFileName("FOO.ZIP"));
+        assertFalse(CompressionEngine.isCompressedFileName("foo.txt"));
+        assertFalse(CompressionEngine.isCompressedFileName("gz"));
+        assertFalse(CompressionEngine.isCompressedFileName(null));
+    }
+
+    public void testParseStrategy() {
+        assertEquals(Deflater.FILTERED, CompressionEngine.parseStrategy("filtered"));
+        assertEquals(Deflater.HUFFMAN_ONLY, CompressionEngine
+                .parseStrategy("HUFFMAN_ONLY"));
+        try {
+            CompressionEngine.parseStrategy("foo");
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testDispose() throws Exception {
+        compress(text(), 9, false);
+        engine.dispose();
+
+        assertEquals(0, engine.getPooledDeflaters());
+        compress(text(), 9, false);
+        assertEquals(0, engine.getPooledDeflaters());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class LineEndingTranslatorTest extends TestCase {
+
+    private static final byte[] LF = "\n".getBytes();
+
+    private static final byte[] CRLF = "\r\n".getBytes();
+
+    private byte[] translate(LineEndingTranslator translator, String data,
+            int chunkSize) {
+        return translate(translator, data.getBytes(), chunkSize);
+    }
+
+    private byte[] translate(LineEndingTranslator translator, byte[] data,
+            int chunkSize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] dest = new byte[translator.getMaxTranslatedLength(chunkSize)];
+        for (int offset = 0; offset < data.length; offset += chunkSize) {
+            int length = Math.min(chunkSize, data.length - offset);
+            int written = translator.translate(data, offset, length, dest);
+            out.write(dest, 0, written);
+        }
+        return out.toByteArray();
+    }
+
+    private void assertTranslated(String expected, byte[] actual) {
+        assertEquals(expected, new String(actual));
+    }
+
+    public void testOutbound() {
+        assertTranslated("a\r\nb\r\n\r\nc", translate(
+                new AsciiOutboundTranslator(), "a\nb\n\nc", 100));
+    }
+
+    public void testOutboundKeepsCrLf() {
+        assertTranslated("a\r\nb\rc", translate(new AsciiOutboundTranslator(),
+                "a\r\nb\rc", 100));
+    }
+
+    public void testOutboundCrLfSplitOverChunks() {
+        assertTranslated("a\r\nb\r\n", translate(new AsciiOutboundTranslator(),
+                "a\r\nb\n", 2));
+    }
+
+    public void testInboundToLf() {
+        assertTranslated("a\nb\nc\n\nd", translate(new AsciiInboundTranslator(
+                LF), "a\r\nb\rc\n\r\nd", 100));
+    }
+
+    public void testInboundToCrLf() {
+        assertTranslated("a\r\nb\r\n", translate(new AsciiInboundTranslator(
+                CRLF), "a\r\nb\n", 100));
+    }
+
+    public void testInboundCrLfSplitOverChunks() {
+        assertTranslated("a\nb\n", translate(new AsciiInboundTranslator(LF),
+                "a\r\nb\r\n", 2));
+    }
+
+    public void testEmptyChunk() {
+        assertEquals(0, new AsciiOutboundTranslator().translate(new byte[0], 0,
+                0, new byte[0]));
+        assertEquals(0, new AsciiInboundTranslator(LF).translate(new byte[0],
+                0, 0, new byte[0]));
+    }
+
+    /**
+     * Chunking must not change the result
+     */
+    public void testRandomChunks() {
+        Random random = new Random(42);
+        byte[] data = new byte[10000];
+        byte[] alphabet = "ab\r\n".getBytes();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = alphabet[random.nextInt(alphabet.length)];
+        }
+
+        byte[] outbound = translate(new AsciiOutboundTranslator(), data,
+                data.length);
+        byte[] inbound = translate(new AsciiInboundTranslator(CRLF), data,
+                data.length);
+        for (int chunkSize = 1; chunkSize < 20; chunkSize++) {
+            assertTrue(Arrays.equals(outbound, translate(
+                    new AsciiOutboundTranslator(), data, chunkSize)));
+            assertTrue(Arrays.equals(inbound, translate(
+                    new AsciiInboundTranslator(CRLF), data, chunkSize)));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class LoginThrottleTest extends TestCase {
+
+    private InetAddress address1;
+
+    private InetAddress address2;
+
+    protected void setUp() throws Exception {
+        address1 = InetAddress.getByName("192.168.0.1");
+        address2 = InetAddress.getByName("192.168.0.2");
+    }
+
+    public void testFixedDelay() {
+        LoginThrottle throttle = new LoginThrottle(500, 0, 0, 600, 100);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(500, throttle.loginFailed(address1, "user"));
+        }
+        assertTrue(throttle.accept(address1));
+    }
+
+    public void testEscalatingDelay() {
+        LoginThrottle throttle = new LoginThrottle(100, 1000, 0, 600, 100);
+
+        assertEquals(100, throttle.loginFailed(address1, "user"));
+        int second = throttle.loginFailed(address1, "user");
+        assertTrue("Delay " + second, second > 150 && second <= 200);
+        int third = throttle.loginFailed(address1, "user");
+        assertTrue("Delay " + third, third > 300 && third <= 400);
+
+        for (int i = 0; i < 10; i++) {
+            throttle.loginFailed(address1, "user");
+        }
+        assertEquals(1000, throttle.loginFailed(address1, "user"));
+    }
+
+    public void testEscalatingDelayPerUser() throws Exception {
+        LoginThrottle throttle = new LoginThrottle(100, 1000, 0, 600, 100);
+
+        // the same user from many addresses
+        for (int i = 0; i < 10; i++) {
+            throttle.loginFailed(InetAddress.getByName("127.0.0.1"), "admin");
+        }
+        assertEquals(1000, throttle.loginFailed(address2, "admin"));
+
+        // other users from another address are not delayed more
+        assertEquals(100, throttle.loginFailed(address1, "other"));
+    }
+
+    public void testSuccessForgetsUser() {
+        LoginThrottle throttle = new LoginThrottle(100, 1000, 0, 600, 100);
+
+        for (int i = 0; i < 10; i++) {
+            throttle.loginFailed(null, "user");
+        }
+        throttle.loginSucceeded(address1, "user");
+
+        assertEquals(100, throttle.loginFailed(null, "user"));
+    }
+
+    public void testBan() {
+        LoginThrottle throttle = new LoginThrottle(0, 0, 3, 600, 100);
+
+        throttle.loginFailed(address1, "user1");
+        throttle.loginFailed(address1, "user2");
+        assertTrue(throttle.accept(address1));
+
+        throttle.loginFailed(address1, "user3");
+        assertFalse(throttle.accept(address1));
+        assertTrue(throttle.accept(address2));
+        assertEquals(1, throttle.getBannedAddresses());
+    }
+
+    public void testSuccessDoesNotLiftBan() {
+        LoginThrottle throttle = new LoginThrottle(0, 0, 2, 600, 100);
+
+        throttle.loginFailed(address1, "user");
+        throttle.loginFailed(address1, "user");
+        throttle.loginSucceeded(address1, "user");
+
+        assertFalse(throttle.accept(address1));
+    }
+
+    public void testBanExpires() throws Exception {
+        LoginThrottle throttle = new LoginThrottle(0, 0, 1, 0, 100);
+
+        throttle.loginFailed(address1, "user");
+        Thread.sleep(10);
+
+        assertTrue(throttle.accept(address1));
+        assertEquals(0, throttle.getBannedAddresses());
+    }
+
+    public void testTrackedAddressesBounded() throws Exception {
+        LoginThrottle throttle = new LoginThrottle(0, 0, 2, 600, 10);
+
+        throttle.loginFailed(address1, "user");
+        for (int i = 0; i < 20; i++) {
+            throttle.loginFailed(InetAddress.getByName("10.0.0." + i), "user");
+        }
+
+        // the first failure has been forgotten
+        throttle.loginFailed(address1, "user");
+        assertTrue(throttle.accept(address1));
+    }
+
+    public void testBannedAddressesBounded() throws Exception {
+        LoginThrottle throttle = new LoginThrottle(0, 0, 1, 600, 10);
+
+        for (int i = 0; i < 20; i++) {
+            throttle.loginFailed(InetAddress.getByName("10.0.0." + i), "user");
+        }
+
+        assertEquals(10, throttle.getBannedAddresses());
+        assertFalse(throttle.accept(InetAddress.getByName("10.0.0.19")));
+    }
+
+    public void testUnknownAddress() {
+        LoginThrottle throttle = new LoginThrottle(0, 0, 1, 600, 100);
+
+        throttle.loginFailed(null, "user");
+
+        assertTrue(throttle.accept(null));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class MessageTemplateTest extends TestCase {
+
+    public void testLiteral() {
+        MessageTemplate template = MessageTemplate.compile(200, "Command okay.");
+
+        assertEquals(200, template.getCode());
+        assertFalse(template.hasVariables());
+        assertEquals("Command okay.", template.render(null, null, null, null));
+        assertEquals(200, template.getReply().getCode());
+        assertEquals("Command okay.", template.getReply().getMessage());
+    }
+
+    public void testEncodedReply() throws Exception {
+        MessageTemplate template = MessageTemplate.compile(200, "Command okay.");
+
+        byte[] encoded = new byte[template.getReply().getEncodedReply()
+                .remaining()];
+        template.getReply().getEncodedReply().duplicate().get(encoded);
+
+        assertEquals("200 Command okay.\r\n", new String(encoded, "UTF-8"));
+    }
+
+    public void testOutputCodeResolvedWhenCompiling() {
+        MessageTemplate template = MessageTemplate.compile(550,
+                "{output.code} failed");
+
+        assertFalse(template.hasVariables());
+        assertEquals("550 failed", template.getReply().getMessage());
+    }
+
+    public void testUnknownVariable() {
+        MessageTemplate template = MessageTemplate.compile(200,
+                "foo {unknown} bar");
+
+        assertFalse(template.hasVariables());
+        assertEquals("foo  bar", template.render(null, null, null, null));
+    }
+
+    public void testUnbalancedBraces() {
+        assertEquals("foo } {bar", MessageTemplate.compile(200, "foo } {bar")
+                .render(null, null, null, null));
+        assertEquals("foo {bar", MessageTemplate.compile(200, "foo {bar")
+                .render(null, null, null, null));
+    }
+
+    public void testOutputMessage() {
+        MessageTemplate template = MessageTemplate.compile(200,
+                "foo {output.msg} bar {output.msg}");
+
+        assertTrue(template.hasVariables());
+        assertNull(template.getReply());
+        assertEquals("foo baz bar baz", template.render(null, null, null,
+                "baz"));
+        assertEquals("foo  bar ", template.render(null, null, null, null));
+    }
+}
@@ -20,9 +20,14 @@
 package org.apache.ftpserver.impl;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
@@ -180,4 +185,122 @@ public class PassivePortsTest extends TestCase {
         assertEquals(0, valid.size());
     }
 
-}
\ No newline at end of file
+    public void testBoundPortSkipped() throws IOException {
+        ServerSocket ss = new ServerSocket(0);
+        int bound = ss.getLocalPort();
+        ServerSocket other = new ServerSocket(0);
+        int free = other.getLocalPort();
+        other.close();
+
+        try {
+            PassivePorts ports = new PassivePorts(bound + "," + free, true);
+
+            // the bound port is checked at most once
+            for (int i = 0; i < 10; i++) {
+                assertEquals(free, ports.reserveNextPort());
+                ports.releasePort(free);
+            }
+            assertTrue(ports.getBindFailureCount() <= 1);
+        } finally {
+            ss.close();
+        }
+    }
+
+    public void testPooledPortNotSkipped() throws IOException {
+        PassiveSocketPool pool = new PassiveSocketPool();
+        ServerSocket ss = new ServerSocket(0);
+        int port = ss.getLocalPort();
+        ss.close();
+
+        try {
+            pool.release(pool.acquire(InetAddress.getByName("127.0.0.1"), port));
+            assertTrue(pool.isIdle(port));
+
+            PassivePorts ports = new PassivePorts(Integer.toString(port), true);
+
+            // the idle pooled socket keeps the port bound
+            for (int i = 0; i < 10; i++) {
+                assertEquals(port, ports.reserveNextPort(pool));
+                ports.releasePort(port);
+            }
+            assertEquals(0, ports.getBindFailureCount());
+        } finally {
+            pool.dispose();
+        }
+    }
+
+    public void testExhaustedCount() {
+        PassivePorts ports = new PassivePorts("123", false);
+
+        assertEquals(123, ports.reserveNextPort());
+        assertEquals(-1, ports.reserveNextPort());
+        assertEquals(-1, ports.reserveNextPort());
+
+        assertEquals(3, ports.getReservationCount());
+        assertEquals(2, ports.getExhaustedCount());
+        assertTrue(ports.getMaxReservationTime() >= ports.getAverageReservationTime());
+    }
+
+    public void testFreeAndUsedPorts() {
+        PassivePorts ports = new PassivePorts("123-125", false);
+
+        int port = ports.reserveNextPort();
+
+        assertEquals(1, ports.usedPortsCount());
+        assertEquals(2, ports.freePortsCount());
+        assertTrue(ports.usedPorts().contains(port));
+        assertFalse(ports.freePorts().contains(port));
+
+        ports.releasePort(port);
+        assertEquals(0, ports.usedPortsCount());
+        assertEquals(3, ports.freePortsCount());
+    }
+
+    public void testReserveAllLargeRange() {
+        PassivePorts ports = new PassivePorts("1000-1199", false);
+
+        Set<Integer> reserved = new HashSet<Integer>();
+        for (int i = 0; i < 200; i++) {
+            int port = ports.reserveNextPort();
+            assertTrue(port >= 1000 && port <= 1199);
+            assertTrue(reserved.add(port));
+        }
+        assertEquals(-1, ports.reserveNextPort());
+    }
+
+    public void testConcurrentReserve() throws Exception {
+        final PassivePorts ports = new PassivePorts("1000-1999", false);
+        final Set<Integer> reserved = Collections
+                .synchronizedSet(new HashSet<Integer>());
+        final AtomicBoolean duplicate = new AtomicBoolean();
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        int port = ports.reserveNextPort();
+                        if (port == -1) {
+                            continue;
+                        }
+                        if (!reserved.add(port)) {
+                            duplicate.set(true);
+                        }
+                        if (j % 2 == 0) {
+                            reserved.remove(port);
+                            ports.releasePort(port);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(duplicate.get());
+        assertEquals(reserved.size(), ports.usedPortsCount());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class PassiveSocketPoolTest extends TestCase {
+
+    private static final InetAddress LOCALHOST;
+
+    static {
+        try {
+            LOCALHOST = InetAddress.getByName("localhost");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private PassiveSocketPool pool;
+
+    private int port;
+
+    @Override
+    protected void setUp() throws Exception {
+        pool = new PassiveSocketPool();
+
+        ServerSocket ss = new ServerSocket(0);
+        port = ss.getLocalPort();
+        ss.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.dispose();
+    }
+
+    public void testReuseReleasedSocket() throws Exception {
+        ServerSocket socket = pool.acquire(LOCALHOST, port);
+        assertEquals(port, socket.getLocalPort());
+        assertNotNull(socket.getChannel());
+        assertEquals(1, pool.getMisses());
+
+        pool.release(socket);
+        assertFalse(socket.isClosed());
+        assertEquals(1, pool.getIdleSockets());
+
+        assertSame(socket, pool.acquire(LOCALHOST, port));
+        assertEquals(1, pool.getHits());
+        assertEquals(0, pool.getIdleSockets());
+    }
+
+    public void testAcceptOnPooledSocket() throws Exception {
+        ServerSocket socket = pool.acquire(LOCALHOST, port);
+
+        Socket client = new Socket(LOCALHOST, port);
+        Socket accepted = socket.accept();
+        assertEquals(client.getLocalPort(), accepted.getPort());
+
+        client.close();
+        accepted.close();
+    }
+
+    public void testDiscardPendingConnections() throws Exception {
+        ServerSocket socket = pool.acquire(LOCALHOST, port);
+        pool.release(socket);
+
+        // connection made while the socket is idle
+        Socket stale = new Socket(LOCALHOST, port);
+
+        socket = pool.acquire(LOCALHOST, port);
+        socket.setSoTimeout(2000);
+
+        Socket client = new Socket(LOCALHOST, port);
+        Socket accepted = socket.accept();
+        assertEquals(client.getLocalPort(), accepted.getPort());
+
+        stale.close();
+        client.close();
+        accepted.close();
+    }
+
+    public void testReleaseAfterDispose() throws Exception {
+        ServerSocket socket = pool.acquire(LOCALHOST, port);
+        pool.dispose();
+
+        pool.release(socket);
+        assertTrue(socket.isClosed());
+        assertEquals(0, pool.getIdleSockets());
+    }
+
+    public void testDisposeClosesIdleSockets() throws Exception {
+        ServerSocket socket = pool.acquire(LOCALHOST, port);
+        pool.release(socket);
+
+        pool.dispose();
+        assertTrue(socket.isClosed());
+
+        // the port can be bound again
+        ServerSocket ss = new ServerSocket();
+        ss.setReuseAddress(true);
+        ss.bind(new InetSocketAddress(LOCALHOST, port));
+        ss.close();
+    }
+
+    public void testReleaseNonChannelSocket() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        pool.release(socket);
+
+        assertTrue(socket.isClosed());
+        assertEquals(0, pool.getIdleSockets());
+    }
+
+    public void testPortZeroNotPooled() throws Exception {
+        try {
+            pool.acquire(LOCALHOST, 0);
+            fail("Must fail for port 0");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+}
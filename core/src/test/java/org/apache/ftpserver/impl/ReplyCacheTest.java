@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class ReplyCacheTest extends TestCase {
+
+    private DefaultFtpServerContext context = new DefaultFtpServerContext();
+
+    private FtpIoSession createSession(final String language) {
+        return new FtpIoSession(null, context) {
+            @Override
+            public String getLanguage() {
+                return language;
+            }
+        };
+    }
+
+    public void testGetAndPut() {
+        ReplyCache cache = new ReplyCache();
+        MessageTemplate template = MessageTemplate.compile(200, "foo");
+
+        assertNull(cache.get(200, "NOOP", "en"));
+        assertSame(template, cache.put("NOOP", "en", template));
+
+        assertSame(template, cache.get(200, "NOOP", "en"));
+        assertNull(cache.get(200, "NOOP", "zh-tw"));
+        assertNull(cache.get(200, "MODE", "en"));
+        assertNull(cache.get(500, "NOOP", "en"));
+        assertEquals(1, cache.size());
+    }
+
+    public void testPutKeepsFirstTemplate() {
+        ReplyCache cache = new ReplyCache();
+        MessageTemplate first = MessageTemplate.compile(200, "foo");
+
+        cache.put(null, null, first);
+        assertSame(first, cache.put(null, null, MessageTemplate.compile(200,
+                "foo")));
+
+        assertSame(first, cache.get(200, null, null));
+        assertEquals(1, cache.size());
+    }
+
+    public void testStaticReplyEncodedOncePerLanguage() {
+        LocalizedFtpReply en1 = LocalizedFtpReply.translate(
+                createSession("en"), null, context, 200, "NOOP", null);
+        LocalizedFtpReply en2 = LocalizedFtpReply.translate(
+                createSession("en"), null, context, 200, "NOOP", null);
+        LocalizedFtpReply zh = LocalizedFtpReply.translate(
+                createSession("zh-tw"), null, context, 200, "NOOP", null);
+
+        assertNotNull(en1.getEncodedReply());
+        assertSame(en1, en2);
+        assertSame(en1.getEncodedReply(), en2.getEncodedReply());
+        assertNotSame(en1, zh);
+        assertEquals(2, context.getReplyCache().size());
+    }
+
+    public void testReplyWithVariablesNotShared() {
+        FtpIoSession session = createSession("en");
+        LocalizedFtpReply reply1 = LocalizedFtpReply.translate(session,
+                new DefaultFtpRequest("REST 100"), context, 350, "REST", null);
+        LocalizedFtpReply reply2 = LocalizedFtpReply.translate(session,
+                new DefaultFtpRequest("REST 200"), context, 350, "REST", null);
+
+        assertNotSame(reply1, reply2);
+        assertNull(reply1.getEncodedReply());
+        assertNull(reply2.getEncodedReply());
+        assertTrue(reply1.getMessage().indexOf("100") > -1);
+        assertTrue(reply2.getMessage().indexOf("200") > -1);
+
+        // only the template is cached
+        assertEquals(1, context.getReplyCache().size());
+    }
+}
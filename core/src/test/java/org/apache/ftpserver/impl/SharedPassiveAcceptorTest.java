@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class SharedPassiveAcceptorTest extends TestCase {
+
+    private InetAddress localhost;
+
+    private SharedPassiveAcceptor acceptor;
+
+    @Override
+    protected void setUp() throws Exception {
+        localhost = InetAddress.getByName("127.0.0.1");
+
+        ServerSocket ss = new ServerSocket(0);
+        int port = ss.getLocalPort();
+        ss.close();
+
+        acceptor = new SharedPassiveAcceptor(localhost, port);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        acceptor.dispose();
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket(localhost, acceptor.getPort());
+    }
+
+    public void testAcceptReserved() throws Exception {
+        SharedPassiveAcceptor.Reservation reservation = acceptor
+                .reserve(localhost);
+
+        Socket client = connect();
+        Socket accepted = reservation.accept(2000);
+        assertEquals(client.getLocalPort(), accepted.getPort());
+        assertNotNull(accepted.getChannel());
+
+        client.close();
+        accepted.close();
+    }
+
+    public void testReservationsInOrder() throws Exception {
+        SharedPassiveAcceptor.Reservation first = acceptor.reserve(localhost);
+        SharedPassiveAcceptor.Reservation second = acceptor.reserve(localhost);
+
+        Socket client1 = connect();
+        Socket accepted1 = first.accept(2000);
+        Socket client2 = connect();
+        Socket accepted2 = second.accept(2000);
+
+        assertEquals(client1.getLocalPort(), accepted1.getPort());
+        assertEquals(client2.getLocalPort(), accepted2.getPort());
+
+        client1.close();
+        client2.close();
+        accepted1.close();
+        accepted2.close();
+    }
+
+    public void testCancelledReservationSkipped() throws Exception {
+        SharedPassiveAcceptor.Reservation cancelled = acceptor
+                .reserve(localhost);
+        SharedPassiveAcceptor.Reservation reservation = acceptor
+                .reserve(localhost);
+        cancelled.cancel();
+
+        Socket client = connect();
+        Socket accepted = reservation.accept(2000);
+        assertEquals(client.getLocalPort(), accepted.getPort());
+
+        try {
+            cancelled.accept(100);
+            fail("Must fail as cancelled");
+        } catch (IOException e) {
+            // ok
+        }
+
+        client.close();
+        accepted.close();
+    }
+
+    public void testCancelForgetsAddress() throws Exception {
+        for (int i = 1; i <= 10; i++) {
+            acceptor.reserve(InetAddress.getByName("10.0.0." + i)).cancel();
+        }
+
+        assertEquals(0, acceptor.getReservedAddressCount());
+    }
+
+    public void testTimeoutForgetsAddress() throws Exception {
+        try {
+            acceptor.reserve(localhost).accept(10);
+            fail("Must time out");
+        } catch (SocketTimeoutException e) {
+            // ok
+        }
+
+        assertEquals(0, acceptor.getReservedAddressCount());
+    }
+
+    public void testRefuseUnexpectedConnection() throws Exception {
+        Socket client = connect();
+
+        // the connection is closed by the server
+        client.setSoTimeout(2000);
+        assertEquals(-1, client.getInputStream().read());
+        client.close();
+
+        assertEquals(1, acceptor.getRefusedCount());
+        assertEquals(0, acceptor.getAcceptedCount());
+    }
+
+    public void testRefuseOtherAddress() throws Exception {
+        SharedPassiveAcceptor.Reservation reservation = acceptor
+                .reserve(InetAddress.getByName("127.0.0.2"));
+
+        Socket client = connect();
+        client.setSoTimeout(2000);
+        assertEquals(-1, client.getInputStream().read());
+        client.close();
+
+        try {
+            reservation.accept(100);
+            fail("Must time out");
+        } catch (SocketTimeoutException e) {
+            // ok
+        }
+    }
+
+    public void testDisposeCancelsReservations() throws Exception {
+        SharedPassiveAcceptor.Reservation reservation = acceptor
+                .reserve(localhost);
+        acceptor.dispose();
+
+        try {
+            reservation.accept(2000);
+            fail("Must fail as disposed");
+        } catch (SocketTimeoutException e) {
+            fail("Must fail before timing out");
+        } catch (IOException e) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class SharedPassivePortResolverTest extends TestCase {
+
+    private SharedPassivePortResolver resolver = new SharedPassivePortResolver(
+            "2121-2122");
+
+    private static FtpIoSession createSession(final String clientAddress) {
+        final SocketAddress address = new InetSocketAddress(clientAddress,
+                1234);
+        return new FtpIoSession(null, null) {
+            @Override
+            public SocketAddress getRemoteAddress() {
+                return address;
+            }
+        };
+    }
+
+    public void testClientSpreadOverPorts() {
+        FtpIoSession session = createSession("10.0.0.1");
+
+        int port1 = resolver.requestPassivePort(session);
+        int port2 = resolver.requestPassivePort(session);
+
+        assertTrue(port1 != port2);
+        assertEquals(1, resolver.getSessionCount(port1));
+        assertEquals(1, resolver.getSessionCount(port2));
+    }
+
+    public void testRefuseWhenAllPortsPendingForClient() {
+        FtpIoSession session = createSession("10.0.0.1");
+
+        int port1 = resolver.requestPassivePort(session);
+        resolver.requestPassivePort(session);
+
+        assertEquals(-1, resolver.requestPassivePort(session));
+
+        // other clients still get a port
+        assertTrue(resolver.requestPassivePort(createSession("10.0.0.2")) > 0);
+
+        // and the client once one of its ports has been released
+        resolver.releasePassivePort(session, port1);
+        assertEquals(port1, resolver.requestPassivePort(session));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class TokenBucketTest extends TestCase {
+
+    private static final long SECOND = 1000000000L;
+
+    public void testBurstWithoutDelay() {
+        TokenBucket bucket = new TokenBucket(1000, 500, 0);
+
+        assertEquals(0, bucket.consume(200, 0));
+        assertEquals(0, bucket.consume(300, 0));
+    }
+
+    public void testDelayWhenEmpty() {
+        TokenBucket bucket = new TokenBucket(1000, 500, 0);
+
+        assertEquals(0, bucket.consume(500, 0));
+        // 100 bytes in debt at 1000 bytes/s
+        assertEquals(SECOND / 10, bucket.consume(100, 0));
+    }
+
+    public void testRefill() {
+        TokenBucket bucket = new TokenBucket(1000, 500, 0);
+
+        assertEquals(0, bucket.consume(500, 0));
+        assertEquals(0, bucket.consume(250, SECOND / 4));
+        assertTrue(bucket.consume(1, SECOND / 4) > 0);
+    }
+
+    public void testBurstIsCapped() {
+        TokenBucket bucket = new TokenBucket(1000, 500, 0);
+
+        // idle for a long time must not allow more than the burst size
+        assertEquals(0, bucket.consume(500, 3600 * SECOND));
+        assertEquals(SECOND / 2, bucket.consume(500, 3600 * SECOND));
+    }
+
+    public void testDebtIsPaidBack() {
+        TokenBucket bucket = new TokenBucket(1000, 100, 0);
+
+        assertEquals(SECOND, bucket.consume(1100, 0));
+        // still in debt half way
+        assertEquals(SECOND / 2, bucket.consume(0, SECOND / 2));
+        assertEquals(0, bucket.consume(0, SECOND));
+    }
+
+    public void testNoTokensLostToRounding() {
+        TokenBucket bucket = new TokenBucket(3, 3, 0);
+        assertEquals(0, bucket.consume(3, 0));
+
+        // a third of a second at a time only adds whole tokens once
+        for (int i = 1; i <= 9; i++) {
+            bucket.consume(0, i * SECOND / 9);
+        }
+        assertEquals(0, bucket.consume(3, SECOND));
+    }
+
+    public void testSteadyRate() {
+        TokenBucket bucket = new TokenBucket(1000000, 4096, 0);
+
+        long now = 0;
+        long sent = 0;
+        while (now < 10 * SECOND) {
+            now += bucket.consume(4096, now);
+            sent += 4096;
+        }
+
+        // 10 seconds at 1 MB/s plus the initial burst
+        assertTrue(sent <= 10 * 1000000 + 2 * 4096);
+        assertTrue(sent >= 10 * 1000000 - 4096);
+    }
+
+    public void testInvalidRate() {
+        try {
+            new TokenBucket(0, 100);
+            fail("Must fail for zero rate");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class TransferSchedulerTest extends TestCase {
+
+    private static final long SECOND = 1000000000L;
+
+    public void testSingleFlowGetsAll() {
+        TransferScheduler scheduler = new TransferScheduler(100000, 0);
+
+        TransferScheduler.Flow flow = scheduler.register(1);
+
+        assertEquals(100000, flow.getRate());
+    }
+
+    public void testWeightedShares() {
+        TransferScheduler scheduler = new TransferScheduler(100000, 0);
+
+        TransferScheduler.Flow batch = scheduler.register(1);
+        TransferScheduler.Flow interactive = scheduler.register(3);
+
+        assertEquals(25000, batch.getRate());
+        assertEquals(75000, interactive.getRate());
+        assertEquals(2, scheduler.getActiveFlows());
+    }
+
+    public void testUnregisterRedistributes() {
+        TransferScheduler scheduler = new TransferScheduler(100000, 0);
+
+        TransferScheduler.Flow flow1 = scheduler.register(1);
+        TransferScheduler.Flow flow2 = scheduler.register(1);
+        assertEquals(50000, flow1.getRate());
+
+        flow2.unregister();
+
+        assertEquals(100000, flow1.getRate());
+        assertEquals(1, scheduler.getActiveFlows());
+    }
+
+    public void testZeroWeightTreatedAsOne() {
+        TransferScheduler scheduler = new TransferScheduler(100000, 0);
+
+        TransferScheduler.Flow flow1 = scheduler.register(0);
+        TransferScheduler.Flow flow2 = scheduler.register(1);
+
+        assertEquals(flow1.getRate(), flow2.getRate());
+    }
+
+    public void testUnusedShareIsRedistributed() {
+        long now = 0;
+        TransferScheduler scheduler = new TransferScheduler(100000, 0, now);
+
+        TransferScheduler.Flow slow = scheduler.register(1, now);
+        TransferScheduler.Flow fast = scheduler.register(1, now);
+
+        // the slow flow only uses a small part of its share, while the fast
+        // flow uses all of it
+        long end = now + SECOND;
+        while (now < end) {
+            now += SECOND / 20;
+            slow.consume(50, now);
+            fast.consume(5000, now);
+        }
+
+        assertTrue("Slow flow rate " + slow.getRate(),
+                slow.getRate() < 50000);
+        assertTrue("Fast flow rate " + fast.getRate(),
+                fast.getRate() > 90000);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ipfilter;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mina.filter.firewall.Subnet;
+
+/**
+ * Measures the lookup latency of the {@link CidrIpFilter} with 10, 1000 and
+ * 100000 ranges, compared to the {@link DefaultIpFilter} up to 10000 ranges,
+ * as building larger {@link DefaultIpFilter}s takes too long. Not run as part
+ * of the tests, run it with the test classpath:
+ * 
+ * <pre>
+ * java org.apache.ftpserver.ipfilter.CidrIpFilterBenchmark [lookups]
+ * </pre>
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CidrIpFilterBenchmark {
+
+    private static final int[] SIZES = new int[] { 10, 1000, 100000 };
+
+    private static final int MAX_DEFAULT_FILTER_SIZE = 10000;
+
+    private static final int ADDRESSES = 4096;
+
+    public static void main(String[] args) throws Exception {
+        int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        Random random = new Random(42);
+        InetAddress[] addresses = new InetAddress[ADDRESSES];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = randomAddress(random);
+        }
+
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up the JIT
+            for (int size : SIZES) {
+                List<String> subnets = new ArrayList<String>(size);
+                List<Subnet> minaSubnets = new ArrayList<Subnet>(size);
+                for (int i = 0; i < size; i++) {
+                    InetAddress address = randomAddress(random);
+                    // a mix of single addresses and /24 ranges, as in threat
+                    // feeds
+                    int prefixLength = i % 2 == 0 ? 32 : 24;
+                    subnets.add(address.getHostAddress() + "/" + prefixLength);
+                    minaSubnets.add(new Subnet(address, prefixLength));
+                }
+
+                CidrIpFilter cidrFilter = new CidrIpFilter(IpFilterType.DENY);
+                long start = System.nanoTime();
+                cidrFilter.setSubnets(subnets);
+                long loadTime = System.nanoTime() - start;
+                run("CidrIpFilter, " + size + " ranges (loaded in "
+                        + (loadTime / 1000000) + " ms)", cidrFilter, addresses,
+                        lookups);
+
+                if (size <= MAX_DEFAULT_FILTER_SIZE) {
+                    DefaultIpFilter defaultFilter = new DefaultIpFilter(
+                            IpFilterType.DENY, minaSubnets);
+                    run("DefaultIpFilter, " + size + " ranges", defaultFilter,
+                            addresses, Math.max(1000, lookups / size));
+                }
+            }
+        }
+    }
+
+    private static InetAddress randomAddress(Random random) throws Exception {
+        byte[] address = new byte[4];
+        random.nextBytes(address);
+        return InetAddress.getByAddress(address);
+    }
+
+    private static void run(String name, IpFilter filter,
+            InetAddress[] addresses, int lookups) {
+        int accepted = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            if (filter.accept(addresses[i % addresses.length])) {
+                accepted++;
+            }
+        }
+        long time = System.nanoTime() - start;
+
+        System.out.println(name + ": " + (time / lookups) + " ns/lookup ("
+                + accepted + " of " + lookups + " accepted)");
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ipfilter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class CidrIpFilterTest extends TestCase {
+
+    private static final File TEST_TMP_DIR = new File("test-tmp");
+
+    private static final File FILTER_FILE = new File(TEST_TMP_DIR,
+            "ipfilter.txt");
+
+    protected void setUp() throws Exception {
+        TEST_TMP_DIR.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        if (TEST_TMP_DIR.exists()) {
+            IoUtils.delete(TEST_TMP_DIR);
+        }
+    }
+
+    private static boolean accept(IpFilter filter, String address)
+            throws Exception {
+        return filter.accept(InetAddress.getByName(address));
+    }
+
+    private static void writeFile(String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(FILTER_FILE);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    public void testDeny() throws Exception {
+        CidrIpFilter filter = new CidrIpFilter(IpFilterType.DENY,
+                "1.2.3.0/16, 10.0.0.1 192.168.1.0/24");
+
+        assertFalse(accept(filter, "1.2.200.1"));
+        assertFalse(accept(filter, "10.0.0.1"));
+        assertFalse(accept(filter, "192.168.1.255"));
+        assertTrue(accept(filter, "1.3.0.1"));
+        assertTrue(accept(filter, "10.0.0.2"));
+        assertTrue(accept(filter, "192.168.2.1"));
+    }
+
+    public void testAllow() throws Exception {
+        CidrIpFilter filter = new CidrIpFilter(IpFilterType.ALLOW,
+                "10.0.0.0/8");
+
+        assertTrue(accept(filter, "10.255.0.1"));
+        assertFalse(accept(filter, "11.0.0.1"));
+        assertFalse(accept(filter, "::1"));
+    }
+
+    public void testEmpty() throws Exception {
+        assertTrue(accept(new CidrIpFilter(IpFilterType.DENY), "1.2.3.4"));
+        assertFalse(accept(new CidrIpFilter(IpFilterType.ALLOW), "1.2.3.4"));
+    }
+
+    public void testMatchAll() throws Exception {
+        CidrIpFilter filter = new CidrIpFilter(IpFilterType.DENY, "0.0.0.0/0");
+
+        assertFalse(accept(filter, "1.2.3.4"));
+        assertTrue(accept(filter, "::1"));
+    }
+
+    public void testIpv6() throws Exception {
+        CidrIpFilter filter = new CidrIpFilter(IpFilterType.DENY,
+                "2001:db8::/32 ::1");
+
+        assertFalse(accept(filter, "2001:db8:1234::1"));
+        assertFalse(accept(filter, "::1"));
+        assertTrue(accept(filter, "2001:db9::1"));
+        assertTrue(accept(filter, "::2"));
+        // IPv4 ranges do not match IPv6 addresses
+        assertTrue(accept(filter, "1.2.3.4"));
+    }
+
+    public void testNestedRanges() throws Exception {
+        CidrIpFilter filter = new CidrIpFilter(IpFilterType.DENY,
+                "10.1.2.3 10.0.0.0/8 10.1.0.0/16");
+
+        assertFalse(accept(filter, "10.1.2.3"));
+        assertFalse(accept(filter, "10.1.2.4"));
+        assertFalse(accept(filter, "10.2.0.1"));
+    }
+
+    public void testSubnetsNormalized() throws Exception {
+        CidrIpFilter filter = new CidrIpFilter(IpFilterType.DENY,
+                "1.2.3.4/16 1.2.0.0/16 5.6.7.8");
+
+        assertEquals(2, filter.getSubnets().size());
+        assertTrue(filter.getSubnets().contains("1.2.0.0/16"));
+        assertTrue(filter.getSubnets().contains("5.6.7.8/32"));
+    }
+
+    public void testAdd() throws Exception {
+        CidrIpFilter filter = new CidrIpFilter(IpFilterType.DENY, "1.2.3.4");
+
+        assertTrue(filter.add("5.6.0.0/16"));
+        assertFalse(filter.add("5.6.7.8/16"));
+
+        assertFalse(accept(filter, "1.2.3.4"));
+        assertFalse(accept(filter, "5.6.1.1"));
+    }
+
+    public void testInvalidPrefixLength() throws Exception {
+        try {
+            new CidrIpFilter(IpFilterType.DENY, "1.2.3.4/33");
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // OK
+        }
+    }
+
+    public void testSetSubnets() throws Exception {
+        CidrIpFilter filter = new CidrIpFilter(IpFilterType.DENY, "1.2.3.4");
+
+        filter.setSubnets(Arrays.asList(new String[] { "5.6.7.8" }));
+
+        assertTrue(accept(filter, "1.2.3.4"));
+        assertFalse(accept(filter, "5.6.7.8"));
+    }
+
+    public void testSetInvalidSubnetsKeepsCurrent() throws Exception {
+        CidrIpFilter filter = new CidrIpFilter(IpFilterType.DENY, "1.2.3.4");
+
+        try {
+            filter.setSubnets(Arrays.asList(new String[] { "5.6.7.8",
+                    "5.6.7.8/x" }));
+            fail("Must throw NumberFormatException");
+        } catch (NumberFormatException e) {
+            // OK
+        }
+
+        assertFalse(accept(filter, "1.2.3.4"));
+        assertTrue(accept(filter, "5.6.7.8"));
+    }
+
+    public void testFile() throws Exception {
+        writeFile("# threat feed\n1.2.3.0/24 # comment\n\n5.6.7.8,9.9.9.9\n2001:db8::/32\n");
+
+        CidrIpFilter filter = new CidrIpFilter(IpFilterType.DENY, FILTER_FILE);
+
+        assertEquals(4, filter.getSubnets().size());
+        assertFalse(accept(filter, "1.2.3.100"));
+        assertFalse(accept(filter, "9.9.9.9"));
+        assertFalse(accept(filter, "2001:db8::1"));
+        assertTrue(accept(filter, "1.2.4.1"));
+    }
+
+    public void testReload() throws Exception {
+        writeFile("1.2.3.4\n");
+        CidrIpFilter filter = new CidrIpFilter(IpFilterType.DENY, FILTER_FILE);
+
+        writeFile("5.6.7.8\n");
+        filter.reload();
+
+        assertTrue(accept(filter, "1.2.3.4"));
+        assertFalse(accept(filter, "5.6.7.8"));
+    }
+
+    public void testReloadInvalidFileKeepsCurrent() throws Exception {
+        writeFile("1.2.3.4\n");
+        CidrIpFilter filter = new CidrIpFilter(IpFilterType.DENY, FILTER_FILE);
+
+        writeFile("5.6.7.8\n1.2.3.4/99\n");
+        try {
+            filter.reload();
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().indexOf("line 2") != -1);
+        }
+
+        assertFalse(accept(filter, "1.2.3.4"));
+        assertTrue(accept(filter, "5.6.7.8"));
+    }
+
+    public void testReloadWithoutFile() throws Exception {
+        try {
+            new CidrIpFilter(IpFilterType.DENY).reload();
+            fail("Must throw IllegalStateException");
+        } catch (IllegalStateException e) {
+            // OK
+        }
+    }
+}
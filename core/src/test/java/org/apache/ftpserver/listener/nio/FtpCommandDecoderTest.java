@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.listener.nio;
+
+import java.nio.charset.MalformedInputException;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.filter.codec.ProtocolCodecSession;
+import org.apache.mina.filter.codec.RecoverableProtocolDecoderException;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class FtpCommandDecoderTest extends TestCase {
+
+    private FtpCommandDecoder decoder = new FtpCommandDecoder(20);
+
+    private ProtocolCodecSession session = new ProtocolCodecSession();
+
+    private void decode(String data) throws Exception {
+        decode(data.getBytes("UTF-8"));
+    }
+
+    private void decode(byte[] data) throws Exception {
+        IoBuffer in = IoBuffer.wrap(data);
+        decoder.decode(session, in, session.getDecoderOutput());
+        assertFalse(in.hasRemaining());
+    }
+
+    private FtpRequest next() {
+        return (FtpRequest) session.getDecoderOutputQueue().poll();
+    }
+
+    public void testCommandWithoutArgument() throws Exception {
+        decode("NOOP\r\n");
+
+        FtpRequest request = next();
+        assertEquals("NOOP", request.getCommand());
+        assertFalse(request.hasArgument());
+        assertNull(request.getArgument());
+        assertEquals("NOOP", request.getRequestLine());
+        assertNull(next());
+    }
+
+    public void testKnownCommandIsShared() throws Exception {
+        decode("pwd\r\nPWD\r\n");
+
+        assertSame(next().getCommand(), next().getCommand());
+    }
+
+    public void testCommandWithArgument() throws Exception {
+        decode("cwd  foo bar \r\n");
+
+        FtpRequest request = next();
+        assertEquals("CWD", request.getCommand());
+        assertEquals(" foo bar", request.getArgument());
+        assertEquals("cwd  foo bar", request.getRequestLine());
+    }
+
+    public void testUtf8Argument() throws Exception {
+        decode("STOR \u00e5\u00e4\u00f6\u20ac\r\n");
+
+        assertEquals("\u00e5\u00e4\u00f6\u20ac", next().getArgument());
+    }
+
+    public void testXPrefix() throws Exception {
+        decode("XMKD foo\r\nXPWD\r\n");
+
+        assertEquals("MKD", next().getCommand());
+        FtpRequest request = next();
+        assertEquals("PWD", request.getCommand());
+        assertEquals("XPWD", request.getRequestLine());
+    }
+
+    public void testUnknownCommand() throws Exception {
+        decode("foobar\n");
+
+        assertEquals("FOOBAR", next().getCommand());
+    }
+
+    public void testEmptyLine() throws Exception {
+        decode("\r\n");
+
+        assertEquals("", next().getCommand());
+    }
+
+    public void testLineInPieces() throws Exception {
+        decode("RE");
+        assertNull(next());
+        decode("TR foo");
+        assertNull(next());
+        decode("\r\nNOOP\r\n");
+
+        FtpRequest request = next();
+        assertEquals("RETR", request.getCommand());
+        assertEquals("foo", request.getArgument());
+        assertEquals("NOOP", next().getCommand());
+    }
+
+    public void testLineTooLong() throws Exception {
+        try {
+            decode("STOR 012345678901234567890\r\n");
+            fail("Must throw RecoverableProtocolDecoderException");
+        } catch (RecoverableProtocolDecoderException e) {
+            // ok
+        }
+
+        decode("NOOP\r\n");
+        assertEquals("NOOP", next().getCommand());
+    }
+
+    public void testLineInPiecesTooLong() throws Exception {
+        decode("STOR 0123456789");
+        try {
+            decode("0123456789");
+            fail("Must throw RecoverableProtocolDecoderException");
+        } catch (RecoverableProtocolDecoderException e) {
+            // ok
+        }
+
+        // the rest of the line is discarded
+        decode("0123456789\r\nNOOP\r\n");
+        assertEquals("NOOP", next().getCommand());
+        assertNull(next());
+    }
+
+    public void testInvalidUtf8() throws Exception {
+        byte[] data = { 'L', 'I', 'S', 'T', ' ', 'a', (byte) 0xae, '\r', '\n' };
+        try {
+            decode(data);
+            fail("Must throw RecoverableProtocolDecoderException");
+        } catch (RecoverableProtocolDecoderException e) {
+            assertTrue(e.getCause() instanceof MalformedInputException);
+        }
+        assertNull(next());
+    }
+
+    public void testUtf8Validation() {
+        assertTrue(isValid(new byte[] { 'a', (byte) 0xc3, (byte) 0xa5 }));
+        assertTrue(isValid(new byte[] { (byte) 0xf0, (byte) 0x9f,
+                (byte) 0x98, (byte) 0x80 }));
+        // overlong
+        assertFalse(isValid(new byte[] { (byte) 0xc0, (byte) 0xaf }));
+        assertFalse(isValid(new byte[] { (byte) 0xe0, (byte) 0x80,
+                (byte) 0xaf }));
+        // surrogate
+        assertFalse(isValid(new byte[] { (byte) 0xed, (byte) 0xa0,
+                (byte) 0x80 }));
+        // truncated
+        assertFalse(isValid(new byte[] { 'a', (byte) 0xe2, (byte) 0x82 }));
+    }
+
+    private boolean isValid(byte[] data) {
+        return FtpCommandDecoder.isValidUtf8(IoBuffer.wrap(data), 0,
+                data.length);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.impl.BufferPool;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.MessageTemplate;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.filter.codec.ProtocolCodecSession;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class FtpResponseEncoderTest extends TestCase {
+
+    private BufferPool bufferPool = new BufferPool(1024 * 1024);
+
+    private FtpResponseEncoder encoder = new FtpResponseEncoder(bufferPool);
+
+    private ProtocolCodecSession session = new ProtocolCodecSession();
+
+    private IoBuffer encode(Object reply) throws Exception {
+        encoder.encode(session, reply, session.getEncoderOutput());
+        return (IoBuffer) session.getEncoderOutputQueue().poll();
+    }
+
+    private String read(IoBuffer buffer) throws Exception {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    public void testEncodeReply() throws Exception {
+        IoBuffer buffer = encode(new DefaultFtpReply(200, "foo"));
+
+        assertEquals("200 foo\r\n", read(buffer));
+        assertEquals(1, bufferPool.getBorrowedBuffers());
+    }
+
+    public void testPreEncodedReply() throws Exception {
+        LocalizedFtpReply reply = MessageTemplate.compile(200,
+                "Command okay.").getReply();
+
+        assertEquals("200 Command okay.\r\n", read(encode(reply)));
+
+        // written as is, without borrowing a buffer
+        assertEquals(0, bufferPool.getBorrowedBuffers());
+    }
+
+    public void testPreEncodedReplyNotConsumed() throws Exception {
+        LocalizedFtpReply reply = MessageTemplate.compile(200,
+                "Command okay.").getReply();
+        ByteBuffer shared = reply.getEncodedReply();
+        int length = shared.remaining();
+
+        IoBuffer buffer1 = encode(reply);
+        IoBuffer buffer2 = encode(reply);
+        assertEquals("200 Command okay.\r\n", read(buffer1));
+
+        // writing one view changes neither the other view nor the shared
+        // bytes
+        assertEquals(length, buffer2.remaining());
+        assertEquals(0, shared.position());
+        assertEquals(length, shared.remaining());
+        assertEquals("200 Command okay.\r\n", read(buffer2));
+        assertEquals("200 Command okay.\r\n", read(encode(reply)));
+    }
+}
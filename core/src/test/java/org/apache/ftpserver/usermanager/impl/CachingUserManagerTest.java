@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ftpserver.ftplet.Authentication;
+import org.apache.ftpserver.ftplet.AuthenticationFailedException;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.CachingUserManagerFactory;
+import org.apache.ftpserver.usermanager.UserManagerFactory;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>*
+*/
+public class CachingUserManagerTest extends VolatilePropertiesUserManagerTest {
+
+    private CountingUserManager countingUserManager;
+
+    protected UserManagerFactory createUserManagerFactory() throws FtpException {
+        countingUserManager = new CountingUserManager(super
+                .createUserManagerFactory().createUserManager());
+
+        CachingUserManagerFactory factory = new CachingUserManagerFactory();
+        factory.setUserManager(countingUserManager);
+        return factory;
+    }
+
+    private CachingUserManager getCachingUserManager() {
+        return (CachingUserManager) userManager;
+    }
+
+    public void testCachedUser() throws Exception {
+        User user = userManager.getUserByName("user1");
+        assertSame(user, userManager.getUserByName("user1"));
+
+        assertEquals(1, countingUserManager.lookups);
+        assertEquals(1, getCachingUserManager().getHitCount());
+        assertEquals(1, getCachingUserManager().getMissCount());
+        assertEquals(0.5, getCachingUserManager().getHitRate(), 0.001);
+    }
+
+    public void testCachedUnknownUser() throws Exception {
+        assertNull(userManager.getUserByName("foo"));
+        assertFalse(userManager.doesExist("foo"));
+        assertEquals(1, countingUserManager.lookups);
+
+        try {
+            userManager.authenticate(new UsernamePasswordAuthentication(
+                    "foo", "bar"));
+            fail("Must throw AuthenticationFailedException");
+        } catch (AuthenticationFailedException e) {
+            // ok
+        }
+        assertEquals(1, countingUserManager.lookups);
+        assertEquals(0, countingUserManager.authentications);
+    }
+
+    public void testCachedAuthentication() throws Exception {
+        Authentication auth = new UsernamePasswordAuthentication("user1",
+                "pw1");
+        assertEquals("user1", userManager.authenticate(auth).getName());
+        assertEquals("user1", userManager.authenticate(auth).getName());
+        assertEquals(1, countingUserManager.authentications);
+
+        // wrong passwords are always checked, and do not remove the cached
+        // authentication
+        for (int i = 0; i < 2; i++) {
+            try {
+                userManager.authenticate(new UsernamePasswordAuthentication(
+                        "user1", "foo"));
+                fail("Must throw AuthenticationFailedException");
+            } catch (AuthenticationFailedException e) {
+                // ok
+            }
+        }
+        assertEquals(3, countingUserManager.authentications);
+
+        userManager.authenticate(auth);
+        assertEquals(3, countingUserManager.authentications);
+    }
+
+    public void testSaveInvalidates() throws Exception {
+        userManager.authenticate(new UsernamePasswordAuthentication("user1",
+                "pw1"));
+
+        BaseUser user = new BaseUser(userManager.getUserByName("user1"));
+        user.setPassword("pw2");
+        user.setHomeDirectory("newhome");
+        userManager.save(user);
+
+        assertEquals("newhome", userManager.getUserByName("user1")
+                .getHomeDirectory());
+        try {
+            userManager.authenticate(new UsernamePasswordAuthentication(
+                    "user1", "pw1"));
+            fail("Must throw AuthenticationFailedException");
+        } catch (AuthenticationFailedException e) {
+            // ok
+        }
+    }
+
+    public void testSaveDuringAuthenticationNotCached() throws Exception {
+        // cache an authentication with another password than the one
+        // checked below
+        BaseUser user = new BaseUser(userManager.getUserByName("user1"));
+        user.setPassword("pw0");
+        userManager.save(user);
+        userManager.authenticate(new UsernamePasswordAuthentication("user1",
+                "pw0"));
+        user.setPassword("pw1");
+        countingUserManager.save(user);
+
+        countingUserManager.delay = 300;
+        Thread login = new Thread() {
+            public void run() {
+                try {
+                    userManager.authenticate(new UsernamePasswordAuthentication(
+                            "user1", "pw1"));
+                } catch (AuthenticationFailedException e) {
+                    // fails the assertion below
+                }
+            }
+        };
+        login.start();
+
+        // the password changes while the old one is being authenticated
+        Thread.sleep(100);
+        user.setPassword("pw2");
+        userManager.save(user);
+        login.join();
+        countingUserManager.delay = 0;
+
+        try {
+            userManager.authenticate(new UsernamePasswordAuthentication(
+                    "user1", "pw1"));
+            fail("Must throw AuthenticationFailedException");
+        } catch (AuthenticationFailedException e) {
+            // ok
+        }
+    }
+
+    public void testDeleteInvalidates() throws Exception {
+        assertNotNull(userManager.getUserByName("user1"));
+
+        userManager.delete("user1");
+
+        assertNull(userManager.getUserByName("user1"));
+    }
+
+    public void testExpiredUser() throws Exception {
+        UserManager um = new CachingUserManager(countingUserManager, 10, 0);
+        um.getUserByName("user1");
+        um.getUserByName("user1");
+
+        assertEquals(2, countingUserManager.lookups);
+    }
+
+    public void testEviction() throws Exception {
+        CachingUserManager um = new CachingUserManager(countingUserManager,
+                2, 60000);
+        um.getUserByName("user1");
+        um.getUserByName("user2");
+        um.getUserByName("user3");
+
+        assertEquals(2, um.getSize());
+        assertEquals(1, um.getEvictionCount());
+
+        // the least recently used user was evicted
+        um.getUserByName("user1");
+        assertEquals(4, countingUserManager.lookups);
+    }
+
+    public void testConcurrentLookups() throws Exception {
+        countingUserManager.delay = 200;
+
+        final List<User> found = new ArrayList<User>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 10; i++) {
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        User user = userManager.getUserByName("user1");
+                        synchronized (found) {
+                            found.add(user);
+                        }
+                    } catch (FtpException e) {
+                        // fails the assertion below
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(10, found.size());
+        assertEquals(1, countingUserManager.lookups);
+    }
+
+    /**
+     * Counts the calls to the cached user manager
+     */
+    private static class CountingUserManager implements UserManager {
+
+        private final UserManager userManager;
+
+        private volatile long delay = 0;
+
+        private int lookups = 0;
+
+        private int authentications = 0;
+
+        public CountingUserManager(UserManager userManager) {
+            this.userManager = userManager;
+        }
+
+        public User getUserByName(String username) throws FtpException {
+            synchronized (this) {
+                lookups++;
+            }
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    throw new FtpException(e);
+                }
+            }
+            return userManager.getUserByName(username);
+        }
+
+        public User authenticate(Authentication authentication)
+                throws AuthenticationFailedException {
+            synchronized (this) {
+                authentications++;
+            }
+            User user = userManager.authenticate(authentication);
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    throw new AuthenticationFailedException(e);
+                }
+            }
+            return user;
+        }
+
+        public void delete(String username) throws FtpException {
+            userManager.delete(username);
+        }
+
+        public void save(User user) throws FtpException {
+            userManager.save(user);
+        }
+
+        public boolean doesExist(String username) throws FtpException {
+            return userManager.doesExist(username);
+        }
+
+        public String[] getAllUserNames() throws FtpException {
+            return userManager.getAllUserNames();
+        }
+
+        public String getAdminName() throws FtpException {
+            return userManager.getAdminName();
+        }
+
+        public boolean isAdmin(String username) throws FtpException {
+            return userManager.isAdmin(username);
+        }
+    }
+}
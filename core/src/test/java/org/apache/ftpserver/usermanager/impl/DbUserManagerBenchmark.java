@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.io.File;
+import java.io.FileReader;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.test.TestUtil;
+import org.apache.ftpserver.usermanager.DbUserManagerFactory;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+import org.apache.ftpserver.util.IoUtils;
+import org.hsqldb.jdbc.jdbcDataSource;
+
+/**
+ * Compares the authentication throughput of the {@link DbUserManager} with
+ * substituted SQL, with prepared statements, and with prepared statements on
+ * pooled connections, against an in-memory HSQLDB database. Not run as part
+ * of the tests, run it with the test classpath:
+ * 
+ * <pre>
+ * java org.apache.ftpserver.usermanager.impl.DbUserManagerBenchmark [logins]
+ * </pre>
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DbUserManagerBenchmark {
+
+    private static final int USERS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int logins = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        jdbcDataSource ds = new jdbcDataSource();
+        ds.setDatabase("jdbc:hsqldb:mem:ftpdbenchmark");
+        ds.setUser("sa");
+        ds.setPassword("");
+
+        Connection conn = ds.getConnection();
+        try {
+            String ddl = IoUtils.readFully(new FileReader(new File(TestUtil
+                    .getBaseDir(), "src/test/resources/dbusermanagertest-hsql.sql")));
+            Statement stm = conn.createStatement();
+            stm.execute(ddl);
+
+            UserManager um = createUserManager(ds, false, 0);
+            for (int i = 0; i < USERS; i++) {
+                BaseUser user = new BaseUser();
+                user.setName("benchmark" + i);
+                user.setPassword("pw" + i);
+                user.setHomeDirectory("home");
+                um.save(user);
+            }
+
+            for (int round = 0; round < 2; round++) {
+                // the first round warms up the JIT
+                run("substituted SQL", createUserManager(ds, false, 0), logins);
+                run("prepared statements", createUserManager(ds, true, 0),
+                        logins);
+                run("prepared statements, pooled", createUserManager(ds,
+                        true, 4), logins);
+            }
+
+            stm.execute("SHUTDOWN");
+        } finally {
+            conn.close();
+        }
+    }
+
+    private static UserManager createUserManager(jdbcDataSource ds,
+            boolean preparedStatements, int maxConnections) {
+        DbUserManagerFactory factory = new DbUserManagerFactory();
+        factory.setDataSource(ds);
+        factory.setSqlUserInsert("INSERT INTO FTP_USER (userid, userpassword, homedirectory, enableflag, writepermission, idletime, uploadrate, downloadrate, maxloginnumber, maxloginperip) VALUES ('{userid}', '{userpassword}', '{homedirectory}', {enableflag}, {writepermission}, {idletime}, {uploadrate}, {downloadrate}, {maxloginnumber}, {maxloginperip})");
+        factory.setSqlUserUpdate("UPDATE FTP_USER SET userpassword='{userpassword}',homedirectory='{homedirectory}',enableflag={enableflag},writepermission={writepermission},idletime={idletime},uploadrate={uploadrate},downloadrate={downloadrate},maxloginnumber={maxloginnumber}, maxloginperip={maxloginperip} WHERE userid='{userid}'");
+        factory.setSqlUserDelete("DELETE FROM FTP_USER WHERE userid = '{userid}'");
+        factory.setSqlUserSelect("SELECT * FROM FTP_USER WHERE userid = '{userid}'");
+        factory.setSqlUserSelectAll("SELECT userid FROM FTP_USER ORDER BY userid");
+        factory.setSqlUserAdmin("SELECT userid FROM FTP_USER WHERE userid='{userid}' AND userid='admin'");
+        if (preparedStatements) {
+            // a single round-trip for the password and the user
+            factory.setSqlUserAuthenticate("SELECT * FROM FTP_USER WHERE userid='{userid}'");
+        } else {
+            factory.setSqlUserAuthenticate("SELECT userid, userpassword FROM FTP_USER WHERE userid='{userid}'");
+        }
+        factory.setPreparedStatements(preparedStatements);
+        factory.setMaxConnections(maxConnections);
+        return factory.createUserManager();
+    }
+
+    private static void run(String name, UserManager um, int logins)
+            throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < logins; i++) {
+            int user = i % USERS;
+            um.authenticate(new UsernamePasswordAuthentication("benchmark"
+                    + user, "pw" + user));
+        }
+        long time = System.nanoTime() - start;
+
+        System.out.println(name + ": " + (logins * 1000000000L / time)
+                + " logins/s");
+        ((DbUserManager) um).dispose();
+    }
+}
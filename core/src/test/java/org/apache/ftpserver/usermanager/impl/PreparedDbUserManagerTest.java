@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.usermanager.DbUserManagerFactory;
+import org.apache.ftpserver.usermanager.UserManagerFactory;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>*
+*/
+public class PreparedDbUserManagerTest extends DbUserManagerTest {
+
+    protected UserManagerFactory createUserManagerFactory() throws FtpException {
+        DbUserManagerFactory manager = (DbUserManagerFactory) super.createUserManagerFactory();
+        manager.setPreparedStatements(true);
+        manager.setMaxConnections(2);
+        return manager;
+    }
+
+    public void testUserNameIsNotSql() throws Exception {
+        assertNull(userManager.getUserByName("user1' OR '1'='1"));
+        assertFalse(userManager.doesExist("user1' OR '1'='1"));
+    }
+
+    public void testSaveUserNameWithQuote() throws Exception {
+        BaseUser user = new BaseUser();
+        user.setName("o'user");
+        user.setPassword("pw");
+        user.setHomeDirectory("home");
+        userManager.save(user);
+
+        assertEquals("o'user", userManager.getUserByName("o'user").getName());
+        assertEquals("o'user", userManager.authenticate(
+                new UsernamePasswordAuthentication("o'user", "pw")).getName());
+    }
+
+    public void testAuthenticateWithUserColumns() throws Exception {
+        DbUserManagerFactory factory = (DbUserManagerFactory) createUserManagerFactory();
+        factory.setSqlUserAuthenticate("SELECT * FROM FTP_USER WHERE userid='{userid}'");
+        DbUserManager um = (DbUserManager) factory.createUserManager();
+        try {
+            User user = um.authenticate(new UsernamePasswordAuthentication(
+                    "user2", "pw2"));
+
+            assertEquals("user2", user.getName());
+            assertNull(user.getPassword());
+            assertEquals("home", user.getHomeDirectory());
+            assertFalse(user.getEnabled());
+            assertEquals(2, user.getMaxIdleTime());
+        } finally {
+            um.dispose();
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        ((DbUserManager) userManager).dispose();
+
+        super.tearDown();
+    }
+}
@@ -24,8 +24,11 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
+import org.apache.ftpserver.ftplet.Authority;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.usermanager.ClearTextPasswordEncryptor;
@@ -57,6 +60,8 @@ public class PropertiesUserManagerTest extends UserManagerTestTemplate {
         users.setProperty("ftpserver.user.user2.downloadrate", "1");
         users.setProperty("ftpserver.user.user2.maxloginnumber", "3");
         users.setProperty("ftpserver.user.user2.maxloginperip", "4");
+        users.setProperty("ftpserver.user.user2.transferclass", "batch");
+        users.setProperty("ftpserver.user.user2.transferweight", "2");
 
         users.setProperty("ftpserver.user.user3.userpassword", "");
         users.setProperty("ftpserver.user.user3.homedirectory", "home");
@@ -111,4 +116,35 @@ public class PropertiesUserManagerTest extends UserManagerTestTemplate {
     	modifiedUser = pum.getUserByName("user1");
     	assertEquals("Home directory should have reset back to \""+originalSetting+"\" after second call to refresh().",originalSetting,modifiedUser.getHomeDirectory());
     }
+
+    public void testGetTransferClass() throws Exception {
+        TransferClassRequest request = (TransferClassRequest) userManager
+                .getUserByName("user2").authorize(new TransferClassRequest());
+
+        assertEquals("batch", request.getTransferClass());
+        assertEquals(2, request.getWeight());
+    }
+
+    public void testGetTransferClassWithDefaultValues() throws Exception {
+        assertNull(userManager.getUserByName("user1").authorize(
+                new TransferClassRequest()));
+    }
+
+    public void testSaveTransferClass() throws Exception {
+        BaseUser user = new BaseUser();
+        user.setName("newuser");
+        user.setPassword("newpw");
+
+        List<Authority> authorities = new ArrayList<Authority>();
+        authorities.add(new TransferClassPermission("interactive", 5));
+        user.setAuthorities(authorities);
+
+        userManager.save(user);
+
+        TransferClassRequest request = (TransferClassRequest) userManager
+                .getUserByName("newuser").authorize(new TransferClassRequest());
+
+        assertEquals("interactive", request.getTransferClass());
+        assertEquals(5, request.getWeight());
+    }
 }
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>*
+*/
+public class SqlTemplateTest extends TestCase {
+
+    public void testQuotedVariable() {
+        SqlTemplate template = SqlTemplate
+                .compile("SELECT * FROM FTP_USER WHERE userid = '{userid}'");
+
+        assertEquals("SELECT * FROM FTP_USER WHERE userid = ?", template
+                .getSql());
+    }
+
+    public void testUnquotedVariables() {
+        SqlTemplate template = SqlTemplate
+                .compile("UPDATE FTP_USER SET enableflag={enableflag},idletime={idletime} WHERE userid='{userid}'");
+
+        assertEquals(
+                "UPDATE FTP_USER SET enableflag=?,idletime=? WHERE userid=?",
+                template.getSql());
+    }
+
+    public void testNoVariables() {
+        SqlTemplate template = SqlTemplate
+                .compile("SELECT userid FROM FTP_USER WHERE userid='admin'");
+
+        assertEquals("SELECT userid FROM FTP_USER WHERE userid='admin'",
+                template.getSql());
+    }
+
+    public void testVariableInLiteral() {
+        assertNull(SqlTemplate
+                .compile("SELECT * FROM FTP_USER WHERE userid LIKE '{userid}%'"));
+        assertNull(SqlTemplate
+                .compile("SELECT * FROM FTP_USER WHERE userid = 'x{userid}'"));
+    }
+}